@@ -0,0 +1,18 @@
+package com.test.benchmarks;
+
+import io.wcm.testing.mock.aem.junit5.AemContext;
+
+/**
+ * {@link AemContext} that can be set up and torn down outside of JUnit, for
+ * use from JMH {@code @Setup} and {@code @TearDown} methods.
+ */
+public class BenchmarkAemContext extends AemContext {
+
+    public void setUp() {
+        setUpContext();
+    }
+
+    public void tearDown() {
+        tearDownContext();
+    }
+}
@@ -0,0 +1,91 @@
+package com.test.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.test.core.models.BulkModelAdapter;
+import com.test.core.models.PosterModel;
+
+/**
+ * Adapts the posters of a carousel one by one and through the
+ * {@link BulkModelAdapter}.
+ */
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BulkModelAdapterBenchmark {
+
+    private static final String CAROUSEL = "/content/test/us/en/jcr:content/root/carousel";
+
+    @Param({ "20", "200" })
+    public int posters;
+
+    private final BenchmarkAemContext context = new BenchmarkAemContext();
+
+    private final BulkModelAdapter adapter = new BulkModelAdapter();
+
+    private ResourceResolver resolver;
+
+    @Setup
+    public void setUp() {
+        context.setUp();
+        resolver = context.resourceResolver();
+        context.create().page("/content/test/us/en");
+        context.create().resource(CAROUSEL, "sling:resourceType", "test/components/carousel");
+        for (int i = 0; i < posters; i++) {
+            context.create().resource(CAROUSEL + "/poster" + i,
+                    "sling:resourceType", "test/components/slingmodeltest/slingtest",
+                    "fileReference", "/content/dam/test/asset" + i + ".jpg",
+                    "alt", "Poster " + i,
+                    "height", "100",
+                    "width", "200",
+                    "occupation", "Engineer",
+                    "description", "Description");
+            context.create().resource(CAROUSEL + "/poster" + i + "/occupations");
+        }
+        context.registerInjectActivateService(adapter);
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.tearDown();
+    }
+
+    @Benchmark
+    public List<PosterModel> oneByOne() {
+        final List<PosterModel> models = new ArrayList<>();
+        for (final Resource resource : resolver.getResource(CAROUSEL).getChildren()) {
+            final PosterModel model = resource.adaptTo(PosterModel.class);
+            if (model != null) {
+                models.add(model);
+            }
+        }
+        return models;
+    }
+
+    @Benchmark
+    public List<PosterModel> bulk() {
+        return adapter.adapt(resolver.getResource(CAROUSEL).getChildren(), PosterModel.class);
+    }
+
+    @Benchmark
+    public List<PosterModel> bulkInParallel() {
+        return adapter.adaptInParallel(resolver.getResource(CAROUSEL).getChildren(), PosterModel.class);
+    }
+}
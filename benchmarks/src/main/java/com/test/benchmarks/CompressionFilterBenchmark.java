@@ -0,0 +1,118 @@
+package com.test.benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.testing.mock.sling.servlet.MockSlingHttpServletRequest;
+import org.apache.sling.testing.mock.sling.servlet.MockSlingHttpServletResponse;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.test.core.filters.CompressionFilter;
+
+/**
+ * Runs an HTML response through {@link CompressionFilter}. The average time
+ * is the CPU spent per request on the single benchmark thread. The
+ * {@code wireBytes} and {@code bodyBytes} counters report the bytes sent and
+ * the bytes rendered per iteration, so their ratio is the compression ratio.
+ * <p>
+ * {@code identity} requests without {@code Accept-Encoding}, {@code cached}
+ * renders the same body every time so the compressed variant is served from
+ * the cache, {@code uncached} renders a body that differs in every request so
+ * it is compressed each time. Bodies above the buffer size of the filter are
+ * compressed while they stream.
+ */
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CompressionFilterBenchmark {
+
+    @Param({ "identity", "uncached", "cached" })
+    public String mode;
+
+    @Param({ "40", "400" })
+    public int sizeKb;
+
+    private final BenchmarkAemContext context = new BenchmarkAemContext();
+
+    private final CompressionFilter filter = new CompressionFilter();
+
+    private ResourceResolver resolver;
+
+    private String body;
+
+    private long renders;
+
+    @Setup
+    public void setUp() {
+        context.setUp();
+        resolver = context.resourceResolver();
+        context.registerInjectActivateService(filter);
+        final String paragraph = "<div class=\"cmp-text\"><p>Lorem ipsum dolor sit amet, consectetur adipiscing "
+                + "elit, sed do eiusmod tempor incididunt ut labore et dolore magna aliqua.</p></div>\n";
+        body = "<html><body>" + StringUtils.repeat(paragraph, sizeKb * 1024 / paragraph.length())
+                + "</body></html>";
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.tearDown();
+    }
+
+    @Benchmark
+    public MockSlingHttpServletResponse doFilter(final Bytes bytes) throws ServletException, IOException {
+        final String page = "uncached".equals(mode) ? body + "<!-- " + renders + " -->" : body;
+        renders++;
+        bytes.bodyBytes += page.length();
+        final FilterChain chain = (request, response) -> {
+            response.setContentType("text/html");
+            response.setCharacterEncoding("UTF-8");
+            response.getWriter().write(page);
+        };
+        final MockSlingHttpServletRequest request = new MockSlingHttpServletRequest(resolver,
+                context.bundleContext());
+        if (!"identity".equals(mode)) {
+            request.setHeader("Accept-Encoding", "gzip, deflate, br");
+        }
+        final MockSlingHttpServletResponse response = new MockSlingHttpServletResponse();
+        filter.doFilter(request, response, chain);
+        bytes.wireBytes += response.getOutput().length;
+        return response;
+    }
+
+    /**
+     * Bytes rendered and sent in the current iteration, reported by JMH next
+     * to the score.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Bytes {
+
+        public long bodyBytes;
+
+        public long wireBytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            bodyBytes = 0;
+            wireBytes = 0;
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.test.benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.testing.mock.sling.servlet.MockSlingHttpServletResponse;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.test.core.filters.LoggingFilter;
+import com.test.core.metrics.RequestTimingStatistics;
+import com.test.core.servlets.SimpleServlet;
+
+/**
+ * Runs a request through {@link LoggingFilter} into {@link SimpleServlet},
+ * with and without the filter's timing mode.
+ */
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LoggingFilterBenchmark {
+
+    @Param({ "false", "true" })
+    public boolean timing;
+
+    private final BenchmarkAemContext context = new BenchmarkAemContext();
+
+    private final SimpleServlet servlet = new SimpleServlet();
+
+    private final LoggingFilter filter = new LoggingFilter();
+
+    private final FilterChain chain = servlet::service;
+
+    private ResourceResolver resolver;
+
+    @Setup
+    public void setUp() {
+        context.setUp();
+        resolver = context.resourceResolver();
+        context.create().page("/content/test/us/en", "/conf/test/settings/wcm/templates/page-content",
+                "jcr:title", "English");
+        context.registerInjectActivateService(new RequestTimingStatistics());
+        context.registerInjectActivateService(filter, "timing.enabled", timing);
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.tearDown();
+    }
+
+    @Benchmark
+    public MockSlingHttpServletResponse doFilter() throws ServletException, IOException {
+        MockSlingHttpServletResponse response = new MockSlingHttpServletResponse();
+        filter.doFilter(SimpleServletBenchmark.newRequest(context, resolver), response, chain);
+        return response;
+    }
+}
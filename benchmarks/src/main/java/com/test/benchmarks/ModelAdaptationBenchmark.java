@@ -0,0 +1,89 @@
+package com.test.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.sling.api.resource.ResourceResolver;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.day.cq.wcm.api.Page;
+import com.test.core.models.HelloWorldModel;
+import com.test.core.models.PosterModel;
+import com.test.core.models.Register;
+
+/**
+ * Adapts resources to the core Sling Models. Resources cache their
+ * adaptations, so every invocation resolves a fresh resource just like every
+ * request does.
+ */
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ModelAdaptationBenchmark {
+
+    private static final String PAGE = "/content/test/us/en";
+
+    private static final String HELLO = PAGE + "/jcr:content/root/helloworld";
+
+    private static final String POSTER = PAGE + "/jcr:content/root/poster";
+
+    private static final String REGISTER = PAGE + "/jcr:content/root/registration";
+
+    private final BenchmarkAemContext context = new BenchmarkAemContext();
+
+    private ResourceResolver resolver;
+
+    @Setup
+    public void setUp() {
+        context.setUp();
+        resolver = context.resourceResolver();
+
+        Page page = context.create().page(PAGE);
+        context.create().resource(page.getContentResource().getPath() + "/root");
+        context.create().resource(HELLO,
+                "sling:resourceType", "test/components/helloworld",
+                "text", "Hello");
+        context.create().resource(POSTER,
+                "sling:resourceType", "test/components/slingmodeltest/slingtest",
+                "fileReference", "/content/dam/test/asset.jpg",
+                "alt", "Poster",
+                "height", "100",
+                "width", "200",
+                "occupation", "Engineer",
+                "description", "Description");
+        context.create().resource(POSTER + "/occupations");
+        context.create().resource(REGISTER,
+                "sling:resourceType", "test/components/registration",
+                "email", "Email",
+                "password", "Password");
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.tearDown();
+    }
+
+    @Benchmark
+    public HelloWorldModel helloWorld() {
+        return resolver.getResource(HELLO).adaptTo(HelloWorldModel.class);
+    }
+
+    @Benchmark
+    public PosterModel poster() {
+        return resolver.getResource(POSTER).adaptTo(PosterModel.class);
+    }
+
+    @Benchmark
+    public Register register() {
+        return resolver.getResource(REGISTER).adaptTo(Register.class);
+    }
+}
@@ -0,0 +1,109 @@
+package com.test.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.sling.api.resource.NonExistingResource;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.testing.mock.sling.servlet.MockRequestPathInfo;
+import org.apache.sling.testing.mock.sling.servlet.MockSlingHttpServletRequest;
+import org.apache.sling.testing.mock.sling.servlet.MockSlingHttpServletResponse;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.test.core.filters.NotFoundFilter;
+
+/**
+ * Answers 404 requests with and without the {@link NotFoundFilter}, for a
+ * missing resource and for an existing page with a selector nothing renders.
+ * <p>
+ * The chain stands in for Sling: it sends a 404 error and then, like the
+ * error handling of Sling, resolves the error handler script and writes it. HTL cannot run in the
+ * mock environment, so this is a lower bound for the cost of the script.
+ */
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class NotFoundFilterBenchmark {
+
+    private static final String ERROR_HANDLER = "/apps/sling/servlet/errorhandler/404.html";
+
+    private static final String PAGE = "/content/test/us/en";
+
+    @Param({ "false", "true" })
+    public boolean enabled;
+
+    @Param({ "missing", "selector" })
+    public String request;
+
+    private final BenchmarkAemContext context = new BenchmarkAemContext();
+
+    private final NotFoundFilter filter = new NotFoundFilter();
+
+    private ResourceResolver resolver;
+
+    private final FilterChain chain = (request, response) -> {
+        final HttpServletResponse http = (HttpServletResponse) response;
+        http.sendError(HttpServletResponse.SC_NOT_FOUND);
+        http.setContentType("text/html");
+        final Resource script = resolver.getResource(ERROR_HANDLER);
+        try (InputStream template = script.adaptTo(InputStream.class)) {
+            IOUtils.copy(template, http.getOutputStream());
+        }
+    };
+
+    @Setup
+    public void setUp() {
+        context.setUp();
+        resolver = context.resourceResolver();
+        context.create().page(PAGE);
+        context.load().binaryFile(new ByteArrayInputStream(("<html data-sly-use.responseStatus="
+                + "\"apps.sling.servlet.errorhandler.ResponseStatus\">\n<head>\n<title>File not found</title>\n"
+                + "</head>\n<body>\n    <p>A custom errorhandler for 404 responses</p>\n</body>\n</html>\n")
+                .getBytes(StandardCharsets.UTF_8)), ERROR_HANDLER, "text/html");
+        context.registerInjectActivateService(filter, "enabled", enabled);
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.tearDown();
+    }
+
+    @Benchmark
+    public MockSlingHttpServletResponse notFound() throws ServletException, IOException {
+        final MockSlingHttpServletRequest request = new MockSlingHttpServletRequest(resolver,
+                context.bundleContext());
+        final MockRequestPathInfo pathInfo = (MockRequestPathInfo) request.getRequestPathInfo();
+        if ("missing".equals(this.request)) {
+            request.setResource(new NonExistingResource(resolver, "/wp-login.php"));
+            pathInfo.setResourcePath("/wp-login.php");
+        } else {
+            request.setResource(resolver.getResource(PAGE));
+            pathInfo.setResourcePath(PAGE);
+            pathInfo.setSelectorString("unknown");
+            pathInfo.setExtension("html");
+        }
+        final MockSlingHttpServletResponse response = new MockSlingHttpServletResponse();
+        filter.doFilter(request, response, chain);
+        return response;
+    }
+}
@@ -0,0 +1,102 @@
+package com.test.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.inject.Inject;
+
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.models.annotations.Model;
+import org.apache.sling.models.annotations.Optional;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.test.core.models.PosterModel;
+
+/**
+ * Compares the adaptation of {@link PosterModel}, which fills its
+ * fields through a cached {@link com.test.core.models.projection.ValueMapProjection},
+ * with the former field-by-field {@code @Inject @Optional} injection.
+ */
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PosterModelBenchmark {
+
+    /**
+     * PosterModel as it was before the projection: six optional injected
+     * properties plus an optional injected child resource.
+     */
+    @Model(adaptables = Resource.class)
+    public static class InjectedPosterModel {
+        @Inject @Optional
+        private String fileReference;
+        @Inject @Optional
+        private String alt;
+        @Inject @Optional
+        private String height;
+        @Inject @Optional
+        private String occupation;
+        @Inject @Optional
+        private String description;
+        @Inject @Optional
+        public Resource occupations;
+
+        public String getFileReference() {
+            return fileReference;
+        }
+    }
+
+    private static final String POSTER = "/content/test/poster";
+
+    private final BenchmarkAemContext context = new BenchmarkAemContext();
+
+    private ResourceResolver resolver;
+
+    @Setup
+    public void setUp() {
+        context.setUp();
+        context.addModelsForClasses(InjectedPosterModel.class);
+        resolver = context.resourceResolver();
+        context.create().resource(POSTER,
+                "fileReference", "/content/dam/test/asset.jpg",
+                "alt", "Poster",
+                "height", "100",
+                "width", "200",
+                "occupation", "Engineer",
+                "description", "Description");
+        context.create().resource(POSTER + "/occupations");
+        if (injected() == null || projected() == null) {
+            throw new IllegalStateException("Poster models are not registered");
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.tearDown();
+    }
+
+    /*
+     * Resources cache their adaptations, so every invocation resolves a fresh
+     * resource just like every request does.
+     */
+
+    @Benchmark
+    public InjectedPosterModel injected() {
+        return resolver.getResource(POSTER).adaptTo(InjectedPosterModel.class);
+    }
+
+    @Benchmark
+    public PosterModel projected() {
+        return resolver.getResource(POSTER).adaptTo(PosterModel.class);
+    }
+}
@@ -0,0 +1,101 @@
+package com.test.benchmarks;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.script.Bindings;
+import javax.script.Compilable;
+import javax.script.CompiledScript;
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineManager;
+import javax.script.ScriptException;
+
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.scripting.SlingBindings;
+import org.apache.sling.testing.mock.sling.servlet.MockSlingHttpServletRequest;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.day.cq.wcm.api.Page;
+import com.test.core.models.RegistrationModel;
+
+/**
+ * Compares the short title of the registration component computed by
+ * {@link RegistrationModel} with the former {@code logic.js} Use-API script.
+ * <p>
+ * The script is compiled once and evaluated with fresh bindings per render,
+ * as the JavaScript Use-API does. It runs on the JDK's JavaScript engine,
+ * which stands in for the Rhino engine of the publish tier and requires
+ * Java 8 to 14.
+ */
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RegistrationModelBenchmark {
+
+    /** The removed ui.apps registration/logic.js. */
+    private static final String LOGIC_JS = "use(function () {\n"
+            + "    return {\n"
+            + "        title: currentPage.getTitle().substring(0, 2) + \"...\"\n"
+            + "    };\n"
+            + "});\n";
+
+    /** Minimal stand-in for the Use-API's {@code use} function. */
+    private static final String USE_API = "var use = function (init) { return init(); };\n";
+
+    private final BenchmarkAemContext context = new BenchmarkAemContext();
+
+    private ResourceResolver resolver;
+
+    private Page page;
+
+    private ScriptEngine engine;
+
+    private CompiledScript logic;
+
+    @Setup
+    public void setUp() throws ScriptException {
+        context.setUp();
+        resolver = context.resourceResolver();
+        page = context.create().page("/content/test/us/en/register", "/conf/test/settings/wcm/templates/page",
+                "Registration");
+        engine = new ScriptEngineManager().getEngineByName("javascript");
+        if (engine == null) {
+            throw new IllegalStateException("No JavaScript engine available, run the benchmark on Java 8 to 14");
+        }
+        logic = ((Compilable) engine).compile(USE_API + LOGIC_JS);
+        if (!javaScript().equals(model())) {
+            throw new IllegalStateException("Script and model disagree: " + javaScript() + ", " + model());
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.tearDown();
+    }
+
+    @Benchmark
+    public Object javaScript() throws ScriptException {
+        final Bindings bindings = engine.createBindings();
+        bindings.put("currentPage", page);
+        return ((Map<?, ?>) logic.eval(bindings)).get("title");
+    }
+
+    @Benchmark
+    public String model() {
+        final MockSlingHttpServletRequest request = new MockSlingHttpServletRequest(resolver, context.bundleContext());
+        final SlingBindings bindings = new SlingBindings();
+        bindings.put("currentPage", page);
+        request.setAttribute(SlingBindings.class.getName(), bindings);
+        return request.adaptTo(RegistrationModel.class).getTitle();
+    }
+}
@@ -0,0 +1,97 @@
+package com.test.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.test.core.cache.RenderCacheStore;
+import com.test.core.cache.RenderCacheStoreType;
+import com.test.core.cache.RenderKey;
+
+/**
+ * Compares the heap and off-heap render cache stores filled to their
+ * capacity with fragments of 1 to 16 KB, reading entries and replacing
+ * entries under eviction, like the
+ * {@link com.test.core.cache.ComponentRenderCache} does with its output. The GC profiler of
+ * the {@link BenchmarkRunner} shows the collection time each store causes.
+ * <p>
+ * The forked JVM gets 6 GB of heap and of direct memory so that the 4 GB
+ * configuration fits either store; smaller machines can run it with e.g.
+ * {@code -p sizeMb=256 -jvmArgs "-Xmx1g -XX:MaxDirectMemorySize=1g"}.
+ */
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "-Xms6g", "-Xmx6g", "-XX:MaxDirectMemorySize=6g" })
+@Threads(4)
+public class RenderCacheStoreBenchmark {
+
+    private static final int MIN_FRAGMENT = 1024;
+
+    private static final int MAX_FRAGMENT = 16 * 1024;
+
+    @Param({ "HEAP", "OFF_HEAP" })
+    public RenderCacheStoreType store;
+
+    @Param({ "1024", "4096" })
+    public int sizeMb;
+
+    private RenderCacheStore cache;
+
+    private RenderKey[] keys;
+
+    private String[] fragments;
+
+    @Setup
+    public void setUp() {
+        final long maxBytes = sizeMb * 1024L * 1024L;
+        cache = store.create(maxBytes);
+        final Random random = new Random(42);
+        fragments = new String[64];
+        for (int i = 0; i < fragments.length; i++) {
+            final char[] chars = new char[MIN_FRAGMENT + random.nextInt(MAX_FRAGMENT - MIN_FRAGMENT)];
+            for (int j = 0; j < chars.length; j++) {
+                chars[j] = (char) ('a' + random.nextInt(26));
+            }
+            fragments[i] = new String(chars);
+        }
+        final int count = (int) (maxBytes / ((MIN_FRAGMENT + MAX_FRAGMENT) / 2));
+        keys = new RenderKey[count];
+        for (int i = 0; i < count; i++) {
+            keys[i] = new RenderKey("/content/test/en/page-" + i + "/jcr:content/root/registration",
+                    "test/components/registration", null, "html");
+            cache.put(keys[i], render(fragments[i % fragments.length]));
+        }
+    }
+
+    @Benchmark
+    public String get() {
+        return cache.get(keys[ThreadLocalRandom.current().nextInt(keys.length)]);
+    }
+
+    @Benchmark
+    public void put() {
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+        cache.put(keys[random.nextInt(keys.length)], render(fragments[random.nextInt(fragments.length)]));
+    }
+
+    /**
+     * Copies the characters of a fragment, as each render produces a new
+     * string that the heap store then keeps.
+     */
+    private static String render(final String fragment) {
+        return new String(fragment.toCharArray());
+    }
+}
@@ -0,0 +1,73 @@
+package com.test.benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.ServletException;
+
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.testing.mock.sling.servlet.MockRequestPathInfo;
+import org.apache.sling.testing.mock.sling.servlet.MockSlingHttpServletRequest;
+import org.apache.sling.testing.mock.sling.servlet.MockSlingHttpServletResponse;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.test.core.servlets.SimpleServlet;
+
+/**
+ * Serves a page title through {@link SimpleServlet}, with a fresh request and
+ * response per invocation.
+ */
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SimpleServletBenchmark {
+
+    static final String PAGE_CONTENT = "/content/test/us/en/jcr:content";
+
+    private final BenchmarkAemContext context = new BenchmarkAemContext();
+
+    private final SimpleServlet servlet = new SimpleServlet();
+
+    private ResourceResolver resolver;
+
+    @Setup
+    public void setUp() {
+        context.setUp();
+        resolver = context.resourceResolver();
+        context.create().page("/content/test/us/en", "/conf/test/settings/wcm/templates/page-content",
+                "jcr:title", "English");
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.tearDown();
+    }
+
+    @Benchmark
+    public MockSlingHttpServletResponse doGet() throws ServletException, IOException {
+        MockSlingHttpServletRequest request = newRequest(context, resolver);
+        MockSlingHttpServletResponse response = new MockSlingHttpServletResponse();
+        servlet.service(request, response);
+        return response;
+    }
+
+    static MockSlingHttpServletRequest newRequest(final BenchmarkAemContext context,
+                                                  final ResourceResolver resolver) {
+        MockSlingHttpServletRequest request = new MockSlingHttpServletRequest(resolver, context.bundleContext());
+        request.setResource(resolver.getResource(PAGE_CONTENT));
+        MockRequestPathInfo pathInfo = (MockRequestPathInfo) request.getRequestPathInfo();
+        pathInfo.setResourcePath(PAGE_CONTENT);
+        pathInfo.setExtension("txt");
+        return request;
+    }
+}
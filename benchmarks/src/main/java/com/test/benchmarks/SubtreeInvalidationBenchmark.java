@@ -0,0 +1,81 @@
+package com.test.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.test.core.listeners.ChangedPathIndex;
+import com.test.core.models.HelloWorldMessageCache;
+
+/**
+ * Replays a synthetic activation burst of 500 pages with 100 nodes each into
+ * a {@link HelloWorldMessageCache}, once with one invalidation per changed
+ * node and once collapsed into subtree roots by a {@link ChangedPathIndex}.
+ * The cache only holds messages outside the burst, so every invocation scans
+ * the same entries.
+ */
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SubtreeInvalidationBenchmark {
+
+    private static final int PAGES = 500;
+
+    private static final int NODES_PER_PAGE = 100;
+
+    @Param({ "2000" })
+    public int cachedMessages;
+
+    @Param({ "256" })
+    public int maxChildren;
+
+    private final List<String> burst = new ArrayList<>(PAGES * NODES_PER_PAGE);
+
+    private final HelloWorldMessageCache cache = new HelloWorldMessageCache();
+
+    @Setup
+    public void setUp() {
+        for (int page = 0; page < PAGES; page++) {
+            final String pagePath = "/content/test/en/products/product-" + page;
+            burst.add(pagePath);
+            for (int node = 1; node < NODES_PER_PAGE; node++) {
+                burst.add(pagePath + "/jcr:content/root/container/item_" + node);
+            }
+        }
+        for (int i = 0; i < cachedMessages; i++) {
+            cache.getMessage("/content/test/fr/page-" + i + "/jcr:content/helloworld",
+                    "test/components/helloworld", () -> "Hello World!");
+        }
+    }
+
+    @Benchmark
+    public void perNodeInvalidation() {
+        for (final String path : burst) {
+            cache.invalidateSubtrees(Collections.singletonList(path));
+        }
+    }
+
+    @Benchmark
+    public List<String> coalescedInvalidation() {
+        final ChangedPathIndex index = new ChangedPathIndex(10000, maxChildren);
+        for (final String path : burst) {
+            index.add(path);
+        }
+        final List<String> roots = index.drain();
+        cache.invalidateSubtrees(roots);
+        return roots;
+    }
+}
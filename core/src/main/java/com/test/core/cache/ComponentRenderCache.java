@@ -0,0 +1,158 @@
+package com.test.core.cache;
+
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Modified;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+
+import com.test.core.listeners.SubtreeInvalidationListener;
+
+/**
+ * Holds the rendered output of component includes for the
+ * {@link com.test.core.filters.ComponentRenderCacheFilter}. The output is kept
+ * in a {@link RenderCacheStore} of the configured type and size: as strings
+ * on the heap, or UTF-8 encoded off the heap.
+ * <p>
+ * Output is dropped when a resource at or above the rendered resource
+ * changes. Any change below {@code /apps} or {@code /libs} may alter the
+ * scripts and drops everything. Every invalidation starts a new generation,
+ * and output rendered in an earlier generation is not stored, so a render
+ * that races an invalidation cannot leave stale output behind.
+ */
+@Designate(ocd = ComponentRenderCache.Config.class)
+@Component(service = { ComponentRenderCache.class, SubtreeInvalidationListener.class })
+public class ComponentRenderCache implements SubtreeInvalidationListener {
+
+    @ObjectClassDefinition(name = "Component render cache",
+                           description = "Rendered output of cacheable component includes")
+    public static @interface Config {
+
+        @AttributeDefinition(name = "Store",
+                             description = "Where the output is kept. OFF_HEAP needs a direct memory limit "
+                                     + "(-XX:MaxDirectMemorySize) larger than the maximum size")
+        RenderCacheStoreType store_type() default RenderCacheStoreType.HEAP;
+
+        @AttributeDefinition(name = "Maximum size",
+                             description = "Approximate size in megabytes of the cached output")
+        int max_size_mb() default 64;
+    }
+
+    private volatile RenderCacheStoreType storeType = RenderCacheStoreType.HEAP;
+
+    private volatile RenderCacheStore outputs = newStore(storeType, 64);
+
+    private final AtomicLong generation = new AtomicLong();
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    @Activate
+    @Modified
+    protected void activate(final Config config) {
+        storeType = config.store_type();
+        outputs = newStore(storeType, config.max_size_mb());
+    }
+
+    /**
+     * Returns the cached output, or {@code null} on a miss.
+     */
+    public String get(final RenderKey key) {
+        final String output = outputs.get(key);
+        if (output == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return output;
+    }
+
+    /**
+     * Returns the current generation, to be passed to
+     * {@link #put(RenderKey, String, long)} with the output rendered after.
+     */
+    public long getGeneration() {
+        return generation.get();
+    }
+
+    /**
+     * Caches output rendered in the given generation, unless an invalidation
+     * happened since.
+     *
+     * @return whether the output was cached
+     */
+    public boolean put(final RenderKey key, final String output, final long renderGeneration) {
+        if (generation.get() != renderGeneration) {
+            return false;
+        }
+        outputs.put(key, output);
+        if (generation.get() != renderGeneration) {
+            // an invalidation ran concurrently and may have missed this entry
+            outputs.removeIf(key::equals);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Drops all cached output.
+     */
+    public void clear() {
+        generation.incrementAndGet();
+        outputs.clear();
+    }
+
+    @Override
+    public void invalidateSubtrees(final Collection<String> roots) {
+        generation.incrementAndGet();
+        for (final String root : roots) {
+            if (root.equals("/") || root.startsWith("/apps/") || root.startsWith("/libs/")
+                    || root.equals("/apps") || root.equals("/libs")) {
+                outputs.clear();
+                return;
+            }
+        }
+        outputs.removeIf(key -> {
+            for (final String root : roots) {
+                if (key.isAtOrBelow(root)) {
+                    return true;
+                }
+            }
+            return false;
+        });
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    public long getEvictionCount() {
+        return outputs.evictionCount();
+    }
+
+    public int size() {
+        return outputs.size();
+    }
+
+    /** Approximate number of bytes taken by the cached output. */
+    public long getWeight() {
+        return outputs.weight();
+    }
+
+    public RenderCacheStoreType getStoreType() {
+        return storeType;
+    }
+
+    private static RenderCacheStore newStore(final RenderCacheStoreType type, final int maxSizeMb) {
+        return type.create(Math.max(1, maxSizeMb) * 1024L * 1024L);
+    }
+}
@@ -0,0 +1,31 @@
+package com.test.core.cache;
+
+import com.adobe.granite.jmx.annotation.Description;
+
+/**
+ * JMX view of the {@link ComponentRenderCache}.
+ */
+@Description("Rendered output of cacheable component includes")
+public interface ComponentRenderCacheMBean {
+
+    @Description("Store the output is kept in, HEAP or OFF_HEAP")
+    String getStoreType();
+
+    @Description("Includes served from the cache")
+    long getHitCount();
+
+    @Description("Includes rendered because their output was not cached")
+    long getMissCount();
+
+    @Description("Entries evicted to make room for others")
+    long getEvictionCount();
+
+    @Description("Number of cached entries")
+    int getSize();
+
+    @Description("Approximate number of bytes taken by the cached output")
+    long getWeight();
+
+    @Description("Drops all cached output")
+    void clear();
+}
@@ -0,0 +1,62 @@
+package com.test.core.cache;
+
+import javax.management.DynamicMBean;
+import javax.management.NotCompliantMBeanException;
+
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Reference;
+
+import com.adobe.granite.jmx.annotation.AnnotatedStandardMBean;
+
+/**
+ * Registers the counters of the {@link ComponentRenderCache} with the JMX
+ * whiteboard.
+ */
+@Component(service = DynamicMBean.class,
+           property = {
+                   "jmx.objectname=com.test.core:type=ComponentRenderCache"
+           })
+public class ComponentRenderCacheMBeanImpl extends AnnotatedStandardMBean implements ComponentRenderCacheMBean {
+
+    @Reference
+    private ComponentRenderCache cache;
+
+    public ComponentRenderCacheMBeanImpl() throws NotCompliantMBeanException {
+        super(ComponentRenderCacheMBean.class);
+    }
+
+    @Override
+    public String getStoreType() {
+        return cache.getStoreType().name();
+    }
+
+    @Override
+    public long getHitCount() {
+        return cache.getHitCount();
+    }
+
+    @Override
+    public long getMissCount() {
+        return cache.getMissCount();
+    }
+
+    @Override
+    public long getEvictionCount() {
+        return cache.getEvictionCount();
+    }
+
+    @Override
+    public int getSize() {
+        return cache.size();
+    }
+
+    @Override
+    public long getWeight() {
+        return cache.getWeight();
+    }
+
+    @Override
+    public void clear() {
+        cache.clear();
+    }
+}
@@ -0,0 +1,451 @@
+package com.test.core.cache;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.lang3.StringUtils;
+import org.osgi.framework.BundleContext;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
+import org.osgi.service.component.annotations.Modified;
+import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.component.annotations.ReferenceCardinality;
+import org.osgi.service.component.annotations.ReferencePolicyOption;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.day.cq.commons.jcr.JcrConstants;
+import com.test.core.dispatcher.DispatcherFlushAgent;
+import com.test.core.listeners.SubtreeInvalidationListener;
+
+/**
+ * Holds the rendered markup of experience fragments for the
+ * {@link com.test.core.filters.ExperienceFragmentCacheFilter}, once per
+ * fragment variation instead of once per embedding page.
+ * <p>
+ * Markup is keyed by the configured variation path, the language root of the
+ * embedding page, which the component localizes the variation by, and the
+ * selectors and extension. Each entry remembers the variation that was
+ * actually rendered, and for each rendered variation the pages that embed it
+ * are recorded. A change at, below or above a rendered variation drops its
+ * markup and flushes the embedding pages, and only those, from the dispatcher
+ * through the {@link DispatcherFlushAgent}. Any change below {@code /apps} or
+ * {@code /libs} may alter the scripts and drops all markup.
+ * <p>
+ * The dispatcher keeps the embedding pages across restarts, and with the
+ * {@code ResourceOnly} scope of the {@link DispatcherFlushAgent} no stat file
+ * invalidates them. The embedding pages of each variation are therefore
+ * written to a file shortly after they change and read again on activation,
+ * so pages rendered before a restart are still flushed when their fragments
+ * change. The markup itself is not kept.
+ */
+@Designate(ocd = ExperienceFragmentCache.Config.class)
+@Component(service = { ExperienceFragmentCache.class, SubtreeInvalidationListener.class })
+public class ExperienceFragmentCache implements SubtreeInvalidationListener {
+
+    @ObjectClassDefinition(name = "Experience fragment cache",
+                           description = "Rendered experience fragments and the pages embedding them")
+    public static @interface Config {
+
+        @AttributeDefinition(name = "Maximum size",
+                             description = "Approximate size in megabytes of the cached markup")
+        int max_size_mb() default 16;
+
+        @AttributeDefinition(name = "Flush embedding pages",
+                             description = "Whether the pages embedding a changed fragment are flushed "
+                                     + "from the dispatcher")
+        boolean flush_pages() default true;
+
+        @AttributeDefinition(name = "Pages file",
+                             description = "Path of the file the embedding pages are kept in, in the data area "
+                                     + "of the bundle if empty")
+        String pages_file() default "";
+
+        @AttributeDefinition(name = "Persist delay",
+                             description = "Milliseconds after a change before the pages file is rewritten")
+        long persist_delay_ms() default 5000;
+    }
+
+    private static final String JCR_CONTENT_SEGMENT = "/" + JcrConstants.JCR_CONTENT;
+
+    private static final String DATA_FILE = "experience-fragment-pages.bin";
+
+    private static final int MAGIC = 0x58_46_50_47;
+
+    private static final int VERSION = 1;
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    @Reference(cardinality = ReferenceCardinality.OPTIONAL, policyOption = ReferencePolicyOption.GREEDY)
+    private DispatcherFlushAgent flushAgent;
+
+    private volatile LruCache<Key, Fragment> fragments = newCache(16);
+
+    /** Keys and embedding pages by rendered variation path. */
+    private final Map<String, Dependents> dependents = new ConcurrentHashMap<>();
+
+    private volatile boolean flushPages = true;
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    private final AtomicLong flushedPages = new AtomicLong();
+
+    private final AtomicBoolean persistScheduled = new AtomicBoolean();
+
+    private Path pagesFile;
+
+    private long persistDelayMillis;
+
+    private ScheduledThreadPoolExecutor executor;
+
+    @Activate
+    protected void activate(final Config config, final BundleContext bundleContext) {
+        modified(config);
+        pagesFile = resolvePagesFile(config.pages_file(), bundleContext);
+        persistDelayMillis = Math.max(0, config.persist_delay_ms());
+        executor = new ScheduledThreadPoolExecutor(1, runnable -> {
+            final Thread thread = new Thread(runnable, "ExperienceFragmentCache");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // a pending persist is run by deactivate
+        executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        load();
+    }
+
+    @Modified
+    protected void modified(final Config config) {
+        fragments = newCache(config.max_size_mb());
+        flushPages = config.flush_pages();
+    }
+
+    @Deactivate
+    protected void deactivate() throws InterruptedException {
+        executor.shutdown();
+        if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+            executor.shutdownNow();
+        }
+        if (persistScheduled.get()) {
+            persist();
+        }
+    }
+
+    /**
+     * Returns the cached markup and records the page as embedding its
+     * variation, or returns {@code null} on a miss.
+     */
+    public String get(final Key key, final String pagePath) {
+        final Fragment fragment = fragments.get(key);
+        if (fragment == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        if (dependentsOf(fragment.variationPath).pages.add(pagePath)) {
+            schedulePersist();
+        }
+        return fragment.markup;
+    }
+
+    /**
+     * Caches the markup of the rendered variation and records the page as
+     * embedding it.
+     */
+    public void put(final Key key, final String variationPath, final String pagePath, final String markup) {
+        final Dependents of = dependentsOf(variationPath);
+        of.keys.add(key);
+        if (of.pages.add(pagePath)) {
+            schedulePersist();
+        }
+        fragments.put(key, new Fragment(variationPath, markup));
+    }
+
+    @Override
+    public void invalidateSubtrees(final Collection<String> roots) {
+        for (final String root : roots) {
+            if (root.equals("/") || root.startsWith("/apps/") || root.startsWith("/libs/")
+                    || root.equals("/apps") || root.equals("/libs")) {
+                fragments.clear();
+                return;
+            }
+        }
+        final Set<String> pages = new LinkedHashSet<>();
+        for (final Map.Entry<String, Dependents> entry : dependents.entrySet()) {
+            final String variation = entry.getKey();
+            if (isAffected(variation, roots)) {
+                final Dependents removed = dependents.remove(variation);
+                if (removed != null) {
+                    removed.keys.forEach(fragments::remove);
+                    pages.addAll(removed.pages);
+                }
+            }
+        }
+        // embedding pages that changed are flushed anyway and record their fragments again when rendered
+        boolean changed = !pages.isEmpty();
+        for (final Dependents of : dependents.values()) {
+            changed |= of.pages.removeIf(page -> isChanged(page, roots));
+        }
+        if (changed) {
+            schedulePersist();
+        }
+        if (flushPages && flushAgent != null && !pages.isEmpty()) {
+            final List<String> contents = new ArrayList<>(pages.size());
+            for (final String page : pages) {
+                // a root inside jcr:content invalidates the page alone
+                contents.add(page + JCR_CONTENT_SEGMENT);
+            }
+            flushedPages.addAndGet(contents.size());
+            flushAgent.invalidateSubtrees(contents);
+        }
+    }
+
+    /**
+     * Writes the embedding pages of every variation to the pages file.
+     */
+    void persist() {
+        persistScheduled.set(false);
+        if (pagesFile == null) {
+            return;
+        }
+        try {
+            final Path directory = pagesFile.toAbsolutePath().getParent();
+            Files.createDirectories(directory);
+            final Path temporary = Files.createTempFile(directory, pagesFile.getFileName().toString(), ".tmp");
+            try {
+                try (OutputStream stream = Files.newOutputStream(temporary);
+                     DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream, 65536))) {
+                    final List<Map.Entry<String, Dependents>> entries = new ArrayList<>(dependents.entrySet());
+                    out.writeInt(MAGIC);
+                    out.writeInt(VERSION);
+                    out.writeInt(entries.size());
+                    for (final Map.Entry<String, Dependents> entry : entries) {
+                        final List<String> pages = new ArrayList<>(entry.getValue().pages);
+                        out.writeUTF(entry.getKey());
+                        out.writeInt(pages.size());
+                        for (final String page : pages) {
+                            out.writeUTF(page);
+                        }
+                    }
+                }
+                Files.move(temporary, pagesFile, StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(temporary);
+            }
+        } catch (IOException e) {
+            logger.error("Cannot write the experience fragment pages to {}", pagesFile, e);
+        }
+    }
+
+    /**
+     * Returns the pages recorded as embedding the rendered variation.
+     */
+    public Set<String> getEmbeddingPages(final String variationPath) {
+        final Dependents of = dependents.get(variationPath);
+        return of != null ? new LinkedHashSet<>(of.pages) : new LinkedHashSet<>();
+    }
+
+    /**
+     * Drops all cached markup.
+     */
+    public void clear() {
+        fragments.clear();
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /** Embedding pages flushed because their fragments changed. */
+    public long getFlushedPageCount() {
+        return flushedPages.get();
+    }
+
+    public int size() {
+        return fragments.size();
+    }
+
+    /**
+     * Reads the embedding pages recorded before the last deactivation. A
+     * missing or unreadable file leaves the pages unknown.
+     */
+    private void load() {
+        if (pagesFile == null || !Files.isRegularFile(pagesFile)) {
+            return;
+        }
+        try (InputStream stream = Files.newInputStream(pagesFile);
+             DataInputStream in = new DataInputStream(new BufferedInputStream(stream, 65536))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                logger.warn("Ignoring the experience fragment pages file {} of another format", pagesFile);
+                return;
+            }
+            final int variations = in.readInt();
+            for (int i = 0; i < variations; i++) {
+                final Dependents of = dependentsOf(in.readUTF());
+                final int pages = in.readInt();
+                for (int j = 0; j < pages; j++) {
+                    of.pages.add(in.readUTF());
+                }
+            }
+            logger.info("Loaded the embedding pages of {} experience fragment variations", variations);
+        } catch (IOException e) {
+            logger.warn("Cannot read the experience fragment pages from {}", pagesFile, e);
+        }
+    }
+
+    private void schedulePersist() {
+        if (pagesFile != null && !executor.isShutdown() && persistScheduled.compareAndSet(false, true)) {
+            executor.schedule(this::persist, persistDelayMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private static Path resolvePagesFile(final String configured, final BundleContext bundleContext) {
+        if (StringUtils.isNotBlank(configured)) {
+            return Paths.get(configured);
+        }
+        final File dataFile = bundleContext.getDataFile(DATA_FILE);
+        return dataFile != null ? dataFile.toPath() : null;
+    }
+
+    private Dependents dependentsOf(final String variationPath) {
+        final Dependents of = dependents.get(variationPath);
+        return of != null ? of : dependents.computeIfAbsent(variationPath, path -> new Dependents());
+    }
+
+    private static boolean isAffected(final String variation, final Collection<String> roots) {
+        for (final String root : roots) {
+            if (isAtOrBelow(variation, root) || isAtOrBelow(root, variation)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns whether the page itself changed, not only a child page.
+     */
+    private static boolean isChanged(final String page, final Collection<String> roots) {
+        for (final String root : roots) {
+            if (isAtOrBelow(page, root) || isAtOrBelow(root, page + JCR_CONTENT_SEGMENT)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isAtOrBelow(final String path, final String root) {
+        return path.equals(root) || path.startsWith(root.endsWith("/") ? root : root + "/");
+    }
+
+    private static LruCache<Key, Fragment> newCache(final int maxSizeMb) {
+        return new LruCache<>(Math.max(1, maxSizeMb) * 1024L * 1024L, fragment -> 2L * fragment.markup.length());
+    }
+
+    /**
+     * Identifies the markup of an experience fragment include: the configured
+     * variation, the language root of the embedding page and the selectors
+     * and extension of the include.
+     */
+    public static final class Key {
+
+        private final String variationPath;
+
+        private final String languageRoot;
+
+        private final String selectors;
+
+        private final String extension;
+
+        private final int hash;
+
+        public Key(final String variationPath, final String languageRoot, final String selectors,
+                final String extension) {
+            this.variationPath = variationPath;
+            this.languageRoot = languageRoot;
+            this.selectors = selectors;
+            this.extension = extension;
+            this.hash = Objects.hash(variationPath, languageRoot, selectors, extension);
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            final Key other = (Key) obj;
+            return hash == other.hash && variationPath.equals(other.variationPath)
+                    && Objects.equals(languageRoot, other.languageRoot) && Objects.equals(selectors, other.selectors)
+                    && Objects.equals(extension, other.extension);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public String toString() {
+            return variationPath + "[" + languageRoot + "]." + selectors + "." + extension;
+        }
+    }
+
+    /**
+     * Markup of a fragment and the variation it was rendered from.
+     */
+    private static final class Fragment {
+
+        private final String variationPath;
+
+        private final String markup;
+
+        Fragment(final String variationPath, final String markup) {
+            this.variationPath = variationPath;
+            this.markup = markup;
+        }
+    }
+
+    /**
+     * Cache keys rendered from a variation and the pages embedding it.
+     */
+    private static final class Dependents {
+
+        private final Set<Key> keys = ConcurrentHashMap.newKeySet();
+
+        private final Set<String> pages = ConcurrentHashMap.newKeySet();
+    }
+}
@@ -0,0 +1,55 @@
+package com.test.core.cache;
+
+import java.util.function.Predicate;
+
+/**
+ * Stores rendered output as the strings it was rendered to, in a
+ * weight-bounded {@link LruCache}, so neither storing nor serving it copies
+ * or encodes anything. A string is weighed at two bytes per character.
+ */
+public final class HeapRenderCacheStore implements RenderCacheStore {
+
+    /** Estimated heap overhead of an entry besides its bytes. */
+    static final int ENTRY_OVERHEAD = 128;
+
+    private final LruCache<RenderKey, String> outputs;
+
+    public HeapRenderCacheStore(final long maxBytes) {
+        outputs = new LruCache<>(maxBytes, output -> ENTRY_OVERHEAD + 2L * output.length());
+    }
+
+    @Override
+    public String get(final RenderKey key) {
+        return outputs.get(key);
+    }
+
+    @Override
+    public void put(final RenderKey key, final String output) {
+        outputs.put(key, output);
+    }
+
+    @Override
+    public int removeIf(final Predicate<? super RenderKey> predicate) {
+        return outputs.removeIf(predicate);
+    }
+
+    @Override
+    public void clear() {
+        outputs.clear();
+    }
+
+    @Override
+    public int size() {
+        return outputs.size();
+    }
+
+    @Override
+    public long weight() {
+        return outputs.weight();
+    }
+
+    @Override
+    public long evictionCount() {
+        return outputs.evictionCount();
+    }
+}
@@ -0,0 +1,213 @@
+package com.test.core.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.ToLongFunction;
+
+/**
+ * Bounded, thread-safe cache with least-recently-used eviction. Entries are
+ * spread over independently locked segments, so concurrent readers of
+ * different keys rarely contend. Eviction is LRU per segment, which
+ * approximates global LRU well once the cache holds more than a few entries
+ * per segment.
+ * <p>
+ * The cache is either bounded by its number of entries or, when created with
+ * a weigher, by the total weight of its values, e.g. their size in bytes.
+ *
+ * @param <K> the key type
+ * @param <V> the value type
+ */
+public final class LruCache<K, V> {
+
+    private static final int MAX_SEGMENTS = 16;
+
+    private final Segment<K, V>[] segments;
+
+    private final int segmentMask;
+
+    /**
+     * Creates a cache holding at most {@code maxEntries} entries.
+     */
+    public LruCache(final int maxEntries) {
+        this(maxEntries, value -> 1);
+    }
+
+    /**
+     * Creates a cache whose values weigh at most {@code maxWeight} in total.
+     * A value heavier than the share of a single segment is not retained.
+     */
+    @SuppressWarnings("unchecked")
+    public LruCache(final long maxWeight, final ToLongFunction<? super V> weigher) {
+        if (maxWeight <= 0) {
+            throw new IllegalArgumentException("maxWeight must be positive: " + maxWeight);
+        }
+        int count = 1;
+        while (count < MAX_SEGMENTS && count * 8L <= maxWeight) {
+            count <<= 1;
+        }
+        segments = new Segment[count];
+        final long perSegment = (maxWeight + count - 1) / count;
+        for (int i = 0; i < count; i++) {
+            segments[i] = new Segment<>(perSegment, weigher);
+        }
+        segmentMask = count - 1;
+    }
+
+    /**
+     * Returns the cached value, or {@code null} if there is none.
+     */
+    public V get(final K key) {
+        final Segment<K, V> segment = segmentFor(key);
+        synchronized (segment) {
+            return segment.map.get(key);
+        }
+    }
+
+    /**
+     * Returns the cached value, computing and caching it on a miss. The value
+     * is computed outside of any lock, so concurrent misses of the same key
+     * may compute it more than once.
+     */
+    public V get(final K key, final Function<? super K, ? extends V> loader) {
+        final V cached = get(key);
+        if (cached != null) {
+            return cached;
+        }
+        final V loaded = loader.apply(key);
+        if (loaded != null) {
+            put(key, loaded);
+        }
+        return loaded;
+    }
+
+    public void put(final K key, final V value) {
+        final Segment<K, V> segment = segmentFor(key);
+        synchronized (segment) {
+            segment.put(key, value);
+        }
+    }
+
+    public V remove(final K key) {
+        final Segment<K, V> segment = segmentFor(key);
+        synchronized (segment) {
+            return segment.remove(key);
+        }
+    }
+
+    /**
+     * Removes all entries whose key matches the predicate.
+     *
+     * @return the number of removed entries
+     */
+    public int removeIf(final Predicate<? super K> predicate) {
+        int removed = 0;
+        for (final Segment<K, V> segment : segments) {
+            synchronized (segment) {
+                final Iterator<Map.Entry<K, V>> entries = segment.map.entrySet().iterator();
+                while (entries.hasNext()) {
+                    final Map.Entry<K, V> entry = entries.next();
+                    if (predicate.test(entry.getKey())) {
+                        segment.weight -= segment.weigher.applyAsLong(entry.getValue());
+                        entries.remove();
+                        removed++;
+                    }
+                }
+            }
+        }
+        return removed;
+    }
+
+    public void clear() {
+        for (final Segment<K, V> segment : segments) {
+            synchronized (segment) {
+                segment.map.clear();
+                segment.weight = 0;
+            }
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (final Segment<K, V> segment : segments) {
+            synchronized (segment) {
+                size += segment.map.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Returns the total weight of the cached values, their number if the
+     * cache was created without a weigher.
+     */
+    public long weight() {
+        long weight = 0;
+        for (final Segment<K, V> segment : segments) {
+            synchronized (segment) {
+                weight += segment.weight;
+            }
+        }
+        return weight;
+    }
+
+    /**
+     * Returns the number of entries evicted to stay within the bound.
+     */
+    public long evictionCount() {
+        long evictions = 0;
+        for (final Segment<K, V> segment : segments) {
+            synchronized (segment) {
+                evictions += segment.evictions;
+            }
+        }
+        return evictions;
+    }
+
+    private Segment<K, V> segmentFor(final K key) {
+        final int hash = key.hashCode();
+        return segments[(hash ^ (hash >>> 16)) & segmentMask];
+    }
+
+    private static final class Segment<K, V> {
+
+        private final LinkedHashMap<K, V> map = new LinkedHashMap<>(16, 0.75f, true);
+
+        private final long capacity;
+
+        private final ToLongFunction<? super V> weigher;
+
+        private long weight;
+
+        private long evictions;
+
+        Segment(final long capacity, final ToLongFunction<? super V> weigher) {
+            this.capacity = capacity;
+            this.weigher = weigher;
+        }
+
+        void put(final K key, final V value) {
+            final V previous = map.put(key, value);
+            if (previous != null) {
+                weight -= weigher.applyAsLong(previous);
+            }
+            weight += weigher.applyAsLong(value);
+            final Iterator<V> eldest = map.values().iterator();
+            while (weight > capacity && eldest.hasNext()) {
+                weight -= weigher.applyAsLong(eldest.next());
+                eldest.remove();
+                evictions++;
+            }
+        }
+
+        V remove(final K key) {
+            final V removed = map.remove(key);
+            if (removed != null) {
+                weight -= weigher.applyAsLong(removed);
+            }
+            return removed;
+        }
+    }
+}
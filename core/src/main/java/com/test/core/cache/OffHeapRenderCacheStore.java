@@ -0,0 +1,422 @@
+package com.test.core.cache;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntPredicate;
+import java.util.function.Predicate;
+
+/**
+ * Stores rendered output outside of the Java heap, so that a large cache
+ * neither grows the old generation nor adds to the work of the garbage
+ * collector. Only the keys and a small slot record per entry stay on the
+ * heap. The output is stored UTF-8 encoded and decoded again on every read.
+ * <p>
+ * Memory is taken from direct buffers in pages of {@value #PAGE_SIZE} bytes
+ * as the store fills up, and is only released when the store is discarded.
+ * Like in a slab allocator, every page is cut into chunks of a single size
+ * class, the classes growing by a quarter from {@value #MIN_CHUNK_SIZE} bytes
+ * up to a whole page, and an entry takes one chunk of the smallest class it
+ * fits in. Output whose encoding is larger than a page is not stored.
+ * <p>
+ * When a class has no free chunk and no page is left, its least recently used
+ * entry is evicted. A class without any entries takes a page over from
+ * another class instead, evicting the entries in that page. Entries are spread
+ * over independently locked segments with their own pages, as in
+ * {@link LruCache}.
+ * <p>
+ * The direct memory limit of the JVM, {@code -XX:MaxDirectMemorySize}, has to
+ * leave room for the configured size.
+ */
+public final class OffHeapRenderCacheStore implements RenderCacheStore {
+
+    static final int PAGE_SIZE = 1 << 20;
+
+    static final int MIN_CHUNK_SIZE = 256;
+
+    private static final int MAX_SEGMENTS = 16;
+
+    /** Pages a segment should at least have, so every size class can get some. */
+    private static final int MIN_SEGMENT_PAGES = 64;
+
+    /** Pages of a segment are addressed with 16 bits, as are their chunks. */
+    private static final int MAX_SEGMENT_PAGES = 1 << 16;
+
+    private static final int[] CHUNK_SIZES = chunkSizes();
+
+    private final Segment[] segments;
+
+    private final int segmentMask;
+
+    /**
+     * Creates a store of at most {@code maxBytes} bytes of direct memory,
+     * rounded down to whole pages.
+     */
+    public OffHeapRenderCacheStore(final long maxBytes) {
+        if (maxBytes < PAGE_SIZE) {
+            throw new IllegalArgumentException("maxBytes must be at least one page: " + maxBytes);
+        }
+        final long pages = maxBytes / PAGE_SIZE;
+        int count = 1;
+        while (count < MAX_SEGMENTS && count * 2L * MIN_SEGMENT_PAGES <= pages) {
+            count <<= 1;
+        }
+        if (pages / count > MAX_SEGMENT_PAGES) {
+            throw new IllegalArgumentException("maxBytes is too large: " + maxBytes);
+        }
+        segments = new Segment[count];
+        for (int i = 0; i < count; i++) {
+            segments[i] = new Segment((int) (pages / count));
+        }
+        segmentMask = count - 1;
+    }
+
+    @Override
+    public String get(final RenderKey key) {
+        final Segment segment = segmentFor(key);
+        final byte[] output;
+        synchronized (segment) {
+            output = segment.get(key);
+        }
+        return output != null ? new String(output, StandardCharsets.UTF_8) : null;
+    }
+
+    @Override
+    public void put(final RenderKey key, final String output) {
+        final byte[] encoded = output.getBytes(StandardCharsets.UTF_8);
+        final Segment segment = segmentFor(key);
+        synchronized (segment) {
+            segment.put(key, encoded);
+        }
+    }
+
+    @Override
+    public int removeIf(final Predicate<? super RenderKey> predicate) {
+        int removed = 0;
+        for (final Segment segment : segments) {
+            synchronized (segment) {
+                removed += segment.removeIf(predicate);
+            }
+        }
+        return removed;
+    }
+
+    @Override
+    public void clear() {
+        for (final Segment segment : segments) {
+            synchronized (segment) {
+                segment.clear();
+            }
+        }
+    }
+
+    @Override
+    public int size() {
+        int size = 0;
+        for (final Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.index.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Returns the number of bytes of the encoded output. The direct memory in
+     * use is larger, as chunks are only partly filled and pages are kept once
+     * allocated.
+     */
+    @Override
+    public long weight() {
+        long weight = 0;
+        for (final Segment segment : segments) {
+            synchronized (segment) {
+                weight += segment.weight;
+            }
+        }
+        return weight;
+    }
+
+    @Override
+    public long evictionCount() {
+        long evictions = 0;
+        for (final Segment segment : segments) {
+            synchronized (segment) {
+                evictions += segment.evictions;
+            }
+        }
+        return evictions;
+    }
+
+    /**
+     * Returns the number of bytes of direct memory allocated so far.
+     */
+    public long allocatedBytes() {
+        long allocated = 0;
+        for (final Segment segment : segments) {
+            synchronized (segment) {
+                allocated += (long) segment.allocatedPages * PAGE_SIZE;
+            }
+        }
+        return allocated;
+    }
+
+    private Segment segmentFor(final RenderKey key) {
+        final int hash = key.hashCode();
+        return segments[(hash ^ (hash >>> 16)) & segmentMask];
+    }
+
+    private static int[] chunkSizes() {
+        final List<Integer> sizes = new ArrayList<>();
+        for (int size = MIN_CHUNK_SIZE; size <= PAGE_SIZE / 2; size = (size + size / 4 + 7) & ~7) {
+            sizes.add(size);
+        }
+        sizes.add(PAGE_SIZE);
+        return sizes.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    private static int sizeClassFor(final int length) {
+        final int found = Arrays.binarySearch(CHUNK_SIZES, length);
+        return found >= 0 ? found : -found - 1;
+    }
+
+    private static final class Segment {
+
+        private final ByteBuffer[] pages;
+
+        private final int[] pageClasses;
+
+        /** Keys of the entries in each chunk of a page, by page. */
+        private final RenderKey[][] owners;
+
+        private final SizeClass[] classes = new SizeClass[CHUNK_SIZES.length];
+
+        private final Map<RenderKey, Slot> index = new HashMap<>();
+
+        /** Allocated pages that are not assigned to a size class. */
+        private final IntStack sparePages = new IntStack();
+
+        private int allocatedPages;
+
+        private int nextVictimPage;
+
+        private long weight;
+
+        private long evictions;
+
+        Segment(final int maxPages) {
+            pages = new ByteBuffer[maxPages];
+            pageClasses = new int[maxPages];
+            owners = new RenderKey[maxPages][];
+            for (int i = 0; i < classes.length; i++) {
+                classes[i] = new SizeClass(CHUNK_SIZES[i]);
+            }
+        }
+
+        byte[] get(final RenderKey key) {
+            final Slot slot = index.get(key);
+            if (slot == null) {
+                return null;
+            }
+            final SizeClass sizeClass = classes[slot.sizeClass];
+            sizeClass.lru.get(key);
+            final ByteBuffer page = pages[slot.address >>> 16];
+            page.position((slot.address & 0xFFFF) * sizeClass.chunkSize);
+            final byte[] output = new byte[slot.length];
+            page.get(output);
+            return output;
+        }
+
+        void put(final RenderKey key, final byte[] output) {
+            if (index.containsKey(key)) {
+                release(key);
+            }
+            if (output.length > PAGE_SIZE) {
+                return;
+            }
+            final int sizeClass = sizeClassFor(output.length);
+            final int address = allocate(sizeClass);
+            final int page = address >>> 16;
+            final int chunk = address & 0xFFFF;
+            final ByteBuffer buffer = pages[page];
+            buffer.position(chunk * CHUNK_SIZES[sizeClass]);
+            buffer.put(output);
+
+            final Slot slot = new Slot(address, output.length, sizeClass);
+            owners[page][chunk] = key;
+            index.put(key, slot);
+            classes[sizeClass].lru.put(key, slot);
+            weight += output.length;
+        }
+
+        int removeIf(final Predicate<? super RenderKey> predicate) {
+            final List<RenderKey> matches = new ArrayList<>();
+            for (final RenderKey key : index.keySet()) {
+                if (predicate.test(key)) {
+                    matches.add(key);
+                }
+            }
+            for (final RenderKey key : matches) {
+                release(key);
+            }
+            return matches.size();
+        }
+
+        void clear() {
+            index.clear();
+            for (final SizeClass sizeClass : classes) {
+                sizeClass.lru.clear();
+                sizeClass.free.clear();
+            }
+            sparePages.clear();
+            for (int page = allocatedPages - 1; page >= 0; page--) {
+                owners[page] = null;
+                sparePages.push(page);
+            }
+            nextVictimPage = 0;
+            weight = 0;
+        }
+
+        private int allocate(final int sizeClass) {
+            final SizeClass target = classes[sizeClass];
+            if (!target.free.isEmpty()) {
+                return target.free.pop();
+            }
+            int page = newPage();
+            if (page < 0 && !target.lru.isEmpty()) {
+                release(target.lru.keySet().iterator().next());
+                evictions++;
+                return target.free.pop();
+            }
+            if (page < 0) {
+                page = takeOverPage(sizeClass);
+            }
+            pageClasses[page] = sizeClass;
+            owners[page] = new RenderKey[target.chunksPerPage];
+            for (int chunk = target.chunksPerPage - 1; chunk >= 0; chunk--) {
+                target.free.push(page << 16 | chunk);
+            }
+            return target.free.pop();
+        }
+
+        private int newPage() {
+            if (!sparePages.isEmpty()) {
+                return sparePages.pop();
+            }
+            if (allocatedPages < pages.length) {
+                pages[allocatedPages] = ByteBuffer.allocateDirect(PAGE_SIZE);
+                return allocatedPages++;
+            }
+            return -1;
+        }
+
+        /**
+         * Evicts the entries of the next page, in turn, that belongs to
+         * another class. Only called when the given class has no entries and
+         * therefore no pages.
+         */
+        private int takeOverPage(final int sizeClass) {
+            int page = nextVictimPage;
+            while (pageClasses[page] == sizeClass) {
+                page = (page + 1) % allocatedPages;
+            }
+            nextVictimPage = (page + 1) % allocatedPages;
+            for (final RenderKey owner : owners[page]) {
+                if (owner != null) {
+                    release(owner);
+                    evictions++;
+                }
+            }
+            final int victim = page;
+            classes[pageClasses[page]].free.removeIf(address -> address >>> 16 == victim);
+            owners[page] = null;
+            return page;
+        }
+
+        private void release(final RenderKey key) {
+            final Slot slot = index.remove(key);
+            final SizeClass sizeClass = classes[slot.sizeClass];
+            sizeClass.lru.remove(key);
+            owners[slot.address >>> 16][slot.address & 0xFFFF] = null;
+            sizeClass.free.push(slot.address);
+            weight -= slot.length;
+        }
+    }
+
+    private static final class SizeClass {
+
+        private final int chunkSize;
+
+        private final int chunksPerPage;
+
+        private final IntStack free = new IntStack();
+
+        /** Entries of this class in access order, the least recently used first. */
+        private final LinkedHashMap<RenderKey, Slot> lru = new LinkedHashMap<>(16, 0.75f, true);
+
+        SizeClass(final int chunkSize) {
+            this.chunkSize = chunkSize;
+            this.chunksPerPage = PAGE_SIZE / chunkSize;
+        }
+    }
+
+    /**
+     * Location of an entry: its page and chunk in the upper and lower 16 bits
+     * of the address.
+     */
+    private static final class Slot {
+
+        private final int address;
+
+        private final int length;
+
+        private final int sizeClass;
+
+        Slot(final int address, final int length, final int sizeClass) {
+            this.address = address;
+            this.length = length;
+            this.sizeClass = sizeClass;
+        }
+    }
+
+    private static final class IntStack {
+
+        private int[] values = new int[16];
+
+        private int size;
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        void push(final int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        int pop() {
+            return values[--size];
+        }
+
+        void removeIf(final IntPredicate predicate) {
+            int kept = 0;
+            for (int i = 0; i < size; i++) {
+                if (!predicate.test(values[i])) {
+                    values[kept++] = values[i];
+                }
+            }
+            size = kept;
+        }
+
+        void clear() {
+            size = 0;
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package com.test.core.cache;
+
+import java.util.function.Predicate;
+
+/**
+ * Storage of the {@link ComponentRenderCache}: the rendered output of
+ * components, bounded in size. Implementations decide how the output is held,
+ * are thread-safe and evict entries on their own to stay within their bound.
+ *
+ * @see RenderCacheStoreType
+ */
+public interface RenderCacheStore {
+
+    /**
+     * Returns the stored output, or {@code null} if there is none.
+     */
+    String get(RenderKey key);
+
+    /**
+     * Stores the output, replacing a previous one. Output that cannot be held
+     * by the store at all is not stored.
+     */
+    void put(RenderKey key, String output);
+
+    /**
+     * Removes all entries whose key matches the predicate.
+     *
+     * @return the number of removed entries
+     */
+    int removeIf(Predicate<? super RenderKey> predicate);
+
+    void clear();
+
+    int size();
+
+    /**
+     * Returns the approximate number of bytes taken by the stored entries.
+     */
+    long weight();
+
+    /**
+     * Returns the number of entries evicted to make room for others.
+     */
+    long evictionCount();
+}
@@ -0,0 +1,32 @@
+package com.test.core.cache;
+
+/**
+ * The available {@link RenderCacheStore} implementations.
+ */
+public enum RenderCacheStoreType {
+
+    /** Keeps the output as strings on the Java heap. */
+    HEAP {
+        @Override
+        public RenderCacheStore create(final long maxBytes) {
+            return new HeapRenderCacheStore(maxBytes);
+        }
+    },
+
+    /**
+     * Keeps the output UTF-8 encoded in direct buffers outside of the Java
+     * heap, see
+     * {@link OffHeapRenderCacheStore}.
+     */
+    OFF_HEAP {
+        @Override
+        public RenderCacheStore create(final long maxBytes) {
+            return new OffHeapRenderCacheStore(maxBytes);
+        }
+    };
+
+    /**
+     * Creates an empty store holding at most about {@code maxBytes} bytes.
+     */
+    public abstract RenderCacheStore create(long maxBytes);
+}
@@ -0,0 +1,68 @@
+package com.test.core.cache;
+
+import java.util.Objects;
+
+/**
+ * Identifies the rendered output of a component: the resource path, its
+ * resource type and the selectors and extension it was included with.
+ */
+public final class RenderKey {
+
+    private final String path;
+
+    private final String resourceType;
+
+    private final String selectors;
+
+    private final String extension;
+
+    private final int hash;
+
+    public RenderKey(final String path, final String resourceType, final String selectors,
+            final String extension) {
+        this.path = path;
+        this.resourceType = resourceType;
+        this.selectors = selectors;
+        this.extension = extension;
+        this.hash = Objects.hash(path, resourceType, selectors, extension);
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public String getResourceType() {
+        return resourceType;
+    }
+
+    /**
+     * Returns whether the rendered resource lies at or below the given path.
+     */
+    public boolean isAtOrBelow(final String root) {
+        return path.startsWith(root) && (path.length() == root.length() || root.endsWith("/")
+                || path.charAt(root.length()) == '/');
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof RenderKey)) {
+            return false;
+        }
+        final RenderKey other = (RenderKey) obj;
+        return hash == other.hash && path.equals(other.path) && Objects.equals(resourceType, other.resourceType)
+                && Objects.equals(selectors, other.selectors) && Objects.equals(extension, other.extension);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return path + "[" + resourceType + "]." + selectors + "." + extension;
+    }
+}
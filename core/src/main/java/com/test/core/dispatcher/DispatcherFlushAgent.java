@@ -0,0 +1,424 @@
+package com.test.core.dispatcher;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.sling.api.resource.LoginException;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ResourceResolverFactory;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
+import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.component.propertytypes.ServiceDescription;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.day.cq.commons.jcr.JcrConstants;
+import com.test.core.listeners.ChangedPathIndex;
+import com.test.core.listeners.SimpleResourceListener;
+import com.test.core.listeners.SubtreeInvalidationListener;
+
+/**
+ * Flushes exactly the dispatcher cache entries of changed content, instead of
+ * relying on the stat files that an activation touches.
+ * <p>
+ * The agent receives the changed subtree roots from the
+ * {@link SimpleResourceListener} and collects them for a short delay in a
+ * {@link ChangedPathIndex}, so the roots of several batches are deduplicated
+ * and collapsed as well. A root inside the {@code jcr:content} of a page only
+ * changed that page, which is invalidated on its own with
+ * {@code CQ-Action: Activate}. Any other root, a page that was added, moved
+ * or removed or an ancestor that many changes were collapsed into, is dropped
+ * as a whole with {@code CQ-Action: Delete}. Paths are mapped with the
+ * resource resolver mappings, as the dispatcher caches the mapped URLs.
+ * <p>
+ * Unless configured otherwise, the requests carry
+ * {@code CQ-Action-Scope: ResourceOnly}, so the dispatcher does not touch its
+ * stat files and the rest of the cache stays valid. As nothing else would
+ * invalidate the cached entries then, the changes of failed requests are
+ * collected again and retried with a delay that doubles with each failed
+ * flush, until the dispatcher accepts them.
+ */
+@Designate(ocd = DispatcherFlushAgent.Config.class)
+@Component(service = { DispatcherFlushAgent.class, SubtreeInvalidationListener.class })
+@ServiceDescription("Sends targeted dispatcher invalidations for changed content")
+public class DispatcherFlushAgent implements SubtreeInvalidationListener {
+
+    @ObjectClassDefinition(name = "Dispatcher flush agent",
+                           description = "Targeted dispatcher cache invalidation on content changes")
+    public static @interface Config {
+
+        @AttributeDefinition(name = "Dispatcher URLs",
+                             description = "Invalidation endpoints of the dispatchers, e.g. "
+                                     + "http://localhost:80/dispatcher/invalidate.cache. Nothing is flushed if empty")
+        String[] dispatcher_urls() default {};
+
+        @AttributeDefinition(name = "Content roots",
+                             description = "Only changes at or below these paths are flushed")
+        String[] content_roots() default { "/content" };
+
+        @AttributeDefinition(name = "Flush delay",
+                             description = "Milliseconds changes are collected before they are flushed")
+        long flush_delay_ms() default 1000;
+
+        @AttributeDefinition(name = "Resource only",
+                             description = "Whether the dispatcher is asked not to touch its stat files")
+        boolean resource_only() default true;
+
+        @AttributeDefinition(name = "Retry delay",
+                             description = "Milliseconds before failed invalidations are retried the first time")
+        long retry_delay_ms() default 5000;
+
+        @AttributeDefinition(name = "Maximum retry delay",
+                             description = "Milliseconds the retry delay doubles up to while a dispatcher fails")
+        long max_retry_delay_ms() default 300000;
+
+        @AttributeDefinition(name = "Shutdown timeout",
+                             description = "Milliseconds deactivation spends at most on sending the pending "
+                                     + "invalidations. Invalidations not sent by then are dropped and logged")
+        long shutdown_timeout_ms() default 10000;
+
+        @AttributeDefinition(name = "Connect timeout",
+                             description = "Milliseconds to wait for a connection to a dispatcher")
+        int connect_timeout_ms() default 2000;
+
+        @AttributeDefinition(name = "Read timeout",
+                             description = "Milliseconds to wait for the response of a dispatcher")
+        int read_timeout_ms() default 10000;
+    }
+
+    /** Subservice mapped to a service user that can read the content roots. */
+    static final String SUBSERVICE = "dispatcher-flush";
+
+    static final String HEADER_ACTION = "CQ-Action";
+
+    static final String HEADER_HANDLE = "CQ-Handle";
+
+    static final String HEADER_PATH = "CQ-Path";
+
+    static final String HEADER_SCOPE = "CQ-Action-Scope";
+
+    private static final String JCR_CONTENT_SEGMENT = "/" + JcrConstants.JCR_CONTENT;
+
+    private static final long NO_DEADLINE = Long.MIN_VALUE;
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    @Reference
+    private ResourceResolverFactory resolverFactory;
+
+    private final ChangedPathIndex pending = new ChangedPathIndex(10000, 256);
+
+    private final AtomicLong sentRequests = new AtomicLong();
+
+    private final AtomicLong failedRequests = new AtomicLong();
+
+    private Config config;
+
+    private ScheduledThreadPoolExecutor executor;
+
+    private boolean flushScheduled;
+
+    /** Flushes in a row that failed, guarded by {@link #pending}. */
+    private int failedFlushes;
+
+    @Activate
+    protected void activate(final Config config) {
+        this.config = config;
+        executor = new ScheduledThreadPoolExecutor(1, runnable -> {
+            final Thread thread = new Thread(runnable, "DispatcherFlushAgent");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // scheduled flushes are replaced by the final flush of deactivate
+        executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+    }
+
+    /**
+     * Waits for a running flush and sends what is still pending, both within
+     * the shutdown timeout in total.
+     */
+    @Deactivate
+    protected void deactivate() throws InterruptedException {
+        final long timeout = Math.max(0, config.shutdown_timeout_ms());
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        executor.shutdown();
+        if (!executor.awaitTermination(timeout, TimeUnit.MILLISECONDS)) {
+            executor.shutdownNow();
+            logger.warn("Dropping the pending invalidations, a flush is still running after {} ms", timeout);
+            return;
+        }
+        flushUntil(deadline);
+    }
+
+    @Override
+    public void invalidateSubtrees(final Collection<String> roots) {
+        if (config.dispatcher_urls().length == 0) {
+            return;
+        }
+        synchronized (pending) {
+            for (final String root : roots) {
+                if (isBelowContentRoot(root)) {
+                    pending.add(root);
+                }
+            }
+            if (flushScheduled || pending.isEmpty()) {
+                return;
+            }
+            flushScheduled = true;
+        }
+        executor.schedule(this::flush, delay(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Sends the invalidations for the changes collected so far.
+     */
+    void flush() {
+        flushUntil(NO_DEADLINE);
+    }
+
+    /**
+     * Sends the invalidations for the changes collected so far, those left
+     * when the deadline in {@link System#nanoTime()} passes count as failed.
+     */
+    private void flushUntil(final long deadline) {
+        final List<String> roots;
+        synchronized (pending) {
+            flushScheduled = false;
+            roots = pending.drain();
+        }
+        if (roots.isEmpty()) {
+            return;
+        }
+        final Map<String, Invalidation> invalidations;
+        try {
+            invalidations = plan(roots);
+        } catch (LoginException e) {
+            failedRequests.addAndGet((long) roots.size() * config.dispatcher_urls().length);
+            logger.error("Cannot map {} changed paths for the dispatcher", roots.size(), e);
+            retry(roots);
+            return;
+        }
+        final List<String> failed = new ArrayList<>();
+        for (final Map.Entry<String, Invalidation> invalidation : invalidations.entrySet()) {
+            boolean sent = true;
+            for (final String url : config.dispatcher_urls()) {
+                final int timeout = timeoutBefore(deadline);
+                sent &= timeout > 0 && send(url, invalidation.getValue().action, invalidation.getKey(), timeout);
+            }
+            if (!sent) {
+                failed.add(invalidation.getValue().root);
+            }
+        }
+        if (failed.isEmpty()) {
+            synchronized (pending) {
+                failedFlushes = 0;
+            }
+        } else {
+            retry(failed);
+        }
+    }
+
+    /**
+     * Collects the changed roots of failed invalidations again and schedules
+     * the next flush with the increased delay.
+     */
+    private void retry(final List<String> roots) {
+        final long delay;
+        synchronized (pending) {
+            roots.forEach(pending::add);
+            failedFlushes++;
+            if (flushScheduled) {
+                return;
+            }
+            if (executor.isShutdown()) {
+                logger.warn("Dropping the invalidations of {} changed paths on deactivation: {}", roots.size(),
+                        roots);
+                return;
+            }
+            flushScheduled = true;
+            delay = delay();
+        }
+        executor.schedule(this::flush, delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Returns the delay of the next flush, the retry delay doubled for each
+     * failed flush in a row after the first one.
+     */
+    private long delay() {
+        synchronized (pending) {
+            if (failedFlushes == 0) {
+                return config.flush_delay_ms();
+            }
+            final long max = Math.max(config.retry_delay_ms(), config.max_retry_delay_ms());
+            return Math.min(max, config.retry_delay_ms() << Math.min(failedFlushes - 1, 20));
+        }
+    }
+
+    /**
+     * Maps the changed subtree roots to the dispatcher paths to invalidate.
+     * As no root is below another, no page to activate lies below a path
+     * that is deleted.
+     */
+    private Map<String, Invalidation> plan(final List<String> roots) throws LoginException {
+        final List<String> deleted = new ArrayList<>();
+        final Map<String, String> activated = new LinkedHashMap<>();
+        for (final String root : roots) {
+            int content = root.indexOf(JCR_CONTENT_SEGMENT + "/");
+            if (content < 0 && root.endsWith(JCR_CONTENT_SEGMENT)) {
+                content = root.length() - JCR_CONTENT_SEGMENT.length();
+            }
+            if (content > 0) {
+                activated.putIfAbsent(root.substring(0, content), root);
+            } else {
+                deleted.add(root);
+            }
+        }
+        final Map<String, Invalidation> invalidations = new LinkedHashMap<>();
+        try (ResourceResolver resolver = resolverFactory.getServiceResourceResolver(
+                Collections.singletonMap(ResourceResolverFactory.SUBSERVICE, SUBSERVICE))) {
+            for (final String path : deleted) {
+                invalidations.put(resolver.map(path), new Invalidation(Action.DELETE, path));
+            }
+            for (final Map.Entry<String, String> page : activated.entrySet()) {
+                invalidations.putIfAbsent(resolver.map(page.getKey()),
+                        new Invalidation(Action.ACTIVATE, page.getValue()));
+            }
+        }
+        return invalidations;
+    }
+
+    /**
+     * Returns the milliseconds left before the deadline.
+     */
+    private static int timeoutBefore(final long deadline) {
+        if (deadline == NO_DEADLINE) {
+            return Integer.MAX_VALUE;
+        }
+        return (int) Math.max(0, Math.min(Integer.MAX_VALUE,
+                TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime())));
+    }
+
+    /**
+     * Sends one invalidation, returns whether the dispatcher accepted it.
+     * Connecting and reading each take at most the configured timeouts and
+     * the given one.
+     */
+    private boolean send(final String url, final Action action, final String handle, final int timeout) {
+        try {
+            final HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+            connection.setConnectTimeout(limit(config.connect_timeout_ms(), timeout));
+            connection.setReadTimeout(limit(config.read_timeout_ms(), timeout));
+            connection.setRequestMethod("POST");
+            connection.setRequestProperty(HEADER_ACTION, action.header);
+            connection.setRequestProperty(HEADER_HANDLE, handle);
+            connection.setRequestProperty(HEADER_PATH, handle);
+            if (config.resource_only()) {
+                connection.setRequestProperty(HEADER_SCOPE, "ResourceOnly");
+            }
+            connection.setRequestProperty("Content-Type", "application/octet-stream");
+            connection.setFixedLengthStreamingMode(0);
+            connection.setDoOutput(true);
+            connection.getOutputStream().close();
+
+            final int status = connection.getResponseCode();
+            sentRequests.incrementAndGet();
+            final boolean accepted = status / 100 == 2;
+            if (!accepted) {
+                failedRequests.incrementAndGet();
+                logger.warn("Dispatcher {} answered {} to {} of {}", url, status, action.header, handle);
+            } else {
+                logger.debug("Dispatcher {} invalidated {} with {}", url, handle, action.header);
+            }
+            try (InputStream body = status < 400 ? connection.getInputStream() : connection.getErrorStream()) {
+                drain(body);
+            }
+            return accepted;
+        } catch (IOException e) {
+            failedRequests.incrementAndGet();
+            logger.warn("Cannot send {} of {} to dispatcher {}", action.header, handle, url, e);
+            return false;
+        }
+    }
+
+    /**
+     * Returns the configured timeout limited to the given one, where a
+     * configured timeout of 0 waits forever.
+     */
+    private static int limit(final int configured, final int timeout) {
+        return configured > 0 ? Math.min(configured, timeout) : timeout;
+    }
+
+    private boolean isBelowContentRoot(final String path) {
+        for (final String root : config.content_roots()) {
+            if (path.equals(root) || path.startsWith(root + "/")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void drain(final InputStream body) throws IOException {
+        if (body != null) {
+            final byte[] buffer = new byte[1024];
+            while (body.read(buffer) >= 0) {
+                // read the response so the connection can be reused
+            }
+        }
+    }
+
+    /** Invalidation requests sent to the dispatchers, whatever their outcome. */
+    public long getSentRequests() {
+        return sentRequests.get();
+    }
+
+    /** Invalidation requests that could not be sent or were not accepted. */
+    public long getFailedRequests() {
+        return failedRequests.get();
+    }
+
+    /**
+     * An invalidation of a dispatcher path, with the changed root it was
+     * planned for, which is collected again if it fails.
+     */
+    private static final class Invalidation {
+
+        private final Action action;
+
+        private final String root;
+
+        Invalidation(final Action action, final String root) {
+            this.action = action;
+            this.root = root;
+        }
+    }
+
+    private enum Action {
+
+        ACTIVATE("Activate"),
+
+        DELETE("Delete");
+
+        private final String header;
+
+        Action(final String header) {
+            this.header = header;
+        }
+    }
+}
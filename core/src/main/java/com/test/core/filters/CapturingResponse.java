@@ -0,0 +1,58 @@
+package com.test.core.filters;
+
+import java.io.CharArrayWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+import javax.servlet.ServletOutputStream;
+
+import org.apache.sling.api.SlingHttpServletResponse;
+import org.apache.sling.api.wrappers.SlingHttpServletResponseWrapper;
+
+/**
+ * Collects the text written by a component instead of sending it, for the
+ * filters that cache component output.
+ */
+final class CapturingResponse extends SlingHttpServletResponseWrapper {
+
+    private final CharArrayWriter buffer = new CharArrayWriter(1024);
+
+    private PrintWriter writer;
+
+    private boolean streamed;
+
+    CapturingResponse(final SlingHttpServletResponse response) {
+        super(response);
+    }
+
+    @Override
+    public PrintWriter getWriter() {
+        if (writer == null) {
+            writer = new PrintWriter(buffer);
+        }
+        return writer;
+    }
+
+    @Override
+    public ServletOutputStream getOutputStream() throws IOException {
+        streamed = true;
+        return super.getOutputStream();
+    }
+
+    @Override
+    public void flushBuffer() {
+        // the captured output is written once the component is done
+    }
+
+    /** Whether the component wrote to the output stream, which is passed through. */
+    boolean isStreamed() {
+        return streamed;
+    }
+
+    String getOutput() {
+        if (writer != null) {
+            writer.flush();
+        }
+        return buffer.toString();
+    }
+}
@@ -0,0 +1,123 @@
+package com.test.core.filters;
+
+import java.io.IOException;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.api.SlingHttpServletResponse;
+import org.apache.sling.api.request.RequestPathInfo;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.servlets.HttpConstants;
+import org.apache.sling.engine.EngineConstants;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Modified;
+import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.component.propertytypes.ServiceDescription;
+import org.osgi.service.component.propertytypes.ServiceRanking;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+
+import com.day.cq.wcm.api.WCMMode;
+import com.test.core.cache.ComponentRenderCache;
+import com.test.core.cache.RenderKey;
+
+/**
+ * Component filter that caches the rendered output of components whose
+ * markup only depends on their own content, keyed by resource path, resource
+ * type, selectors and extension. On a hit the cached text is written and the
+ * component script is not run at all. Components that render the current page
+ * or referenced content, such as the registration and employee components,
+ * must not be configured, as changes of those are not tracked.
+ * <p>
+ * Only GET requests without a query string are cached, and only when WCM is
+ * disabled, i.e. on publish. Output written to the output stream instead of
+ * the writer is passed through uncached.
+ */
+@Designate(ocd = ComponentRenderCacheFilter.Config.class)
+@Component(service = Filter.class,
+           property = {
+                   EngineConstants.SLING_FILTER_SCOPE + "=" + EngineConstants.FILTER_SCOPE_COMPONENT,
+           })
+@ServiceDescription("Caches the rendered output of components")
+@ServiceRanking(-2500)
+public class ComponentRenderCacheFilter implements Filter {
+
+    @ObjectClassDefinition(name = "Component render cache filter",
+                           description = "Serves the output of cacheable components from the component render cache")
+    public static @interface Config {
+
+        @AttributeDefinition(name = "Resource types",
+                             description = "Components whose output only depends on their own content")
+        String[] sling_filter_resourceTypes() default {
+                "test/components/helloworld"
+        };
+
+        @AttributeDefinition(name = "Enabled",
+                             description = "Whether component output is cached")
+        boolean enabled() default true;
+    }
+
+    @Reference
+    private ComponentRenderCache cache;
+
+    private volatile boolean enabled = true;
+
+    @Activate
+    @Modified
+    protected void activate(final Config config) {
+        enabled = config.enabled();
+    }
+
+    @Override
+    public void doFilter(final ServletRequest request, final ServletResponse response,
+                         final FilterChain filterChain) throws IOException, ServletException {
+        final SlingHttpServletRequest slingRequest = (SlingHttpServletRequest) request;
+        final Resource resource = slingRequest.getResource();
+        if (!enabled || resource == null || !isCacheable(slingRequest)) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+
+        final RequestPathInfo pathInfo = slingRequest.getRequestPathInfo();
+        final RenderKey key = new RenderKey(resource.getPath(), resource.getResourceType(),
+                pathInfo.getSelectorString(), pathInfo.getExtension());
+        final String cached = cache.get(key);
+        if (cached != null) {
+            response.getWriter().write(cached);
+            return;
+        }
+
+        final long generation = cache.getGeneration();
+        final CapturingResponse capture = new CapturingResponse((SlingHttpServletResponse) response);
+        filterChain.doFilter(request, capture);
+        final String output = capture.getOutput();
+        if (!output.isEmpty()) {
+            response.getWriter().write(output);
+        }
+        if (!capture.isStreamed()) {
+            cache.put(key, output, generation);
+        }
+    }
+
+    private static boolean isCacheable(final SlingHttpServletRequest request) {
+        return HttpConstants.METHOD_GET.equals(request.getMethod())
+                && request.getQueryString() == null
+                && WCMMode.fromRequest(request) == WCMMode.DISABLED;
+    }
+
+    @Override
+    public void init(FilterConfig filterConfig) {
+    }
+
+    @Override
+    public void destroy() {
+    }
+}
@@ -0,0 +1,617 @@
+package com.test.core.filters;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.api.SlingHttpServletResponse;
+import org.apache.sling.api.servlets.HttpConstants;
+import org.apache.sling.api.wrappers.SlingHttpServletResponseWrapper;
+import org.apache.sling.engine.EngineConstants;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Modified;
+import org.osgi.service.component.propertytypes.ServiceDescription;
+import org.osgi.service.component.propertytypes.ServiceRanking;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+
+import com.test.core.cache.LruCache;
+
+/**
+ * Request filter that compresses text responses with the content coding
+ * preferred by the client's {@code Accept-Encoding}, gzip or deflate.
+ * <p>
+ * Responses are buffered up to the configured size. A buffered body is
+ * compressed once per coding and the compressed variant is kept in a bounded
+ * cache keyed by the digest of the body, so repeated renders of the same
+ * content are sent without compressing them again. Larger bodies are
+ * compressed while they stream and are not cached. Bodies below the minimum
+ * size, responses other than 200, content types not configured and responses
+ * that already carry a content coding are sent unchanged.
+ * <p>
+ * A strong {@code ETag} of a compressed response is made weak, as the bytes
+ * sent differ from those of the identity response.
+ */
+@Designate(ocd = CompressionFilter.Config.class)
+@Component(service = Filter.class,
+           property = {
+                   EngineConstants.SLING_FILTER_SCOPE + "=" + EngineConstants.FILTER_SCOPE_REQUEST,
+           })
+@ServiceDescription("Compresses text responses")
+@ServiceRanking(-600)
+public class CompressionFilter implements Filter {
+
+    @ObjectClassDefinition(name = "Compression filter",
+                           description = "Compresses text responses and caches the compressed variants")
+    public static @interface Config {
+
+        @AttributeDefinition(name = "Enabled",
+                             description = "Whether responses are compressed")
+        boolean enabled() default true;
+
+        @AttributeDefinition(name = "Content types",
+                             description = "Media types of the responses that are compressed")
+        String[] content_types() default {
+                "text/html",
+                "text/plain",
+                "text/css",
+                "application/javascript",
+                "application/json",
+                "image/svg+xml"
+        };
+
+        @AttributeDefinition(name = "Minimum size",
+                             description = "Bytes a body needs to have to be compressed")
+        int min_size() default 1024;
+
+        @AttributeDefinition(name = "Maximum buffered size",
+                             description = "Kilobytes of a body that are buffered; larger bodies are compressed "
+                                     + "while they stream and not cached")
+        int max_buffer_kb() default 256;
+
+        @AttributeDefinition(name = "Cache size",
+                             description = "Megabytes of compressed variants that are cached")
+        int cache_size_mb() default 32;
+
+        @AttributeDefinition(name = "Compression level",
+                             description = "From 1, fastest, to 9, smallest")
+        int level() default 6;
+    }
+
+    static final String GZIP = "gzip";
+
+    static final String DEFLATE = "deflate";
+
+    private static final String HEADER_ACCEPT_ENCODING = "Accept-Encoding";
+
+    private static final String HEADER_CONTENT_ENCODING = "Content-Encoding";
+
+    private static final String HEADER_VARY = "Vary";
+
+    private static final String HEADER_ETAG = "ETag";
+
+    /** Estimated heap overhead of a cached variant besides its bytes. */
+    private static final int ENTRY_OVERHEAD = 160;
+
+    private final AtomicLong compressed = new AtomicLong();
+
+    private final AtomicLong cacheHits = new AtomicLong();
+
+    private final AtomicLong bytesIn = new AtomicLong();
+
+    private final AtomicLong bytesOut = new AtomicLong();
+
+    private volatile Settings settings = new Settings(true, new String[] { "text/html" }, 1024, 256 * 1024, 6,
+            newCache(32));
+
+    @Activate
+    @Modified
+    protected void activate(final Config config) {
+        settings = new Settings(config.enabled(), config.content_types(), config.min_size(),
+                config.max_buffer_kb() * 1024, config.level(), newCache(config.cache_size_mb()));
+    }
+
+    @Override
+    public void doFilter(final ServletRequest request, final ServletResponse response,
+                         final FilterChain filterChain) throws IOException, ServletException {
+        final SlingHttpServletRequest slingRequest = (SlingHttpServletRequest) request;
+        final Settings current = settings;
+        final String coding = current.enabled && !HttpConstants.METHOD_HEAD.equals(slingRequest.getMethod())
+                ? negotiate(slingRequest.getHeader(HEADER_ACCEPT_ENCODING))
+                : null;
+        if (coding == null) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+        final CompressingResponse compressing = new CompressingResponse((SlingHttpServletResponse) response,
+                coding, current);
+        filterChain.doFilter(request, compressing);
+        compressing.finish();
+    }
+
+    /**
+     * Returns the content coding to use for the given {@code Accept-Encoding}
+     * header, gzip if the client accepts it as much as deflate, or
+     * {@code null} for none.
+     */
+    static String negotiate(final String acceptEncoding) {
+        if (StringUtils.isBlank(acceptEncoding)) {
+            return null;
+        }
+        double gzip = -1;
+        double deflate = -1;
+        double any = -1;
+        for (final String element : acceptEncoding.split(",")) {
+            final String[] parts = element.split(";");
+            final String coding = parts[0].trim().toLowerCase(Locale.ROOT);
+            double quality = 1;
+            for (int i = 1; i < parts.length; i++) {
+                final String parameter = parts[i].trim();
+                if (parameter.startsWith("q=")) {
+                    quality = parseQuality(parameter.substring(2));
+                }
+            }
+            if (GZIP.equals(coding) || "x-gzip".equals(coding)) {
+                gzip = quality;
+            } else if (DEFLATE.equals(coding)) {
+                deflate = quality;
+            } else if ("*".equals(coding)) {
+                any = quality;
+            }
+        }
+        gzip = gzip < 0 ? any : gzip;
+        deflate = deflate < 0 ? any : deflate;
+        if (gzip > 0 && gzip >= deflate) {
+            return GZIP;
+        }
+        return deflate > 0 ? DEFLATE : null;
+    }
+
+    private static double parseQuality(final String value) {
+        try {
+            return Double.parseDouble(value.trim());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /** Responses sent compressed. */
+    public long getCompressedCount() {
+        return compressed.get();
+    }
+
+    /** Compressed responses taken from the cache of compressed variants. */
+    public long getCacheHitCount() {
+        return cacheHits.get();
+    }
+
+    /** Bytes of the compressed responses before compression. */
+    public long getBytesIn() {
+        return bytesIn.get();
+    }
+
+    /** Bytes of the compressed responses as sent. */
+    public long getBytesOut() {
+        return bytesOut.get();
+    }
+
+    @Override
+    public void init(FilterConfig filterConfig) {
+    }
+
+    @Override
+    public void destroy() {
+    }
+
+    private static LruCache<String, byte[]> newCache(final int cacheSizeMb) {
+        return new LruCache<>(Math.max(1, cacheSizeMb) * 1024L * 1024L, variant -> ENTRY_OVERHEAD + variant.length);
+    }
+
+    private static OutputStream compressor(final String coding, final OutputStream target, final int level)
+            throws IOException {
+        if (GZIP.equals(coding)) {
+            return new GZIPOutputStream(target, 8192) {
+                {
+                    def.setLevel(level);
+                }
+            };
+        }
+        return new DeflaterOutputStream(target, new Deflater(level), 8192) {
+            @Override
+            public void close() throws IOException {
+                super.close();
+                def.end();
+            }
+        };
+    }
+
+    private static String digest(final byte[] body) {
+        try {
+            final byte[] hash = MessageDigest.getInstance("MD5").digest(body);
+            final StringBuilder hex = new StringBuilder(hash.length * 2 + 8);
+            for (final byte b : hash) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.append(':').append(body.length).toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("MD5 is not available", e);
+        }
+    }
+
+    /**
+     * The configuration, replaced as a whole when it is modified.
+     */
+    private static final class Settings {
+
+        private final boolean enabled;
+
+        private final String[] contentTypes;
+
+        private final int minSize;
+
+        private final int maxBufferBytes;
+
+        private final int level;
+
+        private final LruCache<String, byte[]> variants;
+
+        Settings(final boolean enabled, final String[] contentTypes, final int minSize, final int maxBufferBytes,
+                final int level, final LruCache<String, byte[]> variants) {
+            this.enabled = enabled;
+            this.contentTypes = contentTypes;
+            this.minSize = minSize;
+            this.maxBufferBytes = maxBufferBytes;
+            this.level = level;
+            this.variants = variants;
+        }
+
+        boolean isCompressible(final String contentType) {
+            if (contentType == null) {
+                return false;
+            }
+            final String mediaType = StringUtils.substringBefore(contentType, ";").trim();
+            for (final String type : contentTypes) {
+                if (type.equalsIgnoreCase(mediaType)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private enum Mode {
+
+        /** Undecided, the body is buffered. */
+        BUFFERING,
+
+        /** The body is sent unchanged. */
+        PASS_THROUGH,
+
+        /** The body was too large to buffer and is compressed as it is written. */
+        STREAMING
+    }
+
+    /**
+     * Buffers the body until it is complete or too large, or passes it
+     * through as soon as it is clear that it is not compressed.
+     */
+    private final class CompressingResponse extends SlingHttpServletResponseWrapper {
+
+        private final String coding;
+
+        private final Settings settings;
+
+        private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+
+        private Mode mode = Mode.BUFFERING;
+
+        private int status = SC_OK;
+
+        private boolean encoded;
+
+        private long contentLength = -1;
+
+        private OutputStream streaming;
+
+        private long streamedBytes;
+
+        private ServletOutputStream stream;
+
+        private PrintWriter writer;
+
+        CompressingResponse(final SlingHttpServletResponse response, final String coding,
+                final Settings settings) {
+            super(response);
+            this.coding = coding;
+            this.settings = settings;
+        }
+
+        @Override
+        public void setStatus(final int sc) {
+            status = sc;
+            super.setStatus(sc);
+        }
+
+        @Override
+        @SuppressWarnings("deprecation")
+        public void setStatus(final int sc, final String sm) {
+            status = sc;
+            super.setStatus(sc, sm);
+        }
+
+        @Override
+        public void setHeader(final String name, final String value) {
+            if (HEADER_CONTENT_ENCODING.equalsIgnoreCase(name)) {
+                encoded = true;
+            }
+            super.setHeader(name, value);
+        }
+
+        @Override
+        public void addHeader(final String name, final String value) {
+            if (HEADER_CONTENT_ENCODING.equalsIgnoreCase(name)) {
+                encoded = true;
+            }
+            super.addHeader(name, value);
+        }
+
+        @Override
+        public void setContentLength(final int len) {
+            if (mode == Mode.PASS_THROUGH) {
+                super.setContentLength(len);
+            } else {
+                contentLength = len;
+            }
+        }
+
+        @Override
+        public void setContentLengthLong(final long len) {
+            if (mode == Mode.PASS_THROUGH) {
+                super.setContentLengthLong(len);
+            } else {
+                contentLength = len;
+            }
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() throws IOException {
+            if (stream == null) {
+                stream = new CompressingOutputStream();
+            }
+            return stream;
+        }
+
+        @Override
+        public PrintWriter getWriter() throws IOException {
+            if (writer == null) {
+                final String charset = getCharacterEncoding();
+                writer = new PrintWriter(new OutputStreamWriter(getOutputStream(),
+                        charset != null ? charset : StandardCharsets.ISO_8859_1.name()));
+            }
+            return writer;
+        }
+
+        @Override
+        public void flushBuffer() throws IOException {
+            if (writer != null) {
+                writer.flush();
+            }
+            if (mode == Mode.PASS_THROUGH) {
+                super.flushBuffer();
+            }
+        }
+
+        @Override
+        public void reset() {
+            super.reset();
+            resetBuffer();
+            status = SC_OK;
+            encoded = false;
+            contentLength = -1;
+        }
+
+        @Override
+        public void resetBuffer() {
+            super.resetBuffer();
+            buffer.reset();
+        }
+
+        /**
+         * Sends the buffered body once the chain is done.
+         */
+        void finish() throws IOException {
+            if (writer != null) {
+                writer.flush();
+            }
+            if (mode == Mode.STREAMING) {
+                streaming.close();
+                count(streamedBytes, -1);
+                return;
+            }
+            if (mode == Mode.PASS_THROUGH) {
+                return;
+            }
+            final byte[] body = buffer.toByteArray();
+            if (body.length < settings.minSize || !isCompressible()) {
+                passThrough();
+                writeThrough(body, 0, body.length);
+                return;
+            }
+            final String key = coding + ':' + digest(body);
+            byte[] variant = settings.variants.get(key);
+            if (variant != null) {
+                cacheHits.incrementAndGet();
+            } else {
+                final ByteArrayOutputStream out = new ByteArrayOutputStream(body.length / 4 + 64);
+                try (OutputStream compressor = compressor(coding, out, settings.level)) {
+                    compressor.write(body);
+                }
+                variant = out.toByteArray();
+                settings.variants.put(key, variant);
+            }
+            setCodingHeaders();
+            super.setContentLength(variant.length);
+            super.getOutputStream().write(variant);
+            count(body.length, variant.length);
+        }
+
+        private boolean isCompressible() {
+            return status == SC_OK && !encoded && !isCommitted() && settings.isCompressible(getContentType());
+        }
+
+        private void setCodingHeaders() {
+            super.setHeader(HEADER_CONTENT_ENCODING, coding);
+            super.addHeader(HEADER_VARY, HEADER_ACCEPT_ENCODING);
+            final String etag = getHeader(HEADER_ETAG);
+            if (etag != null && etag.startsWith("\"")) {
+                super.setHeader(HEADER_ETAG, "W/" + etag);
+            }
+        }
+
+        private void count(final long in, final long out) {
+            compressed.incrementAndGet();
+            bytesIn.addAndGet(in);
+            if (out >= 0) {
+                bytesOut.addAndGet(out);
+            }
+        }
+
+        private void passThrough() {
+            mode = Mode.PASS_THROUGH;
+            if (settings.isCompressible(getContentType())) {
+                super.addHeader(HEADER_VARY, HEADER_ACCEPT_ENCODING);
+            }
+            if (contentLength >= 0) {
+                super.setContentLengthLong(contentLength);
+            }
+        }
+
+        private void writeThrough(final byte[] b, final int off, final int len) throws IOException {
+            if (len > 0) {
+                super.getOutputStream().write(b, off, len);
+            }
+        }
+
+        private void write(final byte[] b, final int off, final int len) throws IOException {
+            if (mode == Mode.BUFFERING && buffer.size() == 0 && len > 0 && !isCompressible()) {
+                passThrough();
+            }
+            switch (mode) {
+                case PASS_THROUGH:
+                    writeThrough(b, off, len);
+                    break;
+                case STREAMING:
+                    streaming.write(b, off, len);
+                    streamedBytes += len;
+                    break;
+                default:
+                    buffer.write(b, off, len);
+                    if (buffer.size() > settings.maxBufferBytes) {
+                        startStreaming();
+                    }
+            }
+        }
+
+        private void startStreaming() throws IOException {
+            mode = Mode.STREAMING;
+            setCodingHeaders();
+            final ServletOutputStream target = super.getOutputStream();
+            streaming = compressor(coding, new OutputStream() {
+                @Override
+                public void write(final int b) throws IOException {
+                    target.write(b);
+                    bytesOut.incrementAndGet();
+                }
+
+                @Override
+                public void write(final byte[] b, final int off, final int len) throws IOException {
+                    target.write(b, off, len);
+                    bytesOut.addAndGet(len);
+                }
+
+                @Override
+                public void flush() throws IOException {
+                    target.flush();
+                }
+            }, settings.level);
+            streamedBytes = buffer.size();
+            buffer.writeTo(streaming);
+            buffer.reset();
+        }
+
+        private final class CompressingOutputStream extends ServletOutputStream {
+
+            @Override
+            public void write(final int b) throws IOException {
+                CompressingResponse.this.write(new byte[] { (byte) b }, 0, 1);
+            }
+
+            @Override
+            public void write(final byte[] b, final int off, final int len) throws IOException {
+                CompressingResponse.this.write(b, off, len);
+            }
+
+            @Override
+            public void flush() throws IOException {
+                if (mode == Mode.PASS_THROUGH) {
+                    CompressingResponse.super.getOutputStream().flush();
+                }
+            }
+
+            @Override
+            public boolean isReady() {
+                if (mode == Mode.BUFFERING) {
+                    return true;
+                }
+                try {
+                    return CompressingResponse.super.getOutputStream().isReady();
+                } catch (IOException e) {
+                    return false;
+                }
+            }
+
+            /**
+             * Passes the body through uncompressed from here on, as the
+             * listener writes when the container is ready and the body is
+             * never complete before the chain returns.
+             */
+            @Override
+            public void setWriteListener(final WriteListener writeListener) {
+                try {
+                    if (mode == Mode.BUFFERING) {
+                        passThrough();
+                        writeThrough(buffer.toByteArray(), 0, buffer.size());
+                        buffer.reset();
+                    }
+                    CompressingResponse.super.getOutputStream().setWriteListener(writeListener);
+                } catch (IOException e) {
+                    throw new IllegalStateException("Cannot pass the response through for asynchronous output", e);
+                }
+            }
+        }
+    }
+}
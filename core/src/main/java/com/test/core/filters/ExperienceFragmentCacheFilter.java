@@ -0,0 +1,191 @@
+package com.test.core.filters;
+
+import java.io.IOException;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.api.SlingHttpServletResponse;
+import org.apache.sling.api.request.RequestPathInfo;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.servlets.HttpConstants;
+import org.apache.sling.engine.EngineConstants;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Modified;
+import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.component.propertytypes.ServiceDescription;
+import org.osgi.service.component.propertytypes.ServiceRanking;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+
+import com.day.cq.commons.LanguageUtil;
+import com.day.cq.commons.jcr.JcrConstants;
+import com.day.cq.wcm.api.Page;
+import com.day.cq.wcm.api.PageManager;
+import com.day.cq.wcm.api.WCMMode;
+import com.day.cq.wcm.api.components.ComponentContext;
+import com.day.cq.wcm.commons.WCMUtils;
+import com.test.core.cache.ExperienceFragmentCache;
+
+/**
+ * Component filter that serves the markup of experience fragment includes
+ * from the {@link ExperienceFragmentCache}, so a header or footer is rendered
+ * once per variation and language instead of on every page.
+ * <p>
+ * The filter is registered for the experience fragment component and for the
+ * page component of the fragments. Around a fragment include it notes the
+ * variation whose content is rendered inside, which the cache tracks the
+ * embedding pages by. The embedding page is the current page of the request,
+ * so fragments of editable templates are tracked by the pages using them.
+ * Markup is keyed by the language root of that page, such as
+ * {@code /content/test/us/en}, which the component localizes the variation
+ * by, so sites sharing a language do not share their fragments.
+ * <p>
+ * As with the {@link ComponentRenderCacheFilter}, only GET requests without
+ * a query string are cached, and only when WCM is disabled.
+ */
+@Designate(ocd = ExperienceFragmentCacheFilter.Config.class)
+@Component(service = Filter.class,
+           property = {
+                   EngineConstants.SLING_FILTER_SCOPE + "=" + EngineConstants.FILTER_SCOPE_COMPONENT,
+           })
+@ServiceDescription("Caches the rendered markup of experience fragments")
+@ServiceRanking(-2500)
+public class ExperienceFragmentCacheFilter implements Filter {
+
+    @ObjectClassDefinition(name = "Experience fragment cache filter",
+                           description = "Serves experience fragment includes from the experience fragment cache")
+    public static @interface Config {
+
+        @AttributeDefinition(name = "Resource types",
+                             description = "The experience fragment component and the page component of "
+                                     + "the fragments")
+        String[] sling_filter_resourceTypes() default {
+                "test/components/experiencefragment",
+                "test/components/xfpage"
+        };
+
+        @AttributeDefinition(name = "Enabled",
+                             description = "Whether experience fragment markup is cached")
+        boolean enabled() default true;
+    }
+
+    /** Property of the experience fragment component naming the variation. */
+    static final String PN_FRAGMENT_VARIATION_PATH = "fragmentVariationPath";
+
+    /** Request attribute holding the {@link Include} being rendered. */
+    private static final String ATTR_INCLUDE = ExperienceFragmentCacheFilter.class.getName() + ".include";
+
+    private static final String JCR_CONTENT_SEGMENT = "/" + JcrConstants.JCR_CONTENT;
+
+    @Reference
+    private ExperienceFragmentCache cache;
+
+    private volatile boolean enabled = true;
+
+    @Activate
+    @Modified
+    protected void activate(final Config config) {
+        enabled = config.enabled();
+    }
+
+    @Override
+    public void doFilter(final ServletRequest request, final ServletResponse response,
+                         final FilterChain filterChain) throws IOException, ServletException {
+        final SlingHttpServletRequest slingRequest = (SlingHttpServletRequest) request;
+        final Resource resource = slingRequest.getResource();
+        final String variationPath = resource != null
+                ? resource.getValueMap().get(PN_FRAGMENT_VARIATION_PATH, String.class) : null;
+        if (variationPath == null) {
+            noteRenderedVariation(slingRequest, resource);
+            filterChain.doFilter(request, response);
+            return;
+        }
+        final Page page = currentPage(slingRequest, resource);
+        if (!enabled || page == null || !isCacheable(slingRequest)) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+
+        final RequestPathInfo pathInfo = slingRequest.getRequestPathInfo();
+        final ExperienceFragmentCache.Key key = new ExperienceFragmentCache.Key(variationPath,
+                LanguageUtil.getLanguageRoot(page.getPath()), pathInfo.getSelectorString(),
+                pathInfo.getExtension());
+        final String cached = cache.get(key, page.getPath());
+        if (cached != null) {
+            response.getWriter().write(cached);
+            return;
+        }
+
+        final Object outer = request.getAttribute(ATTR_INCLUDE);
+        final Include include = new Include();
+        request.setAttribute(ATTR_INCLUDE, include);
+        final CapturingResponse capture = new CapturingResponse((SlingHttpServletResponse) response);
+        try {
+            filterChain.doFilter(request, capture);
+        } finally {
+            request.setAttribute(ATTR_INCLUDE, outer);
+        }
+        final String output = capture.getOutput();
+        if (!output.isEmpty()) {
+            response.getWriter().write(output);
+        }
+        if (!capture.isStreamed()) {
+            cache.put(key, include.renderedVariation != null ? include.renderedVariation : variationPath,
+                    page.getPath(), output);
+        }
+    }
+
+    /**
+     * Notes the variation whose content is included inside a fragment
+     * include, i.e. the page the included resource belongs to.
+     */
+    private static void noteRenderedVariation(final SlingHttpServletRequest request, final Resource resource) {
+        final Object include = request.getAttribute(ATTR_INCLUDE);
+        if (include instanceof Include && ((Include) include).renderedVariation == null && resource != null) {
+            final String path = resource.getPath();
+            final int content = path.indexOf(JCR_CONTENT_SEGMENT + "/");
+            ((Include) include).renderedVariation = content > 0 ? path.substring(0, content)
+                    : path.endsWith(JCR_CONTENT_SEGMENT)
+                    ? path.substring(0, path.length() - JCR_CONTENT_SEGMENT.length()) : path;
+        }
+    }
+
+    private static Page currentPage(final SlingHttpServletRequest request, final Resource resource) {
+        final ComponentContext context = WCMUtils.getComponentContext(request);
+        if (context != null && context.getPage() != null) {
+            return context.getPage();
+        }
+        final PageManager pageManager = request.getResourceResolver().adaptTo(PageManager.class);
+        return pageManager != null ? pageManager.getContainingPage(resource) : null;
+    }
+
+    private static boolean isCacheable(final SlingHttpServletRequest request) {
+        return HttpConstants.METHOD_GET.equals(request.getMethod())
+                && request.getQueryString() == null
+                && WCMMode.fromRequest(request) == WCMMode.DISABLED;
+    }
+
+    @Override
+    public void init(FilterConfig filterConfig) {
+    }
+
+    @Override
+    public void destroy() {
+    }
+
+    /**
+     * A fragment include being rendered.
+     */
+    private static final class Include {
+
+        private String renderedVariation;
+    }
+}
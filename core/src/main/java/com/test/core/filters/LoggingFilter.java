@@ -24,17 +24,34 @@ import javax.servlet.ServletRequest;
 import javax.servlet.ServletResponse;
 
 import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.api.request.RequestPathInfo;
+import org.apache.sling.api.resource.Resource;
 import org.apache.sling.engine.EngineConstants;
+import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Modified;
+import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.component.annotations.ReferenceCardinality;
+import org.osgi.service.component.annotations.ReferencePolicy;
+import org.osgi.service.component.annotations.ReferencePolicyOption;
 import org.osgi.service.component.propertytypes.ServiceDescription;
 import org.osgi.service.component.propertytypes.ServiceRanking;
 import org.osgi.service.component.propertytypes.ServiceVendor;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.test.core.metrics.RequestTimingStatistics;
+
 /**
- * Simple servlet filter component that logs incoming requests.
+ * Simple servlet filter component that logs incoming requests. In timing mode
+ * it also records the duration of every request in the
+ * {@link RequestTimingStatistics}, keyed by resource type, selectors and
+ * extension.
  */
+@Designate(ocd = LoggingFilter.Config.class)
 @Component(service = Filter.class,
            property = {
                    EngineConstants.SLING_FILTER_SCOPE + "=" + EngineConstants.FILTER_SCOPE_REQUEST,
@@ -44,8 +61,30 @@ import org.slf4j.LoggerFactory;
 @ServiceVendor("Adobe")
 public class LoggingFilter implements Filter {
 
+    @ObjectClassDefinition(name = "Logging filter",
+                           description = "Logs incoming requests and optionally records their timing")
+    public static @interface Config {
+
+        @AttributeDefinition(name = "Timing mode",
+                             description = "Record request latency histograms per resource type, selector and extension")
+        boolean timing_enabled() default false;
+    }
+
     private final Logger logger = LoggerFactory.getLogger(getClass());
 
+    @Reference(cardinality = ReferenceCardinality.OPTIONAL,
+               policy = ReferencePolicy.DYNAMIC,
+               policyOption = ReferencePolicyOption.GREEDY)
+    private volatile RequestTimingStatistics statistics;
+
+    private volatile boolean timingEnabled;
+
+    @Activate
+    @Modified
+    protected void activate(final Config config) {
+        timingEnabled = config.timing_enabled();
+    }
+
     @Override
     public void doFilter(final ServletRequest request, final ServletResponse response,
                          final FilterChain filterChain) throws IOException, ServletException {
@@ -55,7 +94,21 @@ public class LoggingFilter implements Filter {
                 .getRequestPathInfo().getResourcePath(), slingRequest
                 .getRequestPathInfo().getSelectorString());
 
-        filterChain.doFilter(request, response);
+        final RequestTimingStatistics timings = timingEnabled ? statistics : null;
+        if (timings == null) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+
+        final long start = System.nanoTime();
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            final RequestPathInfo pathInfo = slingRequest.getRequestPathInfo();
+            final Resource resource = slingRequest.getResource();
+            timings.record(resource != null ? resource.getResourceType() : null,
+                    pathInfo.getSelectorString(), pathInfo.getExtension(), System.nanoTime() - start);
+        }
     }
 
     @Override
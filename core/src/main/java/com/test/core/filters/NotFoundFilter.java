@@ -0,0 +1,279 @@
+package com.test.core.filters;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.api.SlingHttpServletResponse;
+import org.apache.sling.api.request.RequestPathInfo;
+import org.apache.sling.api.resource.ResourceUtil;
+import org.apache.sling.api.servlets.HttpConstants;
+import org.apache.sling.api.wrappers.SlingHttpServletResponseWrapper;
+import org.apache.sling.engine.EngineConstants;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Modified;
+import org.osgi.service.component.propertytypes.ServiceDescription;
+import org.osgi.service.component.propertytypes.ServiceRanking;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+
+import com.test.core.cache.LruCache;
+import com.test.core.listeners.SubtreeInvalidationListener;
+
+/**
+ * Request filter that answers GET and HEAD requests for missing content with
+ * a static 404 page, instead of the error handler script at
+ * {@code /apps/sling/servlet/errorhandler/404.html}.
+ * <p>
+ * Requests whose resource does not exist are answered right away. Requests
+ * whose resource exists but whose rendering ends in
+ * {@code sendError(404)}, e.g. for selectors or extensions that no script
+ * handles, are remembered in a bounded cache of missed URLs, so repeats are
+ * answered without rendering anything. The cache entries at, above or below
+ * changed content are dropped, so a resource created at a missed path is
+ * found by the next request. Requests with a query string are neither
+ * answered from nor added to the cache, since scripts may render them
+ * differently depending on parameters that the cache key does not contain.
+ * <p>
+ * The body is kept as bytes and should match the error handler script.
+ */
+@Designate(ocd = NotFoundFilter.Config.class)
+@Component(service = { Filter.class, SubtreeInvalidationListener.class },
+           property = {
+                   EngineConstants.SLING_FILTER_SCOPE + "=" + EngineConstants.FILTER_SCOPE_REQUEST,
+           })
+@ServiceDescription("Answers requests for missing content with a static 404 page")
+@ServiceRanking(-800)
+public class NotFoundFilter implements Filter, SubtreeInvalidationListener {
+
+    @ObjectClassDefinition(name = "Not found filter",
+                           description = "Static 404 responses and a cache of missed URLs")
+    public static @interface Config {
+
+        @AttributeDefinition(name = "Enabled",
+                             description = "Whether missing content is answered by this filter")
+        boolean enabled() default true;
+
+        @AttributeDefinition(name = "Cache size",
+                             description = "Maximum number of missed URLs that are remembered")
+        int cache_size() default 10000;
+
+        @AttributeDefinition(name = "Body",
+                             description = "HTML sent with every 404 response")
+        String body() default "<html>\n<head>\n<title>File not found</title>\n</head>\n<body>\n"
+                + "    <p>A custom errorhandler for 404 responses</p>\n</body>\n</html>\n";
+    }
+
+    private static final String CONTENT_TYPE = "text/html;charset=UTF-8";
+
+    private final AtomicLong missing = new AtomicLong();
+
+    private final AtomicLong cacheHits = new AtomicLong();
+
+    private final AtomicLong cached = new AtomicLong();
+
+    private volatile boolean enabled = true;
+
+    private volatile byte[] body = new byte[0];
+
+    private volatile LruCache<Miss, Boolean> misses = new LruCache<>(10000);
+
+    @Activate
+    @Modified
+    protected void activate(final Config config) {
+        enabled = config.enabled();
+        body = config.body().getBytes(StandardCharsets.UTF_8);
+        misses = new LruCache<>(Math.max(1, config.cache_size()));
+    }
+
+    @Override
+    public void doFilter(final ServletRequest request, final ServletResponse response,
+                         final FilterChain filterChain) throws IOException, ServletException {
+        final SlingHttpServletRequest slingRequest = (SlingHttpServletRequest) request;
+        final String method = slingRequest.getMethod();
+        if (!enabled || !HttpConstants.METHOD_GET.equals(method) && !HttpConstants.METHOD_HEAD.equals(method)) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+        final SlingHttpServletResponse slingResponse = (SlingHttpServletResponse) response;
+        if (ResourceUtil.isNonExistingResource(slingRequest.getResource())) {
+            missing.incrementAndGet();
+            sendNotFound(slingRequest, slingResponse);
+            return;
+        }
+        final Miss miss = slingRequest.getQueryString() == null ? Miss.of(slingRequest) : null;
+        final LruCache<Miss, Boolean> current = misses;
+        if (miss != null && current.get(miss) != null) {
+            cacheHits.incrementAndGet();
+            sendNotFound(slingRequest, slingResponse);
+            return;
+        }
+        final NotFoundResponse wrapper = new NotFoundResponse(slingResponse);
+        filterChain.doFilter(request, wrapper);
+        if (wrapper.notFound) {
+            if (miss != null) {
+                current.put(miss, Boolean.TRUE);
+                cached.incrementAndGet();
+            }
+            sendNotFound(slingRequest, slingResponse);
+        }
+    }
+
+    @Override
+    public void invalidateSubtrees(final Collection<String> roots) {
+        for (final String root : roots) {
+            if (root.equals("/") || root.startsWith("/apps/") || root.startsWith("/libs/")
+                    || root.equals("/apps") || root.equals("/libs")) {
+                misses.clear();
+                return;
+            }
+        }
+        misses.removeIf(miss -> {
+            for (final String root : roots) {
+                if (isAtOrBelow(miss.resourcePath, root) || isAtOrBelow(root, miss.resourcePath)) {
+                    return true;
+                }
+            }
+            return false;
+        });
+    }
+
+    private void sendNotFound(final SlingHttpServletRequest request, final SlingHttpServletResponse response)
+            throws IOException {
+        if (response.isCommitted()) {
+            return;
+        }
+        response.reset();
+        response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+        response.setContentType(CONTENT_TYPE);
+        final byte[] page = body;
+        response.setContentLength(page.length);
+        if (!HttpConstants.METHOD_HEAD.equals(request.getMethod())) {
+            response.getOutputStream().write(page);
+        }
+    }
+
+    private static boolean isAtOrBelow(final String path, final String root) {
+        return path.equals(root) || path.startsWith(root.endsWith("/") ? root : root + "/");
+    }
+
+    /** Requests for resources that do not exist. */
+    public long getMissingCount() {
+        return missing.get();
+    }
+
+    /** Requests answered from the cache of missed URLs. */
+    public long getCacheHitCount() {
+        return cacheHits.get();
+    }
+
+    /** Rendered 404 responses whose URL was added to the cache. */
+    public long getCachedCount() {
+        return cached.get();
+    }
+
+    @Override
+    public void init(FilterConfig filterConfig) {
+    }
+
+    @Override
+    public void destroy() {
+    }
+
+    /**
+     * A URL whose rendering ended in a 404, for a user.
+     */
+    private static final class Miss {
+
+        private final String userId;
+
+        private final String resourcePath;
+
+        private final String selectors;
+
+        private final String extension;
+
+        private final String suffix;
+
+        private final int hash;
+
+        private Miss(final String userId, final String resourcePath, final String selectors,
+                     final String extension, final String suffix) {
+            this.userId = userId;
+            this.resourcePath = resourcePath;
+            this.selectors = selectors;
+            this.extension = extension;
+            this.suffix = suffix;
+            this.hash = Objects.hash(userId, resourcePath, selectors, extension, suffix);
+        }
+
+        static Miss of(final SlingHttpServletRequest request) {
+            final RequestPathInfo pathInfo = request.getRequestPathInfo();
+            return new Miss(request.getResourceResolver().getUserID(), pathInfo.getResourcePath(),
+                    pathInfo.getSelectorString(), pathInfo.getExtension(), pathInfo.getSuffix());
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Miss)) {
+                return false;
+            }
+            final Miss other = (Miss) obj;
+            return hash == other.hash && resourcePath.equals(other.resourcePath)
+                    && Objects.equals(userId, other.userId) && Objects.equals(selectors, other.selectors)
+                    && Objects.equals(extension, other.extension) && Objects.equals(suffix, other.suffix);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * Takes over a {@code sendError(404)} of the chain, so that the static
+     * page is sent instead of running the error handler.
+     */
+    private static final class NotFoundResponse extends SlingHttpServletResponseWrapper {
+
+        private boolean notFound;
+
+        NotFoundResponse(final SlingHttpServletResponse response) {
+            super(response);
+        }
+
+        @Override
+        public void sendError(final int sc) throws IOException {
+            if (sc == SC_NOT_FOUND && !isCommitted()) {
+                notFound = true;
+            } else {
+                super.sendError(sc);
+            }
+        }
+
+        @Override
+        public void sendError(final int sc, final String msg) throws IOException {
+            if (sc == SC_NOT_FOUND && !isCommitted()) {
+                notFound = true;
+            } else {
+                super.sendError(sc, msg);
+            }
+        }
+    }
+}
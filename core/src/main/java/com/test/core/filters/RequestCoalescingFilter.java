@@ -0,0 +1,450 @@
+package com.test.core.filters;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.WriteListener;
+import javax.servlet.http.Cookie;
+
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.api.SlingHttpServletResponse;
+import org.apache.sling.api.request.RequestPathInfo;
+import org.apache.sling.api.servlets.HttpConstants;
+import org.apache.sling.api.wrappers.SlingHttpServletResponseWrapper;
+import org.apache.sling.engine.EngineConstants;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Modified;
+import org.osgi.service.component.propertytypes.ServiceDescription;
+import org.osgi.service.component.propertytypes.ServiceRanking;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Request filter that lets only one of several identical GET requests arriving
+ * at the same time render, and sends its response to the others as well.
+ * <p>
+ * Requests are identical if they are made by the same user for the same host,
+ * resource path, selectors, extension and suffix, with the same values of the
+ * configured headers that rendering depends on, such as
+ * {@code Accept-Language}, and without a query string or conditional
+ * headers. The first of them, the leader, renders as usual while
+ * its status, headers and body are recorded. Requests arriving while the leader renders wait for it
+ * and receive a copy of the recorded response. They render themselves
+ * instead if the leader fails, takes longer than the configured wait, sets a
+ * cookie, sends an error or redirect, or writes more than the configured
+ * buffer size.
+ */
+@Designate(ocd = RequestCoalescingFilter.Config.class)
+@Component(service = Filter.class,
+           property = {
+                   EngineConstants.SLING_FILTER_SCOPE + "=" + EngineConstants.FILTER_SCOPE_REQUEST,
+           })
+@ServiceDescription("Coalesces identical concurrent GET requests")
+@ServiceRanking(-750)
+public class RequestCoalescingFilter implements Filter {
+
+    @ObjectClassDefinition(name = "Request coalescing filter",
+                           description = "Renders identical concurrent GET requests once")
+    public static @interface Config {
+
+        @AttributeDefinition(name = "Path pattern",
+                             description = "Regular expression of the request paths that are coalesced")
+        String sling_filter_pattern() default "/content/.*";
+
+        @AttributeDefinition(name = "Enabled",
+                             description = "Whether identical requests are coalesced")
+        boolean enabled() default true;
+
+        @AttributeDefinition(name = "Maximum wait",
+                             description = "Milliseconds a request waits for the response of an identical one "
+                                     + "before it renders itself")
+        long max_wait_ms() default 10000;
+
+        @AttributeDefinition(name = "Maximum buffer size",
+                             description = "Kilobytes of a response that are buffered for waiting requests")
+        int max_buffer_kb() default 2048;
+
+        @AttributeDefinition(name = "Vary headers",
+                             description = "Request headers that rendering depends on. Only requests with the same "
+                                     + "values of these headers are coalesced")
+        String[] vary_headers() default { "Accept-Language" };
+    }
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final ConcurrentMap<String, CompletableFuture<RecordedResponse>> inFlight = new ConcurrentHashMap<>();
+
+    private final AtomicLong leaders = new AtomicLong();
+
+    private final AtomicLong coalesced = new AtomicLong();
+
+    private final AtomicLong fallbacks = new AtomicLong();
+
+    private volatile boolean enabled = true;
+
+    private volatile long maxWaitMillis = 10000;
+
+    private volatile int maxBufferBytes = 2048 * 1024;
+
+    private volatile String[] varyHeaders = { "Accept-Language" };
+
+    @Activate
+    @Modified
+    protected void activate(final Config config) {
+        enabled = config.enabled();
+        maxWaitMillis = config.max_wait_ms();
+        maxBufferBytes = config.max_buffer_kb() * 1024;
+        varyHeaders = config.vary_headers();
+    }
+
+    @Override
+    public void doFilter(final ServletRequest request, final ServletResponse response,
+                         final FilterChain filterChain) throws IOException, ServletException {
+        final SlingHttpServletRequest slingRequest = (SlingHttpServletRequest) request;
+        if (!enabled || !isCoalescable(slingRequest)) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+
+        final String key = keyOf(slingRequest);
+        final CompletableFuture<RecordedResponse> flight = new CompletableFuture<>();
+        final CompletableFuture<RecordedResponse> leader = inFlight.putIfAbsent(key, flight);
+        if (leader == null) {
+            lead(key, flight, slingRequest, (SlingHttpServletResponse) response, filterChain);
+            return;
+        }
+
+        coalesced.incrementAndGet();
+        final RecordedResponse recorded = await(leader);
+        if (recorded != null) {
+            recorded.replay((SlingHttpServletResponse) response);
+        } else {
+            fallbacks.incrementAndGet();
+            filterChain.doFilter(request, response);
+        }
+    }
+
+    private void lead(final String key, final CompletableFuture<RecordedResponse> flight,
+                      final SlingHttpServletRequest request, final SlingHttpServletResponse response,
+                      final FilterChain filterChain) throws IOException, ServletException {
+        leaders.incrementAndGet();
+        final RecordingResponse recording = new RecordingResponse(response, maxBufferBytes);
+        RecordedResponse recorded = null;
+        try {
+            filterChain.doFilter(request, recording);
+            recording.flushWriter();
+            recorded = recording.getRecorded();
+        } finally {
+            inFlight.remove(key, flight);
+            flight.complete(recorded);
+        }
+    }
+
+    private RecordedResponse await(final CompletableFuture<RecordedResponse> leader) {
+        try {
+            return leader.get(maxWaitMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException e) {
+            logger.debug("Not waiting any longer for an identical request", e);
+        }
+        return null;
+    }
+
+    /**
+     * Returns whether the request is a plain GET. Conditional requests are
+     * cheap to answer and their response does not fit unconditional ones.
+     */
+    private static boolean isCoalescable(final SlingHttpServletRequest request) {
+        return HttpConstants.METHOD_GET.equals(request.getMethod())
+                && request.getQueryString() == null
+                && request.getHeader("If-None-Match") == null
+                && request.getHeader(HttpConstants.HEADER_IF_MODIFIED_SINCE) == null;
+    }
+
+    private String keyOf(final SlingHttpServletRequest request) {
+        final RequestPathInfo pathInfo = request.getRequestPathInfo();
+        final StringBuilder key = new StringBuilder(256)
+                .append(request.getResourceResolver().getUserID()).append('\n')
+                .append(request.getServerName()).append('\n')
+                .append(pathInfo.getResourcePath()).append('\n')
+                .append(pathInfo.getSelectorString()).append('\n')
+                .append(pathInfo.getExtension()).append('\n')
+                .append(pathInfo.getSuffix());
+        for (final String header : varyHeaders) {
+            key.append('\n').append(request.getHeader(header));
+        }
+        return key.toString();
+    }
+
+    /** Requests that rendered while identical requests could join them. */
+    public long getLeaderCount() {
+        return leaders.get();
+    }
+
+    /** Requests that waited for an identical request. */
+    public long getCoalescedCount() {
+        return coalesced.get();
+    }
+
+    /** Waiting requests that had to render themselves after all. */
+    public long getFallbackCount() {
+        return fallbacks.get();
+    }
+
+    @Override
+    public void init(FilterConfig filterConfig) {
+    }
+
+    @Override
+    public void destroy() {
+    }
+
+    /**
+     * A response as sent by the leader: the calls that set its status and
+     * headers, in order, and its body.
+     */
+    private static final class RecordedResponse {
+
+        private final List<Consumer<SlingHttpServletResponse>> operations;
+
+        private final byte[] body;
+
+        RecordedResponse(final List<Consumer<SlingHttpServletResponse>> operations, final byte[] body) {
+            this.operations = operations;
+            this.body = body;
+        }
+
+        void replay(final SlingHttpServletResponse response) throws IOException {
+            for (final Consumer<SlingHttpServletResponse> operation : operations) {
+                operation.accept(response);
+            }
+            response.setContentLength(body.length);
+            response.getOutputStream().write(body);
+        }
+    }
+
+    /**
+     * Passes the response of the leader through while recording it. Body
+     * text is encoded by the wrapper itself, so writer and stream output end
+     * up in the same recorded bytes.
+     */
+    private static final class RecordingResponse extends SlingHttpServletResponseWrapper {
+
+        private final int maxBufferBytes;
+
+        private final List<Consumer<SlingHttpServletResponse>> operations = new ArrayList<>();
+
+        private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+
+        private boolean shareable = true;
+
+        private ServletOutputStream stream;
+
+        private PrintWriter writer;
+
+        RecordingResponse(final SlingHttpServletResponse response, final int maxBufferBytes) {
+            super(response);
+            this.maxBufferBytes = maxBufferBytes;
+        }
+
+        RecordedResponse getRecorded() {
+            return shareable ? new RecordedResponse(operations, body.toByteArray()) : null;
+        }
+
+        void flushWriter() {
+            if (writer != null) {
+                writer.flush();
+            }
+        }
+
+        @Override
+        public void setStatus(final int sc) {
+            operations.add(response -> response.setStatus(sc));
+            super.setStatus(sc);
+        }
+
+        @Override
+        @SuppressWarnings("deprecation")
+        public void setStatus(final int sc, final String sm) {
+            operations.add(response -> response.setStatus(sc, sm));
+            super.setStatus(sc, sm);
+        }
+
+        @Override
+        public void sendError(final int sc) throws IOException {
+            shareable = false;
+            super.sendError(sc);
+        }
+
+        @Override
+        public void sendError(final int sc, final String msg) throws IOException {
+            shareable = false;
+            super.sendError(sc, msg);
+        }
+
+        @Override
+        public void sendRedirect(final String location) throws IOException {
+            shareable = false;
+            super.sendRedirect(location);
+        }
+
+        @Override
+        public void addCookie(final Cookie cookie) {
+            shareable = false;
+            super.addCookie(cookie);
+        }
+
+        @Override
+        public void setHeader(final String name, final String value) {
+            checkCookie(name);
+            operations.add(response -> response.setHeader(name, value));
+            super.setHeader(name, value);
+        }
+
+        @Override
+        public void addHeader(final String name, final String value) {
+            checkCookie(name);
+            operations.add(response -> response.addHeader(name, value));
+            super.addHeader(name, value);
+        }
+
+        @Override
+        public void setIntHeader(final String name, final int value) {
+            operations.add(response -> response.setIntHeader(name, value));
+            super.setIntHeader(name, value);
+        }
+
+        @Override
+        public void addIntHeader(final String name, final int value) {
+            operations.add(response -> response.addIntHeader(name, value));
+            super.addIntHeader(name, value);
+        }
+
+        @Override
+        public void setDateHeader(final String name, final long date) {
+            operations.add(response -> response.setDateHeader(name, date));
+            super.setDateHeader(name, date);
+        }
+
+        @Override
+        public void addDateHeader(final String name, final long date) {
+            operations.add(response -> response.addDateHeader(name, date));
+            super.addDateHeader(name, date);
+        }
+
+        @Override
+        public void setContentType(final String type) {
+            operations.add(response -> response.setContentType(type));
+            super.setContentType(type);
+        }
+
+        @Override
+        public void setCharacterEncoding(final String charset) {
+            operations.add(response -> response.setCharacterEncoding(charset));
+            super.setCharacterEncoding(charset);
+        }
+
+        private void checkCookie(final String name) {
+            if ("Set-Cookie".equalsIgnoreCase(name)) {
+                shareable = false;
+            }
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() throws IOException {
+            if (stream == null) {
+                stream = new RecordingOutputStream(super.getOutputStream());
+            }
+            return stream;
+        }
+
+        @Override
+        public PrintWriter getWriter() throws IOException {
+            if (writer == null) {
+                final String charset = getCharacterEncoding();
+                writer = new PrintWriter(new OutputStreamWriter(getOutputStream(),
+                        charset != null ? charset : StandardCharsets.ISO_8859_1.name()));
+            }
+            return writer;
+        }
+
+        @Override
+        public void flushBuffer() throws IOException {
+            flushWriter();
+            super.flushBuffer();
+        }
+
+        private final class RecordingOutputStream extends ServletOutputStream {
+
+            private final ServletOutputStream target;
+
+            RecordingOutputStream(final ServletOutputStream target) {
+                this.target = target;
+            }
+
+            @Override
+            public void write(final int b) throws IOException {
+                target.write(b);
+                if (shareable && reserve(1)) {
+                    body.write(b);
+                }
+            }
+
+            @Override
+            public void write(final byte[] b, final int off, final int len) throws IOException {
+                target.write(b, off, len);
+                if (shareable && reserve(len)) {
+                    body.write(b, off, len);
+                }
+            }
+
+            private boolean reserve(final int len) {
+                if (body.size() + len > maxBufferBytes) {
+                    shareable = false;
+                    body.reset();
+                }
+                return shareable;
+            }
+
+            @Override
+            public void flush() throws IOException {
+                target.flush();
+            }
+
+            @Override
+            public boolean isReady() {
+                return target.isReady();
+            }
+
+            @Override
+            public void setWriteListener(final WriteListener writeListener) {
+                target.setWriteListener(writeListener);
+            }
+        }
+    }
+}
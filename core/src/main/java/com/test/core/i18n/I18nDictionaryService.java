@@ -0,0 +1,470 @@
+package com.test.core.i18n;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.json.Json;
+import javax.json.JsonException;
+import javax.json.stream.JsonParser;
+import javax.json.stream.JsonParsingException;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.sling.api.resource.LoginException;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ResourceResolverFactory;
+import org.apache.sling.api.resource.ResourceUtil;
+import org.apache.sling.api.resource.ValueMap;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
+import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.component.propertytypes.ServiceDescription;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.day.cq.commons.jcr.JcrConstants;
+import com.test.core.listeners.SimpleResourceListener;
+import com.test.core.listeners.SubtreeInvalidationListener;
+
+/**
+ * Holds the i18n dictionaries of the site in memory, compiled into one
+ * {@link MessageTable} per locale, so a message is looked up without going
+ * through the resource bundles of Sling.
+ * <p>
+ * The dictionaries are the resources with a {@code jcr:language} property
+ * below the dictionary roots: JSON files of keys and messages, and folders of
+ * {@code sling:Message} entries with a {@code sling:key}, or else their name,
+ * and a {@code sling:message}. The table of a locale with a country, such as
+ * {@code fr_CA}, holds the messages of its language too, so a lookup never
+ * falls through to another table. Dictionaries of the same locale are merged
+ * in the order of their paths.
+ * <p>
+ * All dictionaries are read on activation on a background thread. As the
+ * {@link SimpleResourceListener} reports changed subtrees, only the changed
+ * dictionaries are read again and only the tables of their locales, and of
+ * the locales with a country of a changed language, are compiled again. The
+ * compiled tables are immutable and replaced as a whole, so lookups never
+ * wait for an update.
+ */
+@Designate(ocd = I18nDictionaryService.Config.class)
+@Component(service = { I18nDictionaryService.class, SubtreeInvalidationListener.class })
+@ServiceDescription("Precompiled i18n dictionaries")
+public class I18nDictionaryService implements SubtreeInvalidationListener {
+
+    @ObjectClassDefinition(name = "I18n dictionary service",
+                           description = "Memory-resident i18n dictionaries of the site")
+    public static @interface Config {
+
+        @AttributeDefinition(name = "Dictionary roots",
+                             description = "Dictionaries at or below these paths are compiled")
+        String[] dictionary_roots() default { "/apps/test/i18n" };
+    }
+
+    /** Subservice mapped to a service user that can read the dictionary roots. */
+    static final String SUBSERVICE = "i18n";
+
+    static final String PN_LANGUAGE = JcrConstants.JCR_LANGUAGE;
+
+    static final String PN_KEY = "sling:key";
+
+    static final String PN_MESSAGE = "sling:message";
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    @Reference
+    private ResourceResolverFactory resolverFactory;
+
+    private String[] dictionaryRoots;
+
+    private volatile Tables tables = new Tables(Collections.emptyMap(), Collections.emptyMap());
+
+    private ExecutorService executor;
+
+    private final AtomicLong updates = new AtomicLong();
+
+    @Activate
+    protected void activate(final Config config) {
+        dictionaryRoots = config.dictionary_roots();
+        executor = Executors.newSingleThreadExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "I18nDictionaryService");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.execute(this::rebuild);
+    }
+
+    @Deactivate
+    protected void deactivate() throws InterruptedException {
+        executor.shutdown();
+        if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Returns the messages of the locale, else those of its language, else
+     * an empty table.
+     */
+    public MessageTable getMessages(final Locale locale) {
+        if (locale == null) {
+            return MessageTable.EMPTY;
+        }
+        final Map<String, MessageTable> byLocale = tables.byLocale;
+        MessageTable table = byLocale.get(locale.toString());
+        if (table == null) {
+            table = byLocale.get(locale.getLanguage());
+        }
+        return table != null ? table : MessageTable.EMPTY;
+    }
+
+    /**
+     * Returns the message of the key in the locale, or the key itself if it
+     * is not translated.
+     */
+    public String translate(final String key, final Locale locale) {
+        return getMessages(locale).translate(key);
+    }
+
+    @Override
+    public void invalidateSubtrees(final Collection<String> roots) {
+        final List<String> relevant = new ArrayList<>();
+        for (final String root : roots) {
+            for (final String dictionaryRoot : dictionaryRoots) {
+                if (isAtOrBelow(root, dictionaryRoot) || isAtOrBelow(dictionaryRoot, root)) {
+                    relevant.add(root);
+                    break;
+                }
+            }
+        }
+        if (!relevant.isEmpty()) {
+            executor.execute(() -> update(relevant));
+        }
+    }
+
+    /**
+     * Waits until the changes submitted so far are applied.
+     */
+    void awaitPending() throws InterruptedException, ExecutionException {
+        executor.submit(() -> { }).get();
+    }
+
+    /** Compiled dictionaries. */
+    public int getDictionaryCount() {
+        return tables.sources.size();
+    }
+
+    /** Locales with a message table. */
+    public int getLocaleCount() {
+        return tables.byLocale.size();
+    }
+
+    /** Incremental updates applied since activation. */
+    public long getUpdateCount() {
+        return updates.get();
+    }
+
+    /**
+     * Reads all dictionaries and replaces the tables.
+     */
+    private void rebuild() {
+        final long start = System.nanoTime();
+        final Map<String, Dictionary> sources = new TreeMap<>();
+        try (ResourceResolver resolver = login()) {
+            for (final String dictionaryRoot : dictionaryRoots) {
+                final Resource resource = resolver.getResource(dictionaryRoot);
+                if (resource != null) {
+                    collect(resource, sources);
+                }
+            }
+        } catch (LoginException e) {
+            logger.error("Cannot read the i18n dictionaries", e);
+            return;
+        }
+        final Tables rebuilt = new Tables(sources, compile(sources, localesOf(sources.values()),
+                Collections.emptyMap()));
+        tables = rebuilt;
+        if (sources.isEmpty()) {
+            logger.warn("Found no i18n dictionaries below {}, check that the user of the {} subservice can read them",
+                    Arrays.toString(dictionaryRoots), SUBSERVICE);
+        } else {
+            logger.info("Compiled {} i18n dictionaries into {} locales in {} ms", sources.size(),
+                    rebuilt.byLocale.size(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        }
+    }
+
+    /**
+     * Reads the dictionaries of the changed subtrees again and compiles the
+     * tables of their locales.
+     */
+    private void update(final Collection<String> roots) {
+        for (final String root : roots) {
+            for (final String dictionaryRoot : dictionaryRoots) {
+                if (isAtOrBelow(dictionaryRoot, root)) {
+                    rebuild();
+                    return;
+                }
+            }
+        }
+        final Tables current = tables;
+        final Map<String, Dictionary> sources = new TreeMap<>(current.sources);
+        final Set<String> locales = new HashSet<>();
+        try (ResourceResolver resolver = login()) {
+            for (final String root : roots) {
+                for (final Iterator<Dictionary> it = sources.values().iterator(); it.hasNext(); ) {
+                    final Dictionary dictionary = it.next();
+                    if (isAtOrBelow(dictionary.path, root) || isAtOrBelow(root, dictionary.path)) {
+                        locales.add(dictionary.locale);
+                        it.remove();
+                    }
+                }
+                final Map<String, Dictionary> read = new TreeMap<>();
+                final Resource dictionary = findDictionary(resolver, root);
+                if (dictionary != null) {
+                    read.put(dictionary.getPath(), read(dictionary));
+                } else {
+                    final Resource resource = resolver.getResource(root);
+                    if (resource != null) {
+                        collect(resource, read);
+                    }
+                }
+                locales.addAll(localesOf(read.values()));
+                sources.putAll(read);
+            }
+        } catch (LoginException e) {
+            logger.error("Cannot update the i18n dictionaries for {}", roots, e);
+            return;
+        }
+        tables = new Tables(sources, compile(sources, locales, current.byLocale));
+        updates.incrementAndGet();
+        logger.debug("Compiled the i18n dictionaries of {} again", locales);
+    }
+
+    /**
+     * Returns the dictionary at or above the path, below a dictionary root.
+     */
+    private Resource findDictionary(final ResourceResolver resolver, final String path) {
+        for (String current = path; current != null && !isDictionaryRoot(current);
+             current = ResourceUtil.getParent(current)) {
+            final Resource resource = resolver.getResource(current);
+            if (resource != null && isDictionary(resource)) {
+                return resource;
+            }
+        }
+        return null;
+    }
+
+    private boolean isDictionaryRoot(final String path) {
+        for (final String dictionaryRoot : dictionaryRoots) {
+            if (isAtOrBelow(dictionaryRoot, path)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void collect(final Resource resource, final Map<String, Dictionary> target) {
+        if (isDictionary(resource)) {
+            target.put(resource.getPath(), read(resource));
+            return;
+        }
+        for (final Resource child : resource.getChildren()) {
+            if (!JcrConstants.JCR_CONTENT.equals(child.getName())) {
+                collect(child, target);
+            }
+        }
+    }
+
+    private static boolean isDictionary(final Resource resource) {
+        return StringUtils.isNotBlank(resource.getValueMap().get(PN_LANGUAGE, String.class));
+    }
+
+    /**
+     * Reads the messages of a JSON file or of the message entries of a
+     * folder.
+     */
+    private Dictionary read(final Resource resource) {
+        final ValueMap properties = resource.getValueMap();
+        final String locale = normalize(properties.get(PN_LANGUAGE, String.class));
+        final Map<String, String> messages = new LinkedHashMap<>();
+        if (JcrConstants.NT_FILE.equals(properties.get(JcrConstants.JCR_PRIMARYTYPE, String.class))) {
+            readJson(resource, messages);
+        } else {
+            for (final Resource entry : resource.getChildren()) {
+                final ValueMap entryProperties = entry.getValueMap();
+                final String message = entryProperties.get(PN_MESSAGE, String.class);
+                if (message != null) {
+                    messages.put(entryProperties.get(PN_KEY, entry.getName()), message);
+                }
+            }
+        }
+        return new Dictionary(resource.getPath(), locale, messages);
+    }
+
+    private void readJson(final Resource resource, final Map<String, String> messages) {
+        final InputStream stream = resource.adaptTo(InputStream.class);
+        if (stream == null) {
+            logger.warn("Cannot read the i18n dictionary {}", resource.getPath());
+            return;
+        }
+        try (JsonParser parser = Json.createParser(stream)) {
+            if (!parser.hasNext() || parser.next() != JsonParser.Event.START_OBJECT) {
+                logger.warn("The i18n dictionary {} is not a JSON object", resource.getPath());
+                return;
+            }
+            while (parser.hasNext() && parser.next() == JsonParser.Event.KEY_NAME) {
+                final String key = parser.getString();
+                final JsonParser.Event value = parser.next();
+                if (value == JsonParser.Event.VALUE_STRING) {
+                    messages.put(key, parser.getString());
+                } else if (value == JsonParser.Event.START_OBJECT || value == JsonParser.Event.START_ARRAY) {
+                    skip(parser);
+                }
+            }
+        } catch (JsonParsingException e) {
+            logger.warn("Cannot parse the i18n dictionary {}", resource.getPath(), e);
+        } catch (JsonException e) {
+            logger.warn("Cannot read the i18n dictionary {}", resource.getPath(), e);
+        }
+    }
+
+    /**
+     * Skips the rest of the object or array just started.
+     */
+    private static void skip(final JsonParser parser) {
+        int depth = 1;
+        while (depth > 0 && parser.hasNext()) {
+            final JsonParser.Event event = parser.next();
+            if (event == JsonParser.Event.START_OBJECT || event == JsonParser.Event.START_ARRAY) {
+                depth++;
+            } else if (event == JsonParser.Event.END_OBJECT || event == JsonParser.Event.END_ARRAY) {
+                depth--;
+            }
+        }
+    }
+
+    /**
+     * Compiles the tables of the changed locales and of the locales with a
+     * country of the changed languages, and keeps the other tables.
+     */
+    private static Map<String, MessageTable> compile(final Map<String, Dictionary> sources,
+                                                     final Set<String> changed,
+                                                     final Map<String, MessageTable> current) {
+        final Map<String, MessageTable> byLocale = new HashMap<>();
+        for (final Map.Entry<String, MessageTable> entry : current.entrySet()) {
+            if (!isChanged(entry.getKey(), changed)) {
+                byLocale.put(entry.getKey(), entry.getValue());
+            }
+        }
+        final Map<String, Map<String, String>> messages = new HashMap<>();
+        for (final Dictionary dictionary : sources.values()) {
+            messages.computeIfAbsent(dictionary.locale, locale -> new HashMap<>()).putAll(dictionary.messages);
+        }
+        for (final Map.Entry<String, Map<String, String>> entry : messages.entrySet()) {
+            final String locale = entry.getKey();
+            if (!isChanged(locale, changed)) {
+                continue;
+            }
+            final String language = languageOf(locale);
+            final Map<String, String> merged;
+            if (!language.equals(locale) && messages.containsKey(language)) {
+                merged = new HashMap<>(messages.get(language));
+                merged.putAll(entry.getValue());
+            } else {
+                merged = entry.getValue();
+            }
+            byLocale.put(locale, MessageTable.of(merged));
+        }
+        return Collections.unmodifiableMap(byLocale);
+    }
+
+    private static boolean isChanged(final String locale, final Set<String> changed) {
+        return changed.contains(locale) || changed.contains(languageOf(locale));
+    }
+
+    private static Set<String> localesOf(final Collection<Dictionary> dictionaries) {
+        final Set<String> locales = new HashSet<>();
+        for (final Dictionary dictionary : dictionaries) {
+            locales.add(dictionary.locale);
+        }
+        return locales;
+    }
+
+    /**
+     * Returns the locale in the form of {@link Locale#toString()}, so
+     * {@code fr-ca} becomes {@code fr_CA}.
+     */
+    static String normalize(final String language) {
+        final String[] parts = language.trim().replace('-', '_').split("_", 2);
+        return parts.length == 1 ? parts[0].toLowerCase(Locale.ROOT)
+                : parts[0].toLowerCase(Locale.ROOT) + "_" + parts[1].toUpperCase(Locale.ROOT);
+    }
+
+    private static String languageOf(final String locale) {
+        final int separator = locale.indexOf('_');
+        return separator < 0 ? locale : locale.substring(0, separator);
+    }
+
+    private ResourceResolver login() throws LoginException {
+        return resolverFactory.getServiceResourceResolver(
+                Collections.singletonMap(ResourceResolverFactory.SUBSERVICE, SUBSERVICE));
+    }
+
+    private static boolean isAtOrBelow(final String path, final String root) {
+        return path.equals(root) || path.startsWith(root.endsWith("/") ? root : root + "/");
+    }
+
+    /**
+     * The messages of one dictionary resource.
+     */
+    private static final class Dictionary {
+
+        private final String path;
+
+        private final String locale;
+
+        private final Map<String, String> messages;
+
+        Dictionary(final String path, final String locale, final Map<String, String> messages) {
+            this.path = path;
+            this.locale = locale;
+            this.messages = messages;
+        }
+    }
+
+    /**
+     * The dictionaries by path and the compiled tables by locale. Never
+     * changed once published.
+     */
+    private static final class Tables {
+
+        private final Map<String, Dictionary> sources;
+
+        private final Map<String, MessageTable> byLocale;
+
+        Tables(final Map<String, Dictionary> sources, final Map<String, MessageTable> byLocale) {
+            this.sources = sources;
+            this.byLocale = byLocale;
+        }
+    }
+}
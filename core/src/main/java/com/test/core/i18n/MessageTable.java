@@ -0,0 +1,161 @@
+package com.test.core.i18n;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Immutable table of the messages of one locale, keyed by their untranslated
+ * text.
+ * <p>
+ * The messages are kept in an open-addressing hash table of parallel arrays
+ * at most half full, with the hash codes of the keys, so a lookup is a few
+ * array reads and usually a single {@code equals} call. The table is a
+ * read-only {@link Map}, so HTL can look messages up by key directly.
+ */
+public final class MessageTable extends AbstractMap<String, String> {
+
+    /** A table without messages. */
+    public static final MessageTable EMPTY = new MessageTable(new String[1], new String[1], new int[1], 0);
+
+    private final String[] keys;
+
+    private final String[] values;
+
+    private final int[] hashes;
+
+    private final int size;
+
+    private final int mask;
+
+    private MessageTable(final String[] keys, final String[] values, final int[] hashes, final int size) {
+        this.keys = keys;
+        this.values = values;
+        this.hashes = hashes;
+        this.size = size;
+        this.mask = keys.length - 1;
+    }
+
+    /**
+     * Returns a table of the given messages. Entries with a {@code null} key
+     * or message are left out.
+     */
+    public static MessageTable of(final Map<String, String> messages) {
+        int capacity = 2;
+        while (capacity < messages.size() * 2) {
+            capacity <<= 1;
+        }
+        final String[] keys = new String[capacity];
+        final String[] values = new String[capacity];
+        final int[] hashes = new int[capacity];
+        final int mask = capacity - 1;
+        int size = 0;
+        for (final Map.Entry<String, String> entry : messages.entrySet()) {
+            if (entry.getKey() == null || entry.getValue() == null) {
+                continue;
+            }
+            final int hash = spread(entry.getKey().hashCode());
+            int index = hash & mask;
+            while (keys[index] != null) {
+                index = (index + 1) & mask;
+            }
+            keys[index] = entry.getKey();
+            values[index] = entry.getValue();
+            hashes[index] = hash;
+            size++;
+        }
+        return size == 0 ? EMPTY : new MessageTable(keys, values, hashes, size);
+    }
+
+    /**
+     * Returns the message of the key, or {@code null} if there is none.
+     */
+    @Override
+    public String get(final Object key) {
+        if (!(key instanceof String)) {
+            return null;
+        }
+        final int hash = spread(key.hashCode());
+        int index = hash & mask;
+        String candidate;
+        while ((candidate = keys[index]) != null) {
+            if (hashes[index] == hash && candidate.equals(key)) {
+                return values[index];
+            }
+            index = (index + 1) & mask;
+        }
+        return null;
+    }
+
+    /**
+     * Returns the message of the key, or the key itself if it is not
+     * translated.
+     */
+    public String translate(final String key) {
+        final String message = get(key);
+        return message != null ? message : key;
+    }
+
+    @Override
+    public boolean containsKey(final Object key) {
+        return get(key) != null;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Set<Entry<String, String>> entrySet() {
+        return new AbstractSet<Entry<String, String>>() {
+
+            @Override
+            public Iterator<Entry<String, String>> iterator() {
+                return new Iterator<Entry<String, String>>() {
+
+                    private int index = advance(0);
+
+                    @Override
+                    public boolean hasNext() {
+                        return index < keys.length;
+                    }
+
+                    @Override
+                    public Entry<String, String> next() {
+                        if (!hasNext()) {
+                            throw new NoSuchElementException();
+                        }
+                        final Entry<String, String> entry = new SimpleImmutableEntry<>(keys[index], values[index]);
+                        index = advance(index + 1);
+                        return entry;
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    private int advance(final int from) {
+        int index = from;
+        while (index < keys.length && keys[index] == null) {
+            index++;
+        }
+        return index;
+    }
+
+    /**
+     * Spreads the higher bits of the hash code to the lower ones, which
+     * select the slot.
+     */
+    private static int spread(final int hashCode) {
+        return hashCode ^ (hashCode >>> 16);
+    }
+}
@@ -0,0 +1,20 @@
+package com.test.core.listeners;
+
+/**
+ * What {@link SimpleResourceListener} does with an event that arrives while
+ * its queue is full.
+ */
+public enum BackpressurePolicy {
+
+    /** Discards the incoming event, its parent path is reported as changed instead. */
+    DROP_NEWEST,
+
+    /**
+     * Discards the oldest queued event to make room for the incoming one, its
+     * parent path is reported as changed instead.
+     */
+    DROP_OLDEST,
+
+    /** Handles the incoming event synchronously on the event admin thread. */
+    CALLER_RUNS
+}
@@ -0,0 +1,189 @@
+package com.test.core.listeners;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Trie of changed repository paths keyed on path segments, which collapses a
+ * burst of changes into the roots of the changed subtrees. Adding a path that
+ * lies below an already changed path is a no-op, and adding an ancestor of
+ * changed paths replaces them.
+ * <p>
+ * The footprint is bounded in two ways: a node with more children
+ * than the fan-out limit is marked changed itself, and when the trie grows
+ * beyond the node limit its deepest level is folded into its parents. Both
+ * only make the reported subtrees coarser, never miss a change.
+ * <p>
+ * Instances are not thread safe.
+ */
+public final class ChangedPathIndex {
+
+    private final int maxNodes;
+
+    private final int maxChildren;
+
+    private Node root = new Node();
+
+    private int nodeCount = 1;
+
+    /**
+     * @param maxNodes    the maximum number of trie nodes kept
+     * @param maxChildren the number of children above which their
+     *                    parent is reported as changed instead
+     */
+    public ChangedPathIndex(final int maxNodes, final int maxChildren) {
+        if (maxNodes <= 0 || maxChildren <= 0) {
+            throw new IllegalArgumentException("Limits must be positive: " + maxNodes + ", " + maxChildren);
+        }
+        this.maxNodes = maxNodes;
+        this.maxChildren = maxChildren;
+    }
+
+    /**
+     * Records a change at the given absolute path, returns {@code false} if
+     * it was already covered by a changed ancestor.
+     */
+    public boolean add(final String path) {
+        Node parent = null;
+        Node node = root;
+        int start = 1;
+        while (!node.changed && start < path.length()) {
+            int end = path.indexOf('/', start);
+            if (end < 0) {
+                end = path.length();
+            }
+            if (end > start) {
+                final String name = path.substring(start, end);
+                parent = node;
+                node = parent.child(name);
+                if (node == null) {
+                    node = parent.addChild(name);
+                    nodeCount++;
+                }
+            }
+            start = end + 1;
+        }
+        if (node.changed) {
+            return false;
+        }
+        markChanged(node);
+        if (parent != null && parent.children.size() > maxChildren) {
+            markChanged(parent);
+        }
+        if (nodeCount > maxNodes) {
+            shrink();
+        }
+        return true;
+    }
+
+    /**
+     * Returns the roots of all changed subtrees in depth-first order and
+     * empties the index.
+     */
+    public List<String> drain() {
+        final List<String> roots = new ArrayList<>();
+        if (root.changed) {
+            roots.add("/");
+        } else {
+            collect(root, new StringBuilder(), roots);
+        }
+        root = new Node();
+        nodeCount = 1;
+        return roots;
+    }
+
+    public boolean isEmpty() {
+        return !root.changed && root.children == null;
+    }
+
+    int nodeCount() {
+        return nodeCount;
+    }
+
+    private void markChanged(final Node node) {
+        nodeCount -= node.descendantCount();
+        node.changed = true;
+        node.children = null;
+    }
+
+    /**
+     * Folds the deepest levels into their parents until the node limit is
+     * met again.
+     */
+    private void shrink() {
+        for (int depth = root.height() - 1; depth >= 0 && nodeCount > maxNodes; depth--) {
+            collapse(root, depth);
+        }
+    }
+
+    private void collapse(final Node node, final int depth) {
+        if (node.children == null) {
+            return;
+        }
+        if (depth == 0) {
+            markChanged(node);
+            return;
+        }
+        for (final Node child : node.children.values()) {
+            collapse(child, depth - 1);
+        }
+    }
+
+    private static void collect(final Node node, final StringBuilder path, final List<String> roots) {
+        if (node.children == null) {
+            return;
+        }
+        final int length = path.length();
+        for (final Map.Entry<String, Node> entry : node.children.entrySet()) {
+            path.append('/').append(entry.getKey());
+            if (entry.getValue().changed) {
+                roots.add(path.toString());
+            } else {
+                collect(entry.getValue(), path, roots);
+            }
+            path.setLength(length);
+        }
+    }
+
+    private static final class Node {
+
+        private Map<String, Node> children;
+
+        private boolean changed;
+
+        Node child(final String name) {
+            return children != null ? children.get(name) : null;
+        }
+
+        Node addChild(final String name) {
+            if (children == null) {
+                children = new HashMap<>(4);
+            }
+            final Node child = new Node();
+            children.put(name, child);
+            return child;
+        }
+
+        int descendantCount() {
+            int count = 0;
+            if (children != null) {
+                for (final Node child : children.values()) {
+                    count += 1 + child.descendantCount();
+                }
+            }
+            return count;
+        }
+
+        int height() {
+            int height = 0;
+            if (children != null) {
+                for (final Node child : children.values()) {
+                    height = Math.max(height, 1 + child.height());
+                }
+            }
+            return height;
+        }
+    }
+}
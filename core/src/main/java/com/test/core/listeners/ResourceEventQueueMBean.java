@@ -0,0 +1,37 @@
+package com.test.core.listeners;
+
+import com.adobe.granite.jmx.annotation.Description;
+
+/**
+ * JMX view of the event queue of the {@link SimpleResourceListener}.
+ */
+@Description("Queue of resource events waiting for the SimpleResourceListener worker")
+public interface ResourceEventQueueMBean {
+
+    @Description("Events currently waiting in the queue")
+    int getQueueDepth();
+
+    @Description("Maximum number of queued events")
+    int getQueueCapacity();
+
+    @Description("Policy applied when the queue is full")
+    String getBackpressurePolicy();
+
+    @Description("Events discarded because the queue was full")
+    long getDroppedEvents();
+
+    @Description("Events merged into a later event for the same path")
+    long getCoalescedEvents();
+
+    @Description("Events handled on the event admin thread because the queue was full")
+    long getCallerRunsEvents();
+
+    @Description("Batches handled by the worker")
+    long getBatchCount();
+
+    @Description("Mean number of distinct paths per batch")
+    double getMeanBatchSize();
+
+    @Description("Largest number of distinct paths in one batch")
+    long getMaxBatchSize();
+}
@@ -0,0 +1,72 @@
+package com.test.core.listeners;
+
+import javax.management.DynamicMBean;
+import javax.management.NotCompliantMBeanException;
+
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Reference;
+
+import com.adobe.granite.jmx.annotation.AnnotatedStandardMBean;
+
+/**
+ * Registers the event queue metrics of the {@link SimpleResourceListener}
+ * with the JMX whiteboard.
+ */
+@Component(service = DynamicMBean.class,
+           property = {
+                   "jmx.objectname=com.test.core:type=ResourceEventQueue"
+           })
+public class ResourceEventQueueMBeanImpl extends AnnotatedStandardMBean implements ResourceEventQueueMBean {
+
+    @Reference
+    private SimpleResourceListener listener;
+
+    public ResourceEventQueueMBeanImpl() throws NotCompliantMBeanException {
+        super(ResourceEventQueueMBean.class);
+    }
+
+    @Override
+    public int getQueueDepth() {
+        return listener.getQueueDepth();
+    }
+
+    @Override
+    public int getQueueCapacity() {
+        return listener.getQueueCapacity();
+    }
+
+    @Override
+    public String getBackpressurePolicy() {
+        return listener.getBackpressurePolicy().name();
+    }
+
+    @Override
+    public long getDroppedEvents() {
+        return listener.getDroppedEvents();
+    }
+
+    @Override
+    public long getCoalescedEvents() {
+        return listener.getCoalescedEvents();
+    }
+
+    @Override
+    public long getCallerRunsEvents() {
+        return listener.getCallerRunsEvents();
+    }
+
+    @Override
+    public long getBatchCount() {
+        return listener.getBatchSizes().getCount();
+    }
+
+    @Override
+    public double getMeanBatchSize() {
+        return listener.getBatchSizes().getMean();
+    }
+
+    @Override
+    public long getMaxBatchSize() {
+        return listener.getBatchSizes().getMax();
+    }
+}
@@ -15,15 +15,43 @@
  */
 package com.test.core.listeners;
 
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
 import org.apache.sling.api.SlingConstants;
+import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
+import org.osgi.service.component.annotations.FieldOption;
+import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.component.annotations.ReferenceCardinality;
+import org.osgi.service.component.annotations.ReferencePolicy;
 import org.osgi.service.component.propertytypes.ServiceDescription;
 import org.osgi.service.event.Event;
 import org.osgi.service.event.EventConstants;
 import org.osgi.service.event.EventHandler;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.test.core.metrics.HistogramSnapshot;
+import com.test.core.metrics.StripedHistogram;
+
 /**
  * A service to demonstrate how changes in the resource tree
  * can be listened for. It registers an event handler service.
@@ -31,8 +59,21 @@ import org.slf4j.LoggerFactory;
  * started through the immediate flag.
  * Please note, that apart from EventHandler services,
  * the immediate flag should not be set on a service.
+ * <p>
+ * Events are not handled on the event admin thread. They are put on a
+ * bounded, lock-free queue and a worker thread drains it once per coalescing
+ * window, keeping only the last event per path. When the queue is full the
+ * configured {@link BackpressurePolicy} applies. The change of a dropped
+ * event is not lost: the parent of its path is reported as changed with the
+ * next batch, or the whole tree once too many distinct parents were dropped.
+ * Queue metrics are available through the {@link ResourceEventQueueMBean}.
+ * <p>
+ * The paths of each batch are collapsed in a {@link ChangedPathIndex}, and
+ * every {@link SubtreeInvalidationListener} is then called once with the
+ * roots of the changed subtrees.
  */
-@Component(service = EventHandler.class,
+@Designate(ocd = SimpleResourceListener.Config.class)
+@Component(service = { EventHandler.class, SimpleResourceListener.class },
            immediate = true,
            property = {
                    EventConstants.EVENT_TOPIC + "=org/apache/sling/api/resource/Resource/*"
@@ -40,10 +81,288 @@ import org.slf4j.LoggerFactory;
 @ServiceDescription("Demo to listen on changes in the resource tree")
 public class SimpleResourceListener implements EventHandler {
 
+    @ObjectClassDefinition(name = "Simple resource listener",
+                           description = "Queueing and batching of resource events")
+    public static @interface Config {
+
+        @AttributeDefinition(name = "Queue capacity",
+                             description = "Maximum number of events waiting for the worker")
+        int queue_capacity() default 10000;
+
+        @AttributeDefinition(name = "Coalescing window",
+                             description = "Milliseconds the worker waits after the first queued event, "
+                                     + "events for the same path within this window are handled once")
+        long coalesce_window_ms() default 500;
+
+        @AttributeDefinition(name = "Maximum batch size",
+                             description = "Number of queued events after which the worker does not wait "
+                                     + "for the window to end")
+        int max_batch_size() default 1000;
+
+        @AttributeDefinition(name = "Backpressure policy",
+                             description = "What happens to events that arrive while the queue is full")
+        BackpressurePolicy backpressure_policy() default BackpressurePolicy.DROP_OLDEST;
+
+        @AttributeDefinition(name = "Path index nodes",
+                             description = "Maximum number of path segments kept per batch, deeper levels are "
+                                     + "folded into their parents beyond that")
+        int index_max_nodes() default 10000;
+
+        @AttributeDefinition(name = "Path index fan-out",
+                             description = "Number of changed child nodes above which the whole parent "
+                                     + "subtree is invalidated instead")
+        int index_max_children() default 256;
+    }
+
+    /** Distinct parents of dropped events kept before the whole tree is reported as changed. */
+    static final int MAX_DROPPED_ROOTS = 1024;
+
     private final Logger logger = LoggerFactory.getLogger(getClass());
 
+    private final ConcurrentLinkedQueue<Event> queue = new ConcurrentLinkedQueue<>();
+
+    /** Size of the queue, {@link ConcurrentLinkedQueue#size()} is not constant time. */
+    private final AtomicInteger depth = new AtomicInteger();
+
+    private final AtomicLong dropped = new AtomicLong();
+
+    /** Parents of the paths of dropped events, reported with the next batch. */
+    private final Set<String> droppedRoots = ConcurrentHashMap.newKeySet();
+
+    /** Whether more parents were dropped than kept, reported as a change of the whole tree. */
+    private final AtomicBoolean droppedAll = new AtomicBoolean();
+
+    private final AtomicLong coalesced = new AtomicLong();
+
+    private final AtomicLong callerRuns = new AtomicLong();
+
+    /** Only recorded by the worker thread. */
+    private final StripedHistogram batchSizes = new StripedHistogram(1);
+
+    private int capacity;
+
+    private long windowNanos;
+
+    private int maxBatchSize;
+
+    private BackpressurePolicy policy = BackpressurePolicy.CALLER_RUNS;
+
+    private ChangedPathIndex index;
+
+    @Reference(service = SubtreeInvalidationListener.class,
+               cardinality = ReferenceCardinality.MULTIPLE,
+               policy = ReferencePolicy.DYNAMIC,
+               fieldOption = FieldOption.UPDATE)
+    private final List<SubtreeInvalidationListener> invalidationListeners = new CopyOnWriteArrayList<>();
+
+    private volatile boolean running;
+
+    /** {@code null} until activated, events are then handled synchronously. */
+    private volatile Thread worker;
+
+    @Activate
+    protected void activate(final Config config) {
+        capacity = Math.max(1, config.queue_capacity());
+        windowNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, config.coalesce_window_ms()));
+        maxBatchSize = Math.max(1, config.max_batch_size());
+        policy = config.backpressure_policy();
+        index = new ChangedPathIndex(Math.max(1, config.index_max_nodes()), Math.max(1, config.index_max_children()));
+        running = true;
+        final Thread thread = new Thread(this::run, "SimpleResourceListener worker");
+        thread.setDaemon(true);
+        worker = thread;
+        thread.start();
+    }
+
+    @Deactivate
+    protected void deactivate() throws InterruptedException {
+        final Thread thread = worker;
+        running = false;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+            thread.join(TimeUnit.SECONDS.toMillis(10));
+            worker = null;
+        }
+    }
+
     public void handleEvent(final Event event) {
-        logger.debug("Resource event: {} at: {}", event.getTopic(), event.getProperty(SlingConstants.PROPERTY_PATH));
+        final Thread thread = worker;
+        if (thread == null) {
+            handle(event);
+            return;
+        }
+        final int size = depth.incrementAndGet();
+        if (size > capacity) {
+            switch (policy) {
+                case DROP_NEWEST:
+                    depth.decrementAndGet();
+                    dropped(event);
+                    return;
+                case DROP_OLDEST:
+                    final Event oldest = queue.poll();
+                    if (oldest != null) {
+                        depth.decrementAndGet();
+                        dropped(oldest);
+                    }
+                    break;
+                default:
+                    depth.decrementAndGet();
+                    callerRuns.incrementAndGet();
+                    handle(event);
+                    return;
+            }
+        }
+        queue.offer(event);
+        if (size == 1 || size == maxBatchSize) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    /**
+     * Remembers the parent of the path of a dropped event, so the change is
+     * still reported, if more coarsely.
+     */
+    private void dropped(final Event event) {
+        dropped.incrementAndGet();
+        final Object path = event.getProperty(SlingConstants.PROPERTY_PATH);
+        if (!(path instanceof String)) {
+            return;
+        }
+        final String changed = (String) path;
+        final int slash = changed.lastIndexOf('/');
+        final String parent = slash > 0 ? changed.substring(0, slash) : "/";
+        if (droppedRoots.size() >= MAX_DROPPED_ROOTS) {
+            droppedAll.set(true);
+        } else {
+            droppedRoots.add(parent);
+        }
+    }
+
+    public int getQueueDepth() {
+        return depth.get();
+    }
+
+    public int getQueueCapacity() {
+        return capacity;
+    }
+
+    public BackpressurePolicy getBackpressurePolicy() {
+        return policy;
+    }
+
+    public long getDroppedEvents() {
+        return dropped.get();
+    }
+
+    public long getCoalescedEvents() {
+        return coalesced.get();
     }
-}
 
+    public long getCallerRunsEvents() {
+        return callerRuns.get();
+    }
+
+    /**
+     * Returns the distribution of the number of distinct paths per batch.
+     */
+    public HistogramSnapshot getBatchSizes() {
+        return batchSizes.snapshot();
+    }
+
+    private void run() {
+        final Map<Object, Event> batch = new LinkedHashMap<>();
+        while (running) {
+            if (depth.get() == 0) {
+                LockSupport.park(this);
+                continue;
+            }
+            final long deadline = System.nanoTime() + windowNanos;
+            long remaining;
+            while (running && depth.get() < maxBatchSize && (remaining = deadline - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(this, remaining);
+            }
+            drain(batch);
+        }
+        while (depth.get() > 0 && drain(batch)) {
+            // hand over everything that was queued before deactivation
+        }
+    }
+
+    /**
+     * Handles up to one batch of queued events, returns {@code false} if the
+     * queue was empty.
+     */
+    private boolean drain(final Map<Object, Event> batch) {
+        for (int i = 0; i < maxBatchSize; i++) {
+            final Event event = queue.poll();
+            if (event == null) {
+                break;
+            }
+            depth.decrementAndGet();
+            final Object path = event.getProperty(SlingConstants.PROPERTY_PATH);
+            if (batch.put(path != null ? path : event, event) != null) {
+                coalesced.incrementAndGet();
+            }
+        }
+        final boolean overflowed = addDropped();
+        if (batch.isEmpty() && !overflowed) {
+            return false;
+        }
+        if (!batch.isEmpty()) {
+            batchSizes.record(batch.size());
+        }
+        for (final Event event : batch.values()) {
+            final Object path = event.getProperty(SlingConstants.PROPERTY_PATH);
+            logger.debug("Resource event: {} at: {}", event.getTopic(), path);
+            if (path instanceof String) {
+                index.add((String) path);
+            }
+        }
+        batch.clear();
+        if (!index.isEmpty()) {
+            invalidate(index.drain());
+        }
+        return true;
+    }
+
+    /**
+     * Adds the parents of dropped events to the index, returns {@code false}
+     * if no events were dropped since the last batch.
+     */
+    private boolean addDropped() {
+        if (droppedAll.getAndSet(false)) {
+            // the whole tree covers any parent cleared concurrently
+            droppedRoots.clear();
+            index.add("/");
+            return true;
+        }
+        boolean added = false;
+        for (final Iterator<String> it = droppedRoots.iterator(); it.hasNext(); ) {
+            index.add(it.next());
+            it.remove();
+            added = true;
+        }
+        return added;
+    }
+
+    /**
+     * Handles a single event on the calling thread.
+     */
+    private void handle(final Event event) {
+        final Object path = event.getProperty(SlingConstants.PROPERTY_PATH);
+        logger.debug("Resource event: {} at: {}", event.getTopic(), path);
+        if (path instanceof String) {
+            invalidate(Collections.singletonList((String) path));
+        }
+    }
+
+    private void invalidate(final Collection<String> roots) {
+        for (final SubtreeInvalidationListener listener : invalidationListeners) {
+            try {
+                listener.invalidateSubtrees(roots);
+            } catch (RuntimeException e) {
+                logger.error("Cannot invalidate subtrees {} in {}", roots, listener, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package com.test.core.listeners;
+
+import java.util.Collection;
+
+/**
+ * Whiteboard service for in-process caches that need to drop entries when
+ * content changes. Instead of one call per changed resource, implementations
+ * receive the roots of the changed subtrees once per batch of resource events
+ * handled by the {@link SimpleResourceListener}; everything at or below any of
+ * the given paths has to be considered stale.
+ */
+public interface SubtreeInvalidationListener {
+
+    /**
+     * Called with the absolute paths of the changed subtree roots, none of
+     * which is an ancestor of another.
+     */
+    void invalidateSubtrees(Collection<String> roots);
+}
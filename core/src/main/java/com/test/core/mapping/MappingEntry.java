@@ -0,0 +1,48 @@
+package com.test.core.mapping;
+
+/**
+ * The aliases and vanity paths of a resource. Vanity paths are absolute,
+ * the first alias and the first vanity path are used when mapping.
+ */
+final class MappingEntry {
+
+    private final String path;
+
+    private final String[] aliases;
+
+    private final String[] vanityPaths;
+
+    MappingEntry(final String path, final String[] aliases, final String[] vanityPaths) {
+        this.path = path;
+        this.aliases = aliases;
+        this.vanityPaths = vanityPaths;
+    }
+
+    String getPath() {
+        return path;
+    }
+
+    String[] getAliases() {
+        return aliases;
+    }
+
+    String[] getVanityPaths() {
+        return vanityPaths;
+    }
+
+    /**
+     * Returns whether the resource has any alias or vanity path.
+     */
+    boolean hasMappings() {
+        return aliases.length > 0 || vanityPaths.length > 0;
+    }
+
+    /**
+     * Returns the path of the resource the alias of this entry is resolved
+     * against, which is its parent.
+     */
+    String getParentPath() {
+        final int slash = path.lastIndexOf('/');
+        return slash > 0 ? path.substring(0, slash) : "";
+    }
+}
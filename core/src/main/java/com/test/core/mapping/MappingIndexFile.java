@@ -0,0 +1,127 @@
+package com.test.core.mapping;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Reads and writes the entries of a {@link ResourceMappingIndex}.
+ * <p>
+ * The file starts with a magic number, the format version and the number of
+ * entries. Each entry is its path, followed by the number and values of its
+ * aliases and of its vanity paths. Strings are written as their UTF-8 length
+ * and bytes. The file is read through a memory mapping, so loading it is a
+ * single pass over the page cache, and replaced atomically when written.
+ */
+final class MappingIndexFile {
+
+    private static final int MAGIC = 0x52_4d_49_58;
+
+    private static final int VERSION = 1;
+
+    private MappingIndexFile() {
+    }
+
+    /**
+     * Returns the entries in the file, or {@code null} if it does not exist
+     * or is not a readable index of the current version.
+     */
+    static List<MappingEntry> read(final Path file) throws IOException {
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.remaining() < 12 || buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                return null;
+            }
+            final int count = readCount(buffer);
+            final List<MappingEntry> entries = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                final String path = readString(buffer);
+                final String[] aliases = readStrings(buffer);
+                final String[] vanityPaths = readStrings(buffer);
+                entries.add(new MappingEntry(path, aliases, vanityPaths));
+            }
+            return entries;
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Writes the entries to a temporary file that then replaces the file.
+     */
+    static void write(final Path file, final Collection<MappingEntry> entries) throws IOException {
+        final Path directory = file.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        final Path temporary = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+        try {
+            try (OutputStream stream = Files.newOutputStream(temporary);
+                 DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream, 65536))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(entries.size());
+                for (final MappingEntry entry : entries) {
+                    writeString(out, entry.getPath());
+                    writeStrings(out, entry.getAliases());
+                    writeStrings(out, entry.getVanityPaths());
+                }
+            }
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /**
+     * Reads the number of strings or bytes that follow, which cannot be more
+     * than the bytes left in a file that is not corrupt.
+     */
+    private static int readCount(final MappedByteBuffer buffer) {
+        final int count = buffer.getInt();
+        if (count < 0 || count > buffer.remaining()) {
+            throw new IllegalArgumentException("Invalid count " + count);
+        }
+        return count;
+    }
+
+    private static String readString(final MappedByteBuffer buffer) {
+        final byte[] bytes = new byte[readCount(buffer)];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static String[] readStrings(final MappedByteBuffer buffer) {
+        final String[] strings = new String[readCount(buffer)];
+        for (int i = 0; i < strings.length; i++) {
+            strings[i] = readString(buffer);
+        }
+        return strings;
+    }
+
+    private static void writeString(final DataOutputStream out, final String string) throws IOException {
+        final byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static void writeStrings(final DataOutputStream out, final String[] strings) throws IOException {
+        out.writeInt(strings.length);
+        for (final String string : strings) {
+            writeString(out, string);
+        }
+    }
+}
@@ -0,0 +1,590 @@
+package com.test.core.mapping;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.sling.api.resource.LoginException;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ResourceResolverFactory;
+import org.apache.sling.api.resource.ValueMap;
+import org.osgi.framework.BundleContext;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
+import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.component.propertytypes.ServiceDescription;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.day.cq.commons.jcr.JcrConstants;
+import com.test.core.listeners.SimpleResourceListener;
+import com.test.core.listeners.SubtreeInvalidationListener;
+
+/**
+ * Maps and resolves paths with the {@code sling:alias} and
+ * {@code sling:vanityPath} properties of the content and the prefix mappings
+ * of the publish resource resolver, without reading the repository.
+ * <p>
+ * The aliases and vanity paths below the content roots are collected into
+ * hash tables, so {@link #map(String)} and {@link #resolve(String)} take one
+ * lookup per path segment. The tables are written to an index file, which is
+ * read through a memory mapping on activation, so mapping works right away.
+ * The file misses the changes made while the instance was stopped, so the
+ * content is still traversed again on a background thread shortly after,
+ * and the result replaces the loaded tables. Changes are applied as the
+ * {@link SimpleResourceListener}
+ * reports changed subtrees: a subtree is read again on a background thread
+ * and replaces its entries, and the file is rewritten shortly after.
+ * <p>
+ * The prefix mappings use the syntax of the {@code resource.resolver.mapping}
+ * property: {@code internal<external} applies to mapping only,
+ * {@code internal>external} to resolving only and {@code internal:external}
+ * to both. The first mapping whose prefix matches is applied.
+ */
+@Designate(ocd = ResourceMappingIndex.Config.class)
+@Component(service = { ResourceMappingIndex.class, SubtreeInvalidationListener.class })
+@ServiceDescription("Indexed alias and vanity path mapping")
+public class ResourceMappingIndex implements SubtreeInvalidationListener {
+
+    @ObjectClassDefinition(name = "Resource mapping index",
+                           description = "Precomputed alias and vanity path mapping of the content")
+    public static @interface Config {
+
+        @AttributeDefinition(name = "Content roots",
+                             description = "Aliases and vanity paths at or below these paths are indexed")
+        String[] content_roots() default { "/content/test" };
+
+        @AttributeDefinition(name = "Prefix mappings",
+                             description = "Mappings in the syntax of resource.resolver.mapping")
+        String[] mappings() default { "/content/test/</", "/:/" };
+
+        @AttributeDefinition(name = "Index file",
+                             description = "Path of the index file, in the data area of the bundle if empty")
+        String index_file() default "";
+
+        @AttributeDefinition(name = "Persist delay",
+                             description = "Milliseconds after a change before the index file is rewritten")
+        long persist_delay_ms() default 5000;
+
+        @AttributeDefinition(name = "Rebuild delay",
+                             description = "Milliseconds after loading the index file before the content is "
+                                     + "traversed again, to pick up changes made while the instance was stopped")
+        long rebuild_delay_ms() default 60000;
+    }
+
+    /** Subservice mapped to a service user that can read the content roots. */
+    static final String SUBSERVICE = "resource-mapping";
+
+    static final String PN_ALIAS = "sling:alias";
+
+    static final String PN_VANITY_PATH = "sling:vanityPath";
+
+    private static final String DATA_FILE = "resource-mapping.idx";
+
+    private static final String JCR_CONTENT_SEGMENT = "/" + JcrConstants.JCR_CONTENT;
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    @Reference
+    private ResourceResolverFactory resolverFactory;
+
+    private Config config;
+
+    private Path indexFile;
+
+    private List<PrefixMapping> outbound;
+
+    private List<PrefixMapping> inbound;
+
+    private volatile Tables tables = new Tables();
+
+    private ScheduledThreadPoolExecutor executor;
+
+    /** Only accessed on the executor thread. */
+    private boolean persistScheduled;
+
+    @Activate
+    protected void activate(final Config config, final BundleContext bundleContext) {
+        this.config = config;
+        outbound = new ArrayList<>();
+        inbound = new ArrayList<>();
+        for (final String mapping : config.mappings()) {
+            final PrefixMapping parsed = PrefixMapping.parse(mapping);
+            if (parsed == null) {
+                logger.warn("Ignoring invalid mapping {}", mapping);
+                continue;
+            }
+            if (parsed.outbound) {
+                outbound.add(parsed);
+            }
+            if (parsed.inbound) {
+                inbound.add(parsed);
+            }
+        }
+        indexFile = resolveIndexFile(config.index_file(), bundleContext);
+        executor = new ScheduledThreadPoolExecutor(1, runnable -> {
+            final Thread thread = new Thread(runnable, "ResourceMappingIndex");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // a pending persist is run by deactivate, a pending rebuild is not needed anymore
+        executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        final long rebuildDelay = load() ? Math.max(0, config.rebuild_delay_ms()) : 0;
+        executor.schedule(() -> {
+            rebuild();
+            persist();
+        }, rebuildDelay, TimeUnit.MILLISECONDS);
+    }
+
+    @Deactivate
+    protected void deactivate() throws InterruptedException {
+        executor.shutdown();
+        if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+            executor.shutdownNow();
+        }
+        if (persistScheduled) {
+            persist();
+        }
+    }
+
+    /**
+     * Returns the external path of a resource path, its first vanity path or
+     * else the path with aliases and the prefix mappings applied. Selectors,
+     * extension and suffix are kept.
+     */
+    public String map(final String resourcePath) {
+        final int end = endOfPath(resourcePath);
+        final String path = resourcePath.substring(0, end);
+        final String rest = resourcePath.substring(end);
+        final Tables current = tables;
+        final MappingEntry entry = current.byPath.get(path);
+        if (entry != null && entry.getVanityPaths().length > 0) {
+            return entry.getVanityPaths()[0] + rest;
+        }
+        final StringBuilder mapped = new StringBuilder(resourcePath.length());
+        int start = 1;
+        while (start <= path.length() && path.length() > 1) {
+            int slash = path.indexOf('/', start);
+            if (slash < 0) {
+                slash = path.length();
+            }
+            final MappingEntry segment = current.byPath.get(path.substring(0, slash));
+            mapped.append('/');
+            if (segment != null && segment.getAliases().length > 0) {
+                mapped.append(segment.getAliases()[0]);
+            } else {
+                mapped.append(path, start, slash);
+            }
+            start = slash + 1;
+        }
+        return applyPrefix(outbound, mapped.length() > 0 ? mapped.toString() : path, false) + rest;
+    }
+
+    /**
+     * Returns the resource path of an external path, the target of a vanity
+     * path or else the path with the prefix mappings and aliases resolved.
+     * Selectors, extension and suffix are kept.
+     */
+    public String resolve(final String externalPath) {
+        final int end = endOfPath(externalPath);
+        final String path = externalPath.substring(0, end);
+        final String rest = externalPath.substring(end);
+        final Tables current = tables;
+        final String target = current.vanityTargets.get(path);
+        if (target != null) {
+            return target + rest;
+        }
+        final String internal = applyPrefix(inbound, path, true);
+        final StringBuilder resolved = new StringBuilder(internal.length() + 16);
+        int start = 1;
+        while (start <= internal.length() && internal.length() > 1) {
+            int slash = internal.indexOf('/', start);
+            if (slash < 0) {
+                slash = internal.length();
+            }
+            final int parent = resolved.length();
+            resolved.append('/').append(internal, start, slash);
+            final String aliased = current.aliasTargets.get(resolved.toString());
+            if (aliased != null) {
+                resolved.setLength(parent);
+                resolved.append(aliased, parent, aliased.length());
+            }
+            start = slash + 1;
+        }
+        return (resolved.length() > 0 ? resolved.toString() : internal) + rest;
+    }
+
+    @Override
+    public void invalidateSubtrees(final Collection<String> roots) {
+        final List<String> relevant = new ArrayList<>();
+        for (final String root : roots) {
+            for (final String contentRoot : config.content_roots()) {
+                if (isAtOrBelow(root, contentRoot) || isAtOrBelow(contentRoot, root)) {
+                    relevant.add(root);
+                    break;
+                }
+            }
+        }
+        if (!relevant.isEmpty()) {
+            executor.execute(() -> {
+                update(relevant);
+                schedulePersist();
+            });
+        }
+    }
+
+    /**
+     * Waits until the changes submitted so far are applied.
+     */
+    void awaitPending() throws InterruptedException, ExecutionException {
+        executor.submit(() -> { }).get();
+    }
+
+    /**
+     * Reads the aliases and vanity paths of the changed subtrees again.
+     */
+    private void update(final Collection<String> roots) {
+        final Tables current = tables;
+        try (ResourceResolver resolver = login()) {
+            for (final String root : roots) {
+                final int content = root.indexOf(JCR_CONTENT_SEGMENT);
+                if (content > 0 && (content + JCR_CONTENT_SEGMENT.length() == root.length()
+                        || root.charAt(content + JCR_CONTENT_SEGMENT.length()) == '/')) {
+                    final String path = root.substring(0, content);
+                    final Resource resource = resolver.getResource(path);
+                    current.replace(path, false, resource != null
+                            ? Collections.singletonList(read(resource)) : Collections.emptyList());
+                    continue;
+                }
+                for (final String contentRoot : config.content_roots()) {
+                    final String subtree = isAtOrBelow(root, contentRoot) ? root
+                            : isAtOrBelow(contentRoot, root) ? contentRoot : null;
+                    if (subtree != null) {
+                        final List<MappingEntry> entries = new ArrayList<>();
+                        final Resource resource = resolver.getResource(subtree);
+                        if (resource != null) {
+                            collect(resource, entries::add);
+                        }
+                        current.replace(subtree, true, entries);
+                    }
+                }
+            }
+        } catch (LoginException e) {
+            logger.error("Cannot update the resource mapping index for {}", roots, e);
+        }
+    }
+
+    /**
+     * Traverses the content roots and replaces the index.
+     */
+    private void rebuild() {
+        final long start = System.nanoTime();
+        final Tables rebuilt = new Tables();
+        try (ResourceResolver resolver = login()) {
+            for (final String contentRoot : config.content_roots()) {
+                final Resource resource = resolver.getResource(contentRoot);
+                if (resource != null) {
+                    collect(resource, rebuilt::add);
+                }
+            }
+        } catch (LoginException e) {
+            logger.error("Cannot build the resource mapping index", e);
+            return;
+        }
+        tables = rebuilt;
+        logger.info("Built the resource mapping index with {} entries in {} ms", rebuilt.byPath.size(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    /**
+     * Writes the index file.
+     */
+    void persist() {
+        persistScheduled = false;
+        if (indexFile == null) {
+            return;
+        }
+        try {
+            MappingIndexFile.write(indexFile, tables.byPath.values());
+        } catch (IOException e) {
+            logger.error("Cannot write the resource mapping index to {}", indexFile, e);
+        }
+    }
+
+    /** Indexed resources with aliases or vanity paths. */
+    public int getEntryCount() {
+        return tables.byPath.size();
+    }
+
+    /** Indexed vanity paths. */
+    public int getVanityPathCount() {
+        return tables.vanityTargets.size();
+    }
+
+    /** Indexed aliases. */
+    public int getAliasCount() {
+        return tables.aliasTargets.size();
+    }
+
+    private boolean load() {
+        if (indexFile == null) {
+            return false;
+        }
+        final long start = System.nanoTime();
+        try {
+            final List<MappingEntry> entries = MappingIndexFile.read(indexFile);
+            if (entries == null) {
+                return false;
+            }
+            final Tables loaded = new Tables();
+            for (final MappingEntry entry : entries) {
+                loaded.add(entry);
+            }
+            tables = loaded;
+            logger.info("Loaded {} resource mapping entries from {} in {} ms", entries.size(), indexFile,
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            return true;
+        } catch (IOException e) {
+            logger.warn("Cannot read the resource mapping index {}", indexFile, e);
+            return false;
+        }
+    }
+
+    private void schedulePersist() {
+        if (!persistScheduled) {
+            persistScheduled = true;
+            executor.schedule(this::persist, config.persist_delay_ms(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void collect(final Resource resource, final Consumer<MappingEntry> target) {
+        target.accept(read(resource));
+        for (final Resource child : resource.getChildren()) {
+            if (!JcrConstants.JCR_CONTENT.equals(child.getName())) {
+                collect(child, target);
+            }
+        }
+    }
+
+    /**
+     * Reads the aliases and vanity paths of a resource and its
+     * {@code jcr:content}.
+     */
+    private static MappingEntry read(final Resource resource) {
+        final Set<String> aliases = new LinkedHashSet<>();
+        final Set<String> vanityPaths = new LinkedHashSet<>();
+        addValues(resource.getValueMap(), aliases, vanityPaths);
+        final Resource content = resource.getChild(JcrConstants.JCR_CONTENT);
+        if (content != null) {
+            addValues(content.getValueMap(), aliases, vanityPaths);
+        }
+        return new MappingEntry(resource.getPath(), aliases.toArray(new String[0]),
+                vanityPaths.toArray(new String[0]));
+    }
+
+    private static void addValues(final ValueMap properties, final Set<String> aliases,
+                                  final Set<String> vanityPaths) {
+        for (final String alias : properties.get(PN_ALIAS, new String[0])) {
+            if (StringUtils.isNotBlank(alias) && alias.indexOf('/') < 0) {
+                aliases.add(alias.trim());
+            }
+        }
+        for (final String vanityPath : properties.get(PN_VANITY_PATH, new String[0])) {
+            if (StringUtils.isNotBlank(vanityPath)) {
+                final String trimmed = StringUtils.removeEnd(vanityPath.trim(), "/");
+                vanityPaths.add(trimmed.startsWith("/") ? trimmed : "/" + trimmed);
+            }
+        }
+    }
+
+    private ResourceResolver login() throws LoginException {
+        return resolverFactory.getServiceResourceResolver(
+                Collections.singletonMap(ResourceResolverFactory.SUBSERVICE, SUBSERVICE));
+    }
+
+    private static Path resolveIndexFile(final String configured, final BundleContext bundleContext) {
+        if (StringUtils.isNotBlank(configured)) {
+            return Paths.get(configured);
+        }
+        final File dataFile = bundleContext.getDataFile(DATA_FILE);
+        return dataFile != null ? dataFile.toPath() : null;
+    }
+
+    private static String applyPrefix(final List<PrefixMapping> mappings, final String path,
+                                      final boolean inbound) {
+        for (final PrefixMapping mapping : mappings) {
+            final String from = inbound ? mapping.external : mapping.internal;
+            if (path.startsWith(from)) {
+                return (inbound ? mapping.internal : mapping.external) + path.substring(from.length());
+            }
+        }
+        return path;
+    }
+
+    /**
+     * Returns the index of the first dot of the last segment, where
+     * selectors and extension start, or the length of the path.
+     */
+    private static int endOfPath(final String path) {
+        final int dot = path.indexOf('.', path.lastIndexOf('/') + 1);
+        return dot < 0 ? path.length() : dot;
+    }
+
+    private static boolean isAtOrBelow(final String path, final String root) {
+        return path.equals(root) || path.startsWith(root.endsWith("/") ? root : root + "/");
+    }
+
+    /**
+     * The lookup tables. They are updated in place by the executor thread
+     * and replaced as a whole when the index is rebuilt. An update never
+     * removes a key before its new value is in place, so concurrent lookups
+     * see either the old or the new mapping of a path.
+     */
+    private static final class Tables {
+
+        /** Entries by resource path, sorted so that a subtree is a range. */
+        private final ConcurrentSkipListMap<String, MappingEntry> sorted = new ConcurrentSkipListMap<>();
+
+        private final Map<String, MappingEntry> byPath = new ConcurrentHashMap<>();
+
+        /** Resource paths by vanity path. */
+        private final Map<String, String> vanityTargets = new ConcurrentHashMap<>();
+
+        /** Resource paths by the path of their parent and an alias. */
+        private final Map<String, String> aliasTargets = new ConcurrentHashMap<>();
+
+        void add(final MappingEntry entry) {
+            if (!entry.hasMappings()) {
+                return;
+            }
+            sorted.put(entry.getPath(), entry);
+            byPath.put(entry.getPath(), entry);
+            for (final String vanityPath : entry.getVanityPaths()) {
+                vanityTargets.putIfAbsent(vanityPath, entry.getPath());
+            }
+            for (final String alias : entry.getAliases()) {
+                aliasTargets.putIfAbsent(entry.getParentPath() + "/" + alias, entry.getPath());
+            }
+        }
+
+        /**
+         * Replaces the entries of a path, or of a path and its descendants,
+         * with the given ones. The new entries are added first, then the
+         * stale keys are removed or handed over to the entry that claims
+         * them now.
+         */
+        void replace(final String root, final boolean subtree, final List<MappingEntry> entries) {
+            final List<MappingEntry> stale = new ArrayList<>();
+            final MappingEntry existing = byPath.get(root);
+            if (existing != null) {
+                stale.add(existing);
+            }
+            if (subtree) {
+                final String prefix = root.endsWith("/") ? root : root + "/";
+                stale.addAll(sorted.subMap(prefix, prefix + Character.MAX_VALUE).values());
+            }
+            final Map<String, MappingEntry> replacements = new HashMap<>();
+            final Map<String, String> claimedVanityPaths = new HashMap<>();
+            final Map<String, String> claimedAliases = new HashMap<>();
+            for (final MappingEntry entry : entries) {
+                if (!entry.hasMappings()) {
+                    continue;
+                }
+                add(entry);
+                replacements.put(entry.getPath(), entry);
+                for (final String vanityPath : entry.getVanityPaths()) {
+                    claimedVanityPaths.putIfAbsent(vanityPath, entry.getPath());
+                }
+                for (final String alias : entry.getAliases()) {
+                    claimedAliases.putIfAbsent(entry.getParentPath() + "/" + alias, entry.getPath());
+                }
+            }
+            for (final MappingEntry entry : stale) {
+                final String path = entry.getPath();
+                if (!replacements.containsKey(path)) {
+                    sorted.remove(path, entry);
+                    byPath.remove(path, entry);
+                }
+                for (final String vanityPath : entry.getVanityPaths()) {
+                    release(vanityTargets, vanityPath, path, claimedVanityPaths.get(vanityPath));
+                }
+                for (final String alias : entry.getAliases()) {
+                    final String key = entry.getParentPath() + "/" + alias;
+                    release(aliasTargets, key, path, claimedAliases.get(key));
+                }
+            }
+        }
+
+        /**
+         * Hands a key of a stale entry over to its new target, or removes it
+         * if no entry claims it anymore.
+         */
+        private static void release(final Map<String, String> targets, final String key, final String path,
+                                    final String claimant) {
+            if (claimant == null) {
+                targets.remove(key, path);
+            } else if (!claimant.equals(path)) {
+                targets.replace(key, path, claimant);
+            }
+        }
+    }
+
+    /**
+     * A mapping between an internal and an external path prefix.
+     */
+    private static final class PrefixMapping {
+
+        private final String internal;
+
+        private final String external;
+
+        private final boolean outbound;
+
+        private final boolean inbound;
+
+        private PrefixMapping(final String internal, final String external, final boolean outbound,
+                              final boolean inbound) {
+            this.internal = internal;
+            this.external = external;
+            this.outbound = outbound;
+            this.inbound = inbound;
+        }
+
+        static PrefixMapping parse(final String mapping) {
+            int operator = mapping.indexOf('<');
+            if (operator < 0) {
+                operator = mapping.indexOf('>');
+            }
+            if (operator < 0) {
+                operator = mapping.indexOf(':');
+            }
+            if (operator <= 0 || operator == mapping.length() - 1) {
+                return null;
+            }
+            final char type = mapping.charAt(operator);
+            return new PrefixMapping(mapping.substring(0, operator).trim(), mapping.substring(operator + 1).trim(),
+                    type != '>', type != '<');
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.test.core.metrics;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Immutable, merged view of a {@link StripedHistogram} at a point in time.
+ */
+public final class HistogramSnapshot {
+
+    private final long[] counts;
+
+    private final long totalCount;
+
+    private final long totalSum;
+
+    private final long maxValue;
+
+    private final long elapsedNanos;
+
+    HistogramSnapshot(final long[] counts, final long totalCount, final long totalSum,
+                      final long maxValue, final long elapsedNanos) {
+        this.counts = counts;
+        this.totalCount = totalCount;
+        this.totalSum = totalSum;
+        this.maxValue = maxValue;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    public long getCount() {
+        return totalCount;
+    }
+
+    public long getMax() {
+        return maxValue;
+    }
+
+    public double getMean() {
+        return totalCount == 0 ? 0 : (double) totalSum / totalCount;
+    }
+
+    /**
+     * Returns the number of recorded values per second since the histogram
+     * was created or last reset.
+     */
+    public double getThroughput() {
+        if (elapsedNanos <= 0) {
+            return 0;
+        }
+        return totalCount * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos;
+    }
+
+    /**
+     * Returns the value below which the given percentage of recorded values
+     * fall, reported as the upper bound of the matching bucket.
+     *
+     * @param percentile a percentile between 0 and 100, e.g. 99.9
+     */
+    public long getValueAtPercentile(final double percentile) {
+        if (totalCount == 0) {
+            return 0;
+        }
+        final double bounded = Math.min(Math.max(percentile, 0), 100);
+        final long target = Math.max(1, (long) Math.ceil(bounded / 100 * totalCount));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= target) {
+                return Math.min(StripedHistogram.highestEquivalentValue(i), maxValue);
+            }
+        }
+        return maxValue;
+    }
+}
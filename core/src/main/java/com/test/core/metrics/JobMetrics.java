@@ -0,0 +1,183 @@
+package com.test.core.metrics;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.osgi.service.component.annotations.Component;
+
+/**
+ * Run statistics of scheduled jobs, keyed by job name: a histogram of run
+ * durations in milliseconds, the outcome and throughput of the last runs, and
+ * counters for skipped and overlapping triggers.
+ * <p>
+ * A job calls {@link JobStatistics#tryStart(boolean)} when it is triggered and
+ * reports the outcome with {@link JobStatistics#succeeded(long, long)} or
+ * {@link JobStatistics#failed(long, String)}.
+ */
+@Component(service = JobMetrics.class)
+public class JobMetrics {
+
+    private final ConcurrentMap<String, JobStatistics> jobs = new ConcurrentHashMap<>();
+
+    /**
+     * Returns the statistics of the named job, creating them on first use.
+     */
+    public JobStatistics getJob(final String name) {
+        final JobStatistics job = jobs.get(name);
+        return job != null ? job : jobs.computeIfAbsent(name, JobStatistics::new);
+    }
+
+    /**
+     * Returns the statistics of all jobs, ordered by name.
+     */
+    public List<JobStatistics> getJobs() {
+        final List<JobStatistics> result = new ArrayList<>(jobs.values());
+        result.sort(Comparator.comparing(JobStatistics::getName));
+        return result;
+    }
+
+    /**
+     * Statistics of a single job.
+     */
+    public static final class JobStatistics {
+
+        private final String name;
+
+        private final StripedHistogram durations = new StripedHistogram(1);
+
+        private final AtomicInteger active = new AtomicInteger();
+
+        private final AtomicLong successes = new AtomicLong();
+
+        private final AtomicLong failures = new AtomicLong();
+
+        private final AtomicLong skipped = new AtomicLong();
+
+        private final AtomicLong overlapping = new AtomicLong();
+
+        private volatile long lastSuccess;
+
+        private volatile long lastFailure;
+
+        private volatile String lastFailureMessage;
+
+        private volatile long lastDurationMillis;
+
+        private volatile double lastItemsPerSecond;
+
+        public JobStatistics(final String name) {
+            this.name = name;
+        }
+
+        /**
+         * Registers a triggered run. With {@code exclusive} set, a trigger
+         * that arrives while a run is still active is counted as skipped and
+         * {@code false} is returned; otherwise it is counted as overlapping.
+         */
+        public boolean tryStart(final boolean exclusive) {
+            while (true) {
+                final int current = active.get();
+                if (current > 0 && exclusive) {
+                    skipped.incrementAndGet();
+                    return false;
+                }
+                if (active.compareAndSet(current, current + 1)) {
+                    if (current > 0) {
+                        overlapping.incrementAndGet();
+                    }
+                    return true;
+                }
+            }
+        }
+
+        /**
+         * Ends a run started with {@link #tryStart(boolean)} successfully.
+         *
+         * @param durationNanos the run duration in nanoseconds
+         * @param items         the number of items processed by the run
+         */
+        public void succeeded(final long durationNanos, final long items) {
+            lastDurationMillis = finish(durationNanos);
+            lastItemsPerSecond = durationNanos > 0 ? items * (double) TimeUnit.SECONDS.toNanos(1) / durationNanos : 0;
+            lastSuccess = System.currentTimeMillis();
+            successes.incrementAndGet();
+        }
+
+        /**
+         * Ends a run started with {@link #tryStart(boolean)} with a failure.
+         */
+        public void failed(final long durationNanos, final String message) {
+            lastDurationMillis = finish(durationNanos);
+            lastFailureMessage = message;
+            lastFailure = System.currentTimeMillis();
+            failures.incrementAndGet();
+        }
+
+        private long finish(final long durationNanos) {
+            final long millis = TimeUnit.NANOSECONDS.toMillis(durationNanos);
+            durations.record(millis);
+            active.decrementAndGet();
+            return millis;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /** Run durations in milliseconds. */
+        public HistogramSnapshot getDurations() {
+            return durations.snapshot();
+        }
+
+        public boolean isRunning() {
+            return active.get() > 0;
+        }
+
+        public long getSuccessCount() {
+            return successes.get();
+        }
+
+        public long getFailureCount() {
+            return failures.get();
+        }
+
+        /** Triggers dropped because the previous run was still active. */
+        public long getSkippedCount() {
+            return skipped.get();
+        }
+
+        /** Runs started while another run of the same job was active. */
+        public long getOverlappingCount() {
+            return overlapping.get();
+        }
+
+        /** End of the last successful run in epoch milliseconds, 0 if none. */
+        public long getLastSuccess() {
+            return lastSuccess;
+        }
+
+        /** End of the last failed run in epoch milliseconds, 0 if none. */
+        public long getLastFailure() {
+            return lastFailure;
+        }
+
+        public String getLastFailureMessage() {
+            return lastFailureMessage;
+        }
+
+        public long getLastDurationMillis() {
+            return lastDurationMillis;
+        }
+
+        /** Items processed per second by the last successful run. */
+        public double getLastItemsPerSecond() {
+            return lastItemsPerSecond;
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package com.test.core.metrics;
+
+import javax.management.openmbean.OpenDataException;
+import javax.management.openmbean.TabularData;
+
+import com.adobe.granite.jmx.annotation.Description;
+
+/**
+ * JMX view of the run statistics kept by {@link JobMetrics}.
+ */
+@Description("Run duration, outcome and throughput per scheduled job")
+public interface JobMetricsMBean {
+
+    @Description("Run durations in milliseconds, last outcomes and trigger counters per job")
+    TabularData getJobs() throws OpenDataException;
+}
@@ -0,0 +1,80 @@
+package com.test.core.metrics;
+
+import java.util.Date;
+
+import javax.management.DynamicMBean;
+import javax.management.NotCompliantMBeanException;
+import javax.management.openmbean.CompositeDataSupport;
+import javax.management.openmbean.CompositeType;
+import javax.management.openmbean.OpenDataException;
+import javax.management.openmbean.OpenType;
+import javax.management.openmbean.SimpleType;
+import javax.management.openmbean.TabularData;
+import javax.management.openmbean.TabularDataSupport;
+import javax.management.openmbean.TabularType;
+
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Reference;
+
+import com.adobe.granite.jmx.annotation.AnnotatedStandardMBean;
+import com.test.core.metrics.JobMetrics.JobStatistics;
+
+/**
+ * Registers the scheduled job statistics with the JMX whiteboard.
+ */
+@Component(service = DynamicMBean.class,
+           property = {
+                   "jmx.objectname=com.test.core:type=JobMetrics"
+           })
+public class JobMetricsMBeanImpl extends AnnotatedStandardMBean implements JobMetricsMBean {
+
+    private static final String[] ITEM_NAMES = {
+            "name", "running", "successes", "failures", "skipped", "overlapping", "p50", "p99", "max", "mean",
+            "lastDuration", "lastSuccess", "lastFailure", "lastFailureMessage", "lastItemsPerSecond"
+    };
+
+    private static final String[] ITEM_DESCRIPTIONS = {
+            "Job name", "Whether a run is active", "Successful runs", "Failed runs",
+            "Triggers skipped while a run was active", "Runs started while another run was active",
+            "50th percentile (ms)", "99th percentile (ms)", "Maximum (ms)", "Mean (ms)",
+            "Duration of the last run (ms)", "End of the last successful run", "End of the last failed run",
+            "Failure message of the last failed run", "Items per second of the last successful run"
+    };
+
+    private static final OpenType<?>[] ITEM_TYPES = {
+            SimpleType.STRING, SimpleType.BOOLEAN, SimpleType.LONG, SimpleType.LONG, SimpleType.LONG, SimpleType.LONG,
+            SimpleType.LONG, SimpleType.LONG, SimpleType.LONG, SimpleType.DOUBLE,
+            SimpleType.LONG, SimpleType.DATE, SimpleType.DATE, SimpleType.STRING, SimpleType.DOUBLE
+    };
+
+    @Reference
+    private JobMetrics metrics;
+
+    public JobMetricsMBeanImpl() throws NotCompliantMBeanException {
+        super(JobMetricsMBean.class);
+    }
+
+    @Override
+    public TabularData getJobs() throws OpenDataException {
+        final CompositeType rowType = new CompositeType("JobStatistics", "Job statistics",
+                ITEM_NAMES, ITEM_DESCRIPTIONS, ITEM_TYPES);
+        final TabularDataSupport table = new TabularDataSupport(new TabularType("JobMetrics",
+                "Scheduled jobs", rowType, new String[] { "name" }));
+        for (final JobStatistics job : metrics.getJobs()) {
+            final HistogramSnapshot durations = job.getDurations();
+            table.put(new CompositeDataSupport(rowType, ITEM_NAMES, new Object[] {
+                    job.getName(), job.isRunning(), job.getSuccessCount(), job.getFailureCount(),
+                    job.getSkippedCount(), job.getOverlappingCount(),
+                    durations.getValueAtPercentile(50), durations.getValueAtPercentile(99),
+                    durations.getMax(), durations.getMean(), job.getLastDurationMillis(),
+                    toDate(job.getLastSuccess()), toDate(job.getLastFailure()),
+                    job.getLastFailureMessage(), job.getLastItemsPerSecond()
+            }));
+        }
+        return table;
+    }
+
+    private static Date toDate(final long millis) {
+        return millis > 0 ? new Date(millis) : null;
+    }
+}
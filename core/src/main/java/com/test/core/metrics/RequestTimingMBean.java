@@ -0,0 +1,19 @@
+package com.test.core.metrics;
+
+import javax.management.openmbean.OpenDataException;
+import javax.management.openmbean.TabularData;
+
+import com.adobe.granite.jmx.annotation.Description;
+
+/**
+ * JMX view of the latency histograms kept by {@link RequestTimingStatistics}.
+ */
+@Description("Request latency per resource type, selector and extension")
+public interface RequestTimingMBean {
+
+    @Description("Latency percentiles in microseconds and throughput in requests per second")
+    TabularData getTimings() throws OpenDataException;
+
+    @Description("Discards all recorded request timings")
+    void reset();
+}
@@ -0,0 +1,74 @@
+package com.test.core.metrics;
+
+import javax.management.DynamicMBean;
+import javax.management.NotCompliantMBeanException;
+import javax.management.openmbean.CompositeDataSupport;
+import javax.management.openmbean.CompositeType;
+import javax.management.openmbean.OpenDataException;
+import javax.management.openmbean.OpenType;
+import javax.management.openmbean.SimpleType;
+import javax.management.openmbean.TabularData;
+import javax.management.openmbean.TabularDataSupport;
+import javax.management.openmbean.TabularType;
+
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Reference;
+
+import com.adobe.granite.jmx.annotation.AnnotatedStandardMBean;
+import com.test.core.metrics.RequestTimingStatistics.RequestTiming;
+
+/**
+ * Registers the request timing histograms with the JMX whiteboard.
+ */
+@Component(service = DynamicMBean.class,
+           property = {
+                   "jmx.objectname=com.test.core:type=RequestTiming"
+           })
+public class RequestTimingMBeanImpl extends AnnotatedStandardMBean implements RequestTimingMBean {
+
+    private static final String[] ITEM_NAMES = {
+            "resourceType", "selectors", "extension", "count", "p50", "p99", "p999", "max", "mean", "throughput"
+    };
+
+    private static final String[] ITEM_DESCRIPTIONS = {
+            "Resource type", "Selector string", "Extension", "Recorded requests",
+            "50th percentile (us)", "99th percentile (us)", "99.9th percentile (us)", "Maximum (us)",
+            "Mean (us)", "Requests per second"
+    };
+
+    private static final OpenType<?>[] ITEM_TYPES = {
+            SimpleType.STRING, SimpleType.STRING, SimpleType.STRING, SimpleType.LONG,
+            SimpleType.LONG, SimpleType.LONG, SimpleType.LONG, SimpleType.LONG,
+            SimpleType.DOUBLE, SimpleType.DOUBLE
+    };
+
+    @Reference
+    private RequestTimingStatistics statistics;
+
+    public RequestTimingMBeanImpl() throws NotCompliantMBeanException {
+        super(RequestTimingMBean.class);
+    }
+
+    @Override
+    public TabularData getTimings() throws OpenDataException {
+        final CompositeType rowType = new CompositeType("RequestTiming", "Request timing",
+                ITEM_NAMES, ITEM_DESCRIPTIONS, ITEM_TYPES);
+        final TabularDataSupport table = new TabularDataSupport(new TabularType("RequestTimings",
+                "Request timings", rowType, new String[] { "resourceType", "selectors", "extension" }));
+        for (final RequestTiming timing : statistics.getTimings()) {
+            final HistogramSnapshot snapshot = timing.getSnapshot();
+            table.put(new CompositeDataSupport(rowType, ITEM_NAMES, new Object[] {
+                    timing.getResourceType(), timing.getSelectors(), timing.getExtension(), snapshot.getCount(),
+                    snapshot.getValueAtPercentile(50), snapshot.getValueAtPercentile(99),
+                    snapshot.getValueAtPercentile(99.9), snapshot.getMax(),
+                    snapshot.getMean(), snapshot.getThroughput()
+            }));
+        }
+        return table;
+    }
+
+    @Override
+    public void reset() {
+        statistics.reset();
+    }
+}
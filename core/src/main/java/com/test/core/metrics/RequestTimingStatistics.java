@@ -0,0 +1,199 @@
+package com.test.core.metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Modified;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+
+/**
+ * Keeps one {@link StripedHistogram} of request latencies per resource type,
+ * selector string and extension. Lookups of already known keys neither lock
+ * nor allocate, so recording is safe to call on every request.
+ * <p>
+ * Keys come from request URLs, so their number is bounded: combinations beyond
+ * the limit are recorded under a shared overflow key without allocating
+ * anything. Each stripe of a histogram takes about 9 KB, so a key takes
+ * {@code 9 KB * stripes}, and all keys together at most that times the
+ * maximum number of keys.
+ */
+@Designate(ocd = RequestTimingStatistics.Config.class)
+@Component(service = RequestTimingStatistics.class)
+public class RequestTimingStatistics {
+
+    @ObjectClassDefinition(name = "Request timing statistics",
+                           description = "Latency histograms per resource type, selector and extension")
+    public static @interface Config {
+
+        @AttributeDefinition(name = "Maximum keys",
+                             description = "Number of distinct resource type/selector/extension combinations tracked "
+                                     + "individually. Further combinations are recorded under a shared overflow key.")
+        int max_keys() default 128;
+
+        @AttributeDefinition(name = "Stripes per key",
+                             description = "Histogram stripes of each key, rounded up to a power of two. Each stripe "
+                                     + "takes about 9 KB, more stripes lower the contention of concurrent requests "
+                                     + "of the same key")
+        int stripes_per_key() default 4;
+    }
+
+    /** Placeholder for a missing resource type, selector string or extension. */
+    public static final String NONE = "";
+
+    /** Resource type under which combinations beyond the key limit are recorded. */
+    public static final String OVERFLOW = "(other)";
+
+    private final ConcurrentMap<String, ConcurrentMap<String, ConcurrentMap<String, RequestTiming>>> timings =
+            new ConcurrentHashMap<>();
+
+    private final AtomicInteger keyCount = new AtomicInteger();
+
+    /** Shared by all overflowing keys, so striped like a single histogram. */
+    private final RequestTiming overflow = new RequestTiming(OVERFLOW, NONE, NONE, new StripedHistogram());
+
+    private volatile int maxKeys = 128;
+
+    private volatile int stripesPerKey = 4;
+
+    @Activate
+    @Modified
+    protected void activate(final Config config) {
+        maxKeys = config.max_keys();
+        stripesPerKey = Math.max(1, config.stripes_per_key());
+    }
+
+    /**
+     * Records the duration of a single request.
+     *
+     * @param resourceType the resource type, may be {@code null}
+     * @param selectors the selector string, may be {@code null}
+     * @param extension the extension, may be {@code null}
+     * @param durationNanos the request duration in nanoseconds
+     */
+    public void record(final String resourceType, final String selectors, final String extension,
+                       final long durationNanos) {
+        timing(orNone(resourceType), orNone(selectors), orNone(extension))
+                .histogram.record(TimeUnit.NANOSECONDS.toMicros(durationNanos));
+    }
+
+    /**
+     * Returns the timings of all tracked keys, including the overflow key once
+     * it has been used.
+     */
+    public List<RequestTiming> getTimings() {
+        final List<RequestTiming> result = new ArrayList<>();
+        for (final ConcurrentMap<String, ConcurrentMap<String, RequestTiming>> bySelectors : timings.values()) {
+            for (final ConcurrentMap<String, RequestTiming> byExtension : bySelectors.values()) {
+                result.addAll(byExtension.values());
+            }
+        }
+        if (overflow.getSnapshot().getCount() > 0) {
+            result.add(overflow);
+        }
+        return result;
+    }
+
+    /**
+     * Drops all tracked keys and their recorded values.
+     */
+    public void reset() {
+        timings.clear();
+        keyCount.set(0);
+        overflow.histogram.reset();
+    }
+
+    /**
+     * Returns the number of nested maps holding the tracked keys.
+     */
+    int mapCount() {
+        int count = timings.size();
+        for (final ConcurrentMap<String, ConcurrentMap<String, RequestTiming>> bySelectors : timings.values()) {
+            count += bySelectors.size();
+        }
+        return count;
+    }
+
+    private RequestTiming timing(final String resourceType, final String selectors, final String extension) {
+        ConcurrentMap<String, ConcurrentMap<String, RequestTiming>> bySelectors = timings.get(resourceType);
+        if (bySelectors != null) {
+            final ConcurrentMap<String, RequestTiming> byExtension = bySelectors.get(selectors);
+            if (byExtension != null) {
+                final RequestTiming timing = byExtension.get(extension);
+                if (timing != null) {
+                    return timing;
+                }
+            }
+        }
+        return register(resourceType, selectors, extension);
+    }
+
+    private RequestTiming register(final String resourceType, final String selectors, final String extension) {
+        // reserve the key first, so overflowing keys leave no maps behind
+        if (keyCount.incrementAndGet() > maxKeys) {
+            keyCount.decrementAndGet();
+            return overflow;
+        }
+        final ConcurrentMap<String, RequestTiming> byExtension = timings
+                .computeIfAbsent(resourceType, key -> new ConcurrentHashMap<>())
+                .computeIfAbsent(selectors, key -> new ConcurrentHashMap<>());
+        final RequestTiming created = new RequestTiming(resourceType, selectors, extension,
+                new StripedHistogram(stripesPerKey));
+        final RequestTiming raced = byExtension.putIfAbsent(extension, created);
+        if (raced != null) {
+            keyCount.decrementAndGet();
+            return raced;
+        }
+        return created;
+    }
+
+    private static String orNone(final String value) {
+        return value == null ? NONE : value;
+    }
+
+    /**
+     * Latency histogram of one resource type, selector and extension
+     * combination. Recorded values are in microseconds.
+     */
+    public static final class RequestTiming {
+
+        private final String resourceType;
+
+        private final String selectors;
+
+        private final String extension;
+
+        private final StripedHistogram histogram;
+
+        RequestTiming(final String resourceType, final String selectors, final String extension,
+                      final StripedHistogram histogram) {
+            this.resourceType = resourceType;
+            this.selectors = selectors;
+            this.extension = extension;
+            this.histogram = histogram;
+        }
+
+        public String getResourceType() {
+            return resourceType;
+        }
+
+        public String getSelectors() {
+            return selectors;
+        }
+
+        public String getExtension() {
+            return extension;
+        }
+
+        public HistogramSnapshot getSnapshot() {
+            return histogram.snapshot();
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.test.core.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram with HDR-style log-linear buckets. Values below 64 are
+ * counted exactly, larger values land in one of 32 linear sub-buckets per
+ * power of two, which keeps the relative error of any reported value below
+ * roughly 3%.
+ * <p>
+ * Recording threads are spread over independent stripes so that concurrent
+ * writers on many cores do not contend on the same cache lines. Recording
+ * never allocates; the stripes are only merged when a {@link HistogramSnapshot}
+ * is taken.
+ */
+public final class StripedHistogram {
+
+    static final int SUB_BUCKET_BITS = 5;
+
+    static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+    /** Values are clamped to 2^40 - 1, which is about 12 days in microseconds. */
+    static final int HIGHEST_TRACKABLE_BITS = 40;
+
+    static final long HIGHEST_TRACKABLE_VALUE = (1L << HIGHEST_TRACKABLE_BITS) - 1;
+
+    static final int BUCKET_COUNT = 2 * SUB_BUCKET_COUNT
+            + (HIGHEST_TRACKABLE_BITS - SUB_BUCKET_BITS - 1) * SUB_BUCKET_COUNT;
+
+    private static final int TOTAL_COUNT = BUCKET_COUNT;
+
+    private static final int TOTAL_SUM = BUCKET_COUNT + 1;
+
+    private static final int MAX_VALUE = BUCKET_COUNT + 2;
+
+    private static final int STRIPE_LENGTH = BUCKET_COUNT + 3;
+
+    private static final int MAX_STRIPES = 64;
+
+    private final AtomicLongArray[] stripes;
+
+    private final int stripeMask;
+
+    private volatile long startNanos = System.nanoTime();
+
+    /**
+     * Creates a histogram with one stripe per available processor.
+     */
+    public StripedHistogram() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates a histogram with at least the given number of stripes, rounded
+     * up to the next power of two and capped at 64.
+     */
+    public StripedHistogram(final int stripes) {
+        int count = 1;
+        while (count < stripes && count < MAX_STRIPES) {
+            count <<= 1;
+        }
+        this.stripes = new AtomicLongArray[count];
+        for (int i = 0; i < count; i++) {
+            this.stripes[i] = new AtomicLongArray(STRIPE_LENGTH);
+        }
+        this.stripeMask = count - 1;
+    }
+
+    /**
+     * Records a single non-negative value. Negative values are ignored.
+     */
+    public void record(final long value) {
+        if (value < 0) {
+            return;
+        }
+        final long clamped = Math.min(value, HIGHEST_TRACKABLE_VALUE);
+        final AtomicLongArray stripe = stripes[stripeIndex()];
+        stripe.incrementAndGet(bucketIndex(clamped));
+        stripe.incrementAndGet(TOTAL_COUNT);
+        stripe.addAndGet(TOTAL_SUM, clamped);
+        long max = stripe.get(MAX_VALUE);
+        while (clamped > max && !stripe.compareAndSet(MAX_VALUE, max, clamped)) {
+            max = stripe.get(MAX_VALUE);
+        }
+    }
+
+    /**
+     * Merges all stripes into an immutable snapshot.
+     */
+    public HistogramSnapshot snapshot() {
+        final long[] counts = new long[BUCKET_COUNT];
+        long total = 0;
+        long sum = 0;
+        long max = 0;
+        for (final AtomicLongArray stripe : stripes) {
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                counts[i] += stripe.get(i);
+            }
+            total += stripe.get(TOTAL_COUNT);
+            sum += stripe.get(TOTAL_SUM);
+            max = Math.max(max, stripe.get(MAX_VALUE));
+        }
+        return new HistogramSnapshot(counts, total, sum, max, System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Discards all recorded values and restarts the throughput clock. Values
+     * recorded concurrently with a reset may or may not be retained.
+     */
+    public void reset() {
+        for (final AtomicLongArray stripe : stripes) {
+            for (int i = 0; i < STRIPE_LENGTH; i++) {
+                stripe.set(i, 0);
+            }
+        }
+        startNanos = System.nanoTime();
+    }
+
+    private int stripeIndex() {
+        final long id = Thread.currentThread().getId();
+        return (int) ((id * 0x9E3779B97F4A7C15L) >>> 40) & stripeMask;
+    }
+
+    static int bucketIndex(final long value) {
+        if (value < 2 * SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        final int exponent = 63 - Long.numberOfLeadingZeros(value);
+        final int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS));
+        return 2 * SUB_BUCKET_COUNT
+                + (exponent - SUB_BUCKET_BITS - 1) * SUB_BUCKET_COUNT
+                + (subBucket - SUB_BUCKET_COUNT);
+    }
+
+    static long highestEquivalentValue(final int index) {
+        if (index < 2 * SUB_BUCKET_COUNT) {
+            return index;
+        }
+        final int offset = index - 2 * SUB_BUCKET_COUNT;
+        final int shift = offset / SUB_BUCKET_COUNT + 1;
+        final long subBucket = offset % SUB_BUCKET_COUNT + SUB_BUCKET_COUNT;
+        return ((subBucket + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,227 @@
+package com.test.core.models;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceWrapper;
+import org.apache.sling.api.resource.ValueMap;
+import org.apache.sling.models.factory.ModelFactory;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
+import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.component.propertytypes.ServiceDescription;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.test.core.models.projection.ValueMapProjection;
+
+/**
+ * Adapts lists of resources, like the items of a list, carousel, tabs or
+ * accordion component, to a Sling Model at once.
+ * <p>
+ * The resources are read in a single pass first: all properties of each
+ * resource are read into its value map at once, and the children that the
+ * {@link ValueMapProjection} of the model class declares are looked up, so
+ * models like {@link PosterModel} no longer go to the repository for each
+ * property and child.
+ * The models are then created through the {@link ModelFactory} directly,
+ * which keeps the injection metadata per model class, instead of looking up
+ * the adapter factories for every resource.
+ * <p>
+ * {@link #adaptInParallel(Iterable, Class)} creates the models of large lists
+ * on a pool of threads. As resource resolvers are not thread-safe, this is
+ * only for models that read nothing but the properties and projected
+ * children of the adapted resource.
+ */
+@Designate(ocd = BulkModelAdapter.Config.class)
+@Component(service = BulkModelAdapter.class)
+@ServiceDescription("Adapts lists of resources to Sling Models")
+public class BulkModelAdapter {
+
+    @ObjectClassDefinition(name = "Bulk model adapter",
+                           description = "Adaptation of lists of resources to Sling Models")
+    public static @interface Config {
+
+        @AttributeDefinition(name = "Parallel threshold",
+                             description = "Number of resources from which models are created in parallel, "
+                                     + "if requested")
+        int parallel_threshold() default 64;
+
+        @AttributeDefinition(name = "Parallelism",
+                             description = "Number of threads that create models in parallel")
+        int parallelism() default 4;
+    }
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    @Reference
+    private ModelFactory modelFactory;
+
+    private int parallelThreshold;
+
+    private int parallelism;
+
+    private ExecutorService executor;
+
+    @Activate
+    protected void activate(final Config config) {
+        parallelThreshold = Math.max(1, config.parallel_threshold());
+        parallelism = Math.max(1, config.parallelism());
+        final AtomicInteger threads = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(parallelism, runnable -> {
+            final Thread thread = new Thread(runnable, "BulkModelAdapter-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Deactivate
+    protected void deactivate() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Returns the models of the resources in their order, leaving out the
+     * resources that cannot be adapted.
+     *
+     * @throws IllegalArgumentException if the type is not a Sling Model
+     */
+    public <T> List<T> adapt(final Iterable<? extends Resource> resources, final Class<T> type) {
+        checkModelClass(type);
+        final List<Resource> prefetched = prefetch(resources, type);
+        final List<T> models = new ArrayList<>(prefetched.size());
+        for (final Resource resource : prefetched) {
+            final T model = create(resource, type);
+            if (model != null) {
+                models.add(model);
+            }
+        }
+        return models;
+    }
+
+    /**
+     * Like {@link #adapt(Iterable, Class)}, but creates the models in
+     * parallel if there are at least as many resources as configured.
+     * Only for models that read nothing but the properties and projected
+     * children of the adapted resource.
+     *
+     * @throws IllegalArgumentException if the type is not a Sling Model
+     */
+    public <T> List<T> adaptInParallel(final Iterable<? extends Resource> resources, final Class<T> type) {
+        checkModelClass(type);
+        final List<Resource> prefetched = prefetch(resources, type);
+        if (prefetched.size() < parallelThreshold || parallelism == 1) {
+            return adapt(prefetched, type);
+        }
+        final int chunk = (prefetched.size() + parallelism - 1) / parallelism;
+        final List<Future<List<T>>> parts = new ArrayList<>(parallelism);
+        for (int start = 0; start < prefetched.size(); start += chunk) {
+            final List<Resource> part = prefetched.subList(start, Math.min(start + chunk, prefetched.size()));
+            parts.add(executor.submit(() -> {
+                final List<T> models = new ArrayList<>(part.size());
+                for (final Resource resource : part) {
+                    final T model = create(resource, type);
+                    if (model != null) {
+                        models.add(model);
+                    }
+                }
+                return models;
+            }));
+        }
+        final List<T> models = new ArrayList<>(prefetched.size());
+        try {
+            for (final Future<List<T>> part : parts) {
+                models.addAll(part.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while adapting resources to " + type.getName(), e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Cannot adapt resources to " + type.getName(), e.getCause());
+        }
+        return models;
+    }
+
+    private void checkModelClass(final Class<?> type) {
+        if (!modelFactory.isModelClass(type)) {
+            throw new IllegalArgumentException(type.getName() + " is not a Sling Model");
+        }
+    }
+
+    private <T> T create(final Resource resource, final Class<T> type) {
+        try {
+            return modelFactory.createModel(resource, type);
+        } catch (RuntimeException e) {
+            logger.debug("Cannot adapt {} to {}", resource.getPath(), type.getName(), e);
+            return null;
+        }
+    }
+
+    /**
+     * Reads the properties and the projected children of each resource once.
+     */
+    private static List<Resource> prefetch(final Iterable<? extends Resource> resources, final Class<?> type) {
+        final List<String> childNames = ValueMapProjection.of(type).getChildNames();
+        final List<Resource> prefetched = new ArrayList<>();
+        for (final Resource resource : resources) {
+            prefetched.add(resource instanceof PrefetchedResource ? resource
+                    : new PrefetchedResource(resource, childNames));
+        }
+        return prefetched;
+    }
+
+    /**
+     * A resource whose properties and the given children were read when it
+     * was wrapped. Other children are looked up when they are asked for.
+     */
+    private static final class PrefetchedResource extends ResourceWrapper {
+
+        private final ValueMap properties;
+
+        private final Map<String, Resource> children;
+
+        PrefetchedResource(final Resource resource, final List<String> childNames) {
+            super(resource);
+            properties = resource.getValueMap();
+            // the JCR value map reads all properties on the first call of size() and caches them
+            properties.size();
+            if (childNames.isEmpty()) {
+                children = Collections.emptyMap();
+            } else {
+                children = new HashMap<>();
+                for (final String name : childNames) {
+                    children.put(name, resource.getChild(name));
+                }
+            }
+        }
+
+        @Override
+        public ValueMap getValueMap() {
+            return properties;
+        }
+
+        @Override
+        public Resource getChild(final String relPath) {
+            return children.containsKey(relPath) ? children.get(relPath) : super.getChild(relPath);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <A> A adaptTo(final Class<A> type) {
+            return type == ValueMap.class ? (A) properties : super.adaptTo(type);
+        }
+    }
+}
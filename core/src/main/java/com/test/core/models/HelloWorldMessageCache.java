@@ -0,0 +1,124 @@
+package com.test.core.models;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Supplier;
+
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Modified;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+
+import com.test.core.cache.LruCache;
+import com.test.core.listeners.SubtreeInvalidationListener;
+
+/**
+ * Caches the message rendered by {@link HelloWorldModel} per resource path and
+ * resource type, so that repeated renders skip the containing page lookup and
+ * the string building. The containing page of a resource only depends on the
+ * resource path, which is why the page path is stored with the message rather
+ * than being part of the key.
+ * <p>
+ * Entries are dropped when a resource at or above their resource path changes,
+ * as reported by the {@link com.test.core.listeners.SimpleResourceListener}.
+ */
+@Designate(ocd = HelloWorldMessageCache.Config.class)
+@Component(service = { HelloWorldMessageCache.class, SubtreeInvalidationListener.class })
+public class HelloWorldMessageCache implements SubtreeInvalidationListener {
+
+    @ObjectClassDefinition(name = "Hello World message cache",
+                           description = "Caches the HelloWorldModel message per resource")
+    public static @interface Config {
+
+        @AttributeDefinition(name = "Maximum entries",
+                             description = "Number of messages kept before the least recently used ones are evicted")
+        int max_entries() default 10000;
+    }
+
+    private volatile LruCache<Key, String> messages = new LruCache<>(10000);
+
+    @Activate
+    @Modified
+    protected void activate(final Config config) {
+        messages = new LruCache<>(config.max_entries());
+    }
+
+    /**
+     * Returns the cached message for the resource, building and caching it
+     * on a miss.
+     */
+    public String getMessage(final String resourcePath, final String resourceType, final Supplier<String> builder) {
+        return messages.get(new Key(resourcePath, resourceType), key -> builder.get());
+    }
+
+    /**
+     * Drops the messages of all resources at or below any of the given paths
+     * in a single pass over the cache.
+     */
+    @Override
+    public void invalidateSubtrees(final Collection<String> roots) {
+        final List<String> prefixes = new ArrayList<>(roots.size());
+        for (final String root : roots) {
+            prefixes.add(root.endsWith("/") ? root : root + "/");
+        }
+        messages.removeIf(key -> isCovered(key.resourcePath, prefixes));
+    }
+
+    /**
+     * Drops the messages of all resources at or below the given path.
+     */
+    public void invalidate(final String path) {
+        invalidateSubtrees(Collections.singletonList(path));
+    }
+
+    private static boolean isCovered(final String resourcePath, final List<String> prefixes) {
+        for (final String prefix : prefixes) {
+            if (resourcePath.startsWith(prefix) || resourcePath.length() == prefix.length() - 1
+                    && prefix.startsWith(resourcePath)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    int size() {
+        return messages.size();
+    }
+
+    private static final class Key {
+
+        private final String resourcePath;
+
+        private final String resourceType;
+
+        private final int hash;
+
+        Key(final String resourcePath, final String resourceType) {
+            this.resourcePath = resourcePath;
+            this.resourceType = resourceType;
+            this.hash = 31 * resourcePath.hashCode() + Objects.hashCode(resourceType);
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            final Key other = (Key) obj;
+            return resourcePath.equals(other.resourcePath) && Objects.equals(resourceType, other.resourceType);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
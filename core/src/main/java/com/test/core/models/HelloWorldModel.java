@@ -21,28 +21,29 @@ import javax.annotation.PostConstruct;
 
 import org.apache.sling.api.resource.Resource;
 import org.apache.sling.api.resource.ResourceResolver;
-import org.apache.sling.models.annotations.Default;
 import org.apache.sling.models.annotations.Model;
 import org.apache.sling.models.annotations.injectorspecific.InjectionStrategy;
 import org.apache.sling.models.annotations.injectorspecific.OSGiService;
 import org.apache.sling.models.annotations.injectorspecific.SlingObject;
-import org.apache.sling.models.annotations.injectorspecific.ValueMapValue;
 import org.apache.sling.settings.SlingSettingsService;
 
 import com.day.cq.wcm.api.Page;
 import com.day.cq.wcm.api.PageManager;
+import com.test.core.models.projection.ProjectedValue;
+import com.test.core.models.projection.ValueMapProjection;
 
 import java.util.Optional;
 
 @Model(adaptables = Resource.class)
 public class HelloWorldModel {
 
-    @ValueMapValue(name=PROPERTY_RESOURCE_TYPE, injectionStrategy=InjectionStrategy.OPTIONAL)
-    @Default(values="No resourceType")
+    @ProjectedValue(name=PROPERTY_RESOURCE_TYPE, defaultValue="No resourceType")
     protected String resourceType;
 
     @OSGiService
     private SlingSettingsService settings;
+    @OSGiService(injectionStrategy=InjectionStrategy.OPTIONAL)
+    private HelloWorldMessageCache messageCache;
     @SlingObject
     private Resource currentResource;
     @SlingObject
@@ -52,12 +53,21 @@ public class HelloWorldModel {
 
     @PostConstruct
     protected void init() {
+        ValueMapProjection.of(HelloWorldModel.class).project(currentResource, this);
+        if (messageCache != null) {
+            message = messageCache.getMessage(currentResource.getPath(), resourceType, this::buildMessage);
+        } else {
+            message = buildMessage();
+        }
+    }
+
+    private String buildMessage() {
         PageManager pageManager = resourceResolver.adaptTo(PageManager.class);
         String currentPagePath = Optional.ofNullable(pageManager)
                 .map(pm -> pm.getContainingPage(currentResource))
                 .map(Page::getPath).orElse("");
 
-        message = "Hello World!\n"
+        return "Hello World!\n"
             + "Resource type is: " + resourceType + "\n"
             + "Current page is:  " + currentPagePath + "\n"
             + "This is instance: " + settings.getSlingId() + "\n";
@@ -0,0 +1,97 @@
+package com.test.core.models;
+
+import java.util.AbstractMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.PostConstruct;
+
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.models.annotations.Model;
+import org.apache.sling.models.annotations.injectorspecific.InjectionStrategy;
+import org.apache.sling.models.annotations.injectorspecific.OSGiService;
+import org.apache.sling.models.annotations.injectorspecific.ScriptVariable;
+import org.apache.sling.models.annotations.injectorspecific.Self;
+
+import com.day.cq.wcm.api.Page;
+import com.test.core.i18n.I18nDictionaryService;
+import com.test.core.i18n.MessageTable;
+
+/**
+ * Messages of the language of the current page from the
+ * {@link I18nDictionaryService}, for HTL:
+ * {@code ${i18n.messages['Read more']}}. A key that is not translated is
+ * returned as it is. The model is cached per request, so the table is looked
+ * up once per page render.
+ */
+@Model(adaptables = SlingHttpServletRequest.class, cache = true)
+public class I18nModel {
+
+    @OSGiService(injectionStrategy = InjectionStrategy.OPTIONAL)
+    private I18nDictionaryService dictionaryService;
+
+    @ScriptVariable(injectionStrategy = InjectionStrategy.OPTIONAL)
+    private Page currentPage;
+
+    @Self
+    private SlingHttpServletRequest request;
+
+    private Locale locale;
+
+    private Map<String, String> messages;
+
+    @PostConstruct
+    protected void init() {
+        locale = currentPage != null ? currentPage.getLanguage(false) : null;
+        if (locale == null) {
+            locale = request.getLocale();
+        }
+        final MessageTable table = dictionaryService != null ? dictionaryService.getMessages(locale)
+                : MessageTable.EMPTY;
+        messages = new Translations(table);
+    }
+
+    /**
+     * Returns the locale the messages are looked up in, the language of the
+     * current page or else of the request.
+     */
+    public Locale getLocale() {
+        return locale;
+    }
+
+    /**
+     * Returns the messages by key, with the key itself as the message of
+     * untranslated keys.
+     */
+    public Map<String, String> getMessages() {
+        return messages;
+    }
+
+    /**
+     * Read-only view of a message table falling back to the key.
+     */
+    private static final class Translations extends AbstractMap<String, String> {
+
+        private final MessageTable table;
+
+        Translations(final MessageTable table) {
+            this.table = table;
+        }
+
+        @Override
+        public String get(final Object key) {
+            return key instanceof String ? table.translate((String) key) : null;
+        }
+
+        @Override
+        public boolean containsKey(final Object key) {
+            return key instanceof String;
+        }
+
+        @Override
+        public Set<Entry<String, String>> entrySet() {
+            return table.entrySet();
+        }
+    }
+}
@@ -4,57 +4,145 @@ package com.test.core.models;
 import org.apache.sling.api.SlingHttpServletRequest;
 import org.apache.sling.api.resource.Resource;
 import org.apache.sling.models.annotations.Model;
-import org.apache.sling.models.annotations.Optional;
+import org.apache.sling.models.annotations.injectorspecific.InjectionStrategy;
+import org.apache.sling.models.annotations.injectorspecific.OSGiService;
 import org.apache.sling.models.annotations.injectorspecific.RequestAttribute;
-
-import javax.inject.Inject;
+import org.apache.sling.models.annotations.injectorspecific.Self;
+
+import com.test.core.models.projection.Lazy;
+import com.test.core.models.projection.ProjectedChild;
+import com.test.core.models.projection.ProjectedValue;
+import com.test.core.models.projection.ValueMapProjection;
+import com.test.core.renditions.RenditionService;
+import com.day.cq.dam.api.Asset;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.PostConstruct;
+import java.io.IOException;
 import javax.jcr.query.qom.UpperCase;
 
 
+/**
+ * Poster with an image and optional texts. Properties and the occupations
+ * child are only read when their getter is first called, as most renditions
+ * of a poster grid only show the image.
+ * <p>
+ * The image is linked to the width-bucketed renditions of the
+ * {@link RenditionService}, falling back to the original asset when there is
+ * no such service or the reference is not a DAM asset.
+ */
 @Model(adaptables = Resource.class)
 public class PosterModel {
-    @Inject @Optional
-    private String fileReference;
-
-    @Inject @Optional
-    private String alt;
-
-    @Inject @Optional
-    private String height;
-
-    @Inject @Optional
-    private String occupation;
-
-    @Inject @Optional
-    private String description;
+    private static final Logger LOG = LoggerFactory.getLogger(PosterModel.class);
+
+    /** Width of the image in the poster layouts. */
+    private static final int DEFAULT_WIDTH = 640;
+
+    @Self
+    private Resource resource;
+
+    @OSGiService(injectionStrategy = InjectionStrategy.OPTIONAL)
+    private RenditionService renditions;
+
+    private Lazy<Asset> asset;
+
+    private Lazy<String> src;
+
+    private Lazy<String> srcset;
+
+    @ProjectedValue
+    private Lazy<String> fileReference;
+
+    @ProjectedValue
+    private Lazy<String> alt;
+
+    @ProjectedValue
+    private Lazy<String> height;
+
+    @ProjectedValue
+    private Lazy<String> occupation;
+
+    @ProjectedValue
+    private Lazy<String> description;
+
+    @ProjectedChild
+    private Lazy<Resource> occupations;
+
+    @PostConstruct
+    protected void init() {
+        ValueMapProjection.of(PosterModel.class).project(resource, this);
+        asset = Lazy.of(() -> {
+            final String reference = fileReference.get();
+            final Resource assetResource = reference != null && renditions != null
+                    ? resource.getResourceResolver().getResource(reference) : null;
+            return assetResource != null ? assetResource.adaptTo(Asset.class) : null;
+        });
+        src = Lazy.of(() -> {
+            if (asset.get() != null) {
+                try {
+                    return renditions.getUrl(asset.get(), DEFAULT_WIDTH);
+                } catch (IOException e) {
+                    LOG.warn("Cannot link the renditions of {}", fileReference.get(), e);
+                }
+            }
+            return fileReference.get();
+        });
+        srcset = Lazy.of(() -> {
+            if (asset.get() != null) {
+                try {
+                    return renditions.getSrcset(asset.get());
+                } catch (IOException e) {
+                    LOG.warn("Cannot link the renditions of {}", fileReference.get(), e);
+                }
+            }
+            return null;
+        });
+    }
 
-    @Inject @Optional
-    public Resource occupations;
+    /**
+     * Returns the URL of the image in the default width, or the original.
+     */
+    public String getSrc() {
+        return src.get();
+    }
 
+    /**
+     * Returns the renditions of the image as a {@code srcset}, or
+     * {@code null} if there are none.
+     */
+    public String getSrcset() {
+        return srcset.get();
+    }
 
     public String getOccupation() {
-        return occupation;
+        return occupation.get();
     }
 
     public String getDescription() {
-        return description;
+        return description.get();
     }
 
 
     public String getHeight() {
-        return height;
+        return height.get();
     }
 
     public String getWidth() {
-        return width;
+        return width.get();
+    }
+
+    public Resource getOccupations() {
+        return occupations.get();
     }
 
-    private String width;
+    @ProjectedValue
+    private Lazy<String> width;
     public String getFileReference() {
-        return fileReference;
+        return fileReference.get();
     }
 
     public String getAlt() {
-        return alt;
+        return alt.get();
     }
 }
@@ -2,19 +2,27 @@ package com.test.core.models;
 
 import org.apache.sling.api.resource.Resource;
 import org.apache.sling.models.annotations.Model;
-import org.apache.sling.models.annotations.Optional;
+import org.apache.sling.models.annotations.injectorspecific.Self;
 
-import javax.inject.Inject;
+import com.test.core.models.projection.ProjectedValue;
+import com.test.core.models.projection.ValueMapProjection;
+
+import javax.annotation.PostConstruct;
 
 @Model(adaptables = Resource.class)
 public class Register {
-    @Inject
-    @Optional
+    @Self
+    private Resource resource;
+    @ProjectedValue
     private String email;
-    @Inject
-    @Optional
+    @ProjectedValue
     private String password;
 
+    @PostConstruct
+    protected void init() {
+        ValueMapProjection.of(Register.class).project(resource, this);
+    }
+
     public String getEmail() {
         return email;
     }
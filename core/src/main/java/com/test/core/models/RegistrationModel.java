@@ -0,0 +1,45 @@
+package com.test.core.models;
+
+import javax.annotation.PostConstruct;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.models.annotations.Model;
+import org.apache.sling.models.annotations.injectorspecific.InjectionStrategy;
+import org.apache.sling.models.annotations.injectorspecific.ScriptVariable;
+
+import com.day.cq.wcm.api.Page;
+
+/**
+ * Short page title shown by the registration component, replacing the former
+ * {@code logic.js} Use-API script. The model is cached per request, so the
+ * title is computed once per page render however many registration
+ * components the page contains.
+ */
+@Model(adaptables = SlingHttpServletRequest.class, cache = true)
+public class RegistrationModel {
+
+    /** Number of title characters kept before the ellipsis. */
+    static final int TITLE_LENGTH = 2;
+
+    static final String ELLIPSIS = "...";
+
+    @ScriptVariable(injectionStrategy = InjectionStrategy.OPTIONAL)
+    private Page currentPage;
+
+    private String title;
+
+    @PostConstruct
+    protected void init() {
+        final String pageTitle = currentPage != null ? currentPage.getTitle() : null;
+        title = StringUtils.isEmpty(pageTitle) ? StringUtils.EMPTY : StringUtils.left(pageTitle, TITLE_LENGTH) + ELLIPSIS;
+    }
+
+    /**
+     * Returns the first two characters of the page title followed by an
+     * ellipsis, or an empty string for pages without a title.
+     */
+    public String getTitle() {
+        return title;
+    }
+}
@@ -0,0 +1,61 @@
+package com.test.core.models.projection;
+
+import java.util.function.Supplier;
+
+/**
+ * A value that is computed the first time it is asked for and then kept.
+ * <p>
+ * A {@link ValueMapProjection} fills {@code Lazy} fields annotated with
+ * {@link ProjectedValue} or {@link ProjectedChild} without reading the
+ * property or child, which is only read when a getter of the model calls
+ * {@link #get()}, e.g. from HTL. Models are used by a single request, so the
+ * value is not guarded against concurrent first calls.
+ *
+ * @param <T> the value type
+ */
+public final class Lazy<T> implements Supplier<T> {
+
+    private Supplier<? extends T> supplier;
+
+    private T value;
+
+    private Lazy(final Supplier<? extends T> supplier) {
+        this.supplier = supplier;
+    }
+
+    /**
+     * Returns a lazy value computed by the given supplier.
+     */
+    public static <T> Lazy<T> of(final Supplier<? extends T> supplier) {
+        return new Lazy<>(supplier);
+    }
+
+    /**
+     * Returns a lazy value that is already known.
+     */
+    public static <T> Lazy<T> value(final T value) {
+        final Lazy<T> lazy = new Lazy<>(null);
+        lazy.value = value;
+        return lazy;
+    }
+
+    /**
+     * Returns the value, computing it on the first call.
+     */
+    @Override
+    public T get() {
+        final Supplier<? extends T> pending = supplier;
+        if (pending != null) {
+            value = pending.get();
+            supplier = null;
+        }
+        return value;
+    }
+
+    /**
+     * Whether the value was computed already.
+     */
+    public boolean isLoaded() {
+        return supplier == null;
+    }
+}
@@ -0,0 +1,20 @@
+package com.test.core.models.projection;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a {@link org.apache.sling.api.resource.Resource} field that is filled
+ * with a child resource by a {@link ValueMapProjection}.
+ */
+@Target(ElementType.FIELD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface ProjectedChild {
+
+    /**
+     * The child name, defaults to the field name.
+     */
+    String name() default "";
+}
@@ -0,0 +1,30 @@
+package com.test.core.models.projection;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a model field that is filled from the resource's value map by a
+ * {@link ValueMapProjection}. Fields without a value in the value map keep
+ * their initial value unless a {@link #defaultValue()} is given. A
+ * {@link Lazy} field reads the property when its value is first asked for,
+ * and holds {@code null} if there is neither a value nor a default.
+ */
+@Target(ElementType.FIELD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface ProjectedValue {
+
+    /**
+     * The property name, defaults to the field name.
+     */
+    String name() default "";
+
+    /**
+     * Value used when the property is missing. Only applies to
+     * {@code String} and {@code Lazy<String>} fields; an empty string means
+     * no default.
+     */
+    String defaultValue() default "";
+}
@@ -0,0 +1,194 @@
+package com.test.core.models.projection;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+
+import org.apache.commons.lang3.ClassUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ValueMap;
+
+/**
+ * Fills the {@link ProjectedValue} and {@link ProjectedChild} fields of a
+ * model in a single pass over the resource's value map.
+ * <p>
+ * Sling Models resolves every {@code @Inject} field by asking each injector
+ * in turn. A projection instead scans the model class once, keeps a setter
+ * method handle plus property name and type per field, and reuses that
+ * mapping for every instance. Fields of type {@link Lazy} are filled without
+ * reading anything; their property or child is read when the value is first
+ * asked for. Models call it from their {@code @PostConstruct} method:
+ *
+ * <pre>
+ * ValueMapProjection.of(PosterModel.class).project(resource, this);
+ * </pre>
+ *
+ * @param <T> the model type
+ */
+public final class ValueMapProjection<T> {
+
+    private static final ClassValue<ValueMapProjection<?>> PROJECTIONS = new ClassValue<ValueMapProjection<?>>() {
+        @Override
+        protected ValueMapProjection<?> computeValue(final Class<?> type) {
+            return new ValueMapProjection<>(type);
+        }
+    };
+
+    private static final MethodType SETTER_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+
+    private final Slot[] slots;
+
+    private final List<String> childNames;
+
+    private ValueMapProjection(final Class<T> type) {
+        final List<Slot> found = new ArrayList<>();
+        final MethodHandles.Lookup lookup = MethodHandles.lookup();
+        for (Class<?> current = type; current != null && current != Object.class; current = current.getSuperclass()) {
+            for (final Field field : current.getDeclaredFields()) {
+                final ProjectedValue value = field.getAnnotation(ProjectedValue.class);
+                final ProjectedChild child = field.getAnnotation(ProjectedChild.class);
+                if (value == null && child == null) {
+                    continue;
+                }
+                if (Modifier.isStatic(field.getModifiers()) || Modifier.isFinal(field.getModifiers())) {
+                    throw new IllegalArgumentException("Projected field must be neither static nor final: " + field);
+                }
+                field.setAccessible(true);
+                final MethodHandle setter;
+                try {
+                    setter = lookup.unreflectSetter(field).asType(SETTER_TYPE);
+                } catch (IllegalAccessException e) {
+                    throw new IllegalArgumentException("Cannot access projected field " + field, e);
+                }
+                final boolean lazy = field.getType() == Lazy.class;
+                final Class<?> fieldType = lazy ? lazyTypeOf(field) : field.getType();
+                if (child != null) {
+                    if (!Resource.class.isAssignableFrom(fieldType)) {
+                        throw new IllegalArgumentException("Projected child must be a Resource: " + field);
+                    }
+                    found.add(new Slot(nameOf(child.name(), field), null, null, lazy, setter));
+                } else {
+                    final Class<?> valueType = ClassUtils.primitiveToWrapper(fieldType);
+                    final Object defaultValue = valueType == String.class && !value.defaultValue().isEmpty()
+                            ? value.defaultValue() : null;
+                    found.add(new Slot(nameOf(value.name(), field), valueType, defaultValue, lazy, setter));
+                }
+            }
+        }
+        slots = found.toArray(new Slot[0]);
+        final List<String> names = new ArrayList<>();
+        for (final Slot slot : slots) {
+            if (slot.valueType == null) {
+                names.add(slot.name);
+            }
+        }
+        childNames = Collections.unmodifiableList(names);
+    }
+
+    /**
+     * Returns the cached projection of the given model class.
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> ValueMapProjection<T> of(final Class<T> type) {
+        return (ValueMapProjection<T>) PROJECTIONS.get(type);
+    }
+
+    /**
+     * Returns the names of the projected children.
+     */
+    public List<String> getChildNames() {
+        return childNames;
+    }
+
+    /**
+     * Fills the projected fields of the target from the resource.
+     */
+    public void project(final Resource resource, final T target) {
+        project(resource.getValueMap(), resource::getChild, target);
+    }
+
+    /**
+     * Fills the projected fields of the target from the given properties,
+     * resolving projected children through the given function.
+     */
+    public void project(final ValueMap properties, final Function<String, Resource> children, final T target) {
+        for (final Slot slot : slots) {
+            if (slot.lazy) {
+                slot.set(target, Lazy.of(() -> slot.read(properties, children)));
+                continue;
+            }
+            final Object value = slot.read(properties, children);
+            if (value != null) {
+                slot.set(target, value);
+            }
+        }
+    }
+
+    private static Class<?> lazyTypeOf(final Field field) {
+        final Type type = field.getGenericType();
+        if (type instanceof ParameterizedType) {
+            final Type argument = ((ParameterizedType) type).getActualTypeArguments()[0];
+            if (argument instanceof Class) {
+                return (Class<?>) argument;
+            }
+        }
+        throw new IllegalArgumentException("Lazy projected field must declare its value class: " + field);
+    }
+
+    private static String nameOf(final String name, final Field field) {
+        return StringUtils.isEmpty(name) ? field.getName() : name;
+    }
+
+    private static final class Slot {
+
+        private final String name;
+
+        /** The boxed property type, {@code null} for child resources. */
+        private final Class<?> valueType;
+
+        private final Object defaultValue;
+
+        /** Whether the field is a {@link Lazy} that reads the value when asked. */
+        private final boolean lazy;
+
+        private final MethodHandle setter;
+
+        Slot(final String name, final Class<?> valueType, final Object defaultValue, final boolean lazy,
+                final MethodHandle setter) {
+            this.name = name;
+            this.valueType = valueType;
+            this.defaultValue = defaultValue;
+            this.lazy = lazy;
+            this.setter = setter;
+        }
+
+        /**
+         * Returns the child or the property value, or else the default value.
+         */
+        Object read(final ValueMap properties, final Function<String, Resource> children) {
+            final Object value = valueType == null
+                    ? children.apply(name)
+                    : properties.get(name, valueType);
+            return value != null ? value : defaultValue;
+        }
+
+        void set(final Object target, final Object value) {
+            try {
+                setter.invokeExact(target, value);
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new IllegalStateException("Cannot set projected field " + name, e);
+            }
+        }
+    }
+}
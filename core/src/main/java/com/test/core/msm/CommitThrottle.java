@@ -0,0 +1,65 @@
+package com.test.core.msm;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Slows down writers when repository commits get slow. The latency of each
+ * commit is folded into an exponentially weighted moving average; while it is
+ * above the target, writers pause before their next batch, the longer the
+ * further the average is above the target.
+ */
+final class CommitThrottle {
+
+    /** Weight of the latest commit in the moving average. */
+    private static final double ALPHA = 0.2;
+
+    private final double targetMillis;
+
+    private final long maxPauseMillis;
+
+    private double averageMillis = -1;
+
+    /**
+     * @param targetMillis   the commit latency up to which writers do not pause
+     * @param maxPauseMillis the longest pause before a batch
+     */
+    CommitThrottle(final long targetMillis, final long maxPauseMillis) {
+        this.targetMillis = Math.max(1, targetMillis);
+        this.maxPauseMillis = Math.max(0, maxPauseMillis);
+    }
+
+    /**
+     * Records the latency of a commit.
+     */
+    synchronized void record(final long latencyNanos) {
+        final double millis = latencyNanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+        averageMillis = averageMillis < 0 ? millis : ALPHA * millis + (1 - ALPHA) * averageMillis;
+    }
+
+    /** Moving average of the commit latency in milliseconds, 0 before the first commit. */
+    synchronized double getAverageMillis() {
+        return Math.max(0, averageMillis);
+    }
+
+    /**
+     * Returns the pause before the next batch: none up to the target, then
+     * the average latency times its excess over the target, so commits at
+     * twice the target are followed by a pause as long as a commit.
+     */
+    synchronized long getPauseMillis() {
+        if (averageMillis <= targetMillis) {
+            return 0;
+        }
+        return Math.min(maxPauseMillis, (long) (averageMillis * (averageMillis - targetMillis) / targetMillis));
+    }
+
+    /**
+     * Blocks for the current pause.
+     */
+    void await() throws InterruptedException {
+        final long pause = getPauseMillis();
+        if (pause > 0) {
+            TimeUnit.MILLISECONDS.sleep(pause);
+        }
+    }
+}
@@ -0,0 +1,486 @@
+package com.test.core.msm;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.jcr.RangeIterator;
+
+import org.apache.sling.api.resource.LoginException;
+import org.apache.sling.api.resource.PersistenceException;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ResourceResolverFactory;
+import org.apache.sling.api.resource.ResourceUtil;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
+import org.osgi.service.component.annotations.Modified;
+import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.component.annotations.ReferenceCardinality;
+import org.osgi.service.component.annotations.ReferencePolicyOption;
+import org.osgi.service.component.propertytypes.ServiceDescription;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.day.cq.wcm.api.NameConstants;
+import com.day.cq.wcm.api.WCMException;
+import com.day.cq.wcm.msm.api.LiveRelationship;
+import com.day.cq.wcm.msm.api.LiveRelationshipManager;
+import com.day.cq.wcm.msm.api.RolloutManager;
+import com.test.core.metrics.JobMetrics;
+import com.test.core.metrics.JobMetrics.JobStatistics;
+
+/**
+ * Rolls out the pages of a blueprint to all their live copies on a bounded
+ * pool of workers.
+ * <p>
+ * The blueprint pages are rolled out level by level, so the parent of a page
+ * exists in every live copy before the page itself is rolled out. The pages
+ * of a level are split among the workers, each with its own service resource
+ * resolver. A worker rolls out a page to each of its live copies without
+ * saving, and commits once per batch of live copy updates. A batch that
+ * cannot be committed, typically because another worker added pages below the
+ * same parent, is reverted and its updates are applied and committed one by
+ * one again. Live copies below a live copy whose update failed are skipped,
+ * as their parent is missing or outdated. The latency of the
+ * commits is fed into a {@link CommitThrottle}, which pauses the workers
+ * before their next batch while the repository is slow, so that rollouts do
+ * not starve replication and other writers.
+ * <p>
+ * Each run is recorded in the {@link JobMetrics} with the number of live copy
+ * updates, and the progress of the current run is exposed through the
+ * {@code RolloutOrchestratorMBean}.
+ */
+@Designate(ocd = RolloutOrchestrator.Config.class)
+@Component(service = RolloutOrchestrator.class)
+@ServiceDescription("Rolls out blueprints with bounded parallelism")
+public class RolloutOrchestrator {
+
+    @ObjectClassDefinition(name = "Rollout orchestrator",
+                           description = "Parallel, batched and throttled rollouts of blueprints")
+    public static @interface Config {
+
+        @AttributeDefinition(name = "Blueprint root",
+                             description = "Page rolled out by default, the site path of the blueprint")
+        String blueprint_root() default "/content/test/language-masters";
+
+        @AttributeDefinition(name = "Parallelism",
+                             description = "Number of workers rolling out pages at the same time")
+        int parallelism() default 4;
+
+        @AttributeDefinition(name = "Batch size",
+                             description = "Live copy updates per commit")
+        int batch_size() default 50;
+
+        @AttributeDefinition(name = "Target commit latency",
+                             description = "Milliseconds a commit may take before workers pause")
+        long target_commit_ms() default 200;
+
+        @AttributeDefinition(name = "Maximum pause",
+                             description = "Longest pause in milliseconds before a batch")
+        long max_pause_ms() default 5000;
+    }
+
+    static final String JOB_NAME = "rollout";
+
+    static final String SUBSERVICE = "rollout";
+
+    /** Attempts to commit a single live copy update after its batch failed. */
+    static final int COMMIT_ATTEMPTS = 3;
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    @Reference
+    private ResourceResolverFactory resolverFactory;
+
+    @Reference
+    private RolloutManager rolloutManager;
+
+    @Reference
+    private LiveRelationshipManager relationshipManager;
+
+    @Reference(cardinality = ReferenceCardinality.OPTIONAL, policyOption = ReferencePolicyOption.GREEDY)
+    private JobMetrics metrics;
+
+    private volatile Config config;
+
+    private JobStatistics statistics = new JobStatistics(JOB_NAME);
+
+    private ExecutorService starter;
+
+    private volatile CommitThrottle throttle = new CommitThrottle(200, 5000);
+
+    private final AtomicInteger totalPages = new AtomicInteger();
+
+    private final AtomicInteger rolledOutPages = new AtomicInteger();
+
+    private final AtomicLong updates = new AtomicLong();
+
+    private final AtomicLong failedUpdates = new AtomicLong();
+
+    private final AtomicLong commits = new AtomicLong();
+
+    /** Live copy paths of the current rollout whose update failed or was skipped. */
+    private final Set<String> failedTargets = ConcurrentHashMap.newKeySet();
+
+    private volatile long startNanos;
+
+    private volatile long endNanos;
+
+    @Activate
+    protected void activate(final Config config) {
+        modified(config);
+        statistics = metrics != null ? metrics.getJob(JOB_NAME) : new JobStatistics(JOB_NAME);
+        starter = Executors.newSingleThreadExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "RolloutOrchestrator");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Modified
+    protected void modified(final Config config) {
+        this.config = config;
+    }
+
+    @Deactivate
+    protected void deactivate() {
+        starter.shutdownNow();
+    }
+
+    /**
+     * Starts a rollout of the page and its descendants in the background.
+     *
+     * @param rootPath the blueprint page, the configured blueprint root if blank
+     */
+    public Future<Result> start(final String rootPath) {
+        return starter.submit(() -> rollout(rootPath));
+    }
+
+    /**
+     * Rolls out the page and its descendants to all their live copies,
+     * blocking until every page is done.
+     *
+     * @param rootPath the blueprint page, the configured blueprint root if blank
+     * @throws IllegalStateException if another rollout is running
+     * @throws InterruptedException  if the calling thread is interrupted; the
+     *                               committed batches are kept
+     */
+    public Result rollout(final String rootPath) throws LoginException, InterruptedException {
+        final Config current = config;
+        final String root = rootPath == null || rootPath.trim().isEmpty() ? current.blueprint_root() : rootPath;
+        if (!statistics.tryStart(true)) {
+            throw new IllegalStateException("A rollout is running already");
+        }
+        throttle = new CommitThrottle(current.target_commit_ms(), current.max_pause_ms());
+        totalPages.set(0);
+        rolledOutPages.set(0);
+        updates.set(0);
+        failedUpdates.set(0);
+        commits.set(0);
+        failedTargets.clear();
+        startNanos = System.nanoTime();
+        endNanos = 0;
+        try {
+            final List<List<String>> levels = collectLevels(root);
+            final int parallelism = Math.max(1, current.parallelism());
+            final int batchSize = Math.max(1, current.batch_size());
+            final ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+            try {
+                for (final List<String> level : levels) {
+                    rolloutLevel(executor, level, parallelism, batchSize);
+                }
+            } finally {
+                executor.shutdownNow();
+            }
+            endNanos = System.nanoTime();
+            final Result result = new Result(rolledOutPages.get(), updates.get(), failedUpdates.get(),
+                    endNanos - startNanos);
+            logger.info("Rolled out {} pages of {} with {} live copy updates, {} failed, in {} s",
+                    result.getPages(), root, result.getUpdates(), result.getFailedUpdates(),
+                    result.getDuration(TimeUnit.SECONDS));
+            statistics.succeeded(endNanos - startNanos, updates.get());
+            return result;
+        } catch (LoginException | RuntimeException e) {
+            endNanos = System.nanoTime();
+            statistics.failed(endNanos - startNanos, e.toString());
+            throw e;
+        } catch (InterruptedException e) {
+            endNanos = System.nanoTime();
+            statistics.failed(endNanos - startNanos, "Interrupted");
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the paths of the blueprint pages, grouped by level.
+     */
+    private List<List<String>> collectLevels(final String root) throws LoginException {
+        final List<List<String>> levels = new ArrayList<>();
+        try (ResourceResolver resolver = login()) {
+            final Resource page = resolver.getResource(root);
+            if (page == null || !page.isResourceType(NameConstants.NT_PAGE)) {
+                logger.warn("Blueprint root {} is not a page", root);
+                return levels;
+            }
+            List<Resource> level = Collections.singletonList(page);
+            while (!level.isEmpty()) {
+                final List<Resource> next = new ArrayList<>();
+                final List<String> paths = new ArrayList<>(level.size());
+                for (final Resource parent : level) {
+                    paths.add(parent.getPath());
+                    for (final Resource child : parent.getChildren()) {
+                        if (child.isResourceType(NameConstants.NT_PAGE)) {
+                            next.add(child);
+                        }
+                    }
+                }
+                levels.add(paths);
+                totalPages.addAndGet(paths.size());
+                level = next;
+            }
+        }
+        return levels;
+    }
+
+    private void rolloutLevel(final ExecutorService executor, final List<String> level, final int parallelism,
+            final int batchSize) throws LoginException, InterruptedException {
+        final int chunk = (level.size() + parallelism - 1) / parallelism;
+        final List<Future<?>> parts = new ArrayList<>(parallelism);
+        for (int start = 0; start < level.size(); start += chunk) {
+            final List<String> part = level.subList(start, Math.min(start + chunk, level.size()));
+            parts.add(executor.submit(() -> {
+                rolloutPages(part, batchSize);
+                return null;
+            }));
+        }
+        for (final Future<?> part : parts) {
+            try {
+                part.get();
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof LoginException) {
+                    throw (LoginException) e.getCause();
+                }
+                if (e.getCause() instanceof InterruptedException) {
+                    throw (InterruptedException) e.getCause();
+                }
+                throw new IllegalStateException("Rollout worker failed", e.getCause());
+            }
+        }
+    }
+
+    private void rolloutPages(final List<String> pages, final int batchSize)
+            throws LoginException, InterruptedException {
+        try (ResourceResolver resolver = login()) {
+            final List<LiveRelationship> batch = new ArrayList<>(batchSize);
+            for (final String path : pages) {
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new InterruptedException("Interrupted before " + path);
+                }
+                final Resource source = resolver.getResource(path);
+                if (source == null) {
+                    continue;
+                }
+                final RangeIterator relationships;
+                try {
+                    relationships = relationshipManager.getLiveRelationships(source, null,
+                            RolloutManager.Trigger.ROLLOUT);
+                } catch (WCMException e) {
+                    logger.warn("Cannot find the live copies of {}", path, e);
+                    continue;
+                }
+                while (relationships.hasNext()) {
+                    final LiveRelationship relationship = (LiveRelationship) relationships.next();
+                    if (failedTargets.contains(ResourceUtil.getParent(relationship.getTargetPath()))) {
+                        failed(relationship);
+                        logger.debug("Skipping {}, the update of its parent failed", relationship.getTargetPath());
+                        continue;
+                    }
+                    if (batch.isEmpty()) {
+                        throttle.await();
+                    }
+                    if (apply(resolver, relationship)) {
+                        batch.add(relationship);
+                    }
+                    if (batch.size() >= batchSize) {
+                        commit(resolver, batch);
+                        batch.clear();
+                    }
+                }
+                rolledOutPages.incrementAndGet();
+            }
+            if (!batch.isEmpty()) {
+                commit(resolver, batch);
+            }
+        }
+    }
+
+    /**
+     * Applies a live copy update without saving it.
+     */
+    private boolean apply(final ResourceResolver resolver, final LiveRelationship relationship) {
+        try {
+            rolloutManager.rollout(resolver, relationship, false, false);
+            return true;
+        } catch (WCMException e) {
+            failed(relationship);
+            logger.warn("Cannot roll out {} to {}", relationship.getSourcePath(), relationship.getTargetPath(), e);
+            return false;
+        }
+    }
+
+    /**
+     * Commits a batch of applied updates, or else applies and commits them
+     * one by one on the current state of the repository.
+     */
+    private void commit(final ResourceResolver resolver, final List<LiveRelationship> batch) {
+        if (tryCommit(resolver, batch.size())) {
+            updates.addAndGet(batch.size());
+            return;
+        }
+        for (final LiveRelationship relationship : batch) {
+            boolean committed = false;
+            for (int attempt = 0; attempt < COMMIT_ATTEMPTS && !committed; attempt++) {
+                resolver.refresh();
+                if (!apply(resolver, relationship)) {
+                    break;
+                }
+                committed = tryCommit(resolver, 1);
+            }
+            if (committed) {
+                updates.incrementAndGet();
+            } else if (!failedTargets.contains(relationship.getTargetPath())) {
+                failed(relationship);
+                logger.error("Cannot commit the update of {}", relationship.getTargetPath());
+            }
+        }
+    }
+
+    private boolean tryCommit(final ResourceResolver resolver, final int batch) {
+        final long start = System.nanoTime();
+        try {
+            resolver.commit();
+            commits.incrementAndGet();
+            return true;
+        } catch (PersistenceException e) {
+            resolver.revert();
+            logger.warn("Cannot commit {} live copy updates", batch, e);
+            return false;
+        } finally {
+            throttle.record(System.nanoTime() - start);
+        }
+    }
+
+    private void failed(final LiveRelationship relationship) {
+        failedUpdates.incrementAndGet();
+        failedTargets.add(relationship.getTargetPath());
+    }
+
+    private ResourceResolver login() throws LoginException {
+        return resolverFactory.getServiceResourceResolver(
+                Collections.singletonMap(ResourceResolverFactory.SUBSERVICE, SUBSERVICE));
+    }
+
+    /** Whether a rollout is running. */
+    public boolean isRunning() {
+        return statistics.isRunning();
+    }
+
+    /** Blueprint pages of the current or last rollout. */
+    public int getTotalPages() {
+        return totalPages.get();
+    }
+
+    /** Blueprint pages processed by the current or last rollout. */
+    public int getRolledOutPages() {
+        return rolledOutPages.get();
+    }
+
+    /** Committed live copy updates of the current or last rollout. */
+    public long getUpdates() {
+        return updates.get();
+    }
+
+    /** Live copy updates of the current or last rollout that failed. */
+    public long getFailedUpdates() {
+        return failedUpdates.get();
+    }
+
+    /** Commits of the current or last rollout. */
+    public long getCommits() {
+        return commits.get();
+    }
+
+    /** Committed live copy updates per second of the current or last rollout. */
+    public double getUpdatesPerSecond() {
+        final long start = startNanos;
+        if (start == 0) {
+            return 0;
+        }
+        final long end = endNanos != 0 ? endNanos : System.nanoTime();
+        return end > start ? updates.get() * (double) TimeUnit.SECONDS.toNanos(1) / (end - start) : 0;
+    }
+
+    /** Moving average of the commit latency in milliseconds. */
+    public double getCommitLatencyMillis() {
+        return throttle.getAverageMillis();
+    }
+
+    /** Pause in milliseconds the workers currently take before a batch. */
+    public long getPauseMillis() {
+        return throttle.getPauseMillis();
+    }
+
+    /**
+     * Outcome of one rollout.
+     */
+    public static final class Result {
+
+        private final int pages;
+
+        private final long updates;
+
+        private final long failedUpdates;
+
+        private final long durationNanos;
+
+        Result(final int pages, final long updates, final long failedUpdates, final long durationNanos) {
+            this.pages = pages;
+            this.updates = updates;
+            this.failedUpdates = failedUpdates;
+            this.durationNanos = durationNanos;
+        }
+
+        /** Blueprint pages rolled out. */
+        public int getPages() {
+            return pages;
+        }
+
+        /** Committed live copy updates. */
+        public long getUpdates() {
+            return updates;
+        }
+
+        /** Live copy updates that failed or could not be committed. */
+        public long getFailedUpdates() {
+            return failedUpdates;
+        }
+
+        public long getDuration(final TimeUnit unit) {
+            return unit.convert(durationNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+}
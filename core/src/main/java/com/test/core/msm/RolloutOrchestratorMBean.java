@@ -0,0 +1,42 @@
+package com.test.core.msm;
+
+import com.adobe.granite.jmx.annotation.Description;
+import com.adobe.granite.jmx.annotation.Name;
+
+/**
+ * JMX view of the progress of the {@link RolloutOrchestrator}.
+ */
+@Description("Progress and throughput of blueprint rollouts")
+public interface RolloutOrchestratorMBean {
+
+    @Description("Whether a rollout is running")
+    boolean isRunning();
+
+    @Description("Blueprint pages of the current or last rollout")
+    int getTotalPages();
+
+    @Description("Blueprint pages processed by the current or last rollout")
+    int getRolledOutPages();
+
+    @Description("Committed live copy updates of the current or last rollout")
+    long getUpdates();
+
+    @Description("Live copy updates of the current or last rollout that failed")
+    long getFailedUpdates();
+
+    @Description("Commits of the current or last rollout")
+    long getCommits();
+
+    @Description("Committed live copy updates per second")
+    double getUpdatesPerSecond();
+
+    @Description("Moving average of the commit latency in milliseconds")
+    double getCommitLatencyMillis();
+
+    @Description("Pause in milliseconds the workers take before a batch")
+    long getPauseMillis();
+
+    @Description("Starts a rollout in the background")
+    String startRollout(@Name("rootPath") @Description("Blueprint page, the configured root if empty")
+                        String rootPath);
+}
@@ -0,0 +1,81 @@
+package com.test.core.msm;
+
+import javax.management.DynamicMBean;
+import javax.management.NotCompliantMBeanException;
+
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Reference;
+
+import com.adobe.granite.jmx.annotation.AnnotatedStandardMBean;
+
+/**
+ * Registers the progress of the {@link RolloutOrchestrator} with the JMX
+ * whiteboard.
+ */
+@Component(service = DynamicMBean.class,
+           property = {
+                   "jmx.objectname=com.test.core:type=RolloutOrchestrator"
+           })
+public class RolloutOrchestratorMBeanImpl extends AnnotatedStandardMBean implements RolloutOrchestratorMBean {
+
+    @Reference
+    private RolloutOrchestrator orchestrator;
+
+    public RolloutOrchestratorMBeanImpl() throws NotCompliantMBeanException {
+        super(RolloutOrchestratorMBean.class);
+    }
+
+    @Override
+    public boolean isRunning() {
+        return orchestrator.isRunning();
+    }
+
+    @Override
+    public int getTotalPages() {
+        return orchestrator.getTotalPages();
+    }
+
+    @Override
+    public int getRolledOutPages() {
+        return orchestrator.getRolledOutPages();
+    }
+
+    @Override
+    public long getUpdates() {
+        return orchestrator.getUpdates();
+    }
+
+    @Override
+    public long getFailedUpdates() {
+        return orchestrator.getFailedUpdates();
+    }
+
+    @Override
+    public long getCommits() {
+        return orchestrator.getCommits();
+    }
+
+    @Override
+    public double getUpdatesPerSecond() {
+        return orchestrator.getUpdatesPerSecond();
+    }
+
+    @Override
+    public double getCommitLatencyMillis() {
+        return orchestrator.getCommitLatencyMillis();
+    }
+
+    @Override
+    public long getPauseMillis() {
+        return orchestrator.getPauseMillis();
+    }
+
+    @Override
+    public String startRollout(final String rootPath) {
+        if (orchestrator.isRunning()) {
+            return "A rollout is running already";
+        }
+        orchestrator.start(rootPath);
+        return "Rollout started";
+    }
+}
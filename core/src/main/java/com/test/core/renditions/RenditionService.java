@@ -0,0 +1,508 @@
+package com.test.core.renditions;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.NullOutputStream;
+import org.apache.commons.lang3.StringUtils;
+import org.osgi.framework.BundleContext;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.propertytypes.ServiceDescription;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.day.cq.dam.api.Asset;
+import com.day.cq.dam.api.DamConstants;
+import com.day.cq.dam.api.Rendition;
+import com.test.core.cache.LruCache;
+
+/**
+ * Creates resized renditions of DAM images in a fixed set of widths.
+ * <p>
+ * Requested widths are rounded up to the next configured width, so each
+ * asset has a handful of renditions however many layouts ask for it. A
+ * rendition is written once to a directory on disk, named after the SHA-1
+ * of the original and the width. The name changes with the content of the
+ * original, so the rendition URLs built by {@link #getUrl(Asset, int)} can be
+ * cached by browsers and the dispatcher forever. The SHA-1 is taken from the
+ * {@code dam:sha1} metadata of the asset, or computed from the original once
+ * per modification.
+ * <p>
+ * Renditions are not enlarged: an original narrower than the requested width
+ * is encoded at its own width. JPEG originals stay JPEG, other images are
+ * written as PNG. When the directory grows beyond its limit, the renditions
+ * used least recently are deleted, except those being created or used within
+ * the last seconds. Renditions are sent through {@link #openRendition(Asset,
+ * int)}, whose channel stays readable when the file is deleted meanwhile.
+ * <p>
+ * Decoding an original takes four bytes per pixel of heap, so originals with
+ * more pixels than configured are rejected before they are decoded, and only
+ * a few originals are decoded at a time. Concurrent requests of a rendition
+ * that does not exist yet wait for a single thread to create it.
+ */
+@Designate(ocd = RenditionService.Config.class)
+@Component(service = RenditionService.class)
+@ServiceDescription("Width-bucketed renditions of DAM images")
+public class RenditionService {
+
+    @ObjectClassDefinition(name = "Rendition service",
+                           description = "Width-bucketed, disk-cached renditions of DAM images")
+    public static @interface Config {
+
+        @AttributeDefinition(name = "Widths",
+                             description = "Widths in pixels that renditions are created in")
+        int[] widths() default { 320, 640, 960, 1280, 1920 };
+
+        @AttributeDefinition(name = "Cache directory",
+                             description = "Directory of the renditions, in the data area of the bundle if empty")
+        String cache_directory() default "";
+
+        @AttributeDefinition(name = "Cache size",
+                             description = "Megabytes of renditions kept on disk")
+        int max_cache_mb() default 2048;
+
+        @AttributeDefinition(name = "JPEG quality",
+                             description = "From 0 to 1")
+        float quality() default 0.82f;
+
+        @AttributeDefinition(name = "Maximum pixels",
+                             description = "Megapixels of the largest original renditions are created of")
+        int max_megapixels() default 50;
+
+        @AttributeDefinition(name = "Concurrent decodes",
+                             description = "Number of originals decoded at the same time")
+        int max_concurrent_decodes() default 2;
+    }
+
+    /** Selector of rendition requests, followed by the width and the hash. */
+    public static final String SELECTOR = "rendition";
+
+    /** Number of hash characters in rendition URLs. */
+    static final int URL_HASH_LENGTH = 16;
+
+    private static final String JPEG = "jpg";
+
+    private static final String PNG = "png";
+
+    /** Milliseconds a rendition is kept after it was used, however full the cache is. */
+    private static final long TRIM_GRACE_MILLIS = 10_000;
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    /** Computed SHA-1 of originals by path and modification time. */
+    private final LruCache<String, String> hashes = new LruCache<>(10000);
+
+    private final AtomicLong cacheBytes = new AtomicLong();
+
+    private final AtomicLong created = new AtomicLong();
+
+    /** Renditions being created, by file. */
+    private final ConcurrentMap<Path, CompletableFuture<Path>> pending = new ConcurrentHashMap<>();
+
+    private Semaphore decodes;
+
+    private long maxPixels;
+
+    private int[] widths;
+
+    private Path directory;
+
+    private long maxCacheBytes;
+
+    private float quality;
+
+    @Activate
+    protected void activate(final Config config, final BundleContext bundleContext) throws IOException {
+        widths = Arrays.stream(config.widths()).filter(width -> width > 0).sorted().distinct().toArray();
+        if (widths.length == 0) {
+            throw new IllegalArgumentException("At least one positive width is required");
+        }
+        directory = StringUtils.isNotBlank(config.cache_directory())
+                ? Paths.get(config.cache_directory())
+                : bundleContext.getDataFile("renditions").toPath();
+        Files.createDirectories(directory);
+        maxCacheBytes = Math.max(1, config.max_cache_mb()) * 1024L * 1024L;
+        quality = Math.min(1f, Math.max(0f, config.quality()));
+        maxPixels = Math.max(1, config.max_megapixels()) * 1000L * 1000L;
+        decodes = new Semaphore(Math.max(1, config.max_concurrent_decodes()), true);
+        try (Stream<Path> files = Files.walk(directory)) {
+            cacheBytes.set(files.filter(Files::isRegularFile).mapToLong(file -> file.toFile().length()).sum());
+        }
+    }
+
+    /**
+     * Returns the configured width a requested width is served with, the
+     * smallest one that is at least as wide, or else the widest.
+     */
+    public int bucket(final int width) {
+        for (final int bucket : widths) {
+            if (bucket >= width) {
+                return bucket;
+            }
+        }
+        return widths[widths.length - 1];
+    }
+
+    /**
+     * Returns the URL of the rendition of the asset in the given width.
+     */
+    public String getUrl(final Asset asset, final int width) throws IOException {
+        return asset.getPath() + "." + SELECTOR + "." + bucket(width) + "."
+                + getHash(asset).substring(0, URL_HASH_LENGTH) + "." + extensionOf(asset);
+    }
+
+    /**
+     * Returns a {@code srcset} of the renditions of the asset, one per
+     * configured width up to the width of the original, if known.
+     */
+    public String getSrcset(final Asset asset) throws IOException {
+        final int originalWidth = widthOf(asset);
+        final StringBuilder srcset = new StringBuilder();
+        for (final int width : widths) {
+            if (srcset.length() > 0) {
+                if (originalWidth > 0 && width > originalWidth) {
+                    break;
+                }
+                srcset.append(", ");
+            }
+            srcset.append(getUrl(asset, width)).append(' ').append(width).append('w');
+        }
+        return srcset.toString();
+    }
+
+    /**
+     * Returns the SHA-1 of the original of the asset.
+     */
+    public String getHash(final Asset asset) throws IOException {
+        final String metadata = asset.getMetadataValue(DamConstants.PN_SHA1);
+        if (StringUtils.isNotBlank(metadata)) {
+            return metadata.toLowerCase(Locale.ROOT);
+        }
+        final String key = asset.getPath() + '@' + asset.getLastModified();
+        String hash = hashes.get(key);
+        if (hash == null) {
+            hash = sha1(asset.getOriginal());
+            hashes.put(key, hash);
+        }
+        return hash;
+    }
+
+    /**
+     * Returns the rendition of the asset in the bucket of the given width,
+     * creating it if needed. A rendition that is being created by another
+     * thread is waited for.
+     *
+     * @throws IOException if the original is not an image that can be read,
+     *         or is larger than the configured maximum
+     */
+    public Path getRendition(final Asset asset, final int width) throws IOException {
+        final String hash = getHash(asset);
+        final int bucket = bucket(width);
+        final String extension = extensionOf(asset);
+        final Path file = directory.resolve(hash.substring(0, 2)).resolve(hash + "-" + bucket + "." + extension);
+        if (Files.isRegularFile(file)) {
+            touch(file);
+            return file;
+        }
+        final CompletableFuture<Path> creation = new CompletableFuture<>();
+        final CompletableFuture<Path> raced = pending.putIfAbsent(file, creation);
+        if (raced != null) {
+            return await(raced);
+        }
+        try {
+            // created by a thread that finished between the check and the registration
+            if (!Files.isRegularFile(file)) {
+                create(asset, bucket, extension, file);
+            }
+            creation.complete(file);
+        } catch (IOException | RuntimeException e) {
+            creation.completeExceptionally(e);
+            throw e;
+        } finally {
+            pending.remove(file, creation);
+        }
+        return file;
+    }
+
+    /**
+     * Opens the rendition of the asset in the bucket of the given width,
+     * creating it if needed, like {@link #getRendition(Asset, int)}.
+     *
+     * @throws IOException if the original is not an image that can be read,
+     *         or is larger than the configured maximum
+     */
+    public FileChannel openRendition(final Asset asset, final int width) throws IOException {
+        try {
+            return FileChannel.open(getRendition(asset, width), StandardOpenOption.READ);
+        } catch (NoSuchFileException e) {
+            // trimmed by another thread before it was opened
+            return FileChannel.open(getRendition(asset, width), StandardOpenOption.READ);
+        }
+    }
+
+    /**
+     * Returns the media type of the renditions of the asset.
+     */
+    public String getMimeType(final Asset asset) {
+        return JPEG.equals(extensionOf(asset)) ? "image/jpeg" : "image/png";
+    }
+
+    /** Renditions created since activation. */
+    public long getCreatedCount() {
+        return created.get();
+    }
+
+    /** Bytes of the renditions on disk. */
+    public long getCacheBytes() {
+        return cacheBytes.get();
+    }
+
+    private void create(final Asset asset, final int bucket, final String extension, final Path file)
+            throws IOException {
+        final BufferedImage resized;
+        acquireDecode();
+        try {
+            final BufferedImage original = decode(asset);
+            resized = resize(original, Math.min(bucket, original.getWidth()), extension);
+        } finally {
+            decodes.release();
+        }
+        Files.createDirectories(file.getParent());
+        final Path temporary = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+        try {
+            try (OutputStream out = Files.newOutputStream(temporary)) {
+                encode(resized, extension, out);
+            }
+            final long size = Files.size(temporary);
+            final long replaced = Files.isRegularFile(file) ? file.toFile().length() : 0;
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            created.incrementAndGet();
+            if (cacheBytes.addAndGet(size - replaced) > maxCacheBytes) {
+                trim();
+            }
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+        logger.debug("Created the {} px rendition of {}", bucket, asset.getPath());
+    }
+
+    /**
+     * Decodes the original of the asset, after checking its dimensions
+     * against the pixel limit.
+     */
+    private BufferedImage decode(final Asset asset) throws IOException {
+        try (InputStream stream = asset.getOriginal().getStream();
+             ImageInputStream input = ImageIO.createImageInputStream(stream)) {
+            final Iterator<ImageReader> readers = input != null ? ImageIO.getImageReaders(input) : null;
+            if (readers == null || !readers.hasNext()) {
+                throw new IOException("Cannot decode " + asset.getPath());
+            }
+            final ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                final long pixels = (long) reader.getWidth(0) * reader.getHeight(0);
+                if (pixels > maxPixels) {
+                    throw new IOException("The original of " + asset.getPath() + " has " + pixels
+                            + " pixels, more than the maximum of " + maxPixels);
+                }
+                return reader.read(0);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    private void acquireDecode() throws InterruptedIOException {
+        try {
+            decodes.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting to decode");
+        }
+    }
+
+    private static Path await(final CompletableFuture<Path> creation) throws IOException {
+        try {
+            return creation.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a rendition");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Cannot create the rendition", e.getCause());
+        }
+    }
+
+    private static String extensionOf(final Asset asset) {
+        return "image/jpeg".equals(asset.getMimeType()) ? JPEG : PNG;
+    }
+
+    private static int widthOf(final Asset asset) {
+        try {
+            return Integer.parseInt(StringUtils.defaultString(asset.getMetadataValue("tiff:ImageWidth")).trim());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Scales down in steps of at most half the size, which keeps bilinear
+     * interpolation from skipping pixels.
+     */
+    private static BufferedImage resize(final BufferedImage original, final int width, final String extension) {
+        final int type = JPEG.equals(extension) ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB;
+        final int height = Math.max(1, (int) Math.round((double) original.getHeight() * width / original.getWidth()));
+        BufferedImage current = original;
+        int currentWidth = original.getWidth();
+        int currentHeight = original.getHeight();
+        do {
+            currentWidth = Math.max(width, currentWidth / 2);
+            currentHeight = Math.max(height, currentHeight / 2);
+            final BufferedImage step = new BufferedImage(currentWidth, currentHeight, type);
+            final Graphics2D graphics = step.createGraphics();
+            try {
+                graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+                        RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+                graphics.drawImage(current, 0, 0, currentWidth, currentHeight, null);
+            } finally {
+                graphics.dispose();
+            }
+            current = step;
+        } while (currentWidth > width || currentHeight > height);
+        return current;
+    }
+
+    private void encode(final BufferedImage image, final String extension, final OutputStream out)
+            throws IOException {
+        if (!JPEG.equals(extension)) {
+            ImageIO.write(image, PNG, out);
+            return;
+        }
+        final Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName("jpeg");
+        if (!writers.hasNext()) {
+            throw new IOException("No JPEG encoder available");
+        }
+        final ImageWriter writer = writers.next();
+        try (ImageOutputStream stream = ImageIO.createImageOutputStream(out)) {
+            writer.setOutput(stream);
+            final ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(quality);
+            param.setProgressiveMode(ImageWriteParam.MODE_DEFAULT);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+    }
+
+    private static String sha1(final Rendition original) throws IOException {
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 is not available", e);
+        }
+        try (InputStream stream = new DigestInputStream(original.getStream(), digest)) {
+            IOUtils.copy(stream, NullOutputStream.NULL_OUTPUT_STREAM);
+        }
+        final StringBuilder hex = new StringBuilder(40);
+        for (final byte b : digest.digest()) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+    private static void touch(final Path file) {
+        final File handle = file.toFile();
+        if (!handle.setLastModified(System.currentTimeMillis())) {
+            LoggerFactory.getLogger(RenditionService.class).debug("Cannot touch {}", file);
+        }
+    }
+
+    /**
+     * Deletes the renditions used least recently until the cache is below
+     * nine tenths of its size. Renditions being created or used within the
+     * grace period are kept, as they are about to be sent.
+     */
+    private synchronized void trim() throws IOException {
+        if (cacheBytes.get() <= maxCacheBytes) {
+            return;
+        }
+        final List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> prefixes = Files.newDirectoryStream(directory)) {
+            for (final Path prefix : prefixes) {
+                if (Files.isDirectory(prefix)) {
+                    try (DirectoryStream<Path> renditions = Files.newDirectoryStream(prefix)) {
+                        renditions.forEach(files::add);
+                    }
+                }
+            }
+        }
+        files.sort(Comparator.comparingLong(file -> file.toFile().lastModified()));
+        final long target = maxCacheBytes / 10 * 9;
+        final long recent = System.currentTimeMillis() - TRIM_GRACE_MILLIS;
+        for (final Path file : files) {
+            if (cacheBytes.get() <= target) {
+                break;
+            }
+            final File handle = file.toFile();
+            if (handle.lastModified() > recent) {
+                // the remaining files were used even more recently
+                break;
+            }
+            if (pending.containsKey(file)) {
+                continue;
+            }
+            final long size = handle.length();
+            if (Files.deleteIfExists(file)) {
+                cacheBytes.addAndGet(-size);
+            }
+        }
+    }
+}
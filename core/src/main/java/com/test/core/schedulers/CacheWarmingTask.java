@@ -0,0 +1,324 @@
+package com.test.core.schedulers;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.commons.io.output.NullOutputStream;
+import org.apache.sling.api.resource.LoginException;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ResourceResolverFactory;
+import org.apache.sling.commons.scheduler.Scheduler;
+import org.apache.sling.engine.SlingRequestProcessor;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.component.annotations.ReferenceCardinality;
+import org.osgi.service.component.annotations.ReferencePolicyOption;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.day.cq.contentsync.handler.util.RequestResponseFactory;
+import com.day.cq.wcm.api.Page;
+import com.day.cq.wcm.api.PageManager;
+import com.day.cq.wcm.api.WCMMode;
+import com.test.core.metrics.JobMetrics;
+import com.test.core.listeners.SubtreeInvalidationListener;
+import com.test.core.metrics.JobMetrics.JobStatistics;
+
+/**
+ * Pre-renders the most requested pages through the Sling request processor,
+ * so that the caches of the publish instance, like the component render cache
+ * and the model caches, are filled before visitors arrive.
+ * <p>
+ * The configured hot paths are rendered in their given order, followed by
+ * their child pages breadth-first down to the configured depth, up to a
+ * maximum number of pages. A fixed number of pages is rendered concurrently
+ * and the start of renders is limited to a rate, so warming does not compete
+ * with visitor traffic. Each run is recorded in the {@link JobMetrics} with
+ * the number of warmed pages, and progress is logged.
+ * <p>
+ * Pages are collected and rendered with an anonymous resource resolver, so
+ * the output that fills the shared caches is the one visitors get. The task
+ * therefore needs anonymous access, as on publish.
+ * <p>
+ * Besides the cron expression, a run is triggered when the component is
+ * activated, e.g. after a deployment, and a short delay after content changes
+ * that touch a hot path or the pages below it, like a large activation. The
+ * changes of that delay are warmed by a single run.
+ */
+@Designate(ocd = CacheWarmingTask.Config.class)
+@Component(service = { Runnable.class, CacheWarmingTask.class, SubtreeInvalidationListener.class })
+public class CacheWarmingTask implements Runnable, SubtreeInvalidationListener {
+
+    @ObjectClassDefinition(name = "Cache warming task",
+                           description = "Pre-renders hot pages with bounded concurrency and rate")
+    public static @interface Config {
+
+        @AttributeDefinition(name = "Cron-job expression")
+        String scheduler_expression() default "0 0/30 * * * ?";
+
+        @AttributeDefinition(name = "Concurrent task",
+                             description = "Whether or not to schedule this task concurrently")
+        boolean scheduler_concurrent() default false;
+
+        @AttributeDefinition(name = "Warm on activation",
+                             description = "Whether a run is started as soon as the task is activated")
+        boolean warm_on_activate() default true;
+
+        @AttributeDefinition(name = "Warm on changes",
+                             description = "Whether a run is started when a hot path or a page below it changes")
+        boolean warm_on_invalidation() default true;
+
+        @AttributeDefinition(name = "Change delay",
+                             description = "Milliseconds changes are collected before the run they trigger starts")
+        long invalidation_delay_ms() default 10000;
+
+        @AttributeDefinition(name = "Hot paths",
+                             description = "Pages to warm, most requested first")
+        String[] hot_paths() default {
+                "/content/test/us/en",
+                "/content/test/language-masters/en"
+        };
+
+        @AttributeDefinition(name = "Depth",
+                             description = "Levels of child pages of the hot paths that are warmed as well")
+        int depth() default 1;
+
+        @AttributeDefinition(name = "Maximum pages",
+                             description = "Maximum number of pages warmed per run")
+        int max_pages() default 200;
+
+        @AttributeDefinition(name = "Extension",
+                             description = "Extension the pages are requested with")
+        String extension() default "html";
+
+        @AttributeDefinition(name = "Concurrency",
+                             description = "Number of pages rendered at the same time")
+        int concurrency() default 2;
+
+        @AttributeDefinition(name = "Rate",
+                             description = "Maximum number of pages rendered per second, unlimited if 0")
+        double rate_per_second() default 10;
+    }
+
+    static final String JOB_NAME = "cache-warming";
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    @Reference
+    private ResourceResolverFactory resolverFactory;
+
+    @Reference
+    private SlingRequestProcessor requestProcessor;
+
+    @Reference
+    private RequestResponseFactory requestResponseFactory;
+
+    @Reference(cardinality = ReferenceCardinality.OPTIONAL, policyOption = ReferencePolicyOption.GREEDY)
+    private JobMetrics metrics;
+
+    @Reference(cardinality = ReferenceCardinality.OPTIONAL, policyOption = ReferencePolicyOption.GREEDY)
+    private Scheduler scheduler;
+
+    private Config config;
+
+    private JobStatistics statistics = new JobStatistics(JOB_NAME);
+
+    private final AtomicInteger warmedPages = new AtomicInteger();
+
+    private final AtomicInteger failedPages = new AtomicInteger();
+
+    private final AtomicInteger totalPages = new AtomicInteger();
+
+    private final AtomicBoolean warmScheduled = new AtomicBoolean();
+
+    @Activate
+    protected void activate(final Config config) {
+        this.config = config;
+        statistics = metrics != null ? metrics.getJob(JOB_NAME) : new JobStatistics(JOB_NAME);
+        if (config.warm_on_activate() && scheduler != null) {
+            scheduler.schedule(this, scheduler.NOW().name(JOB_NAME + "-activation").canRunConcurrently(false));
+        }
+    }
+
+    /**
+     * Schedules a run after the change delay if any of the changed subtrees
+     * overlaps a hot path, unless one is scheduled already.
+     */
+    @Override
+    public void invalidateSubtrees(final Collection<String> roots) {
+        if (!config.warm_on_invalidation() || scheduler == null || !overlapsHotPath(roots)
+                || !warmScheduled.compareAndSet(false, true)) {
+            return;
+        }
+        final Date at = new Date(System.currentTimeMillis() + Math.max(0, config.invalidation_delay_ms()));
+        final Runnable job = () -> {
+            warmScheduled.set(false);
+            run();
+        };
+        if (!scheduler.schedule(job, scheduler.AT(at).name(JOB_NAME + "-invalidation").canRunConcurrently(false))) {
+            warmScheduled.set(false);
+            logger.warn("Cannot schedule cache warming after changes to hot paths");
+        }
+    }
+
+    private boolean overlapsHotPath(final Collection<String> roots) {
+        for (final String root : roots) {
+            for (final String path : config.hot_paths()) {
+                if (path.equals(root) || path.startsWith(root + "/") || root.startsWith(path + "/")) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void run() {
+        if (!statistics.tryStart(true)) {
+            logger.info("Cache warming skipped, the previous run is still active");
+            return;
+        }
+        final long start = System.nanoTime();
+        warmedPages.set(0);
+        failedPages.set(0);
+        totalPages.set(0);
+        try {
+            final List<String> pages = collectPages();
+            totalPages.set(pages.size());
+            warm(pages);
+            logger.info("Cache warming rendered {} of {} pages, {} failed", warmedPages.get(), pages.size(),
+                    failedPages.get());
+            statistics.succeeded(System.nanoTime() - start, warmedPages.get());
+        } catch (LoginException | RuntimeException e) {
+            statistics.failed(System.nanoTime() - start, e.toString());
+            logger.error("Cache warming failed", e);
+        } catch (InterruptedException e) {
+            statistics.failed(System.nanoTime() - start, "Interrupted");
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Returns the paths of the pages to warm in the order they are rendered.
+     */
+    List<String> collectPages() throws LoginException {
+        final Set<String> paths = new LinkedHashSet<>();
+        try (ResourceResolver resolver = login()) {
+            final PageManager pageManager = resolver.adaptTo(PageManager.class);
+            List<Page> level = new ArrayList<>();
+            for (final String path : config.hot_paths()) {
+                final Page page = pageManager.getPage(path);
+                if (page != null) {
+                    level.add(page);
+                } else {
+                    logger.warn("Hot path {} is not a page", path);
+                }
+            }
+            for (int depth = 0; depth <= config.depth() && !level.isEmpty(); depth++) {
+                final List<Page> next = new ArrayList<>();
+                for (final Page page : level) {
+                    if (paths.size() >= config.max_pages()) {
+                        return new ArrayList<>(paths);
+                    }
+                    if (paths.add(page.getPath())) {
+                        final Iterator<Page> children = page.listChildren();
+                        while (children.hasNext()) {
+                            next.add(children.next());
+                        }
+                    }
+                }
+                level = next;
+            }
+        }
+        return new ArrayList<>(paths);
+    }
+
+    private void warm(final List<String> pages) throws InterruptedException {
+        final int concurrency = Math.max(1, config.concurrency());
+        final RateLimiter rateLimiter = new RateLimiter(config.rate_per_second());
+        final ExecutorService executor = Executors.newFixedThreadPool(concurrency);
+        final CompletionService<Boolean> completion = new ExecutorCompletionService<>(executor);
+        try {
+            for (final String path : pages) {
+                completion.submit(() -> {
+                    rateLimiter.acquire();
+                    return render(path);
+                });
+            }
+            final int step = Math.max(1, pages.size() / 10);
+            for (int done = 1; done <= pages.size(); done++) {
+                try {
+                    (completion.take().get() ? warmedPages : failedPages).incrementAndGet();
+                } catch (ExecutionException e) {
+                    failedPages.incrementAndGet();
+                    logger.warn("Cannot warm a page", e.getCause());
+                }
+                if (done % step == 0) {
+                    logger.debug("Cache warming rendered {} of {} pages", done, pages.size());
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private boolean render(final String path) throws LoginException, ServletException, IOException {
+        final HttpServletRequest request = requestResponseFactory.createRequest("GET",
+                path + "." + config.extension());
+        WCMMode.DISABLED.toRequest(request);
+        final HttpServletResponse response = requestResponseFactory.createResponse(
+                NullOutputStream.NULL_OUTPUT_STREAM);
+        try (ResourceResolver resolver = login()) {
+            requestProcessor.processRequest(request, response, resolver);
+        }
+        if (response.getStatus() != HttpServletResponse.SC_OK) {
+            logger.warn("Warming {} returned status {}", path, response.getStatus());
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Returns an anonymous resource resolver, which reads what visitors can
+     * read.
+     */
+    private ResourceResolver login() throws LoginException {
+        return resolverFactory.getResourceResolver(null);
+    }
+
+    /** Pages rendered successfully by the current or last run. */
+    public int getWarmedPages() {
+        return warmedPages.get();
+    }
+
+    /** Pages that could not be rendered by the current or last run. */
+    public int getFailedPages() {
+        return failedPages.get();
+    }
+
+    /** Pages to warm in the current or last run. */
+    public int getTotalPages() {
+        return totalPages.get();
+    }
+}
@@ -0,0 +1,42 @@
+package com.test.core.schedulers;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Spaces out permits evenly at a fixed rate, without bursts. Threads that
+ * acquire a permit at the same time are queued one interval apart.
+ */
+final class RateLimiter {
+
+    private final long intervalNanos;
+
+    private long nextPermit = System.nanoTime();
+
+    /**
+     * @param permitsPerSecond the rate, unlimited if not positive
+     */
+    RateLimiter(final double permitsPerSecond) {
+        this.intervalNanos = permitsPerSecond > 0 ? (long) (TimeUnit.SECONDS.toNanos(1) / permitsPerSecond) : 0;
+    }
+
+    /**
+     * Blocks until the next permit is due.
+     */
+    void acquire() throws InterruptedException {
+        if (intervalNanos == 0) {
+            return;
+        }
+        final long wait;
+        synchronized (this) {
+            final long now = System.nanoTime();
+            if (nextPermit - now < 0) {
+                nextPermit = now;
+            }
+            wait = nextPermit - now;
+            nextPermit += intervalNanos;
+        }
+        if (wait > 0) {
+            TimeUnit.NANOSECONDS.sleep(wait);
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package com.test.core.schedulers;
+
+import org.apache.sling.api.resource.PersistenceException;
+import org.apache.sling.api.resource.Resource;
+
+/**
+ * Work done by a {@link ShardedContentJob} for each child subtree of its
+ * content root. Implementations are called concurrently from several worker
+ * threads, each with its own resource resolver; changes are committed by the
+ * job once the whole shard has been processed.
+ */
+@FunctionalInterface
+public interface ShardProcessor {
+
+    /**
+     * Processes the given subtree and returns the number of items handled.
+     */
+    int process(Resource subtree) throws PersistenceException;
+}
@@ -0,0 +1,269 @@
+package com.test.core.schedulers;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.sling.api.resource.LoginException;
+import org.apache.sling.api.resource.ModifiableValueMap;
+import org.apache.sling.api.resource.PersistenceException;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ResourceResolverFactory;
+import org.apache.sling.api.resource.ResourceUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.day.cq.commons.jcr.JcrConstants;
+
+/**
+ * Splits a content root into shards and processes them in parallel.
+ * <p>
+ * The direct children of the root are sorted by name and grouped into shards
+ * of a fixed number of subtrees. Shards run on a {@link ForkJoinPool} of the
+ * configured parallelism, each with its own service resource resolver, and
+ * changes are committed per shard. As shards complete, the paths of their
+ * subtrees are checkpointed below {@value #CHECKPOINT_ROOT}, so a run that is
+ * interrupted or fails on some shards resumes with the remaining subtrees next
+ * time. The checkpoint is removed once every shard has completed.
+ */
+public final class ShardedContentJob {
+
+    public static final String CHECKPOINT_ROOT = "/var/test/checkpoints";
+
+    static final String PN_ROOT_PATH = "rootPath";
+
+    static final String PN_COMPLETED = "completed";
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final ResourceResolverFactory resolverFactory;
+
+    private final String subservice;
+
+    private final String name;
+
+    private final String rootPath;
+
+    private final int shardSize;
+
+    private final int parallelism;
+
+    /**
+     * @param resolverFactory the factory for the service resource resolvers
+     * @param subservice      the subservice name mapped to a service user
+     *                        that can read the content root and write below
+     *                        {@value #CHECKPOINT_ROOT}
+     * @param name            the name of the checkpoint node of this job
+     * @param rootPath        the content root to process
+     * @param shardSize       the number of child subtrees per shard
+     * @param parallelism     the number of shards processed concurrently
+     */
+    public ShardedContentJob(final ResourceResolverFactory resolverFactory, final String subservice,
+            final String name, final String rootPath, final int shardSize, final int parallelism) {
+        if (shardSize <= 0 || parallelism <= 0) {
+            throw new IllegalArgumentException("Shard size and parallelism must be positive: "
+                    + shardSize + ", " + parallelism);
+        }
+        this.resolverFactory = resolverFactory;
+        this.subservice = subservice;
+        this.name = name;
+        this.rootPath = rootPath;
+        this.shardSize = shardSize;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Processes all subtrees of the content root that are not checkpointed
+     * yet, blocking until every shard is done.
+     *
+     * @throws InterruptedException if the calling thread is interrupted; the
+     *                              completed shards stay checkpointed
+     */
+    public Result run(final ShardProcessor processor)
+            throws LoginException, PersistenceException, InterruptedException {
+        final long start = System.nanoTime();
+        final ResourceResolver control = login();
+        try {
+            final Resource root = control.getResource(rootPath);
+            if (root == null) {
+                logger.warn("Content root {} of job {} does not exist", rootPath, name);
+                return new Result(0, 0, 0, 0, System.nanoTime() - start);
+            }
+            final Checkpoint checkpoint = new Checkpoint(control);
+            final List<String> pending = new ArrayList<>();
+            int resumed = 0;
+            for (final Resource child : root.getChildren()) {
+                if (checkpoint.isCompleted(child.getPath())) {
+                    resumed++;
+                } else {
+                    pending.add(child.getPath());
+                }
+            }
+            Collections.sort(pending);
+
+            final ForkJoinPool pool = new ForkJoinPool(parallelism);
+            final CompletionService<Integer> completion = new ExecutorCompletionService<>(pool);
+            final Map<Future<Integer>, List<String>> shards = new HashMap<>();
+            try {
+                for (int i = 0; i < pending.size(); i += shardSize) {
+                    final List<String> shard = pending.subList(i, Math.min(i + shardSize, pending.size()));
+                    shards.put(completion.submit(() -> processShard(shard, processor)), shard);
+                }
+                long items = 0;
+                int failed = 0;
+                for (int i = 0; i < shards.size(); i++) {
+                    final Future<Integer> done = completion.take();
+                    final List<String> shard = shards.get(done);
+                    try {
+                        items += done.get();
+                        checkpoint.complete(shard);
+                    } catch (ExecutionException e) {
+                        failed++;
+                        logger.error("Shard starting at {} of job {} failed", shard.get(0), name, e.getCause());
+                    }
+                }
+                if (failed == 0) {
+                    checkpoint.remove();
+                }
+                return new Result(items, shards.size() - failed, failed, resumed, System.nanoTime() - start);
+            } finally {
+                pool.shutdownNow();
+            }
+        } finally {
+            control.close();
+        }
+    }
+
+    private int processShard(final List<String> shard, final ShardProcessor processor)
+            throws LoginException, PersistenceException {
+        final ResourceResolver resolver = login();
+        try {
+            int items = 0;
+            for (final String path : shard) {
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new PersistenceException("Interrupted before " + path);
+                }
+                final Resource subtree = resolver.getResource(path);
+                if (subtree != null) {
+                    items += processor.process(subtree);
+                }
+            }
+            if (resolver.hasChanges()) {
+                resolver.commit();
+            }
+            return items;
+        } finally {
+            resolver.close();
+        }
+    }
+
+    private ResourceResolver login() throws LoginException {
+        return resolverFactory.getServiceResourceResolver(
+                Collections.singletonMap(ResourceResolverFactory.SUBSERVICE, subservice));
+    }
+
+    /**
+     * The completed subtrees of the current run, stored as a multi value
+     * property. A checkpoint of another content root is discarded.
+     */
+    private final class Checkpoint {
+
+        private final ResourceResolver resolver;
+
+        private final String path = CHECKPOINT_ROOT + "/" + name;
+
+        private final Set<String> completed = new LinkedHashSet<>();
+
+        Checkpoint(final ResourceResolver resolver) {
+            this.resolver = resolver;
+            final Resource resource = resolver.getResource(path);
+            if (resource != null && rootPath.equals(resource.getValueMap().get(PN_ROOT_PATH, String.class))) {
+                completed.addAll(Arrays.asList(resource.getValueMap().get(PN_COMPLETED, new String[0])));
+            }
+        }
+
+        boolean isCompleted(final String subtree) {
+            return completed.contains(subtree);
+        }
+
+        void complete(final List<String> subtrees) throws PersistenceException {
+            completed.addAll(subtrees);
+            final Map<String, Object> properties = new HashMap<>();
+            properties.put(JcrConstants.JCR_PRIMARYTYPE, JcrConstants.NT_UNSTRUCTURED);
+            final Resource resource = ResourceUtil.getOrCreateResource(resolver, path, properties,
+                    "sling:Folder", false);
+            final ModifiableValueMap values = resource.adaptTo(ModifiableValueMap.class);
+            values.put(PN_ROOT_PATH, rootPath);
+            values.put(PN_COMPLETED, completed.toArray(new String[0]));
+            resolver.commit();
+        }
+
+        void remove() throws PersistenceException {
+            final Resource resource = resolver.getResource(path);
+            if (resource != null) {
+                resolver.delete(resource);
+                resolver.commit();
+            }
+        }
+    }
+
+    /**
+     * Outcome of one run.
+     */
+    public static final class Result {
+
+        private final long items;
+
+        private final int completedShards;
+
+        private final int failedShards;
+
+        private final int resumedSubtrees;
+
+        private final long durationNanos;
+
+        Result(final long items, final int completedShards, final int failedShards, final int resumedSubtrees,
+                final long durationNanos) {
+            this.items = items;
+            this.completedShards = completedShards;
+            this.failedShards = failedShards;
+            this.resumedSubtrees = resumedSubtrees;
+            this.durationNanos = durationNanos;
+        }
+
+        /** Items reported by the processor for the completed shards. */
+        public long getItems() {
+            return items;
+        }
+
+        public int getCompletedShards() {
+            return completedShards;
+        }
+
+        /** Shards that failed and will be retried by the next run. */
+        public int getFailedShards() {
+            return failedShards;
+        }
+
+        /** Subtrees skipped because an earlier run had already completed them. */
+        public int getResumedSubtrees() {
+            return resumedSubtrees;
+        }
+
+        public long getDuration(final TimeUnit unit) {
+            return unit.convert(durationNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+}
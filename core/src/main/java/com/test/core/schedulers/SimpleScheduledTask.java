@@ -15,18 +15,42 @@
  */
 package com.test.core.schedulers;
 
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.sling.api.resource.LoginException;
+import org.apache.sling.api.resource.PersistenceException;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolverFactory;
 import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.component.annotations.ReferenceCardinality;
+import org.osgi.service.component.annotations.ReferencePolicyOption;
 import org.osgi.service.metatype.annotations.AttributeDefinition;
 import org.osgi.service.metatype.annotations.Designate;
 import org.osgi.service.metatype.annotations.ObjectClassDefinition;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.test.core.metrics.JobMetrics;
+import com.test.core.metrics.JobMetrics.JobStatistics;
+
 /**
  * A simple demo for cron-job like tasks that get executed regularly.
  * It also demonstrates how property values can be set. Users can
  * set the property values in /system/console/configMgr
+ * <p>
+ * When a content root is configured, each run walks the subtrees below it
+ * with a {@link ShardedContentJob}, so the work is spread over several
+ * threads and an interrupted run resumes where it stopped.
+ * <p>
+ * Every run is recorded in the {@link JobMetrics}. Sling is allowed to trigger
+ * the task concurrently by default, and the task itself skips and counts the
+ * triggers that arrive while a previous run is still active, so runs do not
+ * overlap either way but the skipped triggers show up in the metrics.
  */
 @Designate(ocd=SimpleScheduledTask.Config.class)
 @Component(service=Runnable.class)
@@ -40,26 +64,110 @@ public class SimpleScheduledTask implements Runnable {
         String scheduler_expression() default "*/30 * * * * ?";
 
         @AttributeDefinition(name = "Concurrent task",
-                             description = "Whether or not to schedule this task concurrently")
-        boolean scheduler_concurrent() default false;
+                             description = "Whether or not to schedule this task concurrently. Triggers skipped "
+                                     + "by the scheduler are not visible in the job metrics, use 'Skip overlapping "
+                                     + "runs' to prevent overlapping runs instead")
+        boolean scheduler_concurrent() default true;
+
+        @AttributeDefinition(name = "Skip overlapping runs",
+                             description = "Whether triggers that arrive while a run is still active are skipped "
+                                     + "and counted")
+        boolean skip_overlapping_runs() default true;
 
         @AttributeDefinition(name = "A parameter",
                              description = "Can be configured in /system/console/configMgr")
         String myParameter() default "";
+
+        @AttributeDefinition(name = "Content root",
+                             description = "Path whose subtrees are processed on every run, none if empty")
+        String content_root() default "";
+
+        @AttributeDefinition(name = "Parallelism",
+                             description = "Number of shards processed concurrently")
+        int parallelism() default 4;
+
+        @AttributeDefinition(name = "Shard size",
+                             description = "Number of child subtrees of the content root per shard")
+        int shard_size() default 50;
     }
 
+    /** Subservice mapped to the content maintenance service user. */
+    static final String SUBSERVICE = "content-maintenance";
+
+    static final String JOB_NAME = "simple-scheduled-task";
+
     private final Logger logger = LoggerFactory.getLogger(getClass());
 
+    @Reference
+    private ResourceResolverFactory resolverFactory;
+
+    @Reference(cardinality = ReferenceCardinality.OPTIONAL, policyOption = ReferencePolicyOption.GREEDY)
+    private JobMetrics metrics;
+
     private String myParameter;
+
+    private boolean skipOverlappingRuns;
+
+    private ShardedContentJob job;
+
+    private JobStatistics statistics = new JobStatistics(JOB_NAME);
     
     @Override
     public void run() {
+        if (!statistics.tryStart(skipOverlappingRuns)) {
+            logger.info("SimpleScheduledTask skipped, the previous run is still active");
+            return;
+        }
+        final long start = System.nanoTime();
         logger.debug("SimpleScheduledTask is now running, myParameter='{}'", myParameter);
+        if (job == null) {
+            statistics.succeeded(System.nanoTime() - start, 0);
+            return;
+        }
+        try {
+            final ShardedContentJob.Result result = job.run(SimpleScheduledTask::visit);
+            logger.info("SimpleScheduledTask visited {} resources in {} shards in {} ms, {} shards failed",
+                    result.getItems(), result.getCompletedShards(), result.getDuration(TimeUnit.MILLISECONDS),
+                    result.getFailedShards());
+            if (result.getFailedShards() > 0) {
+                statistics.failed(System.nanoTime() - start, result.getFailedShards() + " shards failed");
+            } else {
+                statistics.succeeded(System.nanoTime() - start, result.getItems());
+            }
+        } catch (LoginException | PersistenceException | RuntimeException e) {
+            statistics.failed(System.nanoTime() - start, e.toString());
+            logger.error("SimpleScheduledTask could not process its content root", e);
+        } catch (InterruptedException e) {
+            statistics.failed(System.nanoTime() - start, "Interrupted");
+            Thread.currentThread().interrupt();
+        }
     }
 
     @Activate
     protected void activate(final Config config) {
         myParameter = config.myParameter();
+        skipOverlappingRuns = config.skip_overlapping_runs();
+        statistics = metrics != null ? metrics.getJob(JOB_NAME) : new JobStatistics(JOB_NAME);
+        job = StringUtils.isNotBlank(config.content_root())
+                ? new ShardedContentJob(resolverFactory, SUBSERVICE, JOB_NAME, config.content_root(),
+                        Math.max(1, config.shard_size()), Math.max(1, config.parallelism()))
+                : null;
+    }
+
+    /**
+     * Counts the resources of a subtree, standing in for real maintenance work.
+     */
+    static int visit(final Resource subtree) {
+        final Deque<Resource> pending = new ArrayDeque<>();
+        pending.push(subtree);
+        int count = 0;
+        while (!pending.isEmpty()) {
+            count++;
+            for (final Resource child : pending.pop().getChildren()) {
+                pending.push(child);
+            }
+        }
+        return count;
     }
 
 }
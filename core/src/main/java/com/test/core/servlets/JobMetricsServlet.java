@@ -0,0 +1,74 @@
+package com.test.core.servlets;
+
+import java.io.IOException;
+import java.time.Instant;
+
+import javax.servlet.Servlet;
+
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.api.SlingHttpServletResponse;
+import org.apache.sling.api.servlets.SlingSafeMethodsServlet;
+import org.apache.sling.servlets.annotations.SlingServletPaths;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.component.propertytypes.ServiceDescription;
+
+import com.google.gson.stream.JsonWriter;
+import com.test.core.metrics.HistogramSnapshot;
+import com.test.core.metrics.JobMetrics;
+import com.test.core.metrics.JobMetrics.JobStatistics;
+
+/**
+ * Servlet that exposes the run statistics of the scheduled jobs as JSON.
+ * Durations are reported in milliseconds, timestamps in ISO-8601.
+ */
+@Component(service = { Servlet.class })
+@SlingServletPaths("/bin/test/jobmetrics")
+@ServiceDescription("Scheduled job metrics")
+public class JobMetricsServlet extends SlingSafeMethodsServlet {
+
+    private static final long serialVersionUID = 1L;
+
+    @Reference
+    private transient JobMetrics metrics;
+
+    @Override
+    protected void doGet(final SlingHttpServletRequest req,
+            final SlingHttpServletResponse resp) throws IOException {
+        resp.setContentType("application/json");
+        resp.setCharacterEncoding("UTF-8");
+        resp.setHeader("Cache-Control", "no-cache");
+
+        final JsonWriter json = new JsonWriter(resp.getWriter());
+        json.beginObject();
+        json.name("unit").value("milliseconds");
+        json.name("jobs").beginArray();
+        for (final JobStatistics job : metrics.getJobs()) {
+            final HistogramSnapshot durations = job.getDurations();
+            json.beginObject();
+            json.name("name").value(job.getName());
+            json.name("running").value(job.isRunning());
+            json.name("successes").value(job.getSuccessCount());
+            json.name("failures").value(job.getFailureCount());
+            json.name("skipped").value(job.getSkippedCount());
+            json.name("overlapping").value(job.getOverlappingCount());
+            json.name("p50").value(durations.getValueAtPercentile(50));
+            json.name("p99").value(durations.getValueAtPercentile(99));
+            json.name("max").value(durations.getMax());
+            json.name("mean").value(durations.getMean());
+            json.name("lastDuration").value(job.getLastDurationMillis());
+            json.name("lastSuccess").value(toIso(job.getLastSuccess()));
+            json.name("lastFailure").value(toIso(job.getLastFailure()));
+            json.name("lastFailureMessage").value(job.getLastFailureMessage());
+            json.name("lastItemsPerSecond").value(job.getLastItemsPerSecond());
+            json.endObject();
+        }
+        json.endArray();
+        json.endObject();
+        json.flush();
+    }
+
+    private static String toIso(final long millis) {
+        return millis > 0 ? Instant.ofEpochMilli(millis).toString() : null;
+    }
+}
@@ -0,0 +1,224 @@
+package com.test.core.servlets;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayDeque;
+import java.util.Calendar;
+import java.util.Deque;
+import java.util.Iterator;
+
+import javax.servlet.Servlet;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.api.SlingHttpServletResponse;
+import org.apache.sling.api.servlets.HttpConstants;
+import org.apache.sling.api.servlets.SlingSafeMethodsServlet;
+import org.apache.sling.servlets.annotations.SlingServletResourceTypes;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.propertytypes.ServiceDescription;
+
+import com.day.cq.wcm.api.NameConstants;
+import com.day.cq.wcm.api.Page;
+import com.day.cq.wcm.api.PageManager;
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * Servlet that streams the titles and key properties of a whole page subtree,
+ * for sitemap and search feeders that would otherwise request every page
+ * through the {@link SimpleServlet}. It is mounted on the {@code tree}
+ * selector of the same resource type, e.g. {@code /content/test/us/en.tree.json}.
+ * An optional numeric selector limits the depth, {@code .tree.1.txt} only
+ * lists the page and its direct children.
+ * <p>
+ * Pages are written to the response while the tree is walked and the writer
+ * is flushed after every batch, so memory use does not grow with the size of
+ * the subtree.
+ */
+@Component(service = { Servlet.class })
+@SlingServletResourceTypes(
+        resourceTypes="test/components/page",
+        methods=HttpConstants.METHOD_GET,
+        selectors=PageTreeServlet.SELECTOR,
+        extensions={ PageTreeServlet.EXTENSION_TXT, PageTreeServlet.EXTENSION_JSON })
+@ServiceDescription("Streaming page tree export")
+public class PageTreeServlet extends SlingSafeMethodsServlet {
+
+    private static final long serialVersionUID = 1L;
+
+    static final String SELECTOR = "tree";
+
+    static final String EXTENSION_TXT = "txt";
+
+    static final String EXTENSION_JSON = "json";
+
+    /** Number of pages written between two flushes of the response writer. */
+    static final int BATCH_SIZE = 100;
+
+    @Override
+    protected void doGet(final SlingHttpServletRequest req,
+            final SlingHttpServletResponse resp) throws IOException {
+        final PageManager pageManager = req.getResourceResolver().adaptTo(PageManager.class);
+        final Page root = pageManager != null ? pageManager.getContainingPage(req.getResource()) : null;
+        if (root == null) {
+            resp.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+
+        resp.setCharacterEncoding("UTF-8");
+        final TreeWriter writer;
+        if (EXTENSION_JSON.equals(req.getRequestPathInfo().getExtension())) {
+            resp.setContentType("application/json");
+            writer = new JsonTreeWriter(resp.getWriter());
+        } else {
+            resp.setContentType("text/plain");
+            writer = new TextTreeWriter(resp.getWriter());
+        }
+
+        writer.begin();
+        walk(root, maxDepth(req), writer);
+        writer.end();
+    }
+
+    /**
+     * Writes the page and its descendants in document order, keeping only one
+     * child iterator per level in memory.
+     */
+    private static void walk(final Page root, final int maxDepth, final TreeWriter writer) throws IOException {
+        final Deque<Iterator<Page>> levels = new ArrayDeque<>();
+        int written = 0;
+        writer.page(root, 0);
+        if (maxDepth > 0) {
+            levels.push(root.listChildren());
+        }
+        while (!levels.isEmpty()) {
+            final Iterator<Page> children = levels.peek();
+            if (!children.hasNext()) {
+                levels.pop();
+                continue;
+            }
+            final Page page = children.next();
+            writer.page(page, levels.size());
+            if (++written % BATCH_SIZE == 0) {
+                writer.flush();
+            }
+            if (levels.size() < maxDepth) {
+                levels.push(page.listChildren());
+            }
+        }
+    }
+
+    private static int maxDepth(final SlingHttpServletRequest req) {
+        for (final String selector : req.getRequestPathInfo().getSelectors()) {
+            if (NumberUtils.isDigits(selector)) {
+                return NumberUtils.toInt(selector, Integer.MAX_VALUE);
+            }
+        }
+        return Integer.MAX_VALUE;
+    }
+
+    private static String lastModified(final Page page) {
+        final Calendar lastModified = page.getLastModified();
+        return lastModified != null ? lastModified.toInstant().toString() : null;
+    }
+
+    private static String template(final Page page) {
+        return page.getProperties().get(NameConstants.PN_TEMPLATE, String.class);
+    }
+
+    private interface TreeWriter {
+
+        void begin() throws IOException;
+
+        void page(Page page, int depth) throws IOException;
+
+        void flush() throws IOException;
+
+        void end() throws IOException;
+    }
+
+    /**
+     * One tab separated line per page: depth, path, title, last modification
+     * and template.
+     */
+    private static final class TextTreeWriter implements TreeWriter {
+
+        private final PrintWriter out;
+
+        TextTreeWriter(final PrintWriter out) {
+            this.out = out;
+        }
+
+        @Override
+        public void begin() {
+            // plain text has no envelope
+        }
+
+        @Override
+        public void page(final Page page, final int depth) {
+            out.print(depth);
+            out.print('\t');
+            out.print(page.getPath());
+            out.print('\t');
+            out.print(StringUtils.defaultString(StringUtils.replaceChars(page.getTitle(), "\t\r\n", "   ")));
+            out.print('\t');
+            out.print(StringUtils.defaultString(lastModified(page)));
+            out.print('\t');
+            out.print(StringUtils.defaultString(template(page)));
+            out.print('\n');
+        }
+
+        @Override
+        public void flush() {
+            out.flush();
+        }
+
+        @Override
+        public void end() {
+            out.flush();
+        }
+    }
+
+    /**
+     * A JSON array with one object per page.
+     */
+    private static final class JsonTreeWriter implements TreeWriter {
+
+        private final JsonWriter json;
+
+        JsonTreeWriter(final PrintWriter out) {
+            this.json = new JsonWriter(out);
+        }
+
+        @Override
+        public void begin() throws IOException {
+            json.beginArray();
+        }
+
+        @Override
+        public void page(final Page page, final int depth) throws IOException {
+            json.beginObject();
+            json.name("depth").value(depth);
+            json.name("path").value(page.getPath());
+            json.name("name").value(page.getName());
+            json.name("title").value(page.getTitle());
+            json.name("description").value(page.getDescription());
+            json.name("lastModified").value(lastModified(page));
+            json.name("template").value(template(page));
+            json.endObject();
+        }
+
+        @Override
+        public void flush() throws IOException {
+            json.flush();
+        }
+
+        @Override
+        public void end() throws IOException {
+            json.endArray();
+            json.flush();
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.test.core.servlets;
+
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+
+import javax.servlet.Servlet;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.api.SlingHttpServletResponse;
+import org.apache.sling.api.servlets.HttpConstants;
+import org.apache.sling.api.servlets.SlingSafeMethodsServlet;
+import org.apache.sling.servlets.annotations.SlingServletResourceTypes;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.component.propertytypes.ServiceDescription;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.day.cq.dam.api.Asset;
+import com.test.core.renditions.RenditionService;
+
+/**
+ * Servlet that sends the renditions of the {@link RenditionService}, at URLs
+ * like {@code /content/dam/test/image.jpg.rendition.640.0123456789abcdef.jpg}.
+ * <p>
+ * The URL names the content of the rendition, so responses may be cached for
+ * a year without revalidation. Requests with a hash of an older version of
+ * the asset are redirected to the current rendition.
+ */
+@Component(service = { Servlet.class })
+@SlingServletResourceTypes(
+        resourceTypes = "dam:Asset",
+        methods = { HttpConstants.METHOD_GET, HttpConstants.METHOD_HEAD },
+        selectors = RenditionService.SELECTOR,
+        extensions = { "jpg", "png" })
+@ServiceDescription("Width-bucketed renditions of DAM images")
+public class RenditionServlet extends SlingSafeMethodsServlet {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final String CACHE_CONTROL = "public, max-age=31536000, immutable";
+
+    private final transient Logger logger = LoggerFactory.getLogger(getClass());
+
+    @Reference
+    private transient RenditionService renditions;
+
+    @Override
+    protected void doGet(final SlingHttpServletRequest req,
+            final SlingHttpServletResponse resp) throws IOException {
+        final Asset asset = req.getResource().adaptTo(Asset.class);
+        final String[] selectors = req.getRequestPathInfo().getSelectors();
+        final int width = selectors.length == 3 ? parseWidth(selectors[1]) : -1;
+        if (asset == null || width <= 0) {
+            resp.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        final String url = renditions.getUrl(asset, width);
+        if (!url.equals(asset.getPath() + "." + req.getRequestPathInfo().getSelectorString() + "."
+                + req.getRequestPathInfo().getExtension())) {
+            // another width, an outdated hash or the wrong extension
+            resp.setHeader("Cache-Control", "no-cache");
+            resp.sendRedirect(StringUtils.defaultString(req.getContextPath()) + url);
+            return;
+        }
+        final String etag = "\"" + selectors[2] + "-" + selectors[1] + "\"";
+        resp.setHeader("Cache-Control", CACHE_CONTROL);
+        resp.setHeader("ETag", etag);
+        if (etag.equals(req.getHeader("If-None-Match"))) {
+            resp.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+        final FileChannel rendition;
+        try {
+            rendition = renditions.openRendition(asset, width);
+        } catch (IOException e) {
+            logger.warn("Cannot create the rendition {} of {}", width, asset.getPath(), e);
+            resp.setHeader("Cache-Control", "no-cache");
+            resp.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        try (FileChannel channel = rendition) {
+            resp.setContentType(renditions.getMimeType(asset));
+            resp.setContentLength((int) channel.size());
+            if (!HttpConstants.METHOD_HEAD.equals(req.getMethod())) {
+                IOUtils.copy(Channels.newInputStream(channel), resp.getOutputStream());
+            }
+        }
+    }
+
+    @Override
+    protected void doHead(final SlingHttpServletRequest req,
+            final SlingHttpServletResponse resp) throws IOException {
+        doGet(req, resp);
+    }
+
+    private static int parseWidth(final String selector) {
+        try {
+            return Integer.parseInt(selector);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.test.core.servlets;
+
+import java.io.IOException;
+
+import javax.servlet.Servlet;
+
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.api.SlingHttpServletResponse;
+import org.apache.sling.api.servlets.SlingSafeMethodsServlet;
+import org.apache.sling.servlets.annotations.SlingServletPaths;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.component.propertytypes.ServiceDescription;
+
+import com.google.gson.stream.JsonWriter;
+import com.test.core.metrics.HistogramSnapshot;
+import com.test.core.metrics.RequestTimingStatistics;
+import com.test.core.metrics.RequestTimingStatistics.RequestTiming;
+
+/**
+ * Servlet that exposes the request latency histograms recorded by the
+ * {@link com.test.core.filters.LoggingFilter} as JSON. Latencies are
+ * reported in microseconds, throughput in requests per second.
+ */
+@Component(service = { Servlet.class })
+@SlingServletPaths("/bin/test/requesttiming")
+@ServiceDescription("Request timing statistics")
+public class RequestTimingServlet extends SlingSafeMethodsServlet {
+
+    private static final long serialVersionUID = 1L;
+
+    @Reference
+    private transient RequestTimingStatistics statistics;
+
+    @Override
+    protected void doGet(final SlingHttpServletRequest req,
+            final SlingHttpServletResponse resp) throws IOException {
+        resp.setContentType("application/json");
+        resp.setCharacterEncoding("UTF-8");
+        resp.setHeader("Cache-Control", "no-cache");
+
+        final JsonWriter json = new JsonWriter(resp.getWriter());
+        json.beginObject();
+        json.name("unit").value("microseconds");
+        json.name("timings").beginArray();
+        for (final RequestTiming timing : statistics.getTimings()) {
+            final HistogramSnapshot snapshot = timing.getSnapshot();
+            json.beginObject();
+            json.name("resourceType").value(timing.getResourceType());
+            json.name("selectors").value(timing.getSelectors());
+            json.name("extension").value(timing.getExtension());
+            json.name("count").value(snapshot.getCount());
+            json.name("p50").value(snapshot.getValueAtPercentile(50));
+            json.name("p99").value(snapshot.getValueAtPercentile(99));
+            json.name("p999").value(snapshot.getValueAtPercentile(99.9));
+            json.name("max").value(snapshot.getMax());
+            json.name("mean").value(snapshot.getMean());
+            json.name("throughput").value(snapshot.getThroughput());
+            json.endObject();
+        }
+        json.endArray();
+        json.endObject();
+        json.flush();
+    }
+}
@@ -19,23 +19,39 @@ import com.day.cq.commons.jcr.JcrConstants;
 import org.apache.sling.api.SlingHttpServletRequest;
 import org.apache.sling.api.SlingHttpServletResponse;
 import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ValueMap;
 import org.apache.sling.api.servlets.HttpConstants;
 import org.apache.sling.api.servlets.SlingAllMethodsServlet;
 import org.apache.sling.api.servlets.SlingSafeMethodsServlet;
 import org.apache.sling.servlets.annotations.SlingServletResourceTypes;
+import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Modified;
 import org.osgi.service.component.propertytypes.ServiceDescription;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+
+import com.day.cq.wcm.api.NameConstants;
 
 import javax.servlet.Servlet;
 import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
+import java.util.Calendar;
 
 /**
  * Servlet that writes some sample content into the response. It is mounted for
  * all resources of a specific Sling resource type. The
  * {@link SlingSafeMethodsServlet} shall be used for HTTP methods that are
  * idempotent. For write operations use the {@link SlingAllMethodsServlet}.
+ * <p>
+ * The response is validated by the {@code cq:lastModified} (or
+ * {@code jcr:lastModified}) date of the resource: it carries a strong ETag and
+ * a {@code Last-Modified} header, and conditional requests that still match
+ * are answered with 304 before the title is read.
  */
+@Designate(ocd = SimpleServlet.Config.class)
 @Component(service = { Servlet.class })
 @SlingServletResourceTypes(
         resourceTypes="test/components/page",
@@ -44,13 +60,74 @@ import java.io.IOException;
 @ServiceDescription("Simple Demo Servlet")
 public class SimpleServlet extends SlingSafeMethodsServlet {
 
+    @ObjectClassDefinition(name = "Simple Demo Servlet",
+                           description = "Caching headers of the page title servlet")
+    public static @interface Config {
+
+        @AttributeDefinition(name = "Max age",
+                             description = "Seconds browsers and the dispatcher may reuse a response without revalidating it")
+        int max_age() default 60;
+    }
+
     private static final long serialVersionUID = 1L;
 
+    private volatile String cacheControl = "max-age=60";
+
+    @Activate
+    @Modified
+    protected void activate(final Config config) {
+        cacheControl = "max-age=" + config.max_age();
+    }
+
     @Override
     protected void doGet(final SlingHttpServletRequest req,
             final SlingHttpServletResponse resp) throws ServletException, IOException {
         final Resource resource = req.getResource();
+        final ValueMap properties = resource.getValueMap();
+        resp.setHeader("Cache-Control", cacheControl);
+        final Calendar lastModified = lastModified(properties);
+        if (lastModified != null) {
+            // HTTP dates only have a resolution of seconds
+            final long lastModifiedSeconds = lastModified.getTimeInMillis() / 1000 * 1000;
+            final String etag = "\"" + Long.toHexString(lastModified.getTimeInMillis()) + "\"";
+            resp.setHeader("ETag", etag);
+            resp.setDateHeader("Last-Modified", lastModifiedSeconds);
+            if (isNotModified(req, etag, lastModifiedSeconds)) {
+                resp.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+                return;
+            }
+        }
         resp.setContentType("text/plain");
-        resp.getWriter().write("Title = " + resource.getValueMap().get(JcrConstants.JCR_TITLE));
+        resp.getWriter().write("Title = " + properties.get(JcrConstants.JCR_TITLE));
+    }
+
+    private static Calendar lastModified(final ValueMap properties) {
+        final Calendar lastModified = properties.get(NameConstants.PN_PAGE_LAST_MOD, Calendar.class);
+        return lastModified != null ? lastModified : properties.get(JcrConstants.JCR_LASTMODIFIED, Calendar.class);
+    }
+
+    /**
+     * Evaluates the conditional request headers. As required by RFC 7232,
+     * {@code If-Modified-Since} is ignored when {@code If-None-Match} is present.
+     */
+    private static boolean isNotModified(final SlingHttpServletRequest req, final String etag,
+            final long lastModified) {
+        final String ifNoneMatch = req.getHeader("If-None-Match");
+        if (ifNoneMatch != null) {
+            for (final String candidate : ifNoneMatch.split(",")) {
+                final String tag = candidate.trim();
+                if ("*".equals(tag) || etag.equals(tag.startsWith("W/") ? tag.substring(2) : tag)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        final long ifModifiedSince;
+        try {
+            ifModifiedSince = req.getDateHeader("If-Modified-Since");
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+        return ifModifiedSince != -1 && lastModified <= ifModifiedSince;
     }
 }
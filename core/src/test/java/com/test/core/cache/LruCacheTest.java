@@ -0,0 +1,81 @@
+package com.test.core.cache;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class LruCacheTest {
+
+    @Test
+    void evictsLeastRecentlyUsed() {
+        LruCache<String, String> cache = new LruCache<>(2);
+        cache.put("a", "1");
+        cache.put("b", "2");
+        cache.get("a");
+        cache.put("c", "3");
+
+        assertEquals("1", cache.get("a"));
+        assertNull(cache.get("b"));
+        assertEquals("3", cache.get("c"));
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    void staysBounded() {
+        LruCache<Integer, Integer> cache = new LruCache<>(1000);
+        for (int i = 0; i < 100_000; i++) {
+            cache.put(i, i);
+        }
+
+        assertEquals(1000, cache.size(), 1000 / 16);
+    }
+
+    @Test
+    void loadsOnMiss() {
+        LruCache<String, String> cache = new LruCache<>(10);
+        AtomicInteger loads = new AtomicInteger();
+
+        cache.get("a", key -> key + loads.incrementAndGet());
+        String value = cache.get("a", key -> key + loads.incrementAndGet());
+
+        assertEquals("a1", value);
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void removeIf() {
+        LruCache<String, String> cache = new LruCache<>(100);
+        cache.put("/content/a", "a");
+        cache.put("/content/a/b", "b");
+        cache.put("/content/c", "c");
+
+        assertEquals(2, cache.removeIf(key -> key.startsWith("/content/a")));
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    void boundsWeight() {
+        LruCache<String, String> cache = new LruCache<>(10, String::length);
+        cache.put("a", "1234");
+        cache.put("b", "1234");
+        cache.put("c", "1234");
+
+        assertNull(cache.get("a"));
+        assertEquals(8, cache.weight());
+        assertEquals(1, cache.evictionCount());
+
+        cache.put("b", "1");
+        assertEquals(5, cache.weight());
+        assertEquals(1, cache.removeIf("c"::equals));
+        assertEquals(1, cache.weight());
+    }
+
+    @Test
+    void rejectsInvalidCapacity() {
+        assertThrows(IllegalArgumentException.class, () -> new LruCache<>(0));
+    }
+}
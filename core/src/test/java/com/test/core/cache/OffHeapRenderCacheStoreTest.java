@@ -0,0 +1,115 @@
+package com.test.core.cache;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+import static com.test.core.cache.OffHeapRenderCacheStore.PAGE_SIZE;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class OffHeapRenderCacheStoreTest {
+
+    @Test
+    void storesOutput() {
+        OffHeapRenderCacheStore store = new OffHeapRenderCacheStore(2 * PAGE_SIZE);
+        String output = "<p>Grüße</p>";
+        store.put(key("a"), output);
+        store.put(key("b"), "");
+
+        assertEquals(output, store.get(key("a")));
+        assertEquals("", store.get(key("b")));
+        assertNull(store.get(key("c")));
+        assertEquals(2, store.size());
+        assertEquals(output.getBytes(StandardCharsets.UTF_8).length, store.weight());
+        assertEquals(PAGE_SIZE, store.allocatedBytes());
+    }
+
+    @Test
+    void replacesOutput() {
+        OffHeapRenderCacheStore store = new OffHeapRenderCacheStore(2 * PAGE_SIZE);
+        store.put(key("a"), ascii(1000, 'x'));
+        store.put(key("a"), ascii(10, 'y'));
+
+        assertEquals(ascii(10, 'y'), store.get(key("a")));
+        assertEquals(1, store.size());
+        assertEquals(10, store.weight());
+    }
+
+    @Test
+    void evictsLeastRecentlyUsedOfSizeClass() {
+        OffHeapRenderCacheStore store = new OffHeapRenderCacheStore(2 * PAGE_SIZE);
+        store.put(key("a"), ascii(PAGE_SIZE, 'a'));
+        store.put(key("b"), ascii(PAGE_SIZE, 'b'));
+        store.get(key("a"));
+        store.put(key("c"), ascii(PAGE_SIZE, 'c'));
+
+        assertEquals(ascii(PAGE_SIZE, 'a'), store.get(key("a")));
+        assertNull(store.get(key("b")));
+        assertEquals(ascii(PAGE_SIZE, 'c'), store.get(key("c")));
+        assertEquals(1, store.evictionCount());
+        assertEquals(2 * PAGE_SIZE, store.allocatedBytes());
+    }
+
+    @Test
+    void takesOverPageOfOtherSizeClass() {
+        OffHeapRenderCacheStore store = new OffHeapRenderCacheStore(2 * PAGE_SIZE);
+        store.put(key("a"), ascii(PAGE_SIZE, 'a'));
+        store.put(key("b"), ascii(PAGE_SIZE, 'b'));
+        store.put(key("c"), ascii(100, 'c'));
+        store.put(key("d"), ascii(100, 'd'));
+
+        assertNull(store.get(key("a")));
+        assertEquals(ascii(PAGE_SIZE, 'b'), store.get(key("b")));
+        assertEquals(ascii(100, 'c'), store.get(key("c")));
+        assertEquals(ascii(100, 'd'), store.get(key("d")));
+        assertEquals(1, store.evictionCount());
+        assertEquals(3, store.size());
+    }
+
+    @Test
+    void reusesPagesAfterRemoval() {
+        OffHeapRenderCacheStore store = new OffHeapRenderCacheStore(2 * PAGE_SIZE);
+        store.put(key("/content/a"), ascii(500, 'a'));
+        store.put(key("/content/a/b"), ascii(500, 'b'));
+        store.put(key("/content/c"), ascii(PAGE_SIZE, 'c'));
+
+        assertEquals(2, store.removeIf(key -> key.isAtOrBelow("/content/a")));
+        assertEquals(PAGE_SIZE, store.weight());
+
+        store.clear();
+        store.put(key("d"), ascii(PAGE_SIZE, 'd'));
+        store.put(key("e"), ascii(PAGE_SIZE, 'e'));
+
+        assertEquals(2, store.size());
+        assertEquals(0, store.evictionCount());
+        assertEquals(2 * PAGE_SIZE, store.allocatedBytes());
+    }
+
+    @Test
+    void skipsOutputLargerThanPage() {
+        OffHeapRenderCacheStore store = new OffHeapRenderCacheStore(2 * PAGE_SIZE);
+        store.put(key("a"), ascii(10, 'a'));
+        store.put(key("a"), ascii(PAGE_SIZE + 1, 'a'));
+
+        assertNull(store.get(key("a")));
+        assertEquals(0, store.size());
+    }
+
+    @Test
+    void rejectsInvalidCapacity() {
+        assertThrows(IllegalArgumentException.class, () -> new OffHeapRenderCacheStore(PAGE_SIZE - 1));
+    }
+
+    private static RenderKey key(final String path) {
+        return new RenderKey(path, "test/components/registration", null, "html");
+    }
+
+    private static String ascii(final int length, final char value) {
+        char[] chars = new char[length];
+        Arrays.fill(chars, value);
+        return new String(chars);
+    }
+}
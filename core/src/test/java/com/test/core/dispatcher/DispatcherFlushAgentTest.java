@@ -0,0 +1,140 @@
+package com.test.core.dispatcher;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.sling.testing.mock.osgi.MockOsgi;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import io.wcm.testing.mock.aem.junit5.AemContext;
+import io.wcm.testing.mock.aem.junit5.AemContextExtension;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@ExtendWith(AemContextExtension.class)
+class DispatcherFlushAgentTest {
+
+    private StubDispatcher dispatcher;
+
+    private DispatcherFlushAgent fixture = new DispatcherFlushAgent();
+
+    @BeforeEach
+    void setup(AemContext context) throws IOException {
+        dispatcher = new StubDispatcher();
+        context.registerInjectActivateService(fixture,
+                "dispatcher.urls", new String[] { dispatcher.getUrl() },
+                "content.roots", new String[] { "/content/test" },
+                "flush.delay.ms", 60_000L);
+    }
+
+    @AfterEach
+    void tearDown() {
+        dispatcher.close();
+    }
+
+    @Test
+    void flushActivatesChangedPages() {
+        fixture.invalidateSubtrees(Arrays.asList(
+                "/content/test/us/en/jcr:content/root/text",
+                "/content/test/us/de/jcr:content"));
+        fixture.invalidateSubtrees(Collections.singletonList("/content/test/us/en/jcr:content/root/image"));
+        fixture.flush();
+
+        assertEquals(Arrays.asList(
+                "POST Activate /content/test/us/en ResourceOnly",
+                "POST Activate /content/test/us/de ResourceOnly"), dispatcher.getRequests());
+        assertEquals(2, fixture.getSentRequests());
+    }
+
+    @Test
+    void flushDeletesChangedSubtrees() {
+        fixture.invalidateSubtrees(Arrays.asList(
+                "/content/test/us/en/products/a/jcr:content/root",
+                "/content/test/us/fr/jcr:content/root"));
+        fixture.invalidateSubtrees(Collections.singletonList("/content/test/us/en/products"));
+        fixture.flush();
+
+        assertEquals(Arrays.asList(
+                "POST Delete /content/test/us/en/products ResourceOnly",
+                "POST Activate /content/test/us/fr ResourceOnly"), dispatcher.getRequests());
+    }
+
+    @Test
+    void flushIgnoresOtherPaths() {
+        fixture.invalidateSubtrees(Arrays.asList("/apps/test/components/page", "/content/dam/test/a.jpg"));
+        fixture.flush();
+
+        assertEquals(0, dispatcher.getRequests().size());
+    }
+
+    @Test
+    void flushCountsRejectedRequests() {
+        dispatcher.setStatus(403);
+        fixture.invalidateSubtrees(Collections.singletonList("/content/test/us/en/jcr:content"));
+        fixture.flush();
+
+        assertEquals(1, dispatcher.getRequests().size());
+        assertEquals(1, fixture.getFailedRequests());
+    }
+
+    @Test
+    void flushRetriesFailedInvalidations() {
+        dispatcher.setStatus(503);
+        fixture.invalidateSubtrees(Arrays.asList(
+                "/content/test/us/en/jcr:content/root/text",
+                "/content/test/us/en/products"));
+        fixture.flush();
+        dispatcher.setStatus(200);
+        fixture.flush();
+        fixture.flush();
+
+        assertEquals(Arrays.asList(
+                "POST Delete /content/test/us/en/products ResourceOnly",
+                "POST Activate /content/test/us/en ResourceOnly",
+                "POST Delete /content/test/us/en/products ResourceOnly",
+                "POST Activate /content/test/us/en ResourceOnly"), dispatcher.getRequests());
+        assertEquals(2, fixture.getFailedRequests());
+    }
+
+    @Test
+    void deactivateSendsPendingInvalidationsWithinTimeout(AemContext context) {
+        DispatcherFlushAgent agent = context.registerInjectActivateService(new DispatcherFlushAgent(),
+                "dispatcher.urls", new String[] { dispatcher.getUrl() },
+                "content.roots", new String[] { "/content/test" },
+                "flush.delay.ms", 60_000L,
+                "shutdown.timeout.ms", 500L);
+        dispatcher.setHanging(true);
+        agent.invalidateSubtrees(Arrays.asList(
+                "/content/test/us/en/jcr:content",
+                "/content/test/us/de/jcr:content",
+                "/content/test/us/fr/jcr:content"));
+
+        long start = System.nanoTime();
+        MockOsgi.deactivate(agent, context.bundleContext());
+
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 2000);
+        assertEquals(1, dispatcher.getRequests().size());
+        assertEquals(1, agent.getFailedRequests());
+    }
+
+    @Test
+    void flushesAfterDelay(AemContext context) throws InterruptedException {
+        DispatcherFlushAgent agent = context.registerInjectActivateService(new DispatcherFlushAgent(),
+                "dispatcher.urls", new String[] { dispatcher.getUrl() },
+                "flush.delay.ms", 0L);
+        agent.invalidateSubtrees(Collections.singletonList("/content/test/us/en"));
+
+        for (int i = 0; i < 100 && agent.getSentRequests() == 0; i++) {
+            Thread.sleep(50);
+        }
+        assertEquals(Collections.singletonList("POST Delete /content/test/us/en ResourceOnly"),
+                dispatcher.getRequests());
+    }
+}
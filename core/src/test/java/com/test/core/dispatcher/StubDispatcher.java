@@ -0,0 +1,71 @@
+package com.test.core.dispatcher;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Local stand-in for the invalidation endpoint of a dispatcher. Records every
+ * request as {@code "<CQ-Action> <CQ-Handle> <CQ-Action-Scope>"} and answers
+ * with a configurable status, or not at all until it is closed.
+ */
+final class StubDispatcher implements AutoCloseable {
+
+    private final HttpServer server;
+
+    private final List<String> requests = new CopyOnWriteArrayList<>();
+
+    private final CountDownLatch closed = new CountDownLatch(1);
+
+    private volatile int status = 200;
+
+    private volatile boolean hanging;
+
+    StubDispatcher() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/dispatcher/invalidate.cache", exchange -> {
+            requests.add(exchange.getRequestMethod() + " "
+                    + exchange.getRequestHeaders().getFirst(DispatcherFlushAgent.HEADER_ACTION) + " "
+                    + exchange.getRequestHeaders().getFirst(DispatcherFlushAgent.HEADER_HANDLE) + " "
+                    + exchange.getRequestHeaders().getFirst(DispatcherFlushAgent.HEADER_SCOPE));
+            if (hanging) {
+                try {
+                    closed.await(30, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            exchange.sendResponseHeaders(status, -1);
+            exchange.close();
+        });
+        server.start();
+    }
+
+    String getUrl() {
+        return "http://localhost:" + server.getAddress().getPort() + "/dispatcher/invalidate.cache";
+    }
+
+    List<String> getRequests() {
+        return requests;
+    }
+
+    void setStatus(final int status) {
+        this.status = status;
+    }
+
+    void setHanging(final boolean hanging) {
+        this.hanging = hanging;
+    }
+
+    @Override
+    public void close() {
+        closed.countDown();
+        server.stop(0);
+    }
+}
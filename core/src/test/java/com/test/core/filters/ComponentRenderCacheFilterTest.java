@@ -0,0 +1,122 @@
+package com.test.core.filters;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+
+import org.apache.sling.testing.mock.sling.servlet.MockRequestPathInfo;
+import org.apache.sling.testing.mock.sling.servlet.MockSlingHttpServletRequest;
+import org.apache.sling.testing.mock.sling.servlet.MockSlingHttpServletResponse;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import com.day.cq.wcm.api.WCMMode;
+import com.test.core.cache.ComponentRenderCache;
+import io.wcm.testing.mock.aem.junit5.AemContext;
+import io.wcm.testing.mock.aem.junit5.AemContextExtension;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@ExtendWith(AemContextExtension.class)
+class ComponentRenderCacheFilterTest {
+
+    private static final String COMPONENT = "/content/test/jcr:content/root/helloworld";
+
+    private ComponentRenderCacheFilter fixture = new ComponentRenderCacheFilter();
+
+    private ComponentRenderCache cache;
+
+    private AtomicInteger renders = new AtomicInteger();
+
+    private FilterChain chain = (request, response) ->
+            response.getWriter().write("<p>render " + renders.incrementAndGet() + "</p>");
+
+    @BeforeEach
+    void setup(AemContext context) {
+        context.create().resource(COMPONENT, "sling:resourceType", "test/components/helloworld");
+        cache = context.registerInjectActivateService(new ComponentRenderCache());
+        context.registerInjectActivateService(fixture);
+    }
+
+    @Test
+    void doFilterServesCachedOutput(AemContext context) throws IOException, ServletException {
+        assertEquals("<p>render 1</p>", render(context, null));
+        assertEquals("<p>render 1</p>", render(context, null));
+        assertEquals("<p>render 2</p>", render(context, "mobile"));
+
+        assertEquals(2, renders.get());
+        assertEquals(1, cache.getHitCount());
+        assertEquals(2, cache.getMissCount());
+    }
+
+    @Test
+    void doFilterRendersAfterInvalidation(AemContext context) throws IOException, ServletException {
+        render(context, null);
+
+        cache.invalidateSubtrees(Collections.singletonList("/content/test/jcr:content/root/helloworld-other"));
+        assertEquals("<p>render 1</p>", render(context, null));
+
+        cache.invalidateSubtrees(Collections.singletonList("/content/test/jcr:content"));
+        assertEquals("<p>render 2</p>", render(context, null));
+
+        cache.invalidateSubtrees(Collections.singletonList("/apps/test/components/helloworld"));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void doFilterDiscardsOutputRenderedDuringInvalidation(AemContext context)
+            throws IOException, ServletException {
+        MockSlingHttpServletResponse response = new MockSlingHttpServletResponse();
+        fixture.doFilter(request(context, null), response, (request, chainResponse) -> {
+            chain.doFilter(request, chainResponse);
+            cache.invalidateSubtrees(Collections.singletonList("/content/test/jcr:content"));
+        });
+
+        assertEquals("<p>render 1</p>", response.getOutputAsString());
+        assertEquals(0, cache.size());
+        assertEquals("<p>render 2</p>", render(context, null));
+    }
+
+    @Test
+    void doFilterBypassesAuthoring(AemContext context) throws IOException, ServletException {
+        MockSlingHttpServletRequest request = request(context, null);
+        WCMMode.EDIT.toRequest(request);
+        fixture.doFilter(request, new MockSlingHttpServletResponse(), chain);
+        fixture.doFilter(request, new MockSlingHttpServletResponse(), chain);
+
+        assertEquals(2, renders.get());
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void doFilterPassesStreamedOutput(AemContext context) throws IOException, ServletException {
+        FilterChain streaming = (request, response) -> response.getOutputStream().write('x');
+        MockSlingHttpServletResponse response = new MockSlingHttpServletResponse();
+
+        fixture.doFilter(request(context, null), response, streaming);
+
+        assertEquals("x", response.getOutputAsString());
+        assertEquals(0, cache.size());
+    }
+
+    private String render(AemContext context, String selectors) throws IOException, ServletException {
+        MockSlingHttpServletResponse response = new MockSlingHttpServletResponse();
+        fixture.doFilter(request(context, selectors), response, chain);
+        return response.getOutputAsString();
+    }
+
+    private static MockSlingHttpServletRequest request(AemContext context, String selectors) {
+        MockSlingHttpServletRequest request = new MockSlingHttpServletRequest(context.resourceResolver(),
+                context.bundleContext());
+        request.setResource(context.resourceResolver().getResource(COMPONENT));
+        MockRequestPathInfo pathInfo = (MockRequestPathInfo) request.getRequestPathInfo();
+        pathInfo.setResourcePath(COMPONENT);
+        pathInfo.setSelectorString(selectors);
+        pathInfo.setExtension("html");
+        return request;
+    }
+}
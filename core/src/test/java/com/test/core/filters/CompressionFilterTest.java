@@ -0,0 +1,245 @@
+package com.test.core.filters;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.sling.testing.mock.sling.servlet.MockSlingHttpServletRequest;
+import org.apache.sling.testing.mock.sling.servlet.MockSlingHttpServletResponse;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import io.wcm.testing.mock.aem.junit5.AemContext;
+import io.wcm.testing.mock.aem.junit5.AemContextExtension;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.Mockito.mock;
+
+@ExtendWith(AemContextExtension.class)
+class CompressionFilterTest {
+
+    private static final String PAGE = "<html><body>" + StringUtils.repeat("<p>Hello world</p>", 200)
+            + "</body></html>";
+
+    private CompressionFilter fixture = new CompressionFilter();
+
+    private AtomicInteger renders = new AtomicInteger();
+
+    @BeforeEach
+    void setup(AemContext context) {
+        context.registerInjectActivateService(fixture, "max.buffer.kb", 8);
+    }
+
+    @Test
+    void negotiate() {
+        assertEquals("gzip", CompressionFilter.negotiate("gzip, deflate, br"));
+        assertEquals("deflate", CompressionFilter.negotiate("gzip;q=0.5, deflate"));
+        assertEquals("gzip", CompressionFilter.negotiate("*"));
+        assertEquals("deflate", CompressionFilter.negotiate("gzip;q=0, *;q=0.1"));
+        assertNull(CompressionFilter.negotiate("br, identity"));
+        assertNull(CompressionFilter.negotiate(null));
+    }
+
+    @Test
+    void doFilterCompressesAndCachesVariant(AemContext context) throws Exception {
+        FilterChain chain = htmlChain(PAGE);
+
+        MockSlingHttpServletResponse first = filter(context, "gzip, deflate", chain);
+        MockSlingHttpServletResponse second = filter(context, "gzip, deflate", chain);
+
+        assertEquals("gzip", first.getHeader("Content-Encoding"));
+        assertEquals("Accept-Encoding", first.getHeader("Vary"));
+        assertEquals("W/\"abc\"", first.getHeader("ETag"));
+        assertEquals(PAGE, gunzip(first.getOutput()));
+        assertEquals(first.getOutput().length, first.getContentLength());
+        assertArrayEquals(first.getOutput(), second.getOutput());
+        assertEquals(2, renders.get());
+        assertEquals(2, fixture.getCompressedCount());
+        assertEquals(1, fixture.getCacheHitCount());
+        assertEquals(2L * PAGE.length(), fixture.getBytesIn());
+        assertEquals(2L * first.getOutput().length, fixture.getBytesOut());
+    }
+
+    @Test
+    void doFilterUsesDeflate(AemContext context) throws Exception {
+        MockSlingHttpServletResponse response = filter(context, "deflate", htmlChain(PAGE));
+
+        assertEquals("deflate", response.getHeader("Content-Encoding"));
+        assertEquals(PAGE, new String(IOUtils.toByteArray(
+                new InflaterInputStream(new ByteArrayInputStream(response.getOutput()))), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void doFilterStreamsLargeBody(AemContext context) throws Exception {
+        String large = StringUtils.repeat(PAGE, 5);
+
+        MockSlingHttpServletResponse response = filter(context, "gzip", htmlChain(large));
+
+        assertEquals("gzip", response.getHeader("Content-Encoding"));
+        assertEquals(large, gunzip(response.getOutput()));
+        assertEquals(1, fixture.getCompressedCount());
+        assertEquals(large.length(), fixture.getBytesIn());
+    }
+
+    @Test
+    void doFilterPassesThroughSmallBody(AemContext context) throws Exception {
+        MockSlingHttpServletResponse response = filter(context, "gzip", htmlChain("<p>Hi</p>"));
+
+        assertNull(response.getHeader("Content-Encoding"));
+        assertEquals("Accept-Encoding", response.getHeader("Vary"));
+        assertEquals("<p>Hi</p>", response.getOutputAsString());
+        assertEquals(0, fixture.getCompressedCount());
+    }
+
+    @Test
+    void doFilterPassesThroughOtherContentTypes(AemContext context) throws Exception {
+        byte[] image = PAGE.getBytes(StandardCharsets.UTF_8);
+        FilterChain chain = (request, response) -> {
+            response.setContentType("image/png");
+            response.getOutputStream().write(image);
+        };
+
+        MockSlingHttpServletResponse response = filter(context, "gzip", chain);
+
+        assertNull(response.getHeader("Content-Encoding"));
+        assertArrayEquals(image, response.getOutput());
+    }
+
+    @Test
+    void doFilterPassesThroughErrors(AemContext context) throws Exception {
+        FilterChain chain = (request, response) -> {
+            HttpServletResponse http = (HttpServletResponse) response;
+            http.setStatus(HttpServletResponse.SC_NOT_FOUND);
+            http.setContentType("text/html");
+            http.getWriter().write(PAGE);
+        };
+
+        MockSlingHttpServletResponse response = filter(context, "gzip", chain);
+
+        assertEquals(HttpServletResponse.SC_NOT_FOUND, response.getStatus());
+        assertNull(response.getHeader("Content-Encoding"));
+        assertEquals(PAGE, response.getOutputAsString());
+    }
+
+    @Test
+    void doFilterIgnoresClientsWithoutCompression(AemContext context) throws Exception {
+        MockSlingHttpServletResponse response = filter(context, null, htmlChain(PAGE));
+
+        assertNull(response.getHeader("Content-Encoding"));
+        assertEquals(PAGE, response.getOutputAsString());
+    }
+
+    @Test
+    void doFilterPassesThroughLargeContentLength(AemContext context) throws Exception {
+        FilterChain chain = (request, response) -> {
+            response.setContentType("application/zip");
+            response.setContentLengthLong(5_000_000_000L);
+            response.getOutputStream().write(1);
+        };
+        AsyncResponse response = new AsyncResponse();
+
+        fixture.doFilter(request(context, "gzip"), response, chain);
+
+        assertEquals(5_000_000_000L, response.contentLength);
+    }
+
+    @Test
+    void doFilterPassesThroughAsynchronousOutput(AemContext context) throws Exception {
+        WriteListener listener = mock(WriteListener.class);
+        FilterChain chain = (request, response) -> {
+            response.setContentType("text/html");
+            response.getOutputStream().setWriteListener(listener);
+            response.getOutputStream().write(PAGE.getBytes(StandardCharsets.UTF_8));
+        };
+        AsyncResponse response = new AsyncResponse();
+
+        fixture.doFilter(request(context, "gzip"), response, chain);
+
+        assertSame(listener, response.listener);
+        assertNull(response.getHeader("Content-Encoding"));
+        assertEquals(PAGE, response.getOutputAsString());
+    }
+
+    private FilterChain htmlChain(String body) {
+        return (request, response) -> {
+            HttpServletResponse http = (HttpServletResponse) response;
+            renders.incrementAndGet();
+            http.setContentType("text/html");
+            http.setCharacterEncoding("UTF-8");
+            http.setHeader("ETag", "\"abc\"");
+            http.getWriter().write(body);
+        };
+    }
+
+    private MockSlingHttpServletResponse filter(AemContext context, String acceptEncoding, FilterChain chain)
+            throws Exception {
+        MockSlingHttpServletResponse response = new MockSlingHttpServletResponse();
+        fixture.doFilter(request(context, acceptEncoding), response, chain);
+        return response;
+    }
+
+    private static MockSlingHttpServletRequest request(AemContext context, String acceptEncoding) {
+        MockSlingHttpServletRequest request = new MockSlingHttpServletRequest(context.resourceResolver(),
+                context.bundleContext());
+        request.setMethod("GET");
+        if (acceptEncoding != null) {
+            request.setHeader("Accept-Encoding", acceptEncoding);
+        }
+        return request;
+    }
+
+    private static String gunzip(byte[] compressed) throws IOException {
+        return new String(IOUtils.toByteArray(new GZIPInputStream(new ByteArrayInputStream(compressed))),
+                StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Records the Servlet 3.1 calls the mock response does not support.
+     */
+    private static final class AsyncResponse extends MockSlingHttpServletResponse {
+
+        private long contentLength = -1;
+
+        private WriteListener listener;
+
+        @Override
+        public void setContentLengthLong(long len) {
+            contentLength = len;
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() {
+            ServletOutputStream output = super.getOutputStream();
+            return new ServletOutputStream() {
+                @Override
+                public void write(int b) throws IOException {
+                    output.write(b);
+                }
+
+                @Override
+                public boolean isReady() {
+                    return true;
+                }
+
+                @Override
+                public void setWriteListener(WriteListener writeListener) {
+                    listener = writeListener;
+                }
+            };
+        }
+    }
+}
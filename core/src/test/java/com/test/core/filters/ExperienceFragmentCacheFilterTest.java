@@ -0,0 +1,181 @@
+package com.test.core.filters;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.testing.mock.osgi.MockOsgi;
+import org.apache.sling.testing.mock.sling.servlet.MockRequestPathInfo;
+import org.apache.sling.testing.mock.sling.servlet.MockSlingHttpServletRequest;
+import org.apache.sling.testing.mock.sling.servlet.MockSlingHttpServletResponse;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.day.cq.wcm.api.WCMMode;
+import com.test.core.cache.ExperienceFragmentCache;
+import com.test.core.dispatcher.DispatcherFlushAgent;
+import io.wcm.testing.mock.aem.junit5.AemContext;
+import io.wcm.testing.mock.aem.junit5.AemContextExtension;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+
+@ExtendWith(AemContextExtension.class)
+class ExperienceFragmentCacheFilterTest {
+
+    private static final String HEADER = "/content/experience-fragments/test/header/master";
+
+    private static final String PAGE_A = "/content/test/us/en/a";
+
+    private static final String PAGE_B = "/content/test/us/en/b";
+
+    private static final String PAGE_DE = "/content/test/us/de/a";
+
+    private static final String PAGE_MASTER = "/content/test/language-masters/en/a";
+
+    @TempDir
+    Path directory;
+
+    private ExperienceFragmentCacheFilter fixture = new ExperienceFragmentCacheFilter();
+
+    private ExperienceFragmentCache cache;
+
+    private DispatcherFlushAgent flushAgent = mock(DispatcherFlushAgent.class);
+
+    private AtomicInteger renders = new AtomicInteger();
+
+    @BeforeEach
+    void setup(AemContext context) {
+        context.create().page("/content/test/us/en", null, "jcr:language", "en");
+        context.create().page("/content/test/us/de", null, "jcr:language", "de");
+        context.create().page("/content/test/language-masters/en", null, "jcr:language", "en");
+        for (String page : Arrays.asList(PAGE_A, PAGE_B, PAGE_DE, PAGE_MASTER)) {
+            context.create().page(page);
+            context.create().resource(page + "/jcr:content/root/header",
+                    "sling:resourceType", "test/components/experiencefragment",
+                    "fragmentVariationPath", HEADER);
+        }
+        context.create().page(HEADER);
+        context.create().resource(HEADER + "/jcr:content/root/text", "text", "Header");
+        context.registerService(DispatcherFlushAgent.class, flushAgent);
+        cache = context.registerInjectActivateService(new ExperienceFragmentCache(),
+                "pages.file", directory.resolve("pages").toString(),
+                "persist.delay.ms", 0L);
+        context.registerInjectActivateService(fixture);
+    }
+
+    @Test
+    void doFilterRendersEachVariationAndLanguageOnce(AemContext context) throws IOException, ServletException {
+        assertEquals("<header>render 1</header>", render(context, PAGE_A));
+        assertEquals("<header>render 1</header>", render(context, PAGE_B));
+        assertEquals("<header>render 2</header>", render(context, PAGE_DE));
+
+        assertEquals(2, renders.get());
+        assertEquals(1, cache.getHitCount());
+        assertEquals(new HashSet<>(Arrays.asList(PAGE_A, PAGE_B, PAGE_DE)), cache.getEmbeddingPages(HEADER));
+    }
+
+    @Test
+    void doFilterSeparatesSitesOfTheSameLanguage(AemContext context) throws IOException, ServletException {
+        assertEquals("<header>render 1</header>", render(context, PAGE_A));
+        assertEquals("<header>render 2</header>", render(context, PAGE_MASTER));
+        assertEquals("<header>render 1</header>", render(context, PAGE_B));
+
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    void invalidationFlushesEmbeddingPages(AemContext context) throws IOException, ServletException {
+        render(context, PAGE_A);
+        render(context, PAGE_B);
+
+        cache.invalidateSubtrees(Collections.singletonList(HEADER + "/jcr:content/root/text"));
+
+        verify(flushAgent).invalidateSubtrees(argThat(roots -> new HashSet<>(roots).equals(
+                new HashSet<>(Arrays.asList(PAGE_A + "/jcr:content", PAGE_B + "/jcr:content")))));
+        assertEquals(2, cache.getFlushedPageCount());
+        assertEquals("<header>render 2</header>", render(context, PAGE_A));
+    }
+
+    @Test
+    void invalidationFlushesPagesRenderedBeforeRestart(AemContext context) throws Exception {
+        render(context, PAGE_A);
+        render(context, PAGE_DE);
+        MockOsgi.deactivate(cache, context.bundleContext());
+
+        ExperienceFragmentCache restarted = context.registerInjectActivateService(new ExperienceFragmentCache(),
+                "pages.file", directory.resolve("pages").toString());
+        restarted.invalidateSubtrees(Collections.singletonList(HEADER));
+
+        verify(flushAgent).invalidateSubtrees(argThat(roots -> new HashSet<>(roots).equals(
+                new HashSet<>(Arrays.asList(PAGE_A + "/jcr:content", PAGE_DE + "/jcr:content")))));
+        assertEquals(0, restarted.size());
+    }
+
+    @Test
+    void invalidationOfOtherContentKeepsFragments(AemContext context) throws IOException, ServletException {
+        render(context, PAGE_A);
+        render(context, PAGE_B);
+
+        cache.invalidateSubtrees(Collections.singletonList(PAGE_B + "/jcr:content/root/title"));
+
+        verifyZeroInteractions(flushAgent);
+        assertEquals(Collections.singleton(PAGE_A), cache.getEmbeddingPages(HEADER));
+        assertEquals("<header>render 1</header>", render(context, PAGE_B));
+    }
+
+    @Test
+    void doFilterBypassesAuthoring(AemContext context) throws IOException, ServletException {
+        MockSlingHttpServletRequest request = request(context, PAGE_A);
+        WCMMode.EDIT.toRequest(request);
+        fixture.doFilter(request, new MockSlingHttpServletResponse(), chain(request));
+        fixture.doFilter(request, new MockSlingHttpServletResponse(), chain(request));
+
+        assertEquals(2, renders.get());
+        assertEquals(0, cache.size());
+    }
+
+    private String render(AemContext context, String page) throws IOException, ServletException {
+        MockSlingHttpServletRequest request = request(context, page);
+        MockSlingHttpServletResponse response = new MockSlingHttpServletResponse();
+        fixture.doFilter(request, response, chain(request));
+        return response.getOutputAsString();
+    }
+
+    /**
+     * Renders the fragment like the component does, by including the
+     * content of the variation.
+     */
+    private FilterChain chain(MockSlingHttpServletRequest request) {
+        return (outerRequest, outerResponse) -> {
+            Resource component = request.getResource();
+            request.setResource(request.getResourceResolver().getResource(HEADER + "/jcr:content"));
+            fixture.doFilter(request, outerResponse, (innerRequest, innerResponse) ->
+                    innerResponse.getWriter().write("<header>render " + renders.incrementAndGet() + "</header>"));
+            request.setResource(component);
+        };
+    }
+
+    private static MockSlingHttpServletRequest request(AemContext context, String page) {
+        String component = page + "/jcr:content/root/header";
+        MockSlingHttpServletRequest request = new MockSlingHttpServletRequest(context.resourceResolver(),
+                context.bundleContext());
+        request.setResource(context.resourceResolver().getResource(component));
+        MockRequestPathInfo pathInfo = (MockRequestPathInfo) request.getRequestPathInfo();
+        pathInfo.setResourcePath(component);
+        pathInfo.setExtension("html");
+        return request;
+    }
+}
@@ -29,6 +29,8 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 
+import com.test.core.metrics.RequestTimingStatistics;
+import com.test.core.metrics.RequestTimingStatistics.RequestTiming;
 import io.wcm.testing.mock.aem.junit5.AemContext;
 import io.wcm.testing.mock.aem.junit5.AemContextExtension;
 import uk.org.lidalia.slf4jext.Level;
@@ -37,6 +39,7 @@ import uk.org.lidalia.slf4jtest.TestLogger;
 import uk.org.lidalia.slf4jtest.TestLoggerFactory;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.Mockito.mock;
 
 @ExtendWith(AemContextExtension.class)
@@ -73,4 +76,27 @@ class LoggingFilterTest {
         assertEquals("/content/test", event.getArguments().get(0));
         assertEquals("selectors", event.getArguments().get(1));
     }
+
+    @Test
+    void doFilterWithTiming(AemContext context) throws IOException, ServletException {
+        RequestTimingStatistics statistics = context.registerInjectActivateService(new RequestTimingStatistics());
+        context.registerInjectActivateService(fixture, "timing.enabled", true);
+
+        context.build().resource("/content/test", "sling:resourceType", "test/components/page").commit();
+        context.currentResource("/content/test");
+        MockRequestPathInfo requestPathInfo = (MockRequestPathInfo) context.request().getRequestPathInfo();
+        requestPathInfo.setSelectorString("tree");
+        requestPathInfo.setExtension("json");
+
+        fixture.doFilter(context.request(), context.response(), mock(FilterChain.class));
+
+        List<RequestTiming> timings = statistics.getTimings();
+        assertEquals(1, timings.size());
+        RequestTiming timing = timings.get(0);
+        assertEquals("test/components/page", timing.getResourceType());
+        assertEquals("tree", timing.getSelectors());
+        assertEquals("json", timing.getExtension());
+        assertEquals(1, timing.getSnapshot().getCount());
+        assertTrue(timing.getSnapshot().getMax() >= 0);
+    }
 }
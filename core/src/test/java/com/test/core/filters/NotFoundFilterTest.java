@@ -0,0 +1,153 @@
+package com.test.core.filters;
+
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.servlet.FilterChain;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.sling.api.resource.NonExistingResource;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.testing.mock.sling.servlet.MockRequestPathInfo;
+import org.apache.sling.testing.mock.sling.servlet.MockSlingHttpServletRequest;
+import org.apache.sling.testing.mock.sling.servlet.MockSlingHttpServletResponse;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import io.wcm.testing.mock.aem.junit5.AemContext;
+import io.wcm.testing.mock.aem.junit5.AemContextExtension;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@ExtendWith(AemContextExtension.class)
+class NotFoundFilterTest {
+
+    private static final String BODY = "<p>Not found</p>";
+
+    private NotFoundFilter fixture = new NotFoundFilter();
+
+    private AtomicInteger renders = new AtomicInteger();
+
+    private FilterChain notFoundChain = (request, response) -> {
+        renders.incrementAndGet();
+        ((HttpServletResponse) response).sendError(HttpServletResponse.SC_NOT_FOUND);
+    };
+
+    @BeforeEach
+    void setup(AemContext context) {
+        context.registerInjectActivateService(fixture, "body", BODY);
+        context.create().page("/content/test/us/en");
+    }
+
+    @Test
+    void doFilterAnswersMissingResources(AemContext context) throws Exception {
+        MockSlingHttpServletRequest request = request(context, "GET",
+                new NonExistingResource(context.resourceResolver(), "/wp-login.php"), null);
+        MockSlingHttpServletResponse response = new MockSlingHttpServletResponse();
+
+        fixture.doFilter(request, response, notFoundChain);
+
+        assertEquals(HttpServletResponse.SC_NOT_FOUND, response.getStatus());
+        assertEquals(BODY, response.getOutputAsString());
+        assertEquals(0, renders.get());
+        assertEquals(1, fixture.getMissingCount());
+    }
+
+    @Test
+    void doFilterCachesRenderedNotFound(AemContext context) throws Exception {
+        MockSlingHttpServletResponse first = filter(context, "GET", "foo");
+        MockSlingHttpServletResponse second = filter(context, "GET", "foo");
+
+        assertEquals(HttpServletResponse.SC_NOT_FOUND, first.getStatus());
+        assertEquals(BODY, first.getOutputAsString());
+        assertEquals(HttpServletResponse.SC_NOT_FOUND, second.getStatus());
+        assertEquals(BODY, second.getOutputAsString());
+        assertEquals(1, renders.get());
+        assertEquals(1, fixture.getCachedCount());
+        assertEquals(1, fixture.getCacheHitCount());
+    }
+
+    @Test
+    void invalidateSubtreesDropsMissesOfChangedContent(AemContext context) throws Exception {
+        filter(context, "GET", "foo");
+
+        fixture.invalidateSubtrees(Collections.singletonList("/content/test/us/de"));
+        filter(context, "GET", "foo");
+        fixture.invalidateSubtrees(Collections.singletonList("/content/test/us/en/jcr:content/root"));
+        filter(context, "GET", "foo");
+
+        assertEquals(2, renders.get());
+    }
+
+    @Test
+    void doFilterKeepsOtherSelectorsApart(AemContext context) throws Exception {
+        filter(context, "GET", "foo");
+        filter(context, "GET", "bar");
+
+        assertEquals(2, renders.get());
+    }
+
+    @Test
+    void doFilterDoesNotCacheRequestsWithQueryString(AemContext context) throws Exception {
+        filter(context, "GET", "foo");
+        for (int i = 0; i < 2; i++) {
+            MockSlingHttpServletRequest request = request(context, "GET", page(context), "foo");
+            request.setQueryString("page=2");
+            MockSlingHttpServletResponse response = new MockSlingHttpServletResponse();
+            fixture.doFilter(request, response, notFoundChain);
+
+            assertEquals(HttpServletResponse.SC_NOT_FOUND, response.getStatus());
+            assertEquals(BODY, response.getOutputAsString());
+        }
+
+        assertEquals(3, renders.get());
+        assertEquals(1, fixture.getCachedCount());
+        assertEquals(0, fixture.getCacheHitCount());
+    }
+
+    @Test
+    void doFilterSendsNoBodyForHead(AemContext context) throws Exception {
+        MockSlingHttpServletResponse response = filter(context, "HEAD", "foo");
+
+        assertEquals(HttpServletResponse.SC_NOT_FOUND, response.getStatus());
+        assertEquals("", response.getOutputAsString());
+    }
+
+    @Test
+    void doFilterPassesThroughOtherRequests(AemContext context) throws Exception {
+        filter(context, "POST", "foo");
+        filter(context, "POST", "foo");
+        MockSlingHttpServletResponse response = new MockSlingHttpServletResponse();
+        fixture.doFilter(request(context, "GET", page(context), "foo"), response, (request, resp) ->
+                ((HttpServletResponse) resp).sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR));
+
+        assertEquals(2, renders.get());
+        assertEquals(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, response.getStatus());
+        assertEquals(0, fixture.getCachedCount());
+    }
+
+    private MockSlingHttpServletResponse filter(AemContext context, String method, String selectors)
+            throws Exception {
+        MockSlingHttpServletResponse response = new MockSlingHttpServletResponse();
+        fixture.doFilter(request(context, method, page(context), selectors), response, notFoundChain);
+        return response;
+    }
+
+    private static Resource page(AemContext context) {
+        return context.resourceResolver().getResource("/content/test/us/en");
+    }
+
+    private static MockSlingHttpServletRequest request(AemContext context, String method, Resource resource,
+                                                       String selectors) {
+        MockSlingHttpServletRequest request = new MockSlingHttpServletRequest(context.resourceResolver(),
+                context.bundleContext());
+        request.setMethod(method);
+        request.setResource(resource);
+        MockRequestPathInfo pathInfo = (MockRequestPathInfo) request.getRequestPathInfo();
+        pathInfo.setResourcePath(resource.getPath());
+        pathInfo.setSelectorString(selectors);
+        pathInfo.setExtension("html");
+        return request;
+    }
+}
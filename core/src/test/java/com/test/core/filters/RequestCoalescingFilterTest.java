@@ -0,0 +1,200 @@
+package com.test.core.filters;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.sling.testing.mock.sling.servlet.MockRequestPathInfo;
+import org.apache.sling.testing.mock.sling.servlet.MockSlingHttpServletRequest;
+import org.apache.sling.testing.mock.sling.servlet.MockSlingHttpServletResponse;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import io.wcm.testing.mock.aem.junit5.AemContext;
+import io.wcm.testing.mock.aem.junit5.AemContextExtension;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@ExtendWith(AemContextExtension.class)
+class RequestCoalescingFilterTest {
+
+    private static final int FOLLOWERS = 5;
+
+    private RequestCoalescingFilter fixture = new RequestCoalescingFilter();
+
+    private ExecutorService executor = Executors.newFixedThreadPool(FOLLOWERS + 1);
+
+    private CountDownLatch release = new CountDownLatch(1);
+
+    private AtomicInteger renders = new AtomicInteger();
+
+    @BeforeEach
+    void setup(AemContext context) {
+        context.registerInjectActivateService(fixture);
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void doFilterSharesResponseOfLeader(AemContext context) throws Exception {
+        FilterChain chain = (request, response) -> {
+            await();
+            HttpServletResponse http = (HttpServletResponse) response;
+            http.setStatus(HttpServletResponse.SC_OK);
+            http.setContentType("text/html");
+            http.setCharacterEncoding("UTF-8");
+            http.setHeader("Cache-Control", "max-age=60");
+            http.getWriter().write("<p>Grüße " + renders.incrementAndGet() + "</p>");
+        };
+
+        List<Future<MockSlingHttpServletResponse>> responses = runConcurrently(context, chain);
+
+        for (Future<MockSlingHttpServletResponse> future : responses) {
+            MockSlingHttpServletResponse response = future.get(5, TimeUnit.SECONDS);
+            assertEquals(HttpServletResponse.SC_OK, response.getStatus());
+            assertEquals("text/html;charset=UTF-8", response.getContentType());
+            assertEquals("max-age=60", response.getHeader("Cache-Control"));
+            assertEquals("<p>Grüße 1</p>", response.getOutputAsString());
+        }
+        assertEquals(1, renders.get());
+        assertEquals(1, fixture.getLeaderCount());
+        assertEquals(FOLLOWERS, fixture.getCoalescedCount());
+        assertEquals(0, fixture.getFallbackCount());
+    }
+
+    @Test
+    void doFilterRendersAgainIfLeaderSetsCookie(AemContext context) throws Exception {
+        FilterChain chain = (request, response) -> {
+            await();
+            ((HttpServletResponse) response).addCookie(new Cookie("session", "s" + renders.incrementAndGet()));
+            response.getWriter().write("personal");
+        };
+
+        List<Future<MockSlingHttpServletResponse>> responses = runConcurrently(context, chain);
+        for (Future<MockSlingHttpServletResponse> future : responses) {
+            assertEquals("personal", future.get(5, TimeUnit.SECONDS).getOutputAsString());
+        }
+
+        assertEquals(FOLLOWERS + 1, renders.get());
+        assertEquals(FOLLOWERS, fixture.getFallbackCount());
+    }
+
+    @Test
+    void doFilterRendersAgainIfLeaderFails(AemContext context) throws Exception {
+        FilterChain chain = (request, response) -> {
+            await();
+            if (renders.incrementAndGet() == 1) {
+                throw new ServletException("Failed");
+            }
+            response.getWriter().write("ok");
+        };
+
+        List<Future<MockSlingHttpServletResponse>> responses = runConcurrently(context, chain);
+        int failures = 0;
+        for (Future<MockSlingHttpServletResponse> future : responses) {
+            try {
+                assertEquals("ok", future.get(5, TimeUnit.SECONDS).getOutputAsString());
+            } catch (ExecutionException e) {
+                failures++;
+            }
+        }
+
+        assertEquals(1, failures);
+        assertEquals(FOLLOWERS + 1, renders.get());
+    }
+
+    @Test
+    void doFilterKeepsLanguagesApart(AemContext context) throws Exception {
+        FilterChain chain = (request, response) -> {
+            await();
+            response.getWriter().write(((HttpServletRequest) request).getHeader("Accept-Language"));
+        };
+
+        List<Future<MockSlingHttpServletResponse>> responses = new ArrayList<>();
+        for (String language : new String[] { "de", "en" }) {
+            MockSlingHttpServletRequest request = request(context, null);
+            request.addHeader("Accept-Language", language);
+            responses.add(executor.submit(() -> {
+                MockSlingHttpServletResponse response = new MockSlingHttpServletResponse();
+                fixture.doFilter(request, response, chain);
+                return response;
+            }));
+        }
+        while (fixture.getLeaderCount() < 2) {
+            Thread.sleep(10);
+        }
+        release.countDown();
+
+        assertEquals("de", responses.get(0).get(5, TimeUnit.SECONDS).getOutputAsString());
+        assertEquals("en", responses.get(1).get(5, TimeUnit.SECONDS).getOutputAsString());
+        assertEquals(0, fixture.getCoalescedCount());
+    }
+
+    @Test
+    void doFilterPassesOtherRequests(AemContext context) throws Exception {
+        FilterChain chain = (request, response) -> renders.incrementAndGet();
+
+        MockSlingHttpServletRequest post = request(context, null);
+        post.setMethod("POST");
+        fixture.doFilter(post, new MockSlingHttpServletResponse(), chain);
+        fixture.doFilter(request(context, "a=b"), new MockSlingHttpServletResponse(), chain);
+
+        assertEquals(2, renders.get());
+        assertEquals(0, fixture.getLeaderCount());
+    }
+
+    private List<Future<MockSlingHttpServletResponse>> runConcurrently(AemContext context, FilterChain chain)
+            throws InterruptedException {
+        List<Future<MockSlingHttpServletResponse>> responses = new ArrayList<>();
+        for (int i = 0; i <= FOLLOWERS; i++) {
+            MockSlingHttpServletRequest request = request(context, null);
+            responses.add(executor.submit(() -> {
+                MockSlingHttpServletResponse response = new MockSlingHttpServletResponse();
+                fixture.doFilter(request, response, chain);
+                return response;
+            }));
+        }
+        while (fixture.getCoalescedCount() < FOLLOWERS) {
+            Thread.sleep(10);
+        }
+        release.countDown();
+        return responses;
+    }
+
+    private void await() {
+        try {
+            release.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static MockSlingHttpServletRequest request(AemContext context, String queryString) {
+        MockSlingHttpServletRequest request = new MockSlingHttpServletRequest(context.resourceResolver(),
+                context.bundleContext());
+        MockRequestPathInfo pathInfo = (MockRequestPathInfo) request.getRequestPathInfo();
+        pathInfo.setResourcePath("/content/test/us/en");
+        pathInfo.setExtension("html");
+        if (queryString != null) {
+            request.setQueryString(queryString);
+        }
+        return request;
+    }
+}
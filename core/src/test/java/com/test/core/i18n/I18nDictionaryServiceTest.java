@@ -0,0 +1,124 @@
+package com.test.core.i18n;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import org.apache.sling.api.resource.ModifiableValueMap;
+import org.apache.sling.api.resource.PersistenceException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import io.wcm.testing.mock.aem.junit5.AemContext;
+import io.wcm.testing.mock.aem.junit5.AemContextExtension;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@ExtendWith(AemContextExtension.class)
+class I18nDictionaryServiceTest {
+
+    private static final String ROOT = "/apps/test/i18n";
+
+    private I18nDictionaryService fixture = new I18nDictionaryService();
+
+    @BeforeEach
+    void setup(AemContext context) throws Exception {
+        dictionary(context, ROOT + "/fr.json", "fr", "{\"Read more\": \"Lire la suite\", \"Close\": \"Fermer\"}");
+        context.create().resource(ROOT + "/fr_ca", "jcr:language", "fr-ca");
+        context.create().resource(ROOT + "/fr_ca/close", "sling:key", "Close", "sling:message", "Fermez");
+        context.create().resource(ROOT + "/fr_ca/Search", "sling:message", "Chercher");
+        context.resourceResolver().commit();
+        context.registerInjectActivateService(fixture);
+        fixture.awaitPending();
+    }
+
+    @Test
+    void compilesJsonAndMessageEntryDictionaries() {
+        assertEquals(2, fixture.getDictionaryCount());
+        assertEquals(2, fixture.getLocaleCount());
+        assertEquals("Lire la suite", fixture.translate("Read more", Locale.FRENCH));
+        assertEquals("Fermer", fixture.translate("Close", Locale.FRENCH));
+        assertEquals("Search", fixture.translate("Search", Locale.FRENCH));
+        assertEquals("Fermez", fixture.translate("Close", Locale.CANADA_FRENCH));
+        assertEquals("Chercher", fixture.translate("Search", Locale.CANADA_FRENCH));
+        assertEquals("Lire la suite", fixture.translate("Read more", Locale.CANADA_FRENCH));
+    }
+
+    @Test
+    void getMessagesFallsBackToLanguage() {
+        assertSame(fixture.getMessages(Locale.FRENCH), fixture.getMessages(Locale.FRANCE));
+        assertSame(MessageTable.EMPTY, fixture.getMessages(Locale.GERMAN));
+        assertSame(MessageTable.EMPTY, fixture.getMessages(null));
+        assertEquals("Read more", fixture.translate("Read more", Locale.GERMAN));
+    }
+
+    @Test
+    void updatesChangedDictionariesOnly(AemContext context) throws Exception {
+        MessageTable unchanged = fixture.getMessages(Locale.FRENCH);
+        context.resourceResolver().getResource(ROOT + "/fr_ca/Search").adaptTo(ModifiableValueMap.class)
+                .put("sling:message", "Rechercher");
+        dictionary(context, ROOT + "/de.json", "de", "{\"Close\": \"Schliessen\"}");
+        context.resourceResolver().commit();
+
+        fixture.invalidateSubtrees(Arrays.asList(ROOT + "/fr_ca/Search", ROOT + "/de.json",
+                "/content/test/us/en"));
+        fixture.awaitPending();
+
+        assertEquals(1, fixture.getUpdateCount());
+        assertEquals(3, fixture.getDictionaryCount());
+        assertSame(unchanged, fixture.getMessages(Locale.FRENCH));
+        assertEquals("Rechercher", fixture.translate("Search", Locale.CANADA_FRENCH));
+        assertEquals("Schliessen", fixture.translate("Close", Locale.GERMANY));
+    }
+
+    @Test
+    void updatesLocalesOfChangedLanguage(AemContext context) throws Exception {
+        context.resourceResolver().delete(context.resourceResolver().getResource(ROOT + "/fr.json"));
+        context.resourceResolver().commit();
+
+        fixture.invalidateSubtrees(Collections.singletonList(ROOT + "/fr.json"));
+        fixture.awaitPending();
+
+        assertEquals(1, fixture.getLocaleCount());
+        assertSame(MessageTable.EMPTY, fixture.getMessages(Locale.FRENCH));
+        assertEquals("Read more", fixture.translate("Read more", Locale.CANADA_FRENCH));
+        assertEquals("Fermez", fixture.translate("Close", Locale.CANADA_FRENCH));
+    }
+
+    @Test
+    void messageTableLooksUpAllEntries() {
+        Map<String, String> messages = new HashMap<>();
+        for (int i = 0; i < 1000; i++) {
+            messages.put("key" + i, "message" + i);
+        }
+        messages.put(null, "ignored");
+
+        MessageTable table = MessageTable.of(messages);
+
+        assertEquals(1000, table.size());
+        assertEquals("message42", table.get("key42"));
+        assertNull(table.get("key1000"));
+        assertFalse(table.containsKey(null));
+        assertEquals("key1000", table.translate("key1000"));
+        messages.remove(null);
+        assertEquals(messages, table);
+        assertTrue(MessageTable.of(Collections.emptyMap()).isEmpty());
+    }
+
+    static void dictionary(AemContext context, String path, String language, String json)
+            throws PersistenceException {
+        context.load().binaryFile(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)), path,
+                "application/json");
+        context.resourceResolver().getResource(path).adaptTo(ModifiableValueMap.class)
+                .put("jcr:language", language);
+    }
+}
@@ -0,0 +1,78 @@
+package com.test.core.listeners;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ChangedPathIndexTest {
+
+    @Test
+    void collapsesDescendants() {
+        ChangedPathIndex index = new ChangedPathIndex(100, 100);
+
+        assertTrue(index.add("/content/test/en/page/jcr:content/par"));
+        assertTrue(index.add("/content/test/en/page"));
+        assertFalse(index.add("/content/test/en/page/jcr:content"));
+        assertTrue(index.add("/content/test/fr"));
+
+        assertRoots(index.drain(), "/content/test/en/page", "/content/test/fr");
+        assertTrue(index.isEmpty());
+        assertEquals(1, index.nodeCount());
+    }
+
+    @Test
+    void collapsesWideParents() {
+        ChangedPathIndex index = new ChangedPathIndex(100, 3);
+
+        index.add("/content/test/en/a");
+        index.add("/content/test/en/b");
+        index.add("/content/test/en/c");
+        assertEquals(3, index.drain().size());
+
+        index.add("/content/test/en/a");
+        index.add("/content/test/en/b");
+        index.add("/content/test/en/c");
+        index.add("/content/test/en/d");
+        assertRoots(index.drain(), "/content/test/en");
+    }
+
+    @Test
+    void staysWithinNodeLimit() {
+        ChangedPathIndex index = new ChangedPathIndex(8, 100);
+
+        index.add("/content/test/en/a/jcr:content");
+        index.add("/content/test/en/b/jcr:content");
+        index.add("/content/test/fr/c/jcr:content");
+
+        assertTrue(index.nodeCount() <= 8);
+        assertRoots(index.drain(), "/content/test/en/a", "/content/test/en/b", "/content/test/fr/c");
+    }
+
+    @Test
+    void rootCoversEverything() {
+        ChangedPathIndex index = new ChangedPathIndex(10, 10);
+
+        index.add("/content/test");
+        index.add("/");
+
+        assertFalse(index.add("/content"));
+        assertRoots(index.drain(), "/");
+    }
+
+    @Test
+    void rejectsInvalidLimits() {
+        assertThrows(IllegalArgumentException.class, () -> new ChangedPathIndex(0, 1));
+    }
+
+    private static void assertRoots(List<String> roots, String... expected) {
+        assertEquals(new HashSet<>(Arrays.asList(expected)), new HashSet<>(roots));
+        assertEquals(expected.length, roots.size());
+    }
+}
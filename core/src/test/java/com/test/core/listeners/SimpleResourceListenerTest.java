@@ -15,13 +15,23 @@
  */
 package com.test.core.listeners;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.stream.Collectors;
 
 import org.apache.sling.api.SlingConstants;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
 import org.osgi.service.event.Event;
 
+import io.wcm.testing.mock.aem.junit5.AemContext;
+import io.wcm.testing.mock.aem.junit5.AemContextExtension;
+
 import uk.org.lidalia.slf4jext.Level;
 import uk.org.lidalia.slf4jtest.LoggingEvent;
 import uk.org.lidalia.slf4jtest.TestLogger;
@@ -29,13 +39,20 @@ import uk.org.lidalia.slf4jtest.TestLoggerFactory;
 
 import static org.junit.jupiter.api.Assertions.assertAll;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
+@ExtendWith(AemContextExtension.class)
 class SimpleResourceListenerTest {
 
     private SimpleResourceListener fixture = new SimpleResourceListener();
 
     private TestLogger logger = TestLoggerFactory.getTestLogger(fixture.getClass());
 
+    @BeforeEach
+    void setUp() {
+        TestLoggerFactory.clearAll();
+    }
+
     @Test
     void handleEvent() {
         Event resourceEvent = new Event("event/topic", Collections.singletonMap(SlingConstants.PROPERTY_PATH, "/content/test"));
@@ -53,4 +70,137 @@ class SimpleResourceListenerTest {
                 () -> assertEquals("/content/test", event.getArguments().get(1))
         );
     }
+
+    @Test
+    void handleEventCoalescesPerPath(AemContext context) throws InterruptedException {
+        activate(context, "DROP_OLDEST", 10);
+
+        fixture.handleEvent(event("/content/a"));
+        fixture.handleEvent(event("/content/b"));
+        fixture.handleEvent(event("/content/a"));
+        assertEquals(3, fixture.getQueueDepth());
+        assertTrue(logger.getAllLoggingEvents().isEmpty());
+
+        fixture.deactivate();
+
+        assertEquals(0, fixture.getQueueDepth());
+        assertEquals(1, fixture.getCoalescedEvents());
+        assertEquals(1, fixture.getBatchSizes().getCount());
+        assertEquals(2, fixture.getBatchSizes().getMax());
+        assertEquals(Arrays.asList("/content/a", "/content/b"), handledPaths());
+    }
+
+    @Test
+    void handleEventInvalidatesSubtrees(AemContext context) throws InterruptedException {
+        List<Collection<String>> invalidations = new ArrayList<>();
+        context.registerService(SubtreeInvalidationListener.class, invalidations::add);
+        activate(context, "DROP_OLDEST", 10);
+
+        fixture.handleEvent(event("/content/test/en/jcr:content/par"));
+        fixture.handleEvent(event("/content/test/en/jcr:content"));
+        fixture.handleEvent(event("/content/test/en"));
+        fixture.handleEvent(event("/content/test/fr/jcr:content"));
+        fixture.deactivate();
+
+        assertEquals(1, invalidations.size());
+        assertEquals(new HashSet<>(Arrays.asList("/content/test/en", "/content/test/fr/jcr:content")),
+                new HashSet<>(invalidations.get(0)));
+    }
+
+    @Test
+    void handleEventDropsNewest(AemContext context) throws InterruptedException {
+        activate(context, "DROP_NEWEST", 2);
+
+        fixture.handleEvent(event("/content/a"));
+        fixture.handleEvent(event("/content/b"));
+        fixture.handleEvent(event("/content/c"));
+        assertEquals(2, fixture.getQueueDepth());
+        assertEquals(1, fixture.getDroppedEvents());
+
+        fixture.deactivate();
+
+        assertEquals(Arrays.asList("/content/a", "/content/b"), handledPaths());
+    }
+
+    @Test
+    void handleEventDropsOldest(AemContext context) throws InterruptedException {
+        activate(context, "DROP_OLDEST", 2);
+
+        fixture.handleEvent(event("/content/a"));
+        fixture.handleEvent(event("/content/b"));
+        fixture.handleEvent(event("/content/c"));
+        assertEquals(2, fixture.getQueueDepth());
+        assertEquals(1, fixture.getDroppedEvents());
+
+        fixture.deactivate();
+
+        assertEquals(Arrays.asList("/content/b", "/content/c"), handledPaths());
+    }
+
+    @Test
+    void handleEventInvalidatesParentsOfDroppedEvents(AemContext context) throws InterruptedException {
+        List<Collection<String>> invalidations = new ArrayList<>();
+        context.registerService(SubtreeInvalidationListener.class, invalidations::add);
+        activate(context, "DROP_NEWEST", 2);
+
+        fixture.handleEvent(event("/content/test/en/jcr:content"));
+        fixture.handleEvent(event("/content/test/fr/jcr:content"));
+        fixture.handleEvent(event("/content/test/de/jcr:content"));
+        fixture.deactivate();
+
+        assertEquals(1, fixture.getDroppedEvents());
+        assertEquals(Collections.singletonList(Arrays.asList("/content/test/de", "/content/test/en/jcr:content",
+                "/content/test/fr/jcr:content")), invalidations.stream()
+                .map(roots -> roots.stream().sorted().collect(Collectors.toList()))
+                .collect(Collectors.toList()));
+    }
+
+    @Test
+    void handleEventInvalidatesEverythingAfterManyDroppedEvents(AemContext context)
+            throws InterruptedException {
+        List<Collection<String>> invalidations = new ArrayList<>();
+        context.registerService(SubtreeInvalidationListener.class, invalidations::add);
+        activate(context, "DROP_OLDEST", 1);
+
+        for (int i = 0; i <= SimpleResourceListener.MAX_DROPPED_ROOTS + 1; i++) {
+            fixture.handleEvent(event("/content/test/page" + i + "/jcr:content"));
+        }
+        fixture.deactivate();
+
+        assertEquals(Collections.singletonList(Collections.singletonList("/")), invalidations);
+    }
+
+    @Test
+    void handleEventCallerRuns(AemContext context) throws InterruptedException {
+        activate(context, "CALLER_RUNS", 1);
+
+        fixture.handleEvent(event("/content/a"));
+        fixture.handleEvent(event("/content/b"));
+
+        assertEquals(1, fixture.getCallerRunsEvents());
+        assertEquals(1, logger.getLoggingEvents().size());
+        assertEquals("/content/b", logger.getLoggingEvents().get(0).getArguments().get(1));
+
+        fixture.deactivate();
+
+        assertEquals(2, logger.getAllLoggingEvents().size());
+    }
+
+    private void activate(AemContext context, String policy, int capacity) {
+        context.registerInjectActivateService(fixture,
+                "queue.capacity", capacity,
+                "coalesce.window.ms", 60000L,
+                "backpressure.policy", policy);
+    }
+
+    private List<Object> handledPaths() {
+        return logger.getAllLoggingEvents().stream()
+                .map(event -> event.getArguments().get(1))
+                .collect(Collectors.toList());
+    }
+
+    private static Event event(String path) {
+        return new Event("org/apache/sling/api/resource/Resource/CHANGED",
+                Collections.singletonMap(SlingConstants.PROPERTY_PATH, path));
+    }
 }
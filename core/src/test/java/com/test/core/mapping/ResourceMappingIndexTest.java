@@ -0,0 +1,181 @@
+package com.test.core.mapping;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.sling.api.resource.ModifiableValueMap;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+
+import io.wcm.testing.mock.aem.junit5.AemContext;
+import io.wcm.testing.mock.aem.junit5.AemContextExtension;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@ExtendWith(AemContextExtension.class)
+class ResourceMappingIndexTest {
+
+    private static final String TEMPLATE = "/conf/test/settings/wcm/templates/page-content";
+
+    @TempDir
+    Path directory;
+
+    private ResourceMappingIndex fixture = new ResourceMappingIndex();
+
+    @BeforeEach
+    void setup(AemContext context) {
+        context.create().page("/content/test/us/en", TEMPLATE);
+        context.create().page("/content/test/us/de", TEMPLATE, "sling:alias", "deutsch");
+        context.create().page("/content/test/us/de/about", TEMPLATE, "sling:alias", "ueber-uns");
+        context.create().page("/content/test/us/en/offers", TEMPLATE,
+                "sling:vanityPath", new String[] { "/summer", "deals" });
+    }
+
+    @Test
+    void mapAppliesVanityPathsAliasesAndMappings(AemContext context) throws Exception {
+        activate(context);
+
+        assertEquals("/summer.html", fixture.map("/content/test/us/en/offers.html"));
+        assertEquals("/us/deutsch/ueber-uns.html", fixture.map("/content/test/us/de/about.html"));
+        assertEquals("/us/en.html", fixture.map("/content/test/us/en.html"));
+        assertEquals("/etc/clientlibs/site.css", fixture.map("/etc/clientlibs/site.css"));
+    }
+
+    @Test
+    void resolveAppliesVanityPathsAndAliases(AemContext context) throws Exception {
+        activate(context);
+
+        assertEquals("/content/test/us/en/offers.html", fixture.resolve("/summer.html"));
+        assertEquals("/content/test/us/en/offers", fixture.resolve("/deals"));
+        assertEquals("/content/test/us/de/about.html", fixture.resolve("/content/test/us/deutsch/ueber-uns.html"));
+        assertEquals("/content/test/us/en.html", fixture.resolve("/content/test/us/en.html"));
+        assertEquals(3, fixture.getEntryCount());
+        assertEquals(2, fixture.getVanityPathCount());
+        assertEquals(2, fixture.getAliasCount());
+    }
+
+    @Test
+    void activateLoadsIndexFile(AemContext context) throws Exception {
+        activate(context);
+        context.resourceResolver().getResource("/content/test/us/de/jcr:content").adaptTo(ModifiableValueMap.class)
+                .remove("sling:alias");
+        context.resourceResolver().commit();
+
+        ResourceMappingIndex loaded = new ResourceMappingIndex();
+        context.registerInjectActivateService(loaded, "index.file", directory.resolve("index").toString());
+
+        assertEquals(3, loaded.getEntryCount());
+        assertEquals("/us/deutsch.html", loaded.map("/content/test/us/de.html"));
+    }
+
+    @Test
+    void activateRebuildsAfterLoadingIndexFile(AemContext context) throws Exception {
+        activate(context);
+        context.resourceResolver().getResource("/content/test/us/de/jcr:content").adaptTo(ModifiableValueMap.class)
+                .remove("sling:alias");
+        context.resourceResolver().commit();
+
+        ResourceMappingIndex loaded = new ResourceMappingIndex();
+        context.registerInjectActivateService(loaded, "index.file", directory.resolve("index").toString(),
+                "rebuild.delay.ms", 0L);
+        loaded.awaitPending();
+
+        assertEquals(2, loaded.getEntryCount());
+        assertEquals("/us/de.html", loaded.map("/content/test/us/de.html"));
+    }
+
+    @Test
+    void activateRebuildsFromCorruptIndexFile(AemContext context) throws Exception {
+        ByteBuffer corrupt = ByteBuffer.allocate(20).putInt(0x52_4d_49_58).putInt(1).putInt(1).putInt(-1);
+        Files.write(directory.resolve("index"), corrupt.array());
+
+        activate(context);
+
+        assertEquals(3, fixture.getEntryCount());
+        assertEquals("/content/test/us/en/offers", fixture.resolve("/summer"));
+    }
+
+    @Test
+    void updateReadsChangedSubtrees(AemContext context) throws Exception {
+        activate(context);
+        context.create().page("/content/test/us/fr", TEMPLATE, "sling:vanityPath", "/fr");
+        context.resourceResolver().delete(context.resourceResolver().getResource("/content/test/us/en/offers"));
+        context.resourceResolver().commit();
+
+        fixture.invalidateSubtrees(Collections.singletonList("/content/test/us"));
+        fixture.awaitPending();
+
+        assertEquals("/content/test/us/fr", fixture.resolve("/fr"));
+        assertEquals("/summer", fixture.resolve("/summer"));
+        assertEquals(3, fixture.getEntryCount());
+    }
+
+    @Test
+    void updateReadsChangedPageContent(AemContext context) throws Exception {
+        activate(context);
+        context.resourceResolver().getResource("/content/test/us/en/jcr:content").adaptTo(ModifiableValueMap.class)
+                .put("sling:vanityPath", "/english");
+        context.resourceResolver().commit();
+
+        fixture.invalidateSubtrees(Collections.singletonList("/content/test/us/en/jcr:content"));
+        fixture.awaitPending();
+
+        assertEquals("/english.html", fixture.map("/content/test/us/en.html"));
+        assertEquals("/content/test/us/en", fixture.resolve("/english"));
+    }
+
+    @Test
+    void updateHandsOverMovedVanityPaths(AemContext context) throws Exception {
+        activate(context);
+        context.resourceResolver().getResource("/content/test/us/en/offers/jcr:content")
+                .adaptTo(ModifiableValueMap.class).put("sling:vanityPath", "deals");
+        context.resourceResolver().getResource("/content/test/us/en/jcr:content").adaptTo(ModifiableValueMap.class)
+                .put("sling:vanityPath", "/summer");
+        context.resourceResolver().commit();
+
+        fixture.invalidateSubtrees(Collections.singletonList("/content/test/us"));
+        fixture.awaitPending();
+
+        assertEquals("/content/test/us/en", fixture.resolve("/summer"));
+        assertEquals("/content/test/us/en/offers", fixture.resolve("/deals"));
+        assertEquals(2, fixture.getVanityPathCount());
+    }
+
+    @Test
+    void updateKeepsUnchangedEntriesVisible(AemContext context) throws Exception {
+        activate(context);
+        AtomicBoolean updating = new AtomicBoolean(true);
+        AtomicInteger misses = new AtomicInteger();
+        Thread reader = new Thread(() -> {
+            while (updating.get()) {
+                if (!"/content/test/us/de/about".equals(fixture.resolve("/content/test/us/deutsch/ueber-uns"))
+                        || !"/content/test/us/en/offers".equals(fixture.resolve("/summer"))) {
+                    misses.incrementAndGet();
+                }
+            }
+        });
+        reader.start();
+
+        for (int i = 0; i < 50; i++) {
+            fixture.invalidateSubtrees(Collections.singletonList("/content/test/us"));
+        }
+        fixture.awaitPending();
+        updating.set(false);
+        reader.join();
+
+        assertEquals(0, misses.get());
+    }
+
+    private void activate(AemContext context) throws Exception {
+        context.registerInjectActivateService(fixture,
+                "index.file", directory.resolve("index").toString(),
+                "persist.delay.ms", 0L);
+        fixture.awaitPending();
+    }
+}
@@ -0,0 +1,62 @@
+package com.test.core.metrics;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import com.test.core.metrics.JobMetrics.JobStatistics;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class JobMetricsTest {
+
+    private JobMetrics fixture = new JobMetrics();
+
+    @Test
+    void getJob() {
+        JobStatistics job = fixture.getJob("b");
+        fixture.getJob("a");
+
+        assertSame(job, fixture.getJob("b"));
+        assertEquals("a", fixture.getJobs().get(0).getName());
+        assertEquals(2, fixture.getJobs().size());
+    }
+
+    @Test
+    void exclusiveRunsSkipTriggers() {
+        JobStatistics job = fixture.getJob("job");
+
+        assertTrue(job.tryStart(true));
+        assertTrue(job.isRunning());
+        assertFalse(job.tryStart(true));
+        job.succeeded(TimeUnit.SECONDS.toNanos(2), 500);
+
+        assertFalse(job.isRunning());
+        assertEquals(1, job.getSkippedCount());
+        assertEquals(1, job.getSuccessCount());
+        assertEquals(2000, job.getLastDurationMillis());
+        assertEquals(250.0, job.getLastItemsPerSecond(), 0.001);
+        assertTrue(job.getLastSuccess() > 0);
+        assertEquals(1, job.getDurations().getCount());
+    }
+
+    @Test
+    void concurrentRunsOverlap() {
+        JobStatistics job = fixture.getJob("job");
+
+        assertTrue(job.tryStart(false));
+        assertTrue(job.tryStart(false));
+        job.succeeded(TimeUnit.MILLISECONDS.toNanos(10), 0);
+        job.failed(TimeUnit.MILLISECONDS.toNanos(20), "broken");
+
+        assertEquals(1, job.getOverlappingCount());
+        assertEquals(0, job.getSkippedCount());
+        assertEquals(1, job.getFailureCount());
+        assertEquals("broken", job.getLastFailureMessage());
+        assertEquals(20, job.getDurations().getMax());
+        assertFalse(job.isRunning());
+    }
+}
@@ -0,0 +1,50 @@
+package com.test.core.metrics;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import com.test.core.metrics.RequestTimingStatistics.RequestTiming;
+import io.wcm.testing.mock.aem.junit5.AemContext;
+import io.wcm.testing.mock.aem.junit5.AemContextExtension;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@ExtendWith(AemContextExtension.class)
+class RequestTimingStatisticsTest {
+
+    @Test
+    void recordBeyondMaxKeysUsesOverflowKey(AemContext context) {
+        RequestTimingStatistics fixture = context.registerInjectActivateService(new RequestTimingStatistics(),
+                "max.keys", 2);
+
+        fixture.record("test/components/page", null, "html", TimeUnit.MILLISECONDS.toNanos(5));
+        fixture.record("test/components/page", "tree", "json", TimeUnit.MILLISECONDS.toNanos(5));
+        fixture.record("test/components/page", "a.b.c", "html", TimeUnit.MILLISECONDS.toNanos(5));
+        fixture.record("test/components/other", "x", "txt", TimeUnit.MILLISECONDS.toNanos(5));
+        fixture.record("test/components/page", null, "html", TimeUnit.MILLISECONDS.toNanos(5));
+
+        List<RequestTiming> timings = fixture.getTimings();
+        assertEquals(3, timings.size());
+        RequestTiming overflow = timings.get(2);
+        assertEquals(RequestTimingStatistics.OVERFLOW, overflow.getResourceType());
+        assertEquals(2, overflow.getSnapshot().getCount());
+        assertEquals(3, timings.get(0).getSnapshot().getCount() + timings.get(1).getSnapshot().getCount());
+    }
+
+    @Test
+    void overflowingKeysLeaveNoMapsBehind(AemContext context) {
+        RequestTimingStatistics fixture = context.registerInjectActivateService(new RequestTimingStatistics(),
+                "max.keys", 1);
+
+        fixture.record("test/components/page", null, "html", 1000);
+        for (int i = 0; i < 100; i++) {
+            fixture.record("test/components/page" + i, "selector" + i, "html", 1000);
+        }
+
+        assertEquals(2, fixture.getTimings().size());
+        assertEquals(2, fixture.mapCount());
+    }
+}
@@ -0,0 +1,72 @@
+package com.test.core.metrics;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class StripedHistogramTest {
+
+    @Test
+    void bucketsRoundTrip() {
+        for (long value = 0; value < 1_000_000; value += 7) {
+            int index = StripedHistogram.bucketIndex(value);
+            long upper = StripedHistogram.highestEquivalentValue(index);
+            assertTrue(upper >= value, "upper bound below value " + value);
+            assertTrue(upper - value <= Math.max(1, value / StripedHistogram.SUB_BUCKET_COUNT),
+                    "bucket too wide for value " + value);
+        }
+        assertEquals(StripedHistogram.BUCKET_COUNT - 1,
+                StripedHistogram.bucketIndex(StripedHistogram.HIGHEST_TRACKABLE_VALUE));
+    }
+
+    @Test
+    void percentiles() {
+        StripedHistogram histogram = new StripedHistogram(4);
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i);
+        }
+
+        HistogramSnapshot snapshot = histogram.snapshot();
+        assertAll(
+                () -> assertEquals(1000, snapshot.getCount()),
+                () -> assertEquals(1000, snapshot.getMax()),
+                () -> assertEquals(500.5, snapshot.getMean(), 0.001),
+                () -> assertEquals(500, snapshot.getValueAtPercentile(50), 500 / 32),
+                () -> assertEquals(990, snapshot.getValueAtPercentile(99), 990 / 32),
+                () -> assertEquals(1000, snapshot.getValueAtPercentile(99.9), 1000 / 32)
+        );
+    }
+
+    @Test
+    void concurrentRecording() throws InterruptedException {
+        StripedHistogram histogram = new StripedHistogram();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        for (int t = 0; t < 8; t++) {
+            executor.execute(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    histogram.record(i);
+                }
+            });
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+
+        assertEquals(80_000, histogram.snapshot().getCount());
+    }
+
+    @Test
+    void reset() {
+        StripedHistogram histogram = new StripedHistogram(1);
+        histogram.record(42);
+        histogram.reset();
+
+        assertEquals(0, histogram.snapshot().getCount());
+        assertEquals(0, histogram.snapshot().getValueAtPercentile(99));
+    }
+}
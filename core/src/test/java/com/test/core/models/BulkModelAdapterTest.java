@@ -0,0 +1,81 @@
+package com.test.core.models;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.sling.api.resource.Resource;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import io.wcm.testing.mock.aem.junit5.AemContext;
+import io.wcm.testing.mock.aem.junit5.AemContextExtension;
+
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@ExtendWith(AemContextExtension.class)
+class BulkModelAdapterTest {
+
+    private static final String CAROUSEL = "/content/carousel";
+
+    private static final int POSTERS = 10;
+
+    private BulkModelAdapter fixture = new BulkModelAdapter();
+
+    @BeforeEach
+    void setup(AemContext context) {
+        context.create().resource(CAROUSEL);
+        for (int i = 0; i < POSTERS; i++) {
+            context.create().resource(CAROUSEL + "/poster" + i,
+                    "fileReference", "/content/dam/test/asset" + i + ".jpg",
+                    "alt", "Poster " + i,
+                    "width", "200");
+            if (i % 2 == 0) {
+                context.create().resource(CAROUSEL + "/poster" + i + "/occupations");
+            }
+        }
+        context.registerInjectActivateService(fixture, "parallel.threshold", 4, "parallelism", 3);
+    }
+
+    @Test
+    void adaptCreatesModelsInOrder(AemContext context) {
+        List<PosterModel> posters = fixture.adapt(children(context), PosterModel.class);
+
+        assertEquals(POSTERS, posters.size());
+        for (int i = 0; i < POSTERS; i++) {
+            PosterModel poster = posters.get(i);
+            String occupations = i % 2 == 0 ? CAROUSEL + "/poster" + i + "/occupations" : null;
+            Resource child = poster.getOccupations();
+            int index = i;
+            assertAll(
+                    () -> assertEquals("/content/dam/test/asset" + index + ".jpg", poster.getFileReference()),
+                    () -> assertEquals("Poster " + index, poster.getAlt()),
+                    () -> assertEquals("200", poster.getWidth()),
+                    () -> assertNull(poster.getHeight()),
+                    () -> assertEquals(occupations, child != null ? child.getPath() : null)
+            );
+        }
+    }
+
+    @Test
+    void adaptInParallelKeepsOrder(AemContext context) {
+        List<PosterModel> posters = fixture.adaptInParallel(children(context), PosterModel.class);
+
+        assertEquals(POSTERS, posters.size());
+        for (int i = 0; i < POSTERS; i++) {
+            assertEquals("Poster " + i, posters.get(i).getAlt());
+        }
+    }
+
+    @Test
+    void adaptRejectsOtherClasses(AemContext context) {
+        assertThrows(IllegalArgumentException.class, () -> fixture.adapt(Collections.emptyList(), String.class));
+    }
+
+    private static Iterable<Resource> children(AemContext context) {
+        return context.resourceResolver().getResource(CAROUSEL).getChildren();
+    }
+}
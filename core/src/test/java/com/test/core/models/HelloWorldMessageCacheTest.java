@@ -0,0 +1,56 @@
+package com.test.core.models;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.apache.sling.api.resource.Resource;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import com.day.cq.wcm.api.Page;
+import io.wcm.testing.mock.aem.junit5.AemContext;
+import io.wcm.testing.mock.aem.junit5.AemContextExtension;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@ExtendWith(AemContextExtension.class)
+class HelloWorldMessageCacheTest {
+
+    private HelloWorldMessageCache cache;
+
+    private Page page;
+    private Resource resource;
+
+    @BeforeEach
+    void setup(AemContext context) {
+        cache = context.registerInjectActivateService(new HelloWorldMessageCache(), "max.entries", 10);
+
+        page = context.create().page("/content/mypage");
+        resource = context.create().resource(page, "hello",
+            "sling:resourceType", "test/components/helloworld");
+    }
+
+    @Test
+    void cachesMessage() {
+        String first = resource.adaptTo(HelloWorldModel.class).getMessage();
+        String second = resource.adaptTo(HelloWorldModel.class).getMessage();
+
+        assertSame(first, second);
+        assertTrue(first.contains(page.getPath()));
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    void invalidatesSubtrees() {
+        resource.adaptTo(HelloWorldModel.class);
+
+        cache.invalidateSubtrees(Arrays.asList("/content/other", "/content/my"));
+        assertEquals(1, cache.size());
+
+        cache.invalidateSubtrees(Collections.singletonList(page.getPath()));
+        assertEquals(0, cache.size());
+    }
+}
@@ -0,0 +1,46 @@
+package com.test.core.models;
+
+import java.util.Collections;
+import java.util.Locale;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import com.test.core.i18n.I18nDictionaryService;
+import com.test.core.i18n.MessageTable;
+import io.wcm.testing.mock.aem.junit5.AemContext;
+import io.wcm.testing.mock.aem.junit5.AemContextExtension;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(AemContextExtension.class)
+class I18nModelTest {
+
+    private I18nDictionaryService dictionaryService = mock(I18nDictionaryService.class);
+
+    @Test
+    void getMessagesOfPageLanguage(AemContext context) {
+        when(dictionaryService.getMessages(Locale.FRENCH))
+                .thenReturn(MessageTable.of(Collections.singletonMap("Read more", "Lire la suite")));
+        context.registerService(I18nDictionaryService.class, dictionaryService);
+        context.currentPage(context.create().page("/content/test/fr", null, "jcr:language", "fr"));
+
+        I18nModel model = context.request().adaptTo(I18nModel.class);
+
+        assertEquals(Locale.FRENCH, model.getLocale());
+        assertEquals("Lire la suite", model.getMessages().get("Read more"));
+        assertEquals("Close", model.getMessages().get("Close"));
+    }
+
+    @Test
+    void getMessagesWithoutPageOrService(AemContext context) {
+        context.request().setLocale(Locale.GERMAN);
+
+        I18nModel model = context.request().adaptTo(I18nModel.class);
+
+        assertEquals(Locale.GERMAN, model.getLocale());
+        assertEquals("Close", model.getMessages().get("Close"));
+    }
+}
@@ -0,0 +1,71 @@
+package com.test.core.models;
+
+import java.nio.file.Path;
+
+import org.apache.sling.api.resource.Resource;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.test.core.renditions.RenditionService;
+
+import io.wcm.testing.mock.aem.junit5.AemContext;
+import io.wcm.testing.mock.aem.junit5.AemContextExtension;
+
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@ExtendWith(AemContextExtension.class)
+class PosterModelTest {
+
+    @Test
+    void adapt(AemContext context) {
+        Resource resource = context.create().resource("/content/poster",
+                "fileReference", "/content/dam/test/asset.jpg",
+                "alt", "Poster",
+                "height", "100",
+                "width", "200",
+                "occupation", "Engineer");
+        context.create().resource("/content/poster/occupations");
+
+        PosterModel poster = resource.adaptTo(PosterModel.class);
+
+        assertAll(
+                () -> assertEquals("/content/dam/test/asset.jpg", poster.getFileReference()),
+                () -> assertEquals("Poster", poster.getAlt()),
+                () -> assertEquals("100", poster.getHeight()),
+                () -> assertEquals("200", poster.getWidth()),
+                () -> assertEquals("Engineer", poster.getOccupation()),
+                () -> assertNull(poster.getDescription()),
+                () -> assertEquals("/content/poster/occupations", poster.getOccupations().getPath())
+        );
+    }
+
+    @Test
+    void srcWithoutRenditionService(AemContext context) {
+        Resource resource = context.create().resource("/content/poster",
+                "fileReference", "/content/dam/test/asset.jpg");
+
+        PosterModel poster = resource.adaptTo(PosterModel.class);
+
+        assertEquals("/content/dam/test/asset.jpg", poster.getSrc());
+        assertNull(poster.getSrcset());
+    }
+
+    @Test
+    void srcsetOfRenditions(AemContext context, @TempDir Path directory) {
+        context.registerInjectActivateService(new RenditionService(), "cache.directory", directory.toString());
+        context.create().asset("/content/dam/test/asset.jpg", 700, 350, "image/jpeg");
+        Resource resource = context.create().resource("/content/poster",
+                "fileReference", "/content/dam/test/asset.jpg");
+
+        PosterModel poster = resource.adaptTo(PosterModel.class);
+
+        assertTrue(poster.getSrc().matches("/content/dam/test/asset\\.jpg\\.rendition\\.640\\.[0-9a-f]{16}\\.jpg"),
+                poster.getSrc());
+        assertTrue(poster.getSrcset().startsWith(poster.getSrc().replace(".640.", ".320.") + " 320w, "),
+                poster.getSrcset());
+    }
+}
@@ -0,0 +1,49 @@
+package com.test.core.models;
+
+import org.apache.sling.api.resource.ModifiableValueMap;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import com.day.cq.commons.jcr.JcrConstants;
+import com.day.cq.wcm.api.Page;
+import io.wcm.testing.mock.aem.junit5.AemContext;
+import io.wcm.testing.mock.aem.junit5.AemContextExtension;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+@ExtendWith(AemContextExtension.class)
+class RegistrationModelTest {
+
+    @Test
+    void getTitle(AemContext context) {
+        context.currentPage(context.create().page("/content/mypage", "/conf/test/settings/wcm/templates/page",
+                "Registration"));
+
+        RegistrationModel model = context.request().adaptTo(RegistrationModel.class);
+
+        assertEquals("Re...", model.getTitle());
+        assertSame(model, context.request().adaptTo(RegistrationModel.class));
+    }
+
+    @Test
+    void getTitleOfShortTitle(AemContext context) {
+        context.currentPage(context.create().page("/content/mypage", "/conf/test/settings/wcm/templates/page", "R"));
+
+        assertEquals("R...", context.request().adaptTo(RegistrationModel.class).getTitle());
+    }
+
+    @Test
+    void getTitleWithoutTitle(AemContext context) {
+        Page page = context.create().page("/content/mypage");
+        page.getContentResource().adaptTo(ModifiableValueMap.class).remove(JcrConstants.JCR_TITLE);
+        context.currentPage(page);
+
+        assertEquals("", context.request().adaptTo(RegistrationModel.class).getTitle());
+    }
+
+    @Test
+    void getTitleWithoutPage(AemContext context) {
+        assertEquals("", context.request().adaptTo(RegistrationModel.class).getTitle());
+    }
+}
@@ -0,0 +1,127 @@
+package com.test.core.models.projection;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ValueMap;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import io.wcm.testing.mock.aem.junit5.AemContext;
+import io.wcm.testing.mock.aem.junit5.AemContextExtension;
+
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verifyZeroInteractions;
+
+@ExtendWith(AemContextExtension.class)
+class ValueMapProjectionTest {
+
+    static class Base {
+        @ProjectedValue
+        String title;
+    }
+
+    static class Projected extends Base {
+        @ProjectedValue(name = "jcr:description", defaultValue = "none")
+        String description;
+
+        @ProjectedValue
+        int count = -1;
+
+        @ProjectedValue
+        Long size;
+
+        @ProjectedChild(name = "items")
+        Resource children;
+
+        String ignored = "untouched";
+    }
+
+    static class LazyProjected {
+        @ProjectedValue(defaultValue = "untitled")
+        Lazy<String> title;
+
+        @ProjectedValue
+        Lazy<Integer> count;
+
+        @ProjectedChild
+        Lazy<Resource> items;
+    }
+
+    static class Invalid {
+        @ProjectedChild
+        String child;
+    }
+
+    @Test
+    void project(AemContext context) {
+        Resource resource = context.create().resource("/content/projected",
+                "title", "Title", "count", 3, "size", "42", "ignored", "changed");
+        context.create().resource("/content/projected/items");
+
+        Projected target = new Projected();
+        ValueMapProjection.of(Projected.class).project(resource, target);
+
+        assertAll(
+                () -> assertEquals("Title", target.title),
+                () -> assertEquals("none", target.description),
+                () -> assertEquals(3, target.count),
+                () -> assertEquals(Long.valueOf(42), target.size),
+                () -> assertEquals("/content/projected/items", target.children.getPath()),
+                () -> assertEquals("untouched", target.ignored)
+        );
+    }
+
+    @Test
+    void keepsInitialValueWhenMissing(AemContext context) {
+        ValueMap empty = context.create().resource("/content/empty").getValueMap();
+
+        Projected target = new Projected();
+        ValueMapProjection.of(Projected.class).project(empty, name -> null, target);
+
+        assertEquals(-1, target.count);
+        assertNull(target.size);
+        assertNull(target.children);
+    }
+
+    @Test
+    void projectsLazyFieldsOnDemand(AemContext context) {
+        Resource resource = context.create().resource("/content/lazy", "count", 3);
+        context.create().resource("/content/lazy/items");
+        ValueMap properties = spy(resource.getValueMap());
+        AtomicInteger childReads = new AtomicInteger();
+
+        LazyProjected target = new LazyProjected();
+        ValueMapProjection.of(LazyProjected.class).project(properties, name -> {
+            childReads.incrementAndGet();
+            return resource.getChild(name);
+        }, target);
+
+        verifyZeroInteractions(properties);
+        assertEquals(0, childReads.get());
+        assertFalse(target.items.isLoaded());
+        assertAll(
+                () -> assertEquals("untitled", target.title.get()),
+                () -> assertEquals(Integer.valueOf(3), target.count.get()),
+                () -> assertEquals("/content/lazy/items", target.items.get().getPath()),
+                () -> assertEquals("/content/lazy/items", target.items.get().getPath())
+        );
+        assertEquals(1, childReads.get());
+    }
+
+    @Test
+    void isCachedPerClass() {
+        assertSame(ValueMapProjection.of(Projected.class), ValueMapProjection.of(Projected.class));
+    }
+
+    @Test
+    void rejectsNonResourceChild() {
+        assertThrows(IllegalArgumentException.class, () -> ValueMapProjection.of(Invalid.class));
+    }
+}
@@ -0,0 +1,215 @@
+package com.test.core.msm;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.apache.jackrabbit.commons.iterator.RangeIteratorAdapter;
+import org.apache.sling.api.resource.ModifiableValueMap;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ResourceUtil;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import com.day.cq.wcm.api.WCMException;
+import com.day.cq.wcm.msm.api.LiveRelationship;
+import com.day.cq.wcm.msm.api.LiveRelationshipManager;
+import com.day.cq.wcm.msm.api.RolloutManager;
+import com.test.core.metrics.JobMetrics;
+
+import io.wcm.testing.mock.aem.junit5.AemContext;
+import io.wcm.testing.mock.aem.junit5.AemContextExtension;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(AemContextExtension.class)
+class RolloutOrchestratorTest {
+
+    private static final String BLUEPRINT = "/content/test/language-masters";
+
+    private static final List<String> LIVE_COPIES = Arrays.asList("/content/test/us", "/content/test/ca");
+
+    private RolloutOrchestrator fixture = new RolloutOrchestrator();
+
+    private RolloutManager rolloutManager = mock(RolloutManager.class);
+
+    private LiveRelationshipManager relationshipManager = mock(LiveRelationshipManager.class);
+
+    @BeforeEach
+    void setup(AemContext context) throws Exception {
+        context.create().page(BLUEPRINT);
+        context.create().page(BLUEPRINT + "/en");
+        context.create().page(BLUEPRINT + "/en/about");
+        context.create().page(BLUEPRINT + "/en/news");
+        context.create().page(BLUEPRINT + "/de");
+        for (String liveCopy : LIVE_COPIES) {
+            context.create().page(liveCopy);
+        }
+        context.resourceResolver().commit();
+
+        when(relationshipManager.getLiveRelationships(any(Resource.class), isNull(),
+                any(RolloutManager.Trigger.class))).thenAnswer(invocation -> {
+                    String source = invocation.<Resource>getArgument(0).getPath();
+                    return new RangeIteratorAdapter(LIVE_COPIES.stream()
+                            .map(liveCopy -> relationship(source, liveCopy + source.substring(BLUEPRINT.length())))
+                            .collect(Collectors.toList()));
+                });
+        doAnswer(invocation -> {
+            ResourceResolver resolver = invocation.getArgument(0);
+            String target = invocation.<LiveRelationship>getArgument(1).getTargetPath();
+            Resource existing = resolver.getResource(target);
+            if (existing != null) {
+                existing.adaptTo(ModifiableValueMap.class).put("rolledOut", true);
+                return null;
+            }
+            Resource parent = resolver.getResource(ResourceUtil.getParent(target));
+            if (parent == null) {
+                throw new WCMException("Parent of " + target + " was not rolled out");
+            }
+            resolver.create(parent, ResourceUtil.getName(target), Collections.singletonMap("rolledOut", true));
+            return null;
+        }).when(rolloutManager).rollout(any(ResourceResolver.class), any(LiveRelationship.class), anyBoolean(),
+                anyBoolean());
+
+        context.registerService(RolloutManager.class, rolloutManager);
+        context.registerService(LiveRelationshipManager.class, relationshipManager);
+        context.registerInjectActivateService(new JobMetrics());
+        context.registerInjectActivateService(fixture, "parallelism", 2, "batch.size", 3);
+    }
+
+    @Test
+    void rolloutUpdatesAllLiveCopiesParentsFirst(AemContext context) throws Exception {
+        RolloutOrchestrator.Result result = fixture.rollout(null);
+
+        assertEquals(5, result.getPages());
+        assertEquals(10, result.getUpdates());
+        assertEquals(0, result.getFailedUpdates());
+        assertEquals(5, fixture.getTotalPages());
+        assertEquals(5, fixture.getRolledOutPages());
+        assertEquals(5, fixture.getCommits());
+        assertFalse(fixture.isRunning());
+        context.resourceResolver().refresh();
+        for (String liveCopy : LIVE_COPIES) {
+            assertNotNull(context.resourceResolver().getResource(liveCopy + "/en/about"));
+            assertNotNull(context.resourceResolver().getResource(liveCopy + "/de"));
+        }
+        assertEquals(1, context.getService(JobMetrics.class).getJob(RolloutOrchestrator.JOB_NAME)
+                .getSuccessCount());
+    }
+
+    @Test
+    void rolloutOfSubtree(AemContext context) throws Exception {
+        RolloutOrchestrator.Result result = fixture.rollout(BLUEPRINT + "/de");
+
+        assertEquals(1, result.getPages());
+        assertEquals(2, result.getUpdates());
+    }
+
+    @Test
+    void rolloutCountsFailedUpdates(AemContext context) throws Exception {
+        context.resourceResolver().delete(context.resourceResolver().getResource("/content/test/ca"));
+        context.resourceResolver().commit();
+
+        RolloutOrchestrator.Result result = fixture.rollout(BLUEPRINT + "/en");
+
+        assertEquals(3, result.getUpdates());
+        assertEquals(3, result.getFailedUpdates());
+    }
+
+    @Test
+    void rolloutSkipsLiveCopiesBelowFailedUpdates(AemContext context) throws Exception {
+        context.resourceResolver().delete(context.resourceResolver().getResource("/content/test/ca"));
+        context.resourceResolver().commit();
+
+        fixture.rollout(BLUEPRINT + "/en");
+
+        verify(rolloutManager, never()).rollout(any(ResourceResolver.class),
+                argThat(relationship -> relationship.getTargetPath().startsWith("/content/test/ca/en/")),
+                anyBoolean(), anyBoolean());
+        verify(rolloutManager, times(4)).rollout(any(ResourceResolver.class), any(LiveRelationship.class),
+                anyBoolean(), anyBoolean());
+    }
+
+    @Test
+    void rolloutContinuesAfterFailedUpdates(AemContext context) throws Exception {
+        doAnswer(invocation -> {
+            throw new WCMException("rollout failed");
+        }).when(rolloutManager).rollout(any(ResourceResolver.class), any(LiveRelationship.class), anyBoolean(),
+                anyBoolean());
+
+        RolloutOrchestrator.Result result = fixture.rollout(BLUEPRINT);
+
+        assertEquals(0, result.getUpdates());
+        assertEquals(10, result.getFailedUpdates());
+        assertEquals(0, fixture.getCommits());
+    }
+
+    @Test
+    void startRunsInBackground() throws Exception {
+        RolloutOrchestrator.Result result = fixture.start("").get();
+
+        assertEquals(10, result.getUpdates());
+    }
+
+    @Test
+    void throttlePausesAboveTargetLatency() {
+        CommitThrottle throttle = new CommitThrottle(100, 1000);
+
+        throttle.record(50_000_000L);
+        assertEquals(0, throttle.getPauseMillis());
+
+        throttle.record(1_050_000_000L);
+        assertEquals(250, Math.round(throttle.getAverageMillis()));
+        assertEquals(375, throttle.getPauseMillis());
+
+        throttle.record(5_000_000_000L);
+        assertEquals(1000, throttle.getPauseMillis());
+    }
+
+    @Test
+    void rejectsConcurrentRollouts() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            started.countDown();
+            release.await();
+            return null;
+        }).when(rolloutManager).rollout(any(ResourceResolver.class), any(LiveRelationship.class), anyBoolean(),
+                anyBoolean());
+
+        Future<RolloutOrchestrator.Result> running = fixture.start(BLUEPRINT + "/de");
+        assertTrue(started.await(10, TimeUnit.SECONDS), () -> String.valueOf(running));
+
+        assertTrue(fixture.isRunning());
+        assertThrows(IllegalStateException.class, () -> fixture.rollout(BLUEPRINT));
+        release.countDown();
+        assertEquals(2, running.get().getUpdates());
+    }
+
+    private static LiveRelationship relationship(String source, String target) {
+        LiveRelationship relationship = mock(LiveRelationship.class);
+        when(relationship.getSourcePath()).thenReturn(source);
+        when(relationship.getTargetPath()).thenReturn(target);
+        return relationship;
+    }
+}
@@ -0,0 +1,192 @@
+package com.test.core.renditions;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.imageio.ImageIO;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.day.cq.dam.api.Asset;
+import com.day.cq.dam.api.DamConstants;
+import com.day.cq.dam.api.Rendition;
+
+import io.wcm.testing.mock.aem.junit5.AemContext;
+import io.wcm.testing.mock.aem.junit5.AemContextExtension;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(AemContextExtension.class)
+class RenditionServiceTest {
+
+    @TempDir
+    Path directory;
+
+    private RenditionService fixture = new RenditionService();
+
+    private Asset asset;
+
+    @BeforeEach
+    void setup(AemContext context) {
+        context.registerInjectActivateService(fixture, "cache.directory", directory.toString());
+        asset = context.create().asset("/content/dam/test/poster.jpg", 1000, 500, "image/jpeg",
+                Collections.singletonMap("tiff:ImageWidth", "1000"));
+    }
+
+    @Test
+    void bucketRoundsUpToConfiguredWidths() {
+        assertEquals(320, fixture.bucket(1));
+        assertEquals(640, fixture.bucket(321));
+        assertEquals(960, fixture.bucket(960));
+        assertEquals(1920, fixture.bucket(5000));
+    }
+
+    @Test
+    void getSrcsetStopsAtTheOriginalWidth() throws Exception {
+        String hash = fixture.getHash(asset).substring(0, RenditionService.URL_HASH_LENGTH);
+
+        assertEquals("/content/dam/test/poster.jpg.rendition.320." + hash + ".jpg 320w, "
+                + "/content/dam/test/poster.jpg.rendition.640." + hash + ".jpg 640w, "
+                + "/content/dam/test/poster.jpg.rendition.960." + hash + ".jpg 960w", fixture.getSrcset(asset));
+    }
+
+    @Test
+    void getHashPrefersTheMetadata(AemContext context) throws Exception {
+        Asset withSha1 = context.create().asset("/content/dam/test/sha1.jpg", 10, 10, "image/jpeg",
+                Collections.singletonMap("dam:sha1", "ABCDEF0123456789ABCDEF0123456789ABCDEF01"));
+
+        assertEquals("abcdef0123456789abcdef0123456789abcdef01", fixture.getHash(withSha1));
+        assertEquals(40, fixture.getHash(asset).length());
+        assertNotEquals(fixture.getHash(asset), fixture.getHash(withSha1));
+    }
+
+    @Test
+    void getRenditionResizesOnce() throws Exception {
+        Path rendition = fixture.getRendition(asset, 500);
+        BufferedImage image = ImageIO.read(rendition.toFile());
+
+        assertEquals(640, image.getWidth());
+        assertEquals(320, image.getHeight());
+        assertTrue(rendition.startsWith(directory));
+        assertEquals(fixture.getHash(asset) + "-640.jpg", rendition.getFileName().toString());
+        assertEquals(1, fixture.getCreatedCount());
+
+        assertEquals(rendition, fixture.getRendition(asset, 640));
+        assertEquals(1, fixture.getCreatedCount());
+        assertEquals(Files.size(rendition), fixture.getCacheBytes());
+    }
+
+    @Test
+    void getRenditionDoesNotEnlarge() throws Exception {
+        BufferedImage image = ImageIO.read(fixture.getRendition(asset, 1920).toFile());
+
+        assertEquals(1000, image.getWidth());
+        assertEquals(500, image.getHeight());
+    }
+
+    @Test
+    void getRenditionKeepsPngTransparency(AemContext context) throws Exception {
+        Asset png = context.create().asset("/content/dam/test/logo.png", 400, 400, "image/png");
+
+        Path rendition = fixture.getRendition(png, 320);
+
+        assertTrue(rendition.toString().endsWith("-320.png"));
+        assertEquals("image/png", fixture.getMimeType(png));
+        assertTrue(ImageIO.read(rendition.toFile()).getColorModel().hasAlpha());
+    }
+
+    @Test
+    void getRenditionCreatesConcurrentRequestsOnce() throws Exception {
+        // the mock repository is bound to the test thread, so the other threads read a stub
+        byte[] original = IOUtils.toByteArray(asset.getOriginal().getStream());
+        Rendition slowOriginal = mock(Rendition.class);
+        when(slowOriginal.getStream()).thenAnswer(invocation -> {
+            Thread.sleep(200);
+            return new ByteArrayInputStream(original);
+        });
+        Asset stub = mock(Asset.class);
+        when(stub.getPath()).thenReturn(asset.getPath());
+        when(stub.getMimeType()).thenReturn("image/jpeg");
+        when(stub.getMetadataValue(DamConstants.PN_SHA1)).thenReturn(fixture.getHash(asset));
+        when(stub.getOriginal()).thenReturn(slowOriginal);
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Path>> renditions = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                renditions.add(executor.submit(() -> fixture.getRendition(stub, 640)));
+            }
+            Path rendition = renditions.get(0).get();
+            for (Future<Path> other : renditions) {
+                assertEquals(rendition, other.get());
+            }
+            assertEquals(Files.size(rendition), fixture.getCacheBytes());
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(1, fixture.getCreatedCount());
+        verify(slowOriginal, times(1)).getStream();
+    }
+
+    @Test
+    void getRenditionRejectsOriginalsAboveThePixelLimit(AemContext context) throws Exception {
+        RenditionService limited = context.registerInjectActivateService(new RenditionService(),
+                "cache.directory", directory.toString(), "max.megapixels", 1);
+        Asset large = context.create().asset("/content/dam/test/large.png", 1001, 1000, "image/png");
+
+        assertThrows(IOException.class, () -> limited.getRendition(large, 320));
+        assertEquals(0, limited.getCreatedCount());
+        assertTrue(limited.getRendition(asset, 320).toFile().isFile());
+    }
+
+    @Test
+    void trimKeepsRecentlyUsedRenditions(AemContext context) throws Exception {
+        Path old = Files.createDirectories(directory.resolve("aa")).resolve("old-320.jpg");
+        Path recent = directory.resolve("aa").resolve("recent-320.jpg");
+        Files.write(old, new byte[2 * 1024 * 1024]);
+        Files.write(recent, new byte[1024 * 1024]);
+        assertTrue(old.toFile().setLastModified(System.currentTimeMillis() - 60_000));
+        RenditionService limited = context.registerInjectActivateService(new RenditionService(),
+                "cache.directory", directory.toString(), "max.cache.mb", 1);
+
+        Path rendition = limited.getRendition(asset, 320);
+
+        assertFalse(Files.exists(old));
+        assertTrue(Files.exists(recent));
+        assertTrue(Files.exists(rendition));
+    }
+
+    @Test
+    void openRenditionStaysReadableWhenTrimmed() throws Exception {
+        try (FileChannel channel = fixture.openRendition(asset, 320)) {
+            long size = channel.size();
+            Files.delete(fixture.getRendition(asset, 320));
+
+            assertEquals(size, IOUtils.toByteArray(Channels.newInputStream(channel)).length);
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package com.test.core.schedulers;
+
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.sling.commons.scheduler.ScheduleOptions;
+import org.apache.sling.commons.scheduler.Scheduler;
+import org.apache.sling.engine.SlingRequestProcessor;
+import org.apache.sling.testing.mock.sling.servlet.MockRequestPathInfo;
+import org.apache.sling.testing.mock.sling.servlet.MockSlingHttpServletRequest;
+import org.apache.sling.testing.mock.sling.servlet.MockSlingHttpServletResponse;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+
+import com.day.cq.contentsync.handler.util.RequestResponseFactory;
+import com.day.cq.wcm.api.WCMMode;
+import com.test.core.metrics.JobMetrics;
+import com.test.core.metrics.JobMetrics.JobStatistics;
+import io.wcm.testing.mock.aem.junit5.AemContext;
+import io.wcm.testing.mock.aem.junit5.AemContextExtension;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.RETURNS_SELF;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(AemContextExtension.class)
+class CacheWarmingTaskTest {
+
+    private CacheWarmingTask fixture = new CacheWarmingTask();
+
+    private List<String> rendered = new CopyOnWriteArrayList<>();
+
+    @BeforeEach
+    void setup(AemContext context) {
+        context.create().page("/content/test/us/en");
+        context.create().page("/content/test/us/en/products");
+        context.create().page("/content/test/us/en/products/a");
+        context.create().page("/content/test/us/en/about");
+        context.create().page("/content/test/language-masters/en");
+
+        context.registerService(RequestResponseFactory.class, new RequestResponseFactory() {
+            @Override
+            public HttpServletRequest createRequest(String method, String uri) {
+                MockSlingHttpServletRequest request = new MockSlingHttpServletRequest(context.resourceResolver(),
+                        context.bundleContext());
+                request.setMethod(method);
+                ((MockRequestPathInfo) request.getRequestPathInfo()).setResourcePath(uri);
+                return request;
+            }
+
+            @Override
+            public HttpServletRequest createRequest(String method, String uri, Map<String, Object> params) {
+                return createRequest(method, uri);
+            }
+
+            @Override
+            public HttpServletResponse createResponse(OutputStream outputStream) {
+                return new MockSlingHttpServletResponse();
+            }
+
+            @Override
+            public String getMD5(HttpServletResponse response) {
+                return null;
+            }
+        });
+        context.registerService(SlingRequestProcessor.class, (request, response, resolver) -> {
+            String uri = ((MockSlingHttpServletRequest) request).getRequestPathInfo().getResourcePath();
+            assertEquals(WCMMode.DISABLED, WCMMode.fromRequest(request));
+            rendered.add(uri);
+            if (uri.contains("about")) {
+                response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+            }
+        });
+    }
+
+    @Test
+    void collectPagesInRankOrder(AemContext context) throws Exception {
+        context.registerInjectActivateService(fixture, "hot.paths",
+                new String[] { "/content/test/us/en/products", "/content/test/us/en", "/content/test/missing" },
+                "depth", 1);
+
+        assertEquals(Arrays.asList(
+                "/content/test/us/en/products",
+                "/content/test/us/en",
+                "/content/test/us/en/products/a",
+                "/content/test/us/en/about"), fixture.collectPages());
+    }
+
+    @Test
+    void collectPagesUpToMaximum(AemContext context) throws Exception {
+        context.registerInjectActivateService(fixture, "depth", 5, "max.pages", 3);
+
+        assertEquals(Arrays.asList(
+                "/content/test/us/en",
+                "/content/test/language-masters/en",
+                "/content/test/us/en/products"), fixture.collectPages());
+    }
+
+    @Test
+    void runRendersPages(AemContext context) {
+        JobMetrics metrics = context.registerInjectActivateService(new JobMetrics());
+        context.registerInjectActivateService(fixture, "depth", 1, "concurrency", 2, "rate.per.second", 0);
+
+        fixture.run();
+
+        assertEquals(4, rendered.size());
+        assertTrue(rendered.contains("/content/test/us/en/products.html"));
+        assertEquals(4, fixture.getTotalPages());
+        assertEquals(3, fixture.getWarmedPages());
+        assertEquals(1, fixture.getFailedPages());
+        JobStatistics job = metrics.getJob(CacheWarmingTask.JOB_NAME);
+        assertEquals(1, job.getSuccessCount());
+        assertFalse(job.isRunning());
+    }
+
+    @Test
+    void runIsRateLimited(AemContext context) {
+        context.registerInjectActivateService(fixture, "depth", 0, "concurrency", 2, "rate.per.second", 20);
+
+        long start = System.nanoTime();
+        fixture.run();
+
+        assertEquals(2, fixture.getWarmedPages());
+        assertTrue(System.nanoTime() - start >= 40_000_000L);
+    }
+
+    @Test
+    void invalidationOfHotPathsSchedulesOneRun(AemContext context) {
+        Scheduler scheduler = mock(Scheduler.class);
+        ScheduleOptions options = mock(ScheduleOptions.class, RETURNS_SELF);
+        when(scheduler.AT(any(Date.class))).thenReturn(options);
+        when(scheduler.schedule(any(), eq(options))).thenReturn(true);
+        context.registerService(Scheduler.class, scheduler);
+        context.registerInjectActivateService(fixture, "warm.on.activate", false, "depth", 0,
+                "rate.per.second", 0);
+
+        fixture.invalidateSubtrees(Arrays.asList("/content/test/de", "/content/dam/test"));
+        fixture.invalidateSubtrees(Collections.singletonList("/content/test/us/en/products/jcr:content"));
+        fixture.invalidateSubtrees(Collections.singletonList("/content/test"));
+
+        ArgumentCaptor<Runnable> job = ArgumentCaptor.forClass(Runnable.class);
+        verify(scheduler).schedule(job.capture(), eq(options));
+        job.getValue().run();
+        assertEquals(2, fixture.getWarmedPages());
+
+        fixture.invalidateSubtrees(Collections.singletonList("/content/test/language-masters/en"));
+        verify(scheduler, times(2)).schedule(any(), eq(options));
+    }
+}
@@ -0,0 +1,88 @@
+package com.test.core.schedulers;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.sling.api.resource.PersistenceException;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolverFactory;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import io.wcm.testing.mock.aem.junit5.AemContext;
+import io.wcm.testing.mock.aem.junit5.AemContextExtension;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@ExtendWith(AemContextExtension.class)
+class ShardedContentJobTest {
+
+    private static final String CHECKPOINT = ShardedContentJob.CHECKPOINT_ROOT + "/test";
+
+    private ShardedContentJob fixture;
+
+    private Set<String> visited = ConcurrentHashMap.newKeySet();
+
+    @BeforeEach
+    void setup(AemContext context) throws PersistenceException {
+        for (int i = 0; i < 10; i++) {
+            context.create().resource("/content/test/child" + i + "/a");
+            context.create().resource("/content/test/child" + i + "/b");
+        }
+        context.resourceResolver().commit();
+        fixture = new ShardedContentJob(context.getService(ResourceResolverFactory.class),
+                "content-maintenance", "test", "/content/test", 3, 4);
+    }
+
+    @Test
+    void runProcessesAllShards(AemContext context) throws Exception {
+        ShardedContentJob.Result result = fixture.run(this::visit);
+
+        assertEquals(30, result.getItems());
+        assertEquals(4, result.getCompletedShards());
+        assertEquals(0, result.getFailedShards());
+        assertEquals(10, visited.size());
+        context.resourceResolver().refresh();
+        assertNull(context.resourceResolver().getResource(CHECKPOINT));
+    }
+
+    @Test
+    void runResumesFromCheckpoint(AemContext context) throws Exception {
+        ShardedContentJob.Result result = fixture.run(subtree -> {
+            if (subtree.getName().equals("child4")) {
+                throw new PersistenceException("failure");
+            }
+            return visit(subtree);
+        });
+
+        assertEquals(3, result.getCompletedShards());
+        assertEquals(1, result.getFailedShards());
+        context.resourceResolver().refresh();
+        assertNotNull(context.resourceResolver().getResource(CHECKPOINT));
+
+        visited.clear();
+        result = fixture.run(this::visit);
+
+        assertEquals(7, result.getResumedSubtrees());
+        assertEquals(1, result.getCompletedShards());
+        assertEquals(9, result.getItems());
+        assertEquals(3, visited.size());
+        context.resourceResolver().refresh();
+        assertNull(context.resourceResolver().getResource(CHECKPOINT));
+    }
+
+    @Test
+    void rejectsInvalidShardSize(AemContext context) {
+        assertThrows(IllegalArgumentException.class, () -> new ShardedContentJob(
+                context.getService(ResourceResolverFactory.class), "content-maintenance", "test", "/content/test", 0, 1));
+    }
+
+    private int visit(Resource subtree) {
+        visited.add(subtree.getPath());
+        return SimpleScheduledTask.visit(subtree);
+    }
+}
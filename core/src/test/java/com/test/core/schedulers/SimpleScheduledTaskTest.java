@@ -21,6 +21,9 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 
+import com.test.core.metrics.JobMetrics;
+import com.test.core.metrics.JobMetrics.JobStatistics;
+import io.wcm.testing.mock.aem.junit5.AemContext;
 import io.wcm.testing.mock.aem.junit5.AemContextExtension;
 import uk.org.lidalia.slf4jext.Level;
 import uk.org.lidalia.slf4jtest.LoggingEvent;
@@ -58,4 +61,32 @@ class SimpleScheduledTaskTest {
         assertEquals(1, event.getArguments().size());
         assertEquals("parameter value", event.getArguments().get(0));
     }
+
+    @Test
+    void runRecordsMetrics(AemContext context) {
+        context.create().resource("/content/test/a/b");
+        context.create().resource("/content/test/c");
+        JobMetrics metrics = context.registerInjectActivateService(new JobMetrics());
+        context.registerInjectActivateService(fixture, "content.root", "/content/test", "shard.size", 1);
+
+        fixture.run();
+
+        JobStatistics job = metrics.getJob(SimpleScheduledTask.JOB_NAME);
+        assertEquals(1, job.getSuccessCount());
+        assertEquals(0, job.getFailureCount());
+        assertEquals(1, job.getDurations().getCount());
+    }
+
+    @Test
+    void runSkipsAndCountsOverlappingTriggers(AemContext context) {
+        JobMetrics metrics = context.registerInjectActivateService(new JobMetrics());
+        context.registerInjectActivateService(fixture);
+        JobStatistics job = metrics.getJob(SimpleScheduledTask.JOB_NAME);
+        job.tryStart(true);
+
+        fixture.run();
+
+        assertEquals(1, job.getSkippedCount());
+        assertEquals(0, job.getSuccessCount());
+    }
 }
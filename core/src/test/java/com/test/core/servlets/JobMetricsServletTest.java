@@ -0,0 +1,40 @@
+package com.test.core.servlets;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.sling.testing.mock.sling.servlet.MockSlingHttpServletResponse;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import com.test.core.metrics.JobMetrics;
+import com.test.core.metrics.JobMetrics.JobStatistics;
+import io.wcm.testing.mock.aem.junit5.AemContext;
+import io.wcm.testing.mock.aem.junit5.AemContextExtension;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@ExtendWith(AemContextExtension.class)
+class JobMetricsServletTest {
+
+    private JobMetricsServlet fixture = new JobMetricsServlet();
+
+    @Test
+    void doGet(AemContext context) throws IOException {
+        JobMetrics metrics = context.registerInjectActivateService(new JobMetrics());
+        JobStatistics job = metrics.getJob("nightly");
+        job.tryStart(true);
+        job.tryStart(true);
+        job.failed(TimeUnit.SECONDS.toNanos(3), "broken");
+        context.registerInjectActivateService(fixture);
+
+        MockSlingHttpServletResponse response = context.response();
+        fixture.doGet(context.request(), response);
+
+        String json = response.getOutputAsString();
+        assertTrue(json.startsWith("{\"unit\":\"milliseconds\",\"jobs\":[{\"name\":\"nightly\",\"running\":false,"));
+        assertTrue(json.contains("\"successes\":0,\"failures\":1,\"skipped\":1,\"overlapping\":0,"));
+        assertTrue(json.contains("\"lastDuration\":3000,"));
+        assertTrue(json.contains("\"lastFailureMessage\":\"broken\""));
+    }
+}
@@ -0,0 +1,79 @@
+package com.test.core.servlets;
+
+import java.io.IOException;
+
+import org.apache.sling.testing.mock.sling.servlet.MockRequestPathInfo;
+import org.apache.sling.testing.mock.sling.servlet.MockSlingHttpServletRequest;
+import org.apache.sling.testing.mock.sling.servlet.MockSlingHttpServletResponse;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import io.wcm.testing.mock.aem.junit5.AemContext;
+import io.wcm.testing.mock.aem.junit5.AemContextExtension;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@ExtendWith(AemContextExtension.class)
+class PageTreeServletTest {
+
+    private PageTreeServlet fixture = new PageTreeServlet();
+
+    @BeforeEach
+    void setup(AemContext context) {
+        context.create().page("/content/test", "/conf/test/settings/wcm/templates/page", "Test");
+        context.create().page("/content/test/en", "/conf/test/settings/wcm/templates/page", "English");
+        context.create().page("/content/test/en/about", "/conf/test/settings/wcm/templates/page", "About");
+        context.create().page("/content/test/fr", "/conf/test/settings/wcm/templates/page", "French");
+        context.currentResource("/content/test/jcr:content");
+    }
+
+    @Test
+    void doGetText(AemContext context) throws IOException {
+        MockSlingHttpServletRequest request = context.request();
+        MockSlingHttpServletResponse response = context.response();
+        ((MockRequestPathInfo) request.getRequestPathInfo()).setSelectorString("tree");
+        ((MockRequestPathInfo) request.getRequestPathInfo()).setExtension("txt");
+
+        fixture.doGet(request, response);
+
+        String[] lines = response.getOutputAsString().split("\n");
+        assertEquals(4, lines.length);
+        assertTrue(lines[0].startsWith("0\t/content/test\tTest\t"));
+        assertTrue(lines[1].startsWith("1\t/content/test/en\tEnglish\t"));
+        assertTrue(lines[2].startsWith("2\t/content/test/en/about\tAbout\t"));
+        assertTrue(lines[3].startsWith("1\t/content/test/fr\tFrench\t"));
+        assertTrue(lines[3].endsWith("\t/conf/test/settings/wcm/templates/page"));
+    }
+
+    @Test
+    void doGetJsonWithDepth(AemContext context) throws IOException {
+        MockSlingHttpServletRequest request = context.request();
+        MockSlingHttpServletResponse response = context.response();
+        ((MockRequestPathInfo) request.getRequestPathInfo()).setSelectorString("tree.1");
+        ((MockRequestPathInfo) request.getRequestPathInfo()).setExtension("json");
+
+        fixture.doGet(request, response);
+
+        String json = response.getOutputAsString();
+        assertEquals("application/json;charset=UTF-8", response.getContentType());
+        assertTrue(json.startsWith("[{\"depth\":0,\"path\":\"/content/test\",\"name\":\"test\",\"title\":\"Test\","));
+        assertTrue(json.contains("{\"depth\":1,\"path\":\"/content/test/en\","));
+        assertTrue(json.contains("{\"depth\":1,\"path\":\"/content/test/fr\","));
+        assertFalse(json.contains("/content/test/en/about"));
+        assertTrue(json.endsWith("}]"));
+    }
+
+    @Test
+    void doGetOutsidePage(AemContext context) throws IOException {
+        context.create().resource("/content/dam/test");
+        context.currentResource("/content/dam/test");
+
+        MockSlingHttpServletResponse response = context.response();
+        fixture.doGet(context.request(), response);
+
+        assertEquals(404, response.getStatus());
+    }
+}
@@ -0,0 +1,103 @@
+package com.test.core.servlets;
+
+import java.nio.file.Path;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.sling.testing.mock.sling.servlet.MockRequestPathInfo;
+import org.apache.sling.testing.mock.sling.servlet.MockSlingHttpServletResponse;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.day.cq.dam.api.Asset;
+import com.test.core.renditions.RenditionService;
+
+import io.wcm.testing.mock.aem.junit5.AemContext;
+import io.wcm.testing.mock.aem.junit5.AemContextExtension;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@ExtendWith(AemContextExtension.class)
+class RenditionServletTest {
+
+    @TempDir
+    Path directory;
+
+    private RenditionService renditions = new RenditionService();
+
+    private RenditionServlet fixture = new RenditionServlet();
+
+    private Asset asset;
+
+    @BeforeEach
+    void setup(AemContext context) {
+        context.registerInjectActivateService(renditions, "cache.directory", directory.toString());
+        context.registerInjectActivateService(fixture);
+        asset = context.create().asset("/content/dam/test/poster.jpg", 800, 400, "image/jpeg");
+        context.currentResource(asset.getPath());
+    }
+
+    @Test
+    void doGetSendsImmutableRendition(AemContext context) throws Exception {
+        String hash = hash();
+        select(context, "rendition.320." + hash, "jpg");
+        MockSlingHttpServletResponse response = context.response();
+
+        fixture.doGet(context.request(), response);
+
+        assertEquals(HttpServletResponse.SC_OK, response.getStatus());
+        assertEquals("image/jpeg", response.getContentType());
+        assertEquals("public, max-age=31536000, immutable", response.getHeader("Cache-Control"));
+        assertEquals("\"" + hash + "-320\"", response.getHeader("ETag"));
+        assertTrue(response.getOutput().length > 0);
+        assertEquals(response.getOutput().length, response.getContentLength());
+    }
+
+    @Test
+    void doGetRedirectsOutdatedUrls(AemContext context) throws Exception {
+        select(context, "rendition.500.0000000000000000", "jpg");
+        MockSlingHttpServletResponse response = context.response();
+
+        fixture.doGet(context.request(), response);
+
+        assertEquals(HttpServletResponse.SC_MOVED_TEMPORARILY, response.getStatus());
+        assertEquals(asset.getPath() + ".rendition.640." + hash() + ".jpg", response.getHeader("Location"));
+        assertEquals(0, renditions.getCreatedCount());
+    }
+
+    @Test
+    void doGetIfNoneMatch(AemContext context) throws Exception {
+        String hash = hash();
+        select(context, "rendition.320." + hash, "jpg");
+        context.request().addHeader("If-None-Match", "\"" + hash + "-320\"");
+        MockSlingHttpServletResponse response = context.response();
+
+        fixture.doGet(context.request(), response);
+
+        assertEquals(HttpServletResponse.SC_NOT_MODIFIED, response.getStatus());
+        assertEquals(0, renditions.getCreatedCount());
+    }
+
+    @Test
+    void doGetRejectsMalformedSelectors(AemContext context) throws Exception {
+        select(context, "rendition.wide", "jpg");
+        MockSlingHttpServletResponse response = context.response();
+
+        fixture.doGet(context.request(), response);
+
+        assertEquals(HttpServletResponse.SC_NOT_FOUND, response.getStatus());
+    }
+
+    private String hash() throws Exception {
+        return renditions.getHash(asset).substring(0, 16);
+    }
+
+    private static void select(AemContext context, String selectors, String extension) {
+        MockRequestPathInfo pathInfo = context.requestPathInfo();
+        pathInfo.setSelectorString(selectors);
+        pathInfo.setExtension(extension);
+    }
+}
@@ -0,0 +1,41 @@
+package com.test.core.servlets;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.sling.testing.mock.sling.servlet.MockSlingHttpServletRequest;
+import org.apache.sling.testing.mock.sling.servlet.MockSlingHttpServletResponse;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import com.test.core.metrics.RequestTimingStatistics;
+import io.wcm.testing.mock.aem.junit5.AemContext;
+import io.wcm.testing.mock.aem.junit5.AemContextExtension;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@ExtendWith(AemContextExtension.class)
+class RequestTimingServletTest {
+
+    private RequestTimingServlet fixture = new RequestTimingServlet();
+
+    @Test
+    void doGet(AemContext context) throws IOException {
+        RequestTimingStatistics statistics = context.registerInjectActivateService(new RequestTimingStatistics());
+        statistics.record("test/components/page", null, "html", TimeUnit.MILLISECONDS.toNanos(3));
+        context.registerInjectActivateService(fixture);
+
+        MockSlingHttpServletRequest request = context.request();
+        MockSlingHttpServletResponse response = context.response();
+
+        fixture.doGet(request, response);
+
+        String json = response.getOutputAsString();
+        assertEquals("application/json;charset=UTF-8", response.getContentType());
+        assertTrue(json.startsWith("{\"unit\":\"microseconds\",\"timings\":[{"));
+        assertTrue(json.contains("\"resourceType\":\"test/components/page\",\"selectors\":\"\",\"extension\":\"html\""));
+        assertTrue(json.contains("\"count\":1,"));
+        assertTrue(json.contains("\"max\":3000,"));
+    }
+}
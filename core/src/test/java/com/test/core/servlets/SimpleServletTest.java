@@ -16,6 +16,9 @@
 package com.test.core.servlets;
 
 import java.io.IOException;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.TimeZone;
 
 import javax.servlet.ServletException;
 
@@ -28,6 +31,7 @@ import io.wcm.testing.mock.aem.junit5.AemContext;
 import io.wcm.testing.mock.aem.junit5.AemContextExtension;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
 
 @ExtendWith(AemContextExtension.class)
 class SimpleServletTest {
@@ -46,4 +50,70 @@ class SimpleServletTest {
 
         assertEquals("Title = resource title", response.getOutputAsString());
     }
+
+    @Test
+    void doGetSetsValidators(AemContext context) throws ServletException, IOException {
+        context.build().resource("/content/test", "jcr:title", "resource title", "cq:lastModified", lastModified()).commit();
+        context.currentResource("/content/test");
+
+        MockSlingHttpServletResponse response = context.response();
+
+        fixture.doGet(context.request(), response);
+
+        assertEquals(200, response.getStatus());
+        assertEquals("\"" + Long.toHexString(lastModified().getTimeInMillis()) + "\"", response.getHeader("ETag"));
+        assertEquals("Wed, 18 Mar 2020 10:15:30 GMT", response.getHeader("Last-Modified"));
+        assertEquals("max-age=60", response.getHeader("Cache-Control"));
+        assertEquals("Title = resource title", response.getOutputAsString());
+    }
+
+    @Test
+    void doGetIfNoneMatch(AemContext context) throws ServletException, IOException {
+        context.build().resource("/content/test", "jcr:title", "resource title", "jcr:lastModified", lastModified()).commit();
+        context.currentResource("/content/test");
+
+        MockSlingHttpServletRequest request = context.request();
+        MockSlingHttpServletResponse response = context.response();
+        request.addHeader("If-None-Match", "\"0\", W/\"" + Long.toHexString(lastModified().getTimeInMillis()) + "\"");
+
+        fixture.doGet(request, response);
+
+        assertEquals(304, response.getStatus());
+        assertEquals("", response.getOutputAsString());
+        assertNull(response.getContentType());
+    }
+
+    @Test
+    void doGetIfModifiedSince(AemContext context) throws ServletException, IOException {
+        context.build().resource("/content/test", "jcr:title", "resource title", "cq:lastModified", lastModified()).commit();
+        context.currentResource("/content/test");
+
+        MockSlingHttpServletRequest request = context.request();
+        MockSlingHttpServletResponse response = context.response();
+        request.addDateHeader("If-Modified-Since", lastModified().getTimeInMillis());
+        fixture.doGet(request, response);
+        assertEquals(304, response.getStatus());
+    }
+
+    @Test
+    void doGetModifiedSince(AemContext context) throws ServletException, IOException {
+        context.build().resource("/content/test", "jcr:title", "resource title", "cq:lastModified", lastModified()).commit();
+        context.currentResource("/content/test");
+
+        MockSlingHttpServletRequest request = context.request();
+        MockSlingHttpServletResponse response = context.response();
+        request.addDateHeader("If-Modified-Since", lastModified().getTimeInMillis() - 60000);
+        fixture.doGet(request, response);
+
+        assertEquals(200, response.getStatus());
+        assertEquals("Title = resource title", response.getOutputAsString());
+    }
+
+    private static Calendar lastModified() {
+        Calendar calendar = new GregorianCalendar(TimeZone.getTimeZone("UTC"));
+        calendar.setTimeInMillis(0);
+        calendar.set(2020, Calendar.MARCH, 18, 10, 15, 30);
+        calendar.set(Calendar.MILLISECOND, 250);
+        return calendar;
+    }
 }
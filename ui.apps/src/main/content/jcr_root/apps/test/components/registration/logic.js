@@ -1,5 +0,0 @@
-use(function () {
-    return {
-        title: currentPage.getTitle().substring(0, 2) + "..."
-    };
-});